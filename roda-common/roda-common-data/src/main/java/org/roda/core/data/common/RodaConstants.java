@@ -140,6 +140,7 @@ public final class RodaConstants {
   public static final String RODA_OBJECT_RISK = "risk";
   public static final String RODA_OBJECT_INCIDENCE = "incidence";
   public static final String RODA_OBJECT_TRANSFERRED_RESOURCE = "transferred_resource";
+  public static final String RODA_OBJECT_TRANSFERRED_RESOURCE_UPLOAD = "transferred_resource_upload";
   public static final String RODA_OBJECT_USER = "user";
   public static final String RODA_OBJECT_GROUP = "group";
   public static final String RODA_OBJECT_DESCRIPTIVE_METADATA = "descriptive_metadata";
@@ -300,6 +301,8 @@ public final class RodaConstants {
   public static final String API_PATH_PARAM_METADATA_ID = "metadata_id";
   public static final String API_PATH_PARAM_TRANSFERRED_RESOURCE_ID = "transferred_resource_id";
   public static final String API_PATH_PARAM_TRANSFERRED_RESOURCE_UUID = "transferred_resource_uuid";
+  public static final String API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID = "upload_id";
+  public static final String API_PATH_PARAM_CHUNK_INDEX = "chunk_index";
   public static final String API_PATH_PARAM_SIP_ID = "sip_id";
   public static final String API_PATH_PARAM_NOTIFICATION_ID = "notification_id";
   public static final String API_PATH_PARAM_AGENT_ID = "agent_id";
@@ -337,6 +340,8 @@ public final class RodaConstants {
   public static final String API_QUERY_PARAM_DETAILS = "details";
   public static final String API_QUERY_PARAM_ONLY_DETAILS = "onlyDetails";
   public static final String API_QUERY_PARAM_COMMIT = "commit";
+  public static final String API_QUERY_PARAM_UPLOAD_SIZE = "size";
+  public static final String API_QUERY_PARAM_UPLOAD_CHUNK_SIZE = "chunk_size";
   public static final String API_PARAM_UPLOAD = "upl";
   public static final String API_PARAM_FILE = "file";
   public static final String API_FORM_PARAM_FIND_REQUEST = "findRequest";
@@ -436,6 +441,7 @@ public final class RodaConstants {
   public static final String CONTROLLER_FOLDER_RELATIVEPATH_PARAM = "folderRelativePath";
   public static final String CONTROLLER_FILENAME_PARAM = "filename";
   public static final String CONTROLLER_PATH_PARAM = "path";
+  public static final String CONTROLLER_CHUNK_INDEX_PARAM = "chunkIndex";
   public static final String CONTROLLER_DIRECTORY_PATH_PARAM = "directoryPath";
   public static final String CONTROLLER_SUCCESS_PARAM = "success";
   public static final String CONTROLLER_ERROR_PARAM = "error";
@@ -592,6 +598,7 @@ public final class RodaConstants {
   public static final String INDEX_UUID = "uuid";
   public static final String INDEX_ID = "id";
   public static final String INDEX_STATE = "state";
+  public static final String INDEX_CONTENT_HASH = "contentHash";
   public static final String INDEX_SEARCH = "search";
   public static final String INDEX_WILDCARD = "*";
 
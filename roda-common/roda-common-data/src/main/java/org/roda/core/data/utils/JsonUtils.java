@@ -9,17 +9,20 @@ package org.roda.core.data.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.io.IOUtils;
-import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadataMixIn;
@@ -27,53 +30,72 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 public final class JsonUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(JsonUtils.class);
   private static final String JSON_ERROR_MESSAGE = "Error while parsing JSON";
+  private static final String JSON_WRITE_ERROR_MESSAGE = "Error writing object, as json, to file";
+
+  /**
+   * Mappers are thread-safe once configured, so they are built only once and
+   * are never re-configured afterwards. All readers and writers are derived
+   * from them and cached per type (and mixin).
+   */
+  private static final ObjectMapper MAPPER = createMapper();
+  private static final ObjectMapper MAPPER_WITH_MIXINS = createMapper().addMixIn(DescriptiveMetadata.class,
+    DescriptiveMetadataMixIn.class);
+
+  private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Class<?>, ObjectReader> LIST_READERS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<List<Class<?>>, ObjectWriter> MIXIN_WRITERS = new ConcurrentHashMap<>();
+  private static final ObjectReader MAP_READER = MAPPER.readerFor(new TypeReference<Map<String, String>>() {});
+  private static final ObjectWriter WRITER = MAPPER.writer();
+  private static final ObjectWriter WRITER_WITH_MIXINS = MAPPER_WITH_MIXINS.writer();
 
   private JsonUtils() {
     // do nothing
   }
 
+  private static ObjectMapper createMapper() {
+    return new ObjectMapper(new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+  }
+
   public static <T> T readObjectFromFile(Path jsonFile, Class<T> objectClass) throws GenericException {
-    try (InputStream stream = Files.newInputStream(jsonFile)) {
-      return getObjectFromJson(stream, objectClass);
-    } catch (IOException e) {
-      throw new GenericException(e);
-    }
+    return getObjectFromJson(jsonFile, objectClass);
   }
 
   public static void writeObjectToFile(Object object, Path file) throws GenericException {
-    try {
-      String json = getJsonFromObject(object);
-      if (json != null) {
-        Files.write(file, json.getBytes(), StandardOpenOption.CREATE);
-      }
+    try (OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE)) {
+      writeObjectToStream(object, stream);
     } catch (IOException e) {
-      throw new GenericException("Error writing object, as json, to file", e);
+      throw new GenericException(JSON_WRITE_ERROR_MESSAGE, e);
     }
   }
 
   public static void appendObjectToFile(Object object, Path file) throws GenericException {
     try {
-      String json = getJsonFromObject(object) + "\n";
-      Files.write(file, json.getBytes(), StandardOpenOption.APPEND);
+      byte[] json = getJsonBytesFromObject(object, null);
+      byte[] line = Arrays.copyOf(json, json.length + 1);
+      line[json.length] = '\n';
+      Files.write(file, line, StandardOpenOption.APPEND);
     } catch (IOException e) {
-      throw new GenericException("Error writing object, as json, to file", e);
+      throw new GenericException(JSON_WRITE_ERROR_MESSAGE, e);
     }
   }
 
   public static Map<String, String> getMapFromJson(String json) {
     Map<String, String> ret = new HashMap<>();
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      ret = mapper.readValue(json, new TypeReference<Map<String, String>>() {});
+      ret = MAP_READER.readValue(json);
     } catch (IOException e) {
       LOGGER.error("Error transforming json string to Map<String,String>", e);
     }
@@ -87,66 +109,97 @@ public final class JsonUtils {
   public static String getJsonFromObject(Object object, Class<?> mixin) {
     String ret = null;
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      mapper = addMixinsToMapper(mapper, object, mixin);
-      ret = mapper.writeValueAsString(object);
+      ret = getWriter(object, mixin).writeValueAsString(object);
     } catch (IOException e) {
       LOGGER.error("Error transforming object '{}' to json string", object, e);
     }
     return ret;
   }
 
-  private static ObjectMapper addMixinsToMapper(ObjectMapper mapper, Object object, Class<?> mixin) {
-    if (!(object instanceof DescriptiveMetadata)) {
-      if (object instanceof List<?>) {
-        List<?> objectList = (List<?>) object;
-        if (!objectList.isEmpty() && !(objectList.get(0) instanceof DescriptiveMetadata)) {
-          mapper.addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
-        }
-      } else {
-        mapper.addMixIn(DescriptiveMetadata.class, DescriptiveMetadataMixIn.class);
-      }
+  /**
+   * Serializes an object directly to its UTF-8 JSON bytes, avoiding the
+   * intermediate String.
+   */
+  public static byte[] getJsonBytesFromObject(Object object, Class<?> mixin) throws GenericException {
+    try {
+      return getWriter(object, mixin).writeValueAsBytes(object);
+    } catch (IOException e) {
+      throw new GenericException("Error transforming object to json", e);
     }
+  }
+
+  /**
+   * Serializes an object as JSON directly into the stream. The stream is
+   * flushed but not closed.
+   */
+  public static void writeObjectToStream(Object object, OutputStream stream) throws GenericException {
+    writeObjectToStream(object, null, stream);
+  }
 
-    if (mixin != null) {
-      mapper.addMixIn(object.getClass(), mixin);
+  public static void writeObjectToStream(Object object, Class<?> mixin, OutputStream stream) throws GenericException {
+    try {
+      getWriter(object, mixin).writeValue(stream, object);
+    } catch (IOException e) {
+      throw new GenericException("Error writing object, as json, to stream", e);
     }
+  }
+
+  private static ObjectWriter getWriter(Object object, Class<?> mixin) {
+    boolean describesMetadata = isDescriptiveMetadata(object);
 
-    return mapper;
+    if (mixin == null || object == null) {
+      return describesMetadata ? WRITER : WRITER_WITH_MIXINS;
+    }
+
+    List<Class<?>> key = Arrays.asList(object.getClass(), mixin, describesMetadata ? null : DescriptiveMetadata.class);
+    return MIXIN_WRITERS.computeIfAbsent(key, k -> {
+      ObjectMapper mapper = describesMetadata ? MAPPER.copy() : MAPPER_WITH_MIXINS.copy();
+      return mapper.addMixIn(k.get(0), k.get(1)).writer();
+    });
+  }
+
+  private static boolean isDescriptiveMetadata(Object object) {
+    if (object instanceof DescriptiveMetadata) {
+      return true;
+    } else if (object instanceof List<?>) {
+      List<?> objectList = (List<?>) object;
+      return objectList.isEmpty() || objectList.get(0) instanceof DescriptiveMetadata;
+    }
+    return false;
+  }
+
+  private static ObjectReader getReader(Class<?> objectClass) {
+    return READERS.computeIfAbsent(objectClass, MAPPER::readerFor);
+  }
+
+  private static ObjectReader getListReader(Class<?> objectClass) {
+    return LIST_READERS.computeIfAbsent(objectClass, c -> {
+      JavaType type = MAPPER.getTypeFactory().constructCollectionType(ArrayList.class, c);
+      return MAPPER.readerFor(type);
+    });
   }
 
   public static <T> T getObjectFromJson(Path json, Class<T> objectClass) throws GenericException {
-    T ret;
-    InputStream stream = null;
-    try {
-      stream = Files.newInputStream(json);
-      String jsonString = IOUtils.toString(stream, RodaConstants.DEFAULT_ENCODING);
-      ret = getObjectFromJson(jsonString, objectClass);
+    try (InputStream stream = Files.newInputStream(json)) {
+      return getReader(objectClass).readValue(stream);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
-    } finally {
-      IOUtils.closeQuietly(stream);
     }
-    return ret;
   }
 
   public static <T> T getObjectFromJson(InputStream json, Class<T> objectClass) throws GenericException {
-    T ret;
     try {
-      String jsonString = IOUtils.toString(json, RodaConstants.DEFAULT_ENCODING);
-      ret = getObjectFromJson(jsonString, objectClass);
+      return getReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new GenericException(e);
     } finally {
       IOUtils.closeQuietly(json);
     }
-    return ret;
   }
 
   public static <T> T getObjectFromJson(String json, Class<T> objectClass) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readValue(json, objectClass);
+      return getReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
@@ -154,18 +207,31 @@ public final class JsonUtils {
 
   public static <T> List<T> getListFromJson(String json, Class<T> objectClass) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      TypeFactory t = TypeFactory.defaultInstance();
-      return mapper.readValue(json, t.constructCollectionType(ArrayList.class, objectClass));
+      return getListReader(objectClass).readValue(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
   }
 
+  /**
+   * Creates a deep copy of an object by round-tripping it through an in-memory
+   * token buffer, i.e. the copy is exactly what would be obtained by writing the
+   * object as JSON and reading it back, without the cost of producing and
+   * parsing the characters.
+   */
+  public static <T> T copyObject(T object, Class<T> objectClass) throws GenericException {
+    try {
+      TokenBuffer buffer = new TokenBuffer(MAPPER, false);
+      getWriter(object, null).writeValue(buffer, object);
+      return getReader(objectClass).readValue(buffer.asParser());
+    } catch (IOException e) {
+      throw new GenericException("Error copying object through json", e);
+    }
+  }
+
   public static JsonNode parseJson(String json) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readTree(json);
+      return MAPPER.readTree(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     }
@@ -173,8 +239,7 @@ public final class JsonUtils {
 
   public static JsonNode parseJson(InputStream json) throws GenericException {
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      return mapper.readTree(json);
+      return MAPPER.readTree(json);
     } catch (IOException e) {
       throw new GenericException(JSON_ERROR_MESSAGE, e);
     } finally {
@@ -185,8 +250,7 @@ public final class JsonUtils {
   public static String getJsonFromNode(JsonNode node) {
     String ret = null;
     try {
-      ObjectMapper mapper = new ObjectMapper(new JsonFactory());
-      ret = mapper.writeValueAsString(node);
+      ret = WRITER.writeValueAsString(node);
     } catch (IOException e) {
       LOGGER.error("Error transforming object '{}' to json string", node, e);
     }
@@ -0,0 +1,139 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.data.v2.ip;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.roda.core.data.common.RodaConstants;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A transferred resource file being uploaded in chunks. Chunks have
+ * {@link #getChunkSize()} bytes (except the last one) and may be uploaded in
+ * any order, concurrently and again if their upload failed.
+ */
+@XmlRootElement(name = RodaConstants.RODA_OBJECT_TRANSFERRED_RESOURCE_UPLOAD)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferredResourceUpload implements Serializable {
+  private static final long serialVersionUID = 3906484209626346117L;
+
+  private String id;
+  private String parentUUID;
+  private String name;
+  private long size;
+  private long chunkSize;
+  private Date createdOn;
+  private List<Integer> receivedChunks = new ArrayList<>();
+  // <algorithm,digest>, known once all chunks are received
+  private Map<String, String> contentDigest = null;
+
+  public TransferredResourceUpload() {
+    super();
+  }
+
+  public TransferredResourceUpload(String id, String parentUUID, String name, long size, long chunkSize,
+    Date createdOn) {
+    super();
+    this.id = id;
+    this.parentUUID = parentUUID;
+    this.name = name;
+    this.size = size;
+    this.chunkSize = chunkSize;
+    this.createdOn = createdOn;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getParentUUID() {
+    return parentUUID;
+  }
+
+  public void setParentUUID(String parentUUID) {
+    this.parentUUID = parentUUID;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public void setSize(long size) {
+    this.size = size;
+  }
+
+  public long getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize(long chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  public Date getCreatedOn() {
+    return createdOn;
+  }
+
+  public void setCreatedOn(Date createdOn) {
+    this.createdOn = createdOn;
+  }
+
+  public List<Integer> getReceivedChunks() {
+    return receivedChunks;
+  }
+
+  public void setReceivedChunks(List<Integer> receivedChunks) {
+    this.receivedChunks = receivedChunks;
+  }
+
+  public Map<String, String> getContentDigest() {
+    return contentDigest;
+  }
+
+  public void setContentDigest(Map<String, String> contentDigest) {
+    this.contentDigest = contentDigest;
+  }
+
+  @JsonIgnore
+  public int getNumberOfChunks() {
+    // the number of chunks is validated when the upload starts
+    return size == 0 ? 1 : (int) (size / chunkSize + (size % chunkSize == 0 ? 0 : 1));
+  }
+
+  @JsonIgnore
+  public boolean isComplete() {
+    return receivedChunks.size() == getNumberOfChunks();
+  }
+
+  @Override
+  public String toString() {
+    return "TransferredResourceUpload [id=" + id + ", parentUUID=" + parentUUID + ", name=" + name + ", size=" + size
+      + ", chunkSize=" + chunkSize + ", createdOn=" + createdOn + ", receivedChunks=" + receivedChunks
+      + ", contentDigest=" + contentDigest + "]";
+  }
+}
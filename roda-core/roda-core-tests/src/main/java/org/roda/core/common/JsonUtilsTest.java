@@ -7,12 +7,18 @@
  */
 package org.roda.core.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.List;
 
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Report;
 import org.testng.Assert;
 import org.testng.AssertJUnit;
@@ -45,4 +51,26 @@ public class JsonUtilsTest {
       AssertJUnit.assertNotNull(report);
     }
   }
+
+  @Test
+  public void testStreamRoundTrip() throws GenericException {
+    AIP aip = new AIP("aip", null, "type", AIPState.ACTIVE, new Permissions(), "admin");
+    Job job = new Job();
+    job.setId("job");
+    job.setName("job name");
+    Report report = new Report();
+    report.setId("report");
+    report.setJobId(job.getId());
+
+    for (Object object : Arrays.asList(aip, job, report)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      JsonUtils.writeObjectToStream(object, out);
+
+      Assert.assertEquals(out.toByteArray(), JsonUtils.getJsonBytesFromObject(object, null));
+      Assert.assertEquals(new String(out.toByteArray()), JsonUtils.getJsonFromObject(object));
+
+      Object read = JsonUtils.getObjectFromJson(new ByteArrayInputStream(out.toByteArray()), object.getClass());
+      Assert.assertEquals(JsonUtils.getJsonFromObject(read), JsonUtils.getJsonFromObject(object));
+    }
+  }
 }
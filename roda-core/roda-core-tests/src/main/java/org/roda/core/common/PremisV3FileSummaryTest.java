@@ -0,0 +1,102 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class PremisV3FileSummaryTest {
+  private static final String PREMIS_FILE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<object xsi:type=\"file\" xmlns=\"http://www.loc.gov/premis/v3\" "
+    + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+    + "<objectIdentifier><objectIdentifierType>URN</objectIdentifierType>"
+    + "<objectIdentifierValue>urn:roda:premis:file:a.tiff</objectIdentifierValue></objectIdentifier>"
+    + "<objectCharacteristics>"
+    + "<fixity><messageDigestAlgorithm>MD5</messageDigestAlgorithm><messageDigest>E41B</messageDigest>"
+    + "<messageDigestOriginator>RODA</messageDigestOriginator></fixity>"
+    + "<fixity><messageDigestAlgorithm>SHA-256</messageDigestAlgorithm><messageDigest>1F85</messageDigest>"
+    + "<messageDigestOriginator>RODA</messageDigestOriginator></fixity>"
+    + "<size>3236726</size>"
+    + "<format><formatDesignation><formatName>Tagged Image File Format</formatName>"
+    + "<formatVersion>6</formatVersion></formatDesignation></format>"
+    + "<format><formatRegistry><formatRegistryName>pronom</formatRegistryName>"
+    + "<formatRegistryKey>fmt/353</formatRegistryKey></formatRegistry></format>"
+    + "<format><formatRegistry><formatRegistryName>mime</formatRegistryName>"
+    + "<formatRegistryKey>image/tiff</formatRegistryKey></formatRegistry></format>"
+    + "<creatingApplication><creatingApplicationName>scanner</creatingApplicationName>"
+    + "<creatingApplicationVersion>1.0</creatingApplicationVersion>"
+    + "<dateCreatedByApplication>2017-01-01</dateCreatedByApplication>"
+    + "<creatingApplicationExtension><info><size>1</size></info></creatingApplicationExtension>"
+    + "</creatingApplication>"
+    + "<objectCharacteristicsExtension><repInfo><size>2</size><format>TIFF</format></repInfo>"
+    + "</objectCharacteristicsExtension>"
+    + "</objectCharacteristics>"
+    + "<objectCharacteristics><size>4</size></objectCharacteristics>"
+    + "<originalName>a.tiff</originalName>"
+    + "</object>";
+
+  @Test
+  public void testFileFieldsAreRead() throws GenericException {
+    PremisV3FileSummary summary = read(PREMIS_FILE);
+
+    Assert.assertEquals(summary.getOriginalName(), "a.tiff");
+    Assert.assertTrue(summary.hasObjectCharacteristics());
+    Assert.assertEquals(summary.getSize(), 3236726L);
+
+    Assert.assertEquals(summary.getFixities().size(), 2);
+    Assert.assertEquals(summary.getFixities().get(1).getMessageDigestAlgorithm(), "SHA-256");
+    Assert.assertEquals(summary.getFixities().get(1).getMessageDigest(), "1F85");
+    Assert.assertEquals(summary.getFixities().get(1).getMessageDigestOriginator(), "RODA");
+
+    Assert.assertTrue(summary.hasFormat());
+    Assert.assertEquals(summary.getFormatName(), "Tagged Image File Format");
+    Assert.assertEquals(summary.getFormatVersion(), "6");
+    Assert.assertEquals(summary.getFormatRegistryKey(RodaConstants.PRESERVATION_REGISTRY_PRONOM), "fmt/353");
+    Assert.assertEquals(summary.getFormatRegistryKey(RodaConstants.PRESERVATION_REGISTRY_MIME), "image/tiff");
+    Assert.assertNull(summary.getFormatRegistryKey("other"));
+
+    Assert.assertTrue(summary.hasCreatingApplication());
+    Assert.assertEquals(summary.getCreatingApplicationName(), "scanner");
+    Assert.assertEquals(summary.getCreatingApplicationVersion(), "1.0");
+    Assert.assertEquals(summary.getDateCreatedByApplication(), "2017-01-01");
+  }
+
+  @Test
+  public void testFileWithoutCharacteristics() throws GenericException {
+    PremisV3FileSummary summary = read("<prem:object xsi:type=\"prem:file\" "
+      + "xmlns:prem=\"http://www.loc.gov/premis/v3\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+      + "<prem:originalName>b.txt</prem:originalName></prem:object>");
+
+    Assert.assertEquals(summary.getOriginalName(), "b.txt");
+    Assert.assertFalse(summary.hasObjectCharacteristics());
+    Assert.assertTrue(summary.getFixities().isEmpty());
+    Assert.assertFalse(summary.hasFormat());
+    Assert.assertFalse(summary.hasCreatingApplication());
+  }
+
+  @Test(expectedExceptions = GenericException.class)
+  public void testRepresentationIsRejected() throws GenericException {
+    read("<object xsi:type=\"representation\" xmlns=\"http://www.loc.gov/premis/v3\" "
+      + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"></object>");
+  }
+
+  @Test(expectedExceptions = GenericException.class)
+  public void testMalformedXmlIsRejected() throws GenericException {
+    read("<object xsi:type=\"file\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><size>");
+  }
+
+  private static PremisV3FileSummary read(String xml) throws GenericException {
+    return PremisV3FileSummary.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+}
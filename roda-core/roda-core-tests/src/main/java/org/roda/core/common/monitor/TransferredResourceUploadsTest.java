@@ -0,0 +1,174 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.FileUtility;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class TransferredResourceUploadsTest {
+  private static final List<String> ALGORITHMS = Arrays.asList("MD5", "SHA-256");
+  private static final int CHUNK_SIZE = 1000;
+
+  private Path basePath;
+  private TransferredResourceUploads uploads;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = Files.createTempDirectory("transferredResourceUploads");
+    Files.createDirectories(basePath.resolve("transferred-resources"));
+    uploads = new TransferredResourceUploads(basePath.resolve("transferred-resources-uploads"));
+    uploads.setContentDigestAlgorithms(ALGORITHMS);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testUploadChunksOutOfOrder() throws GenericException, NotFoundException, RequestNotValidException,
+    AlreadyExistsException, IOException, NoSuchAlgorithmException {
+    byte[] content = new byte[3 * CHUNK_SIZE + 123];
+    new Random(1).nextBytes(content);
+
+    TransferredResourceUpload upload = uploads.startUpload(null, "file.bin", content.length, CHUNK_SIZE);
+    Assert.assertEquals(upload.getNumberOfChunks(), 4);
+
+    for (int index : new int[] {2, 0, 3}) {
+      upload = uploadChunk(upload.getId(), index, content);
+      Assert.assertNull(upload.getContentDigest());
+    }
+    Assert.assertEquals(upload.getReceivedChunks(), Arrays.asList(0, 2, 3));
+    Assert.assertFalse(upload.isComplete());
+
+    // a chunk may be uploaded again
+    uploadChunk(upload.getId(), 0, content);
+    upload = uploadChunk(upload.getId(), 1, content);
+    Assert.assertTrue(upload.isComplete());
+
+    Map<String, String> expectedDigest = FileUtility.checksums(new ByteArrayInputStream(content), ALGORITHMS);
+    Assert.assertEquals(upload.getContentDigest(), expectedDigest);
+
+    Path transferredResources = basePath.resolve("transferred-resources");
+    Path target = transferredResources.resolve("file.bin");
+    Assert.assertEquals(uploads.completeUpload(upload.getId(), transferredResources, target), expectedDigest);
+    Assert.assertEquals(Files.readAllBytes(target), content);
+    Assert.assertEquals(uploads.retrieveContentDigest(transferredResources, target), expectedDigest);
+
+    try {
+      uploads.retrieveUpload(upload.getId());
+      Assert.fail("Upload should have been removed");
+    } catch (NotFoundException e) {
+      // expected
+    }
+
+    // changed files do not keep the digests of the upload
+    Files.write(target, new byte[] {1, 2, 3});
+    Assert.assertNull(uploads.retrieveContentDigest(transferredResources, target));
+  }
+
+  @Test
+  public void testChunksMustHaveTheExpectedSize()
+    throws GenericException, NotFoundException, RequestNotValidException, AlreadyExistsException {
+    TransferredResourceUpload upload = uploads.startUpload(null, "file.bin", 2 * CHUNK_SIZE, CHUNK_SIZE);
+
+    for (int size : new int[] {CHUNK_SIZE - 1, CHUNK_SIZE + 1}) {
+      try {
+        uploads.uploadChunk(upload.getId(), 0, new ByteArrayInputStream(new byte[size]));
+        Assert.fail("Chunk with " + size + " bytes should not be accepted");
+      } catch (RequestNotValidException e) {
+        // expected
+      }
+    }
+    Assert.assertTrue(uploads.retrieveUpload(upload.getId()).getReceivedChunks().isEmpty());
+
+    try {
+      uploads.completeUpload(upload.getId(), basePath, basePath.resolve("file.bin"));
+      Assert.fail("Incomplete upload should not be completed");
+    } catch (RequestNotValidException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReceivedChunksAreNotWrittenAgain() throws GenericException, NotFoundException,
+    RequestNotValidException, AlreadyExistsException, IOException, NoSuchAlgorithmException {
+    byte[] content = new byte[2 * CHUNK_SIZE + 10];
+    new Random(2).nextBytes(content);
+    byte[] otherContent = new byte[content.length];
+    new Random(3).nextBytes(otherContent);
+
+    TransferredResourceUpload upload = uploads.startUpload(null, "file.bin", content.length, CHUNK_SIZE);
+    uploadChunk(upload.getId(), 0, content);
+
+    // sent again with other content, with more bytes and with less bytes
+    uploadChunk(upload.getId(), 0, otherContent);
+    uploads.uploadChunk(upload.getId(), 0, new ByteArrayInputStream(new byte[CHUNK_SIZE + 1]));
+    uploads.uploadChunk(upload.getId(), 0, new ByteArrayInputStream(new byte[CHUNK_SIZE - 1]));
+
+    uploadChunk(upload.getId(), 1, content);
+    upload = uploadChunk(upload.getId(), 2, content);
+    uploadChunk(upload.getId(), 1, otherContent);
+    Assert.assertTrue(upload.isComplete());
+
+    Map<String, String> expectedDigest = FileUtility.checksums(new ByteArrayInputStream(content), ALGORITHMS);
+    Assert.assertEquals(upload.getContentDigest(), expectedDigest);
+
+    Path target = basePath.resolve("transferred-resources").resolve("file.bin");
+    Assert.assertEquals(uploads.completeUpload(upload.getId(), basePath.resolve("transferred-resources"), target),
+      expectedDigest);
+    Assert.assertEquals(Files.readAllBytes(target), content);
+  }
+
+  @Test
+  public void testUploadsWithTooManyChunksAreRejected() throws GenericException, RequestNotValidException {
+    uploads.setMaxNumberOfChunks(3);
+    Assert.assertEquals(uploads.startUpload(null, "file.bin", 3 * CHUNK_SIZE, CHUNK_SIZE).getNumberOfChunks(), 3);
+    Assert.assertEquals(uploads.startUpload(null, "file.bin", Long.MAX_VALUE, Long.MAX_VALUE / 2).getNumberOfChunks(),
+      3);
+
+    for (long[] sizeAndChunkSize : new long[][] {{3 * CHUNK_SIZE + 1, CHUNK_SIZE}, {Long.MAX_VALUE, 1},
+      {-1, CHUNK_SIZE}, {CHUNK_SIZE, 0}}) {
+      try {
+        uploads.startUpload(null, "file.bin", sizeAndChunkSize[0], sizeAndChunkSize[1]);
+        Assert.fail("Upload of " + sizeAndChunkSize[0] + " bytes in chunks of " + sizeAndChunkSize[1]
+          + " bytes should not be accepted");
+      } catch (RequestNotValidException e) {
+        // expected
+      }
+    }
+  }
+
+  private TransferredResourceUpload uploadChunk(String uploadId, int index, byte[] content)
+    throws GenericException, NotFoundException, RequestNotValidException {
+    int from = index * CHUNK_SIZE;
+    int to = Math.min(from + CHUNK_SIZE, content.length);
+    return uploads.uploadChunk(uploadId, index, new ByteArrayInputStream(Arrays.copyOfRange(content, from, to)));
+  }
+}
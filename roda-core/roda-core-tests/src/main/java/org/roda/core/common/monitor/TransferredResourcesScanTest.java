@@ -0,0 +1,279 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.IndexResult;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.sort.Sorter;
+import org.roda.core.data.v2.index.sublist.Sublist;
+import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.SolrBatchIndexer;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class TransferredResourcesScanTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesScanTest.class);
+
+  private static final byte[] CONTENT = "CONTENT".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] MORE_CONTENT = "MORE CONTENT".getBytes(StandardCharsets.UTF_8);
+
+  private static Path basePath;
+  private static IndexService index;
+  private static Path sips;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(TransferredResourcesScanTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = true;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    index = RodaCoreFactory.getIndexService();
+    String transferredResourcesFolder = RodaCoreFactory.getRodaConfiguration()
+      .getString("transferredResources.folder", RodaConstants.CORE_TRANSFERREDRESOURCE_FOLDER);
+    sips = RodaCoreFactory.getDataPath().resolve(transferredResourcesFolder);
+
+    LOGGER.info("Running transferred resources scan tests under storage {}", basePath);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @BeforeMethod
+  public void populate() throws IOException {
+    // a/f1.txt, a/b/f2.txt, c/ and g.txt, with links that loop back to a
+    // and to the base folder, a link from c to a/b and a broken link
+    Path a = Files.createDirectory(sips.resolve("a"));
+    Path b = Files.createDirectory(a.resolve("b"));
+    Path c = Files.createDirectory(sips.resolve("c"));
+    Files.write(a.resolve("f1.txt"), CONTENT);
+    Files.write(b.resolve("f2.txt"), MORE_CONTENT);
+    Files.write(sips.resolve("g.txt"), CONTENT);
+    Files.createSymbolicLink(b.resolve("loop"), a);
+    Files.createSymbolicLink(b.resolve("top"), sips);
+    Files.createSymbolicLink(c.resolve("linked"), b);
+    Files.createSymbolicLink(sips.resolve("broken"), sips.resolve("nothing"));
+  }
+
+  @AfterMethod
+  public void cleanup() throws GenericException, RequestNotValidException, IOException {
+    FSUtils.deletePathQuietly(sips);
+    Files.createDirectory(sips);
+    index.delete(TransferredResource.class, Filter.ALL);
+    index.commit(TransferredResource.class);
+  }
+
+  @Test
+  public void testReindexCreatesTheSameDocumentsAsWalkingTheTree()
+    throws IOException, GenericException, RequestNotValidException {
+    Map<String, Long> expected = walk(sips);
+    Assert.assertTrue(expected.containsKey("c/linked/f2.txt"));
+    Assert.assertFalse(expected.containsKey("a/b/loop/f1.txt"));
+
+    new ReindexTransferredResourcesRunnable(index, sips, Optional.empty()).run();
+
+    Assert.assertEquals(indexed(), expected);
+    Assert.assertEquals(indexedResource("a").getSize(), CONTENT.length + MORE_CONTENT.length);
+    Assert.assertFalse(indexedResource("a").isFile());
+    Assert.assertTrue(indexedResource("a/b/f2.txt").isFile());
+    Assert.assertEquals(indexedResource("a/b/f2.txt").getAncestorsPaths(), Arrays.asList("a", "a/b"));
+  }
+
+  @Test
+  public void testReindexOfAFolderRemovesWhatNoLongerExists()
+    throws IOException, GenericException, RequestNotValidException {
+    new ReindexTransferredResourcesRunnable(index, sips, Optional.empty()).run();
+
+    Files.delete(sips.resolve("a").resolve("b").resolve("f2.txt"));
+    Files.write(sips.resolve("a").resolve("f3.txt"), MORE_CONTENT);
+    Files.delete(sips.resolve("g.txt"));
+    new ReindexTransferredResourcesRunnable(index, sips, Optional.of("a")).run();
+
+    Map<String, Long> expected = walk(sips);
+    Map<String, Long> indexed = indexed();
+    Assert.assertEquals(subtree(indexed, "a"), subtree(expected, "a"));
+    Assert.assertFalse(indexed.containsKey("a/b/f2.txt"));
+    Assert.assertEquals(indexed.get("a/f3.txt"), Long.valueOf(MORE_CONTENT.length));
+
+    // what is outside the folder was not scanned again
+    Assert.assertEquals(indexed.get("g.txt"), Long.valueOf(CONTENT.length));
+  }
+
+  @Test(timeOut = 60000)
+  public void testScanNotifiesEachDirectoryInOrder() throws GenericException {
+    List<String> events = Collections.synchronizedList(new ArrayList<>());
+    Map<String, long[]> sizes = Collections.synchronizedMap(new HashMap<>());
+
+    SolrBatchIndexer<TransferredResourcesScanTest> batch = new SolrBatchIndexer<>(index.getSolrClient(), this);
+    long scanned = TransferredResourcesScan.scan(sips, sips, new Date(), batch,
+      new TransferredResourcesScan.DirectoryListener() {
+        @Override
+        public void onDirectoryStarted(Path dir) {
+          events.add("started " + sips.relativize(dir));
+        }
+
+        @Override
+        public void onDirectory(Path dir, long ownSize, long size) {
+          events.add("done " + sips.relativize(dir));
+          sizes.put(sips.relativize(dir).toString(), new long[] {ownSize, size});
+        }
+      });
+    batch.flush();
+
+    // links to ancestors are not followed, so each directory is seen once
+    List<String> dirs = Arrays.asList("", "a", "a/b", "c", "c/linked", "c/linked/loop");
+    Assert.assertEquals(events.size(), 2 * dirs.size(), events.toString());
+    for (String dir : dirs) {
+      int started = events.indexOf("started " + dir);
+      int done = events.indexOf("done " + dir);
+      Assert.assertTrue(started >= 0 && started == events.lastIndexOf("started " + dir), events.toString());
+      Assert.assertTrue(done > started && done == events.lastIndexOf("done " + dir), events.toString());
+    }
+
+    // parents start before and finish after their sub-directories
+    assertNested(events, "", "a");
+    assertNested(events, "a", "a/b");
+    assertNested(events, "", "c");
+    assertNested(events, "c", "c/linked");
+    assertNested(events, "c/linked", "c/linked/loop");
+
+    // c/linked/loop/f1.txt is a second path to a/f1.txt
+    long total = 3 * CONTENT.length + 2 * MORE_CONTENT.length;
+    Assert.assertEquals(scanned, total);
+    Assert.assertEquals(sizes.get("")[0], CONTENT.length);
+    Assert.assertEquals(sizes.get("")[1], total);
+    Assert.assertEquals(sizes.get("a")[0], CONTENT.length);
+    Assert.assertEquals(sizes.get("a")[1], CONTENT.length + MORE_CONTENT.length);
+    Assert.assertEquals(sizes.get("c")[0], 0);
+    Assert.assertEquals(sizes.get("c")[1], CONTENT.length + MORE_CONTENT.length);
+  }
+
+  private static void assertNested(List<String> events, String parent, String child) {
+    Assert.assertTrue(events.indexOf("started " + parent) < events.indexOf("started " + child), events.toString());
+    Assert.assertTrue(events.indexOf("done " + child) < events.indexOf("done " + parent), events.toString());
+  }
+
+  private static Map<String, Long> subtree(Map<String, Long> documents, String folder) {
+    Map<String, Long> subtree = new HashMap<>();
+    documents.forEach((path, size) -> {
+      if (path.equals(folder) || path.startsWith(folder + "/")) {
+        subtree.put(path, size);
+      }
+    });
+    return subtree;
+  }
+
+  private static TransferredResource indexedResource(String relativePath)
+    throws GenericException, RequestNotValidException {
+    IndexResult<TransferredResource> result = index.find(TransferredResource.class, Filter.ALL, Sorter.NONE,
+      new Sublist(0, 1000), new ArrayList<>());
+    return result.getResults().stream().filter(r -> r.getRelativePath().equals(relativePath)).findFirst()
+      .orElseThrow(() -> new AssertionError(relativePath + " is not indexed"));
+  }
+
+  private static Map<String, Long> indexed() throws GenericException, RequestNotValidException {
+    Map<String, Long> documents = new HashMap<>();
+    for (TransferredResource resource : index
+      .find(TransferredResource.class, Filter.ALL, Sorter.NONE, new Sublist(0, 1000), new ArrayList<>())
+      .getResults()) {
+      documents.put(resource.getRelativePath(), resource.getSize());
+    }
+    return documents;
+  }
+
+  /**
+   * The documents the reindex created before it scanned in parallel: a walk
+   * following links, with the size of each directory summed from its files.
+   */
+  private static Map<String, Long> walk(Path folder) throws IOException {
+    Map<String, Long> documents = new HashMap<>();
+    ArrayDeque<Long> sizes = new ArrayDeque<>();
+    Files.walkFileTree(folder, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+      new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          sizes.push(0L);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          try {
+            long size = Files.size(file);
+            sizes.push(sizes.pop() + size);
+            documents.put(folder.relativize(file).toString(), size);
+          } catch (NoSuchFileException e) {
+            // broken link
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+          // e.g. a link to an ancestor
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+          long size = sizes.pop();
+          if (!sizes.isEmpty()) {
+            sizes.push(sizes.pop() + size);
+          }
+          if (!dir.equals(folder)) {
+            documents.put(folder.relativize(dir).toString(), size);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    return documents;
+  }
+}
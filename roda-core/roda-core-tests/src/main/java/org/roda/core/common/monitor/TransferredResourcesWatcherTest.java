@@ -0,0 +1,208 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.index.IndexService;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class TransferredResourcesWatcherTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesWatcherTest.class);
+
+  private static final byte[] CONTENT = "CONTENT".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] MORE_CONTENT = "MORE CONTENT".getBytes(StandardCharsets.UTF_8);
+
+  private static Path basePath;
+  private static IndexService index;
+  private static Path sips;
+
+  private TransferredResourcesWatcher watcher;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(TransferredResourcesWatcherTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = true;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+
+    index = RodaCoreFactory.getIndexService();
+    String transferredResourcesFolder = RodaCoreFactory.getRodaConfiguration()
+      .getString("transferredResources.folder", RodaConstants.CORE_TRANSFERREDRESOURCE_FOLDER);
+    sips = RodaCoreFactory.getDataPath().resolve(transferredResourcesFolder);
+
+    LOGGER.info("Running transferred resources watcher tests under storage {}", basePath);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @BeforeMethod
+  public void startWatcher() throws IOException, GenericException {
+    // a/f1.txt, a/b/f2.txt and g.txt
+    Files.createDirectories(sips.resolve("a").resolve("b"));
+    Files.write(sips.resolve("a").resolve("f1.txt"), CONTENT);
+    Files.write(sips.resolve("a").resolve("b").resolve("f2.txt"), CONTENT);
+    Files.write(sips.resolve("g.txt"), CONTENT);
+
+    watcher = new TransferredResourcesWatcher(sips, index, 100);
+    watcher.start();
+    watcher.sync();
+  }
+
+  @AfterMethod
+  public void cleanup() throws GenericException, RequestNotValidException, IOException {
+    watcher.stop();
+    FSUtils.deletePathQuietly(sips);
+    Files.createDirectory(sips);
+    index.delete(TransferredResource.class, Filter.ALL);
+    index.commit(TransferredResource.class);
+  }
+
+  @Test
+  public void testInitialScan() throws GenericException, RequestNotValidException, NotFoundException {
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(5));
+    Assert.assertEquals(retrieve("a").getSize(), 2 * CONTENT.length);
+    Assert.assertEquals(retrieve("a/b").getSize(), CONTENT.length);
+    Assert.assertTrue(retrieve("a/b/f2.txt").isFile());
+    Assert.assertEquals(retrieve("a/b/f2.txt").getAncestorsPaths().size(), 2);
+  }
+
+  @Test
+  public void testCreatedFilesAndFoldersAreIndexedWithAncestorSizes()
+    throws IOException, GenericException, RequestNotValidException, NotFoundException {
+    Path c = Files.createDirectory(sips.resolve("a").resolve("b").resolve("c"));
+    Files.write(c.resolve("f3.txt"), MORE_CONTENT);
+    Files.write(sips.resolve("h.txt"), CONTENT);
+    watcher.sync();
+
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(8));
+    Assert.assertTrue(retrieve("a/b/c/f3.txt").isFile());
+    Assert.assertTrue(retrieve("h.txt").isFile());
+    Assert.assertEquals(retrieve("a/b/c").getSize(), MORE_CONTENT.length);
+    Assert.assertEquals(retrieve("a/b").getSize(), CONTENT.length + MORE_CONTENT.length);
+    Assert.assertEquals(retrieve("a").getSize(), 2 * CONTENT.length + MORE_CONTENT.length);
+  }
+
+  @Test
+  public void testModifiedFilesAreIndexedWithAncestorSizes()
+    throws IOException, GenericException, RequestNotValidException, NotFoundException {
+    Files.write(sips.resolve("a").resolve("b").resolve("f2.txt"), MORE_CONTENT, StandardOpenOption.APPEND);
+    watcher.sync();
+
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(5));
+    Assert.assertEquals(retrieve("a/b/f2.txt").getSize(), CONTENT.length + MORE_CONTENT.length);
+    Assert.assertEquals(retrieve("a/b").getSize(), CONTENT.length + MORE_CONTENT.length);
+    Assert.assertEquals(retrieve("a").getSize(), 2 * CONTENT.length + MORE_CONTENT.length);
+  }
+
+  @Test
+  public void testDeletedFilesAndFoldersAreRemoved()
+    throws IOException, GenericException, RequestNotValidException, NotFoundException {
+    Path c = Files.createDirectory(sips.resolve("a").resolve("b").resolve("c"));
+    Files.write(c.resolve("f3.txt"), MORE_CONTENT);
+    watcher.sync();
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(7));
+
+    Files.delete(sips.resolve("g.txt"));
+    watcher.sync();
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(6));
+    assertNotIndexed("g.txt");
+
+    // the whole subtree is removed through its ancestors
+    FSUtils.deletePath(sips.resolve("a").resolve("b"));
+    watcher.sync();
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(2));
+    assertNotIndexed("a/b");
+    assertNotIndexed("a/b/f2.txt");
+    assertNotIndexed("a/b/c");
+    assertNotIndexed("a/b/c/f3.txt");
+    Assert.assertEquals(retrieve("a").getSize(), CONTENT.length);
+
+    // and is watched again when recreated
+    Files.createDirectory(sips.resolve("a").resolve("b"));
+    watcher.sync();
+    Files.write(sips.resolve("a").resolve("b").resolve("f4.txt"), CONTENT);
+    watcher.sync();
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(4));
+    Assert.assertEquals(retrieve("a").getSize(), 2 * CONTENT.length);
+  }
+
+  @Test
+  public void testFullScanWhenChangesAreLost()
+    throws IOException, GenericException, RequestNotValidException, NotFoundException {
+    // the index no longer matches the folder, and no event tells so
+    index.delete(TransferredResource.class,
+      Arrays.asList(IdUtils.getTransferredResourceUUID("a"), IdUtils.getTransferredResourceUUID("g.txt")));
+    index.create(TransferredResource.class,
+      TransferredResourcesScanner.instantiateTransferredResource(sips.resolve("gone.txt"), sips));
+    index.commit(TransferredResource.class);
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(4));
+
+    watcher.changesLost();
+    watcher.sync();
+
+    Assert.assertEquals(index.count(TransferredResource.class, Filter.ALL), Long.valueOf(5));
+    Assert.assertEquals(retrieve("a").getSize(), 2 * CONTENT.length);
+    Assert.assertTrue(retrieve("g.txt").isFile());
+    assertNotIndexed("gone.txt");
+
+    // and changes keep being watched afterwards
+    Files.delete(sips.resolve("a").resolve("f1.txt"));
+    watcher.sync();
+    assertNotIndexed("a/f1.txt");
+    Assert.assertEquals(retrieve("a").getSize(), CONTENT.length);
+  }
+
+  private static TransferredResource retrieve(String relativePath) throws GenericException, NotFoundException {
+    return index.retrieve(TransferredResource.class, IdUtils.getTransferredResourceUUID(relativePath),
+      new ArrayList<>());
+  }
+
+  private static void assertNotIndexed(String relativePath) throws GenericException {
+    try {
+      retrieve(relativePath);
+      Assert.fail(relativePath + " should not be indexed");
+    } catch (NotFoundException e) {
+      // expected
+    }
+  }
+}
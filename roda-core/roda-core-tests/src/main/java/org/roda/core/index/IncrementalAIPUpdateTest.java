@@ -0,0 +1,195 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.index.IndexResult;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.sort.Sorter;
+import org.roda.core.data.v2.index.sublist.Sublist;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.ip.IndexedFile;
+import org.roda.core.data.v2.ip.IndexedRepresentation;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.index.utils.SolrBatchIndexer;
+import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class IncrementalAIPUpdateTest {
+  private static final int FILES = 10;
+
+  private static Path basePath;
+  private static ModelService model;
+  private static IndexService index;
+  private static Counter unchanged;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(IncrementalAIPUpdateTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+    unchanged = RodaCoreFactory.getMetrics()
+      .counter(MetricRegistry.name(SolrBatchIndexer.class.getSimpleName(), "unchangedDocuments"));
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @AfterMethod
+  public void enableIncrementalUpdate() {
+    IndexModelObserver.injectIncrementalUpdate(true);
+  }
+
+  @Test
+  public void testUnchangedDocumentsAreNotSent() throws RODAException, IOException {
+    AIP aip = createAIP();
+
+    long unchangedBefore = unchanged.getCount();
+    aip.setType("updated type");
+    model.updateAIP(aip, RodaConstants.ADMIN);
+    index.commitAIPs();
+
+    // the files did not change
+    Assert.assertTrue(unchanged.getCount() - unchangedBefore >= FILES,
+      "Unchanged documents: " + (unchanged.getCount() - unchangedBefore));
+    Assert.assertEquals(index.retrieve(IndexedAIP.class, aip.getId(), new ArrayList<>()).getType(), "updated type");
+    Assert.assertEquals(getIndexedFileSizes(aip), getFileSizes(aip));
+  }
+
+  @Test
+  public void testChangedDocumentsAreSentAndRemovedOnesDeleted() throws RODAException, IOException {
+    testChangesAreIndexed(true);
+  }
+
+  @Test
+  public void testChangesAreIndexedWithoutIncrementalUpdate() throws RODAException, IOException {
+    IndexModelObserver.injectIncrementalUpdate(false);
+    testChangesAreIndexed(false);
+  }
+
+  private void testChangesAreIndexed(boolean incremental) throws RODAException, IOException {
+    AIP aip = createAIP();
+    Representation representation = aip.getRepresentations().get(0);
+
+    // changed without notifying the index
+    model.updateFile(aip.getId(), representation.getId(), Collections.emptyList(), "f0",
+      new StringContentPayload("changed content of file 0"), false, false);
+    model.deleteFile(aip.getId(), representation.getId(), Collections.emptyList(), "f1", false);
+    model.createFile(aip.getId(), representation.getId(), Collections.emptyList(), "new",
+      new StringContentPayload("new file"), false);
+
+    long unchangedBefore = unchanged.getCount();
+    model.updateAIP(model.retrieveAIP(aip.getId()), RodaConstants.ADMIN);
+    index.commitAIPs();
+
+    if (incremental) {
+      Assert.assertTrue(unchanged.getCount() - unchangedBefore >= FILES - 2L,
+        "Unchanged documents: " + (unchanged.getCount() - unchangedBefore));
+    }
+
+    Map<String, Long> expected = getFileSizes(aip);
+    Assert.assertEquals(expected.get("f0").longValue(), "changed content of file 0".length());
+    Assert.assertFalse(expected.containsKey("f1"));
+    Assert.assertTrue(expected.containsKey("new"));
+    Assert.assertEquals(getIndexedFileSizes(aip), expected);
+
+    IndexedRepresentation indexedRepresentation = index.retrieve(IndexedRepresentation.class,
+      IdUtils.getRepresentationId(aip.getId(), representation.getId()), new ArrayList<>());
+    Assert.assertEquals(indexedRepresentation.getNumberOfDataFiles(), (long) FILES);
+    Assert.assertEquals(indexedRepresentation.getSizeInBytes(),
+      expected.values().stream().mapToLong(Long::longValue).sum());
+
+    try {
+      index.retrieve(IndexedFile.class,
+        IdUtils.getFileId(aip.getId(), representation.getId(), Collections.emptyList(), "f1"), new ArrayList<>());
+      Assert.fail("Deleted file is still indexed");
+    } catch (NotFoundException e) {
+      // expected
+    }
+  }
+
+  private static AIP createAIP() throws RODAException {
+    AIP aip = model.createAIP(null, "type", new Permissions(), RodaConstants.ADMIN);
+    Representation representation = model.createRepresentation(aip.getId(), IdUtils.createUUID(), true, "", true,
+      RodaConstants.ADMIN);
+    for (int i = 0; i < FILES; i++) {
+      model.createFile(aip.getId(), representation.getId(), Collections.emptyList(), "f" + i,
+        new StringContentPayload("content of file " + i), true);
+    }
+    index.commitAIPs();
+    return model.retrieveAIP(aip.getId());
+  }
+
+  /**
+   * @return the size of each file of the AIP, by file id
+   */
+  private static Map<String, Long> getFileSizes(AIP aip) throws RODAException, IOException {
+    Map<String, Long> sizes = new HashMap<>();
+    for (Representation representation : aip.getRepresentations()) {
+      try (CloseableIterable<OptionalWithCause<File>> files = model.listFilesUnder(aip.getId(),
+        representation.getId(), true)) {
+        for (OptionalWithCause<File> file : files) {
+          Assert.assertTrue(file.isPresent());
+          sizes.put(file.get().getId(),
+            model.getStorage().getBinary(ModelUtils.getFileStoragePath(file.get())).getSizeInBytes());
+        }
+      }
+    }
+    return sizes;
+  }
+
+  private static Map<String, Long> getIndexedFileSizes(AIP aip) throws RODAException {
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.FILE_AIP_ID, aip.getId()));
+    IndexResult<IndexedFile> files = index.find(IndexedFile.class, filter, Sorter.NONE, new Sublist(0, 1000),
+      new ArrayList<>());
+    Map<String, Long> sizes = new HashMap<>();
+    files.getResults().forEach(file -> sizes.put(file.getId(), file.getSize()));
+    return sizes;
+  }
+}
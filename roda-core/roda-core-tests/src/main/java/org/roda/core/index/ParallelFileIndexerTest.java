@@ -0,0 +1,165 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.index.IndexResult;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.index.sort.Sorter;
+import org.roda.core.data.v2.index.sublist.Sublist;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.IndexedFile;
+import org.roda.core.data.v2.ip.IndexedRepresentation;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ParallelFileIndexerTest {
+  // directories of each representation, as paths from the representation root
+  private static final List<List<String>> DIRECTORIES = Arrays.asList(Arrays.asList(), Arrays.asList("a"),
+    Arrays.asList("a", "b"), Arrays.asList("a", "b", "c"), Arrays.asList("d"));
+  private static final int FILES_PER_DIRECTORY = 6;
+
+  private static Path basePath;
+  private static ModelService model;
+  private static IndexService index;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(ParallelFileIndexerTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @AfterMethod
+  public void disableParallelIndexing() {
+    ParallelFileIndexer.injectParallelism(0);
+  }
+
+  @Test
+  public void testSequentialIndexingOfAIP() throws RODAException {
+    assertAIPIsIndexed(createAIP(2), false);
+  }
+
+  @Test
+  public void testParallelIndexingOfAIP() throws RODAException {
+    ParallelFileIndexer.injectParallelism(4);
+    assertAIPIsIndexed(createAIP(2), false);
+  }
+
+  @Test
+  public void testParallelIndexingOfRepresentation() throws RODAException {
+    ParallelFileIndexer.injectParallelism(4);
+    assertAIPIsIndexed(createAIP(1), true);
+  }
+
+  /**
+   * Creates an AIP with representations with files in nested directories,
+   * indexing only the AIP itself.
+   */
+  private static AIP createAIP(int representations) throws RODAException {
+    AIP aip = model.createAIP(null, "", new Permissions(), RodaConstants.ADMIN);
+    for (int r = 0; r < representations; r++) {
+      Representation representation = model.createRepresentation(aip.getId(), "r" + r, true, "", false,
+        RodaConstants.ADMIN);
+      for (List<String> directory : DIRECTORIES) {
+        for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+          model.createFile(aip.getId(), representation.getId(), directory, "f" + f,
+            new StringContentPayload(content(representation, directory, f)), false);
+        }
+      }
+    }
+    return model.retrieveAIP(aip.getId());
+  }
+
+  private static String content(Representation representation, List<String> directory, int file) {
+    StringBuilder content = new StringBuilder(representation.getId()).append(directory);
+    for (int i = 0; i < file; i++) {
+      content.append(" file ").append(i);
+    }
+    return content.toString();
+  }
+
+  private static void assertAIPIsIndexed(AIP aip, boolean byRepresentation) throws RODAException {
+    if (byRepresentation) {
+      // the AIP itself was indexed when it was created
+      for (Representation representation : aip.getRepresentations()) {
+        model.notifyRepresentationCreated(representation).failOnError();
+      }
+    } else {
+      model.notifyAipCreated(aip).failOnError();
+    }
+    index.commitAIPs();
+
+    for (Representation representation : aip.getRepresentations()) {
+      String representationUUID = IdUtils.getRepresentationId(aip.getId(), representation.getId());
+      IndexedRepresentation indexed = index.retrieve(IndexedRepresentation.class, representationUUID,
+        new ArrayList<>());
+
+      long sizeInBytes = 0;
+      Set<String> expectedFiles = new HashSet<>();
+      for (List<String> directory : DIRECTORIES) {
+        if (!directory.isEmpty()) {
+          expectedFiles.add(IdUtils.getFileId(aip.getId(), representation.getId(),
+            directory.subList(0, directory.size() - 1), directory.get(directory.size() - 1)));
+        }
+        for (int f = 0; f < FILES_PER_DIRECTORY; f++) {
+          sizeInBytes += content(representation, directory, f).length();
+          expectedFiles.add(IdUtils.getFileId(aip.getId(), representation.getId(), directory, "f" + f));
+        }
+      }
+
+      Assert.assertEquals(indexed.getSizeInBytes(), sizeInBytes);
+      Assert.assertEquals(indexed.getNumberOfDataFiles(), (long) DIRECTORIES.size() * FILES_PER_DIRECTORY);
+      Assert.assertEquals(indexed.getNumberOfDataFolders(), (long) DIRECTORIES.size() - 1);
+
+      Filter filter = new Filter(
+        new SimpleFilterParameter(RodaConstants.FILE_REPRESENTATION_UUID, representationUUID));
+      IndexResult<IndexedFile> files = index.find(IndexedFile.class, filter, Sorter.NONE,
+        new Sublist(0, expectedFiles.size() + 1), new ArrayList<>());
+      Set<String> indexedFiles = new HashSet<>();
+      files.getResults().forEach(file -> indexedFiles.add(file.getUUID()));
+      Assert.assertEquals(indexedFiles, expectedFiles);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.notifications.Notification;
+import org.roda.core.index.IndexingAdditionalInfo;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class SolrBatchIndexerTest {
+  private static final String COLLECTION = "collection";
+  private static final String FAIL = "fail";
+
+  @AfterMethod
+  public void restoreDefaults() {
+    SolrBatchIndexer.injectMaxDocuments(500);
+    SolrBatchIndexer.injectMaxBytes(5L * 1024 * 1024);
+    SolrBatchIndexer.injectMaxDelayInMillis(1000);
+  }
+
+  @Test
+  public void testDocumentsAreSentInOrderedBatches() {
+    SolrBatchIndexer.injectMaxDocuments(3);
+    SolrBatchIndexer.injectMaxDelayInMillis(0);
+    FakeSolrClient index = new FakeSolrClient();
+    SolrBatchIndexer<SolrBatchIndexerTest> batch = new SolrBatchIndexer<>(index, this);
+
+    List<String> uuids = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      uuids.add("doc" + i);
+      batch.add(COLLECTION, document("doc" + i));
+    }
+
+    Assert.assertTrue(batch.flush().isEmpty());
+    Assert.assertEquals(index.getBatchSizes(), Arrays.asList(3, 3, 1));
+    Assert.assertEquals(index.getUUIDs(), uuids);
+
+    // nothing left to send
+    Assert.assertTrue(batch.flush().isEmpty());
+    Assert.assertEquals(index.getBatchSizes().size(), 3);
+  }
+
+  @Test
+  public void testBatchesAreSentWhenTheyReachTheirMaximumSize() {
+    // smaller than any document
+    SolrBatchIndexer.injectMaxBytes(1L);
+    SolrBatchIndexer.injectMaxDelayInMillis(0);
+    FakeSolrClient index = new FakeSolrClient();
+    SolrBatchIndexer<SolrBatchIndexerTest> batch = new SolrBatchIndexer<>(index, this);
+
+    batch.add(COLLECTION, document("doc0"));
+    batch.add(COLLECTION, document("doc1"));
+    Assert.assertTrue(batch.flush().isEmpty());
+    Assert.assertEquals(index.getBatchSizes(), Arrays.asList(1, 1));
+  }
+
+  @Test
+  public void testBatchesAreSentAfterTheirMaximumDelay() throws InterruptedException {
+    SolrBatchIndexer.injectMaxDelayInMillis(50);
+    FakeSolrClient index = new FakeSolrClient();
+    SolrBatchIndexer<SolrBatchIndexerTest> batch = new SolrBatchIndexer<>(index, this);
+
+    batch.add(COLLECTION, document("doc0"));
+    long deadline = System.currentTimeMillis() + 10000;
+    while (index.getUUIDs().isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(index.getUUIDs(), Arrays.asList("doc0"));
+
+    Assert.assertTrue(batch.flush().isEmpty());
+    Assert.assertEquals(index.getBatchSizes(), Arrays.asList(1));
+  }
+
+  @Test
+  public void testFailedBatchesAreResentOneByOne() {
+    SolrBatchIndexer.injectMaxDocuments(3);
+    SolrBatchIndexer.injectMaxDelayInMillis(0);
+    FakeSolrClient index = new FakeSolrClient();
+    SolrBatchIndexer<SolrBatchIndexerTest> batch = new SolrBatchIndexer<>(index, this);
+
+    batch.add(COLLECTION, document("doc0"));
+    batch.add(COLLECTION, document(FAIL));
+    batch.add(COLLECTION, document("doc2"));
+    batch.add(COLLECTION, document("doc3"));
+
+    ReturnWithExceptions<Void, SolrBatchIndexerTest> ret = batch.flush();
+    Assert.assertEquals(ret.getExceptions().size(), 1, ret.toString());
+    Assert.assertTrue(ret.getExceptions().get(0).getMessage().contains(FAIL));
+    Assert.assertEquals(index.getUUIDs(), Arrays.asList("doc0", "doc2", "doc3"));
+  }
+
+  @Test
+  public void testOnlyChangedDocumentsAreSentAndTheOthersDeleted() throws Exception {
+    FakeSolrClient index = new FakeSolrClient();
+    SolrBatchIndexer<SolrBatchIndexerTest> batch = new SolrBatchIndexer<>(index, this);
+    for (String id : Arrays.asList("unchanged", "changed", "removed")) {
+      batch.create(Notification.class, notification(id, "subject"), IndexingAdditionalInfo.empty());
+    }
+    Assert.assertTrue(batch.flush().isEmpty());
+
+    Map<String, String> contentHashes = new HashMap<>();
+    for (SolrInputDocument document : index.getDocuments()) {
+      contentHashes.put((String) document.getFieldValue(RodaConstants.INDEX_UUID),
+        (String) document.getFieldValue(RodaConstants.INDEX_CONTENT_HASH));
+    }
+    // indexed without a content hash
+    contentHashes.put("unhashed", null);
+
+    index = new FakeSolrClient();
+    batch = new SolrBatchIndexer<>(index, this);
+    batch.diffAgainst(Notification.class, contentHashes);
+    batch.create(Notification.class, notification("unchanged", "subject"), IndexingAdditionalInfo.empty());
+    batch.create(Notification.class, notification("changed", "other subject"), IndexingAdditionalInfo.empty());
+    batch.create(Notification.class, notification("unhashed", "subject"), IndexingAdditionalInfo.empty());
+    batch.create(Notification.class, notification("new", "subject"), IndexingAdditionalInfo.empty());
+    Assert.assertTrue(batch.flush().isEmpty());
+    Assert.assertTrue(batch.deleteNotRecreated().isEmpty());
+
+    Assert.assertEquals(index.getUUIDs(), Arrays.asList("changed", "unhashed", "new"));
+    Assert.assertEquals(index.getDeleted(), Arrays.asList("removed"));
+  }
+
+  private static SolrInputDocument document(String uuid) {
+    SolrInputDocument document = new SolrInputDocument();
+    document.addField(RodaConstants.INDEX_UUID, uuid);
+    document.addField(RodaConstants.INDEX_ID, uuid);
+    return document;
+  }
+
+  private static Notification notification(String id, String subject) {
+    Notification notification = new Notification();
+    notification.setId(id);
+    notification.setSubject(subject);
+    notification.setSentOn(new Date(0));
+    notification.setRecipientUsers(Collections.singletonList(RodaConstants.ADMIN));
+    return notification;
+  }
+
+  /**
+   * Stand-in for Solr, which keeps the documents of the update requests and
+   * fails the requests with documents whose unique id is {@link #FAIL}.
+   */
+  private static class FakeSolrClient extends SolrClient {
+    private static final long serialVersionUID = 1L;
+
+    private final List<List<SolrInputDocument>> batches = new ArrayList<>();
+    private final List<String> deleted = new ArrayList<>();
+
+    @Override
+    public synchronized NamedList<Object> request(@SuppressWarnings("rawtypes") SolrRequest request,
+      String collection) throws SolrServerException, IOException {
+      UpdateRequest update = (UpdateRequest) request;
+      if (update.getDeleteById() != null) {
+        deleted.addAll(update.getDeleteById());
+      }
+      if (update.getDocuments() != null) {
+        for (SolrInputDocument document : update.getDocuments()) {
+          if (FAIL.equals(document.getFieldValue(RodaConstants.INDEX_UUID))) {
+            throw new SolrException(ErrorCode.BAD_REQUEST, "Document " + FAIL + " is not valid");
+          }
+        }
+        batches.add(new ArrayList<>(update.getDocuments()));
+      }
+      return new NamedList<>();
+    }
+
+    synchronized List<Integer> getBatchSizes() {
+      return batches.stream().map(List::size).collect(Collectors.toList());
+    }
+
+    synchronized List<SolrInputDocument> getDocuments() {
+      return batches.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    List<String> getUUIDs() {
+      return getDocuments().stream().map(d -> (String) d.getFieldValue(RodaConstants.INDEX_UUID))
+        .collect(Collectors.toList());
+    }
+
+    synchronized List<String> getDeleted() {
+      return new ArrayList<>(deleted);
+    }
+
+    @Override
+    public void close() {
+      // do nothing
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.CachingStorageService;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.JsonContentPayload;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class AIPCacheTest {
+  private static final long MAXIMUM_WEIGHT = 1024L * 1024;
+
+  private static Path basePath;
+  private static StorageService storage;
+  private static ModelService model;
+
+  private MetricRegistry metrics;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(AIPCacheTest.class, true);
+
+    boolean deploySolr = false;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    storage = RodaCoreFactory.getStorageService();
+    model = RodaCoreFactory.getModelService();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @AfterMethod
+  public void removeCache() {
+    model.setAIPCache(null);
+  }
+
+  private void setCache(long maximumWeight, boolean validateModificationTime) {
+    metrics = new MetricRegistry();
+    AIPCache cache = new AIPCache(storage, maximumWeight, validateModificationTime);
+    cache.registerMetrics(metrics);
+    model.setAIPCache(cache);
+  }
+
+  @Test
+  public void testRetrievedAIPsAreCachedAndCopied() throws RODAException {
+    setCache(MAXIMUM_WEIGHT, true);
+    AIP aip = model.createAIP(null, "type", new Permissions(), RodaConstants.ADMIN);
+
+    AIP first = model.retrieveAIP(aip.getId());
+    AIP second = model.retrieveAIP(aip.getId());
+    Assert.assertEquals(getCount("misses"), 1L);
+    Assert.assertEquals(getCount("hits"), 1L);
+    Assert.assertEquals(second.getId(), aip.getId());
+    Assert.assertEquals(second.getType(), "type");
+
+    // changing a retrieved AIP does not change the cached one
+    Assert.assertNotSame(second, first);
+    second.setType("changed");
+    Assert.assertEquals(model.retrieveAIP(aip.getId()).getType(), "type");
+    Assert.assertEquals(getCount("hits"), 2L);
+  }
+
+  @Test
+  public void testChangesMadeByTheModelAreRetrieved() throws RODAException {
+    setCache(MAXIMUM_WEIGHT, true);
+    AIP parent = model.createAIP(null, "", new Permissions(), RodaConstants.ADMIN);
+    AIP aip = model.createAIP(null, "type", new Permissions(), RodaConstants.ADMIN);
+    model.retrieveAIP(aip.getId());
+
+    AIP updated = model.retrieveAIP(aip.getId());
+    updated.setType("updated");
+    model.updateAIP(updated, RodaConstants.ADMIN);
+    Assert.assertEquals(model.retrieveAIP(aip.getId()).getType(), "updated");
+
+    model.moveAIP(aip.getId(), parent.getId(), RodaConstants.ADMIN);
+    Assert.assertEquals(model.retrieveAIP(aip.getId()).getParentId(), parent.getId());
+    Assert.assertTrue(getCount("invalidations") >= 2L);
+
+    model.deleteAIP(aip.getId());
+    try {
+      model.retrieveAIP(aip.getId());
+      Assert.fail("Deleted AIP was retrieved from the cache");
+    } catch (NotFoundException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testChangesMadeOutsideTheModelAreRetrieved() throws RODAException, IOException {
+    setCache(MAXIMUM_WEIGHT, true);
+    AIP aip = model.createAIP(null, "type", new Permissions(), RodaConstants.ADMIN);
+    model.retrieveAIP(aip.getId());
+
+    aip.setType("changed outside");
+    writeOutsideTheModel(aip);
+    Assert.assertEquals(model.retrieveAIP(aip.getId()).getType(), "changed outside");
+    Assert.assertEquals(getCount("misses"), 2L);
+  }
+
+  @Test
+  public void testChangesMadeOutsideTheModelAreNotSeenWithoutValidation() throws RODAException, IOException {
+    setCache(MAXIMUM_WEIGHT, false);
+    AIP aip = model.createAIP(null, "type", new Permissions(), RodaConstants.ADMIN);
+    model.retrieveAIP(aip.getId());
+
+    aip.setType("changed outside");
+    writeOutsideTheModel(aip);
+    Assert.assertEquals(model.retrieveAIP(aip.getId()).getType(), "type");
+    Assert.assertEquals(getCount("hits"), 1L);
+  }
+
+  @Test
+  public void testAIPsHeavierThanTheCacheAreNotKept() throws RODAException {
+    // smaller than any aip.json
+    setCache(1L, true);
+    AIP aip = model.createAIP(null, "type", new Permissions(), RodaConstants.ADMIN);
+
+    model.retrieveAIP(aip.getId());
+    Assert.assertEquals(model.retrieveAIP(aip.getId()).getType(), "type");
+    Assert.assertEquals(getCount("misses"), 2L);
+    Assert.assertEquals(getCount("hits"), 0L);
+  }
+
+  private long getCount(String counter) {
+    return metrics.counter(MetricRegistry.name(AIPCache.class.getSimpleName(), counter)).getCount();
+  }
+
+  /**
+   * Writes the metadata of an AIP directly in the storage, as another node
+   * would, with a modification time that differs from the cached one.
+   */
+  private static void writeOutsideTheModel(AIP aip) throws RODAException, IOException {
+    StoragePath metadataPath = DefaultStoragePath.parse(ModelUtils.getAIPStoragePath(aip.getId()),
+      RodaConstants.STORAGE_AIP_METADATA_FILENAME);
+    storage.updateBinaryContent(metadataPath, new JsonContentPayload(aip), false, false);
+
+    Path path = ((FileStorageService) CachingStorageService.unwrap(storage)).resolve(metadataPath);
+    Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 60000L));
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.log.LogEntry;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.util.IdUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ActionLogWriterTest {
+  private Path basePath;
+  private Path logDirectory;
+  private ModelService model;
+
+  @BeforeMethod
+  public void setUp() throws IOException, RODAException {
+    basePath = TestsHelper.createBaseTempDir(getClass(), true);
+    logDirectory = Files.createDirectory(basePath.resolve("log"));
+    model = new ModelService(new FileStorageService(basePath.resolve("storage")));
+  }
+
+  @AfterMethod
+  public void tearDown() throws RODAException {
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testEntriesAreWrittenInOrderInBatches() throws RODAException, IOException {
+    MetricRegistry metrics = new MetricRegistry();
+    ActionLogWriter writer = new ActionLogWriter(model, 100, 10, ActionLogWriter.Durability.BATCH);
+    writer.registerMetrics(metrics);
+    try {
+      List<String> ids = new ArrayList<>();
+      for (int i = 0; i < 25; i++) {
+        LogEntry logEntry = createLogEntry();
+        Assert.assertTrue(writer.append(logEntry, logDirectory, false));
+        ids.add(logEntry.getId());
+      }
+      writer.flush();
+      Assert.assertEquals(writtenIds(), ids);
+
+      Histogram batchSizes = metrics
+        .histogram(MetricRegistry.name(ActionLogWriter.class.getSimpleName(), "batchSize"));
+      Assert.assertTrue(batchSizes.getSnapshot().getMax() <= 10);
+      Assert.assertEquals(LongStream.of(batchSizes.getSnapshot().getValues()).sum(), 25);
+    } finally {
+      writer.shutdown();
+    }
+  }
+
+  @Test
+  public void testShutdownWritesQueuedEntriesAndLaterOnesAreWrittenSynchronously()
+    throws RODAException, IOException {
+    ActionLogWriter writer = new ActionLogWriter(model, 1000, 10, ActionLogWriter.Durability.BATCH);
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      LogEntry logEntry = createLogEntry();
+      writer.append(logEntry, logDirectory, false);
+      ids.add(logEntry.getId());
+    }
+
+    writer.shutdown();
+    Assert.assertEquals(writtenIds(), ids);
+
+    // stopped writers refuse entries and flushes return at once
+    Assert.assertFalse(writer.append(createLogEntry(), logDirectory, false));
+    writer.flush();
+
+    // so the model writes them itself
+    model.setActionLogWriter(writer);
+    LogEntry logEntry = createLogEntry();
+    model.addLogEntry(logEntry, logDirectory, false);
+    ids.add(logEntry.getId());
+    Assert.assertEquals(writtenIds(), ids);
+  }
+
+  @Test(timeOut = 60000)
+  public void testFlushesRacingWithShutdownReturn() throws Exception {
+    ActionLogWriter writer = new ActionLogWriter(model, 10, 5, ActionLogWriter.Durability.BATCH);
+    ConcurrentLinkedQueue<String> accepted = new ConcurrentLinkedQueue<>();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> appenders = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        appenders.add(executor.submit(() -> {
+          LogEntry logEntry = createLogEntry();
+          while (writer.append(logEntry, logDirectory, false)) {
+            accepted.add(logEntry.getId());
+            writer.flush();
+            logEntry = createLogEntry();
+          }
+          writer.flush();
+          return null;
+        }));
+      }
+
+      while (accepted.size() < 100) {
+        Thread.sleep(10);
+      }
+      writer.shutdown();
+
+      // no flush is left waiting and every accepted entry is written
+      for (Future<Void> appender : appenders) {
+        appender.get();
+      }
+      List<String> written = writtenIds();
+      Assert.assertEquals(written.size(), accepted.size());
+      Assert.assertEquals(new HashSet<>(written), new HashSet<>(accepted));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static LogEntry createLogEntry() {
+    LogEntry logEntry = new LogEntry();
+    logEntry.setId(IdUtils.createUUID());
+    logEntry.setDatetime(new Date());
+    logEntry.setUsername(RodaConstants.ADMIN);
+    logEntry.setActionComponent(ActionLogWriterTest.class.getName());
+    logEntry.setActionMethod("test");
+    return logEntry;
+  }
+
+  private List<String> writtenIds() throws IOException, RODAException {
+    List<String> ids = new ArrayList<>();
+    List<Path> logFiles = new ArrayList<>();
+    try (Stream<Path> files = Files.list(logDirectory)) {
+      files.sorted().forEach(logFiles::add);
+    }
+    for (Path logFile : logFiles) {
+      for (String line : Files.readAllLines(logFile)) {
+        ids.add(JsonUtils.getObjectFromJson(line, LogEntry.class).getId());
+      }
+    }
+    return ids;
+  }
+}
@@ -55,6 +55,7 @@ import org.roda.core.data.v2.common.OptionalWithCause;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.Permissions;
 import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.ip.TransferredResource;
@@ -64,6 +65,7 @@ import org.roda.core.data.v2.log.LogEntry.LOG_ENTRY_STATE;
 import org.roda.core.data.v2.log.LogEntryParameter;
 import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.User;
+import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.DefaultStoragePath;
@@ -555,6 +557,50 @@ public class ModelServiceTest {
     model.deleteAIP(aipId);
   }
 
+  @Test
+  public void testAIPHierarchyCacheFollowsReparentedAIPs() throws RODAException {
+    model.setAIPHierarchyCache(new AIPHierarchyCache(100));
+    try {
+      // set up: a and b at the top, c under a and d under c
+      Permissions permissions = new Permissions();
+      String a = model.createAIP(null, RodaConstants.AIP_TYPE_MIXED, permissions, RodaConstants.ADMIN).getId();
+      String b = model.createAIP(null, RodaConstants.AIP_TYPE_MIXED, permissions, RodaConstants.ADMIN).getId();
+      String c = model.createAIP(a, RodaConstants.AIP_TYPE_MIXED, permissions, RodaConstants.ADMIN).getId();
+      String d = model.createAIP(c, RodaConstants.AIP_TYPE_MIXED, permissions, RodaConstants.ADMIN).getId();
+
+      // cache the parent links
+      assertEquals(Arrays.asList(c, a), SolrUtils.getAncestors(model.retrieveAIPParentId(d), model));
+
+      // descendants follow a moved AIP
+      model.moveAIP(c, b, RodaConstants.ADMIN);
+      assertEquals(b, model.retrieveAIPParentId(c));
+      assertEquals(Arrays.asList(c, b), SolrUtils.getAncestors(model.retrieveAIPParentId(d), model));
+
+      // and an AIP whose parent is changed by an update
+      AIP aipC = model.retrieveAIP(c);
+      aipC.setParentId(null);
+      model.updateAIP(aipC, RodaConstants.ADMIN);
+      assertNull(model.retrieveAIPParentId(c));
+      assertEquals(Arrays.asList(c), SolrUtils.getAncestors(model.retrieveAIPParentId(d), model));
+
+      // and a deleted AIP is not found anymore
+      model.deleteAIP(c);
+      try {
+        model.retrieveAIPParentId(c);
+        fail("Deleted AIP should not be found");
+      } catch (NotFoundException e) {
+        // expected
+      }
+
+      // cleanup
+      model.deleteAIP(d);
+      model.deleteAIP(b);
+      model.deleteAIP(a);
+    } finally {
+      model.setAIPHierarchyCache(null);
+    }
+  }
+
   @Test
   public void testListDescriptiveMetadata() throws RODAException {
     // set up
@@ -10,6 +10,7 @@ package org.roda.core.plugins.orchestrate;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +28,7 @@ import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.index.select.SelectedItemsNone;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.jobs.IndexedReport;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.data.v2.jobs.JobStats;
@@ -42,6 +44,7 @@ import org.roda.core.plugins.plugins.PluginThatFailsDuringXMethod;
 import org.roda.core.plugins.plugins.PluginThatStopsItself;
 import org.roda.core.plugins.plugins.PluginThatTestsLocking;
 import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -83,6 +86,51 @@ public class JobsTest {
     TestsHelper.executeJob(DummyPlugin.class, PluginType.MISC, SelectedItemsNone.create(), JOB_STATE.COMPLETED);
   }
 
+  @Test
+  public void testJobReportUpdatesAfterTheFinalFlushAreWrittenThrough()
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    ModelService model = RodaCoreFactory.getModelService();
+    IndexService index = RodaCoreFactory.getIndexService();
+    Job job = TestsHelper.executeJob(DummyPlugin.class, PluginType.MISC, SelectedItemsNone.create(),
+      JOB_STATE.COMPLETED);
+
+    Report report = new Report();
+    report.setJobId(job.getId());
+    report.setId(IdUtils.getJobReportId(job.getId(), "source", "outcome"));
+    report.setSourceAndOutcomeObjectId("source", "outcome");
+    report.setDateUpdated(new Date());
+    report.setPluginDetails("first");
+
+    JobReportStore.injectEnabled(true);
+    JobReportStore.injectFlushIntervalInMillis(3600000);
+    try {
+      // kept in memory until flushed
+      JobReportStore.createOrUpdateJobReport(model, report, job);
+      Assert.assertEquals(JobReportStore.retrieveJobReport(model, job.getId(), report.getId()).getPluginDetails(),
+        "first");
+      try {
+        model.retrieveJobReport(job.getId(), report.getId());
+        Assert.fail("Report should only be written when flushed");
+      } catch (NotFoundException e) {
+        // expected
+      }
+
+      JobReportStore.flush(job.getId());
+      Assert.assertEquals(model.retrieveJobReport(job.getId(), report.getId()).getPluginDetails(), "first");
+
+      // updates made after the final flush are not kept in memory
+      report.setPluginDetails("second");
+      JobReportStore.createOrUpdateJobReport(model, report, job);
+      Assert.assertEquals(model.retrieveJobReport(job.getId(), report.getId()).getPluginDetails(), "second");
+      index.commit(IndexedReport.class);
+      Assert.assertEquals(index.retrieve(IndexedReport.class, report.getId(), new ArrayList<>()).getPluginDetails(),
+        "second");
+    } finally {
+      JobReportStore.injectEnabled(false);
+      JobReportStore.injectFlushIntervalInMillis(5000);
+    }
+  }
+
   @Test
   public void testJobExecutingPluginThatFailsDuringInit()
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
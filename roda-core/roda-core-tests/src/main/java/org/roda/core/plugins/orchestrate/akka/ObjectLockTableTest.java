@@ -0,0 +1,170 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.plugins.orchestrate.akka.Messages.JobsManagerAcquireLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ObjectLockTableTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ObjectLockTableTest.class);
+
+  @Test
+  public void testWaitersAreWokenUpOnRelease() {
+    ObjectLockTable table = new ObjectLockTable();
+
+    JobsManagerAcquireLock first = request("first", 60, "a", "b");
+    JobsManagerAcquireLock second = request("second", 60, "b", "c");
+    JobsManagerAcquireLock third = request("third", 60, "c");
+
+    Assert.assertTrue(table.tryAcquire(first));
+    Assert.assertFalse(table.tryAcquire(second));
+    table.await(second);
+    // not blocked by anyone, so acquired even with other requests waiting
+    Assert.assertTrue(table.tryAcquire(third));
+
+    // releasing 'a' does not unblock 'second', which waits for 'b'
+    Assert.assertEquals(table.release(Arrays.asList("a"), "first"), Collections.emptyList());
+    // releasing 'b' makes 'second' wait for 'c'
+    Assert.assertEquals(table.release(Arrays.asList("b"), "first"), Collections.emptyList());
+    Assert.assertEquals(table.getNumberOfWaitingRequests(), 1);
+    // releasing 'c' acquires the lock for 'second'
+    Assert.assertEquals(table.release(Arrays.asList("c"), "third"), Arrays.asList(second));
+    Assert.assertEquals(table.getNumberOfWaitingRequests(), 0);
+    Assert.assertEquals(table.getNumberOfLocks(), 2);
+
+    // releasing a lock held by another request does nothing
+    Assert.assertEquals(table.release(Arrays.asList("b", "c"), "first"), Collections.emptyList());
+    Assert.assertEquals(table.getNumberOfLocks(), 2);
+    table.release(Arrays.asList("b", "c"), "second");
+    Assert.assertTrue(table.isEmpty());
+  }
+
+  @Test
+  public void testWaitersAreWokenUpInArrivalOrder() {
+    ObjectLockTable table = new ObjectLockTable();
+    Assert.assertTrue(table.tryAcquire(request("owner", 60, "a")));
+
+    List<JobsManagerAcquireLock> waiters = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      JobsManagerAcquireLock waiter = request("waiter" + i, 60, "a");
+      Assert.assertFalse(table.tryAcquire(waiter));
+      table.await(waiter);
+      waiters.add(waiter);
+    }
+
+    for (int i = 0; i < 3; i++) {
+      String owner = i == 0 ? "owner" : "waiter" + (i - 1);
+      Assert.assertEquals(table.release(Arrays.asList("a"), owner), Arrays.asList(waiters.get(i)));
+    }
+  }
+
+  @Test
+  public void testExpiredLocksAndWaiters() throws InterruptedException {
+    ObjectLockTable table = new ObjectLockTable();
+    JobsManagerAcquireLock owner = request("owner", 60, "a");
+    JobsManagerAcquireLock expiring = request("expiring", 0, "a");
+    JobsManagerAcquireLock waiting = request("waiting", 60, "a");
+
+    Assert.assertTrue(table.tryAcquire(owner));
+    table.await(expiring);
+    table.await(waiting);
+    Thread.sleep(10);
+
+    Assert.assertEquals(table.removeExpiredWaiters(), Arrays.asList(expiring));
+    Assert.assertEquals(table.releaseExpiredLocks(60000), Collections.emptyList());
+    Assert.assertEquals(table.releaseExpiredLocks(0), Arrays.asList(waiting));
+  }
+
+  @Test
+  public void testExpiredWaitersDoNotAcquireTheLock() throws InterruptedException {
+    ObjectLockTable table = new ObjectLockTable();
+    JobsManagerAcquireLock owner = request("owner", 60, "a");
+    JobsManagerAcquireLock expiring = request("expiring", 0, "a");
+
+    Assert.assertTrue(table.tryAcquire(owner));
+    table.await(expiring);
+    Thread.sleep(10);
+
+    // released before the expired waiter is removed by the tick
+    Assert.assertEquals(table.release(Arrays.asList("a"), "owner"), Collections.emptyList());
+    Assert.assertEquals(table.getNumberOfLocks(), 0);
+    Assert.assertEquals(table.removeExpiredWaiters(), Arrays.asList(expiring));
+    Assert.assertTrue(table.isEmpty());
+  }
+
+  @Test
+  public void testCancelledWaitersDoNotAcquireTheLock() {
+    ObjectLockTable table = new ObjectLockTable();
+    JobsManagerAcquireLock owner = request("owner", 60, "a");
+    JobsManagerAcquireLock cancelled = request("cancelled", 60, "a");
+    JobsManagerAcquireLock waiting = request("waiting", 60, "a");
+
+    Assert.assertTrue(table.tryAcquire(owner));
+    table.await(cancelled);
+    table.await(waiting);
+
+    Assert.assertEquals(table.cancel("cancelled"), Arrays.asList(cancelled));
+    Assert.assertEquals(table.getNumberOfWaitingRequests(), 1);
+    Assert.assertEquals(table.release(Arrays.asList("a"), "owner"), Arrays.asList(waiting));
+  }
+
+  @Test
+  public void testLockAcquireUnderContention() {
+    ObjectLockTable table = new ObjectLockTable();
+    int numberOfRequests = 10000;
+    int numberOfObjects = 100;
+    int blockSize = 10;
+
+    // every request waits for the previous one on each object
+    List<JobsManagerAcquireLock> requests = new ArrayList<>();
+    for (int i = 0; i < numberOfRequests; i++) {
+      List<String> lites = new ArrayList<>();
+      for (int j = 0; j < blockSize; j++) {
+        lites.add("lite" + ((i + j) % numberOfObjects));
+      }
+      requests.add(new JobsManagerAcquireLock(lites, true, 600, "request" + i));
+    }
+
+    long start = System.nanoTime();
+    List<JobsManagerAcquireLock> holding = new ArrayList<>();
+    for (JobsManagerAcquireLock request : requests) {
+      if (table.tryAcquire(request)) {
+        holding.add(request);
+      } else {
+        table.await(request);
+      }
+    }
+
+    int acquired = holding.size();
+    while (!holding.isEmpty()) {
+      JobsManagerAcquireLock request = holding.remove(0);
+      List<JobsManagerAcquireLock> woken = table.release(request.getLites(), request.getRequestUuid());
+      acquired += woken.size();
+      holding.addAll(woken);
+    }
+    long elapsed = System.nanoTime() - start;
+
+    Assert.assertEquals(acquired, numberOfRequests);
+    Assert.assertTrue(table.isEmpty());
+    LOGGER.info("Acquired and released {} contended locks in {} ms", numberOfRequests, elapsed / 1000000);
+  }
+
+  private static JobsManagerAcquireLock request(String requestUuid, int secondsToExpire, String... lites) {
+    return new JobsManagerAcquireLock(Arrays.asList(lites), true, secondsToExpire, requestUuid);
+  }
+}
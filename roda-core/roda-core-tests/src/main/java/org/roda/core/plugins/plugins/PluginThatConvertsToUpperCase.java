@@ -0,0 +1,130 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.roda.core.data.exceptions.InvalidParameterException;
+import org.roda.core.data.v2.IsRODAObject;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.plugins.common.AbstractConvertPlugin;
+import org.roda.core.storage.StorageService;
+import org.roda.core.util.CommandException;
+
+/**
+ * Convert plugin that converts text files to upper case. Conversions take
+ * longer for some files than for others, so that they finish out of order, and
+ * fail, after writing the output, for files containing {@link #FAIL}.
+ */
+public class PluginThatConvertsToUpperCase<T extends IsRODAObject> extends AbstractConvertPlugin<T> {
+  public static final String FAIL = "FAIL";
+  public static final String PLUGIN_PARAM_WORKING_DIRECTORY = "param.working_directory";
+
+  private String workingDirectory = null;
+
+  @Override
+  public String getName() {
+    return getClass().getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return getClass().getName();
+  }
+
+  @Override
+  public String getVersionImpl() {
+    return "1.0";
+  }
+
+  @Override
+  public Plugin<T> cloneMe() {
+    return new PluginThatConvertsToUpperCase<>();
+  }
+
+  @Override
+  public List<String> getApplicableTo() {
+    return Arrays.asList("txt");
+  }
+
+  @Override
+  public List<String> getConvertableTo() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public Map<String, List<String>> getPronomToExtension() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public Map<String, List<String>> getMimetypeToExtension() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public void setParameterValues(Map<String, String> parameters) throws InvalidParameterException {
+    super.setParameterValues(parameters);
+    if (parameters.containsKey(PLUGIN_PARAM_WORKING_DIRECTORY)) {
+      workingDirectory = parameters.get(PLUGIN_PARAM_WORKING_DIRECTORY);
+    }
+  }
+
+  /**
+   * @return the working directory set in the parameters, which, unlike the
+   *         one of the job, is not deleted when the job ends
+   */
+  @Override
+  public Path getWorkingDirectory() {
+    return workingDirectory != null ? Paths.get(workingDirectory) : super.getWorkingDirectory();
+  }
+
+  @Override
+  public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage) {
+    return null;
+  }
+
+  @Override
+  public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) {
+    return null;
+  }
+
+  @Override
+  public String executePlugin(Path inputPath, Path outputPath, String fileFormat)
+    throws IOException, CommandException {
+    return convert(inputPath, outputPath, fileFormat);
+  }
+
+  @Override
+  protected String convert(Path inputPath, Path outputPath, String fileFormat) throws IOException, CommandException {
+    String content = new String(Files.readAllBytes(inputPath), StandardCharsets.UTF_8);
+    try {
+      Thread.sleep(Math.abs(content.hashCode() % 50));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CommandException("Interrupted while converting " + inputPath, e);
+    }
+
+    Files.write(outputPath, content.toUpperCase().getBytes(StandardCharsets.UTF_8));
+    if (content.contains(FAIL)) {
+      throw new CommandException("Could not convert " + inputPath, 1, content);
+    }
+    return "Converted " + content;
+  }
+}
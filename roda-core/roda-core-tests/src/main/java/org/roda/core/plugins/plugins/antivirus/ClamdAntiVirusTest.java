@@ -0,0 +1,266 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.antivirus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ClamdAntiVirusTest {
+  private static final String VIRUS = "X5O!P%@AP[4\\PZX54(P^)7CC)7}$EICAR-STANDARD-ANTIVIRUS-TEST-FILE!$H+H*";
+  private static final String VIRUS_NAME = "Eicar-Signature";
+  private static final String VERSION = "ClamAV 0.0.0/0/Fake";
+
+  private Path basePath;
+  private FakeClamd clamd;
+  private ClamdAntiVirus antiVirus;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = Files.createTempDirectory("clamdAntiVirus");
+    clamd = new FakeClamd();
+    // small chunks, so that files are sent in many of them
+    antiVirus = new ClamdAntiVirus(InetAddress.getLoopbackAddress().getHostAddress(), clamd.getPort(), 2, 10000, 8);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    antiVirus.close();
+    clamd.close();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testCleanFilesAreScannedInReusedSessions() throws IOException {
+    for (int i = 0; i < 10; i++) {
+      write(basePath.resolve("dir" + (i % 3)).resolve("file" + i), "clean content of file " + i);
+    }
+
+    VirusCheckResult result = antiVirus.checkForVirus(basePath);
+    Assert.assertTrue(result.isClean(), result.getReport());
+    Assert.assertTrue(result.getReport().contains("Scanned files: 10"));
+    Assert.assertTrue(result.getReport().contains(VERSION));
+    Assert.assertEquals(clamd.getScans(), 10);
+    // at most one connection per thread and one to get the version
+    Assert.assertTrue(clamd.getConnections() <= 3);
+
+    int connections = clamd.getConnections();
+    Assert.assertTrue(antiVirus.checkForVirus(basePath).isClean());
+    Assert.assertEquals(clamd.getScans(), 20);
+    Assert.assertEquals(clamd.getConnections(), connections);
+  }
+
+  @Test
+  public void testInfectedFilesAreReported() throws IOException {
+    write(basePath.resolve("clean"), "clean content");
+    Path infected = basePath.resolve("dir").resolve("infected");
+    write(infected, "some content followed by " + VIRUS);
+
+    VirusCheckResult result = antiVirus.checkForVirus(basePath);
+    Assert.assertFalse(result.isClean());
+    Assert.assertTrue(result.getReport().contains(infected + ": " + VIRUS_NAME + " FOUND"), result.getReport());
+    Assert.assertTrue(result.getReport().contains("Infected files: 1"));
+  }
+
+  @Test
+  public void testSessionsClosedByClamdAreReopened() throws IOException {
+    write(basePath.resolve("file"), "clean content");
+    Assert.assertTrue(antiVirus.checkForVirus(basePath).isClean());
+
+    clamd.closeSessions();
+    Assert.assertTrue(antiVirus.checkForVirus(basePath).isClean());
+    Assert.assertEquals(clamd.getScans(), 2);
+  }
+
+  @Test
+  public void testFilesOverTheStreamLimitAreReportedAsErrors() throws IOException {
+    clamd.setStreamMaxLength(1024);
+    write(basePath.resolve("small"), "clean content");
+    Path medium = basePath.resolve("medium");
+    Files.write(medium, new byte[4096]);
+    // larger than the socket buffers, so sending it fails once clamd closes
+    // the session
+    Path large = basePath.resolve("large");
+    Files.write(large, new byte[16 * 1024 * 1024]);
+
+    VirusCheckResult result = antiVirus.checkForVirus(basePath);
+    Assert.assertFalse(result.isClean());
+    Assert.assertTrue(result.getReport().contains(medium + ": INSTREAM size limit exceeded. ERROR"),
+      result.getReport());
+    Assert.assertTrue(result.getReport().contains(large + ": INSTREAM size limit exceeded. ERROR"),
+      result.getReport());
+    Assert.assertTrue(result.getReport().contains("Total errors: 2"), result.getReport());
+    Assert.assertFalse(result.getReport().contains(basePath.resolve("small").toString()), result.getReport());
+  }
+
+  @Test(expectedExceptions = RuntimeException.class)
+  public void testUnreachableClamdFails() throws IOException {
+    write(basePath.resolve("file"), "clean content");
+    clamd.close();
+    antiVirus.checkForVirus(basePath);
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Stand-in for clamd, which answers the <code>VERSION</code> command and
+   * <code>INSTREAM</code> commands in <code>IDSESSION</code> sessions, finding
+   * a virus in streams containing the EICAR test string. Like clamd, it
+   * closes the session when a stream exceeds its maximum length.
+   */
+  private static class FakeClamd {
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger scans = new AtomicInteger();
+    private volatile int generation = 0;
+    private volatile int streamMaxLength = Integer.MAX_VALUE;
+
+    FakeClamd() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      executor.submit(this::accept);
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    int getConnections() {
+      return connections.get();
+    }
+
+    int getScans() {
+      return scans.get();
+    }
+
+    void setStreamMaxLength(int streamMaxLength) {
+      this.streamMaxLength = streamMaxLength;
+    }
+
+    /** Closes open sessions when they send the next command */
+    void closeSessions() {
+      generation++;
+    }
+
+    void close() {
+      IOUtils.closeQuietly(serverSocket);
+      executor.shutdownNow();
+    }
+
+    private void accept() {
+      try {
+        while (true) {
+          Socket socket = serverSocket.accept();
+          connections.incrementAndGet();
+          executor.submit(() -> serve(socket));
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private void serve(Socket socket) {
+      int sessionGeneration = generation;
+      try (Socket s = socket) {
+        DataInputStream in = new DataInputStream(s.getInputStream());
+        OutputStream out = s.getOutputStream();
+        boolean session = false;
+        int id = 0;
+        String command;
+        while ((command = readCommand(in)) != null) {
+          if (sessionGeneration != generation) {
+            return;
+          }
+
+          String reply;
+          boolean last = !session;
+          if ("zVERSION".equals(command)) {
+            reply = VERSION;
+          } else if ("zIDSESSION".equals(command)) {
+            session = true;
+            continue;
+          } else if ("zEND".equals(command)) {
+            return;
+          } else if ("zINSTREAM".equals(command)) {
+            String result = scan(in);
+            if (result != null) {
+              reply = "stream: " + result;
+            } else {
+              // without reading the rest of the stream
+              reply = "INSTREAM size limit exceeded. ERROR";
+              last = true;
+            }
+          } else {
+            reply = "UNKNOWN COMMAND";
+          }
+
+          if (session) {
+            reply = ++id + ": " + reply;
+          }
+          out.write((reply + "\0").getBytes(StandardCharsets.UTF_8));
+          out.flush();
+          if (last) {
+            return;
+          }
+        }
+      } catch (IOException e) {
+        // connection closed
+      }
+    }
+
+    /**
+     * @return the result of the scan, or null if the stream is too long
+     */
+    private String scan(DataInputStream in) throws IOException {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      int length;
+      while ((length = in.readInt()) > 0) {
+        if (content.size() + length > streamMaxLength) {
+          return null;
+        }
+        byte[] chunk = new byte[length];
+        in.readFully(chunk);
+        content.write(chunk);
+      }
+      scans.incrementAndGet();
+      return new String(content.toByteArray(), StandardCharsets.UTF_8).contains(VIRUS) ? VIRUS_NAME + " FOUND"
+        : "OK";
+    }
+
+    private static String readCommand(DataInputStream in) throws IOException {
+      ByteArrayOutputStream command = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) > 0) {
+        command.write(b);
+      }
+      return b < 0 ? null : new String(command.toByteArray(), StandardCharsets.US_ASCII);
+    }
+  }
+}
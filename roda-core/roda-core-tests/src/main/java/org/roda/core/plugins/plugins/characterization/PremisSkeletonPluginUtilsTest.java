@@ -0,0 +1,147 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.characterization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.xmlbeans.XmlException;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.PremisV3Utils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.IndexedFile;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.util.FileUtility;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class PremisSkeletonPluginUtilsTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PremisSkeletonPluginUtilsTest.class);
+
+  private static final int FILES = 10;
+
+  private static Path basePath;
+  private static ModelService model;
+  private static IndexService index;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(PremisSkeletonPluginUtilsTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = false;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+
+    LOGGER.info("Running PREMIS skeleton tests under storage {}", basePath);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Test
+  public void testFilesWithAndWithoutStoredDigestsGetTheirFixities()
+    throws RODAException, IOException, XmlException, NoSuchAlgorithmException {
+    List<String> algorithms = RodaCoreFactory.getFixityAlgorithms();
+    FileStorageService storage = (FileStorageService) RodaCoreFactory.getStorageService();
+
+    AIP aip = model.createAIP(null, "", new Permissions(), RodaConstants.ADMIN);
+    Representation representation = model.createRepresentation(aip.getId(), IdUtils.createUUID(), true, "", true,
+      RodaConstants.ADMIN);
+
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < FILES; i++) {
+      List<String> directoryPath = i % 3 == 0 ? Arrays.asList("folder") : Collections.emptyList();
+      files.add(model.createFile(aip.getId(), representation.getId(), directoryPath, "file" + i,
+        new StringContentPayload("content of file " + i), true));
+    }
+
+    // the digests computed when writing them are not used for the files
+    // changed by other means since
+    Map<String, Map<String, String>> expected = new HashMap<>();
+    for (int i = 0; i < FILES; i++) {
+      File file = files.get(i);
+      Path path = storage.resolve(ModelUtils.getFileStoragePath(file));
+      if (i % 2 == 0) {
+        Files.write(path, " changed".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Assert.assertNull(getBinary(file).getContentDigest(), file.getId());
+      } else {
+        Assert.assertNotNull(getBinary(file).getContentDigest(), file.getId());
+      }
+
+      try (InputStream inputStream = Files.newInputStream(path)) {
+        expected.put(file.getId(), FileUtility.checksums(inputStream, algorithms));
+      }
+    }
+
+    PremisSkeletonPluginUtils.createPremisSkeletonOnRepresentation(model, aip.getId(), representation.getId(),
+      algorithms);
+    index.commitAIPs();
+
+    gov.loc.premis.v3.Representation premisRepresentation = PremisV3Utils.binaryToRepresentation(
+      model.retrievePreservationRepresentation(aip.getId(), representation.getId()).getContent(), false);
+    Assert.assertEquals(premisRepresentation.getRelationshipArray().length, FILES);
+
+    for (File file : files) {
+      Binary premisFile = model.retrievePreservationFile(file.getAipId(), file.getRepresentationId(), file.getPath(),
+        file.getId());
+      IndexedFile indexedFile = index.retrieve(IndexedFile.class, IdUtils.getFileId(file), new ArrayList<>());
+      Assert.assertEquals(indexedFile.getSize(), getBinary(file).getSizeInBytes().longValue(), file.getId());
+
+      for (String algorithm : algorithms) {
+        String digest = expected.get(file.getId()).get(algorithm);
+        Assert.assertEquals(PremisV3Utils.extractFixity(premisFile, algorithm), digest, file.getId());
+        Assert.assertTrue(
+          indexedFile.getHash().contains(digest + " (" + algorithm + ", " + PremisV3Utils.FIXITY_ORIGINATOR + ")"),
+          file.getId() + ": " + indexedFile.getHash());
+      }
+    }
+  }
+
+  private static Binary getBinary(File file) throws RODAException {
+    return model.getStorage().getBinary(ModelUtils.getFileStoragePath(file));
+  }
+}
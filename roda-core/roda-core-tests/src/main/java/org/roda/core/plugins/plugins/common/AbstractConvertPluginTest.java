@@ -0,0 +1,242 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.IndexedFile;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.data.v2.jobs.Report.PluginState;
+import org.roda.core.index.IndexService;
+import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.plugins.plugins.PluginThatConvertsToUpperCase;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class AbstractConvertPluginTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AbstractConvertPluginTest.class);
+
+  private static final int TEXT_FILES = 12;
+  private static final String OUTPUT_FORMAT = "upper";
+  private static final String OTHER_FILE = "other.bin";
+
+  private static Path basePath;
+  private static ModelService model;
+  private static IndexService index;
+
+  private Path workingDirectory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(AbstractConvertPluginTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = true;
+    boolean deployFolderMonitor = true;
+    boolean deployOrchestrator = true;
+    boolean deployPluginManager = true;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources);
+    model = RodaCoreFactory.getModelService();
+    index = RodaCoreFactory.getIndexService();
+
+    LOGGER.info("Running convert plugin tests under storage {}", basePath);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @BeforeMethod
+  public void createWorkingDirectory() throws IOException {
+    workingDirectory = Files.createTempDirectory(basePath, "convert");
+  }
+
+  @AfterMethod
+  public void deleteWorkingDirectory() {
+    FSUtils.deletePathQuietly(workingDirectory);
+  }
+
+  @Test
+  public void testFilesGetTheResultsOfTheirConversions() throws RODAException, IOException {
+    Map<String, String> contents = new HashMap<>();
+    Representation representation = createRepresentation(contents);
+
+    // in the order they were created, as a job would list them
+    List<String> fileUUIDs = new ArrayList<>();
+    for (int i = 0; i < TEXT_FILES; i++) {
+      fileUUIDs.add(IdUtils.getFileId(representation.getAipId(), representation.getId(), Collections.emptyList(),
+        textFileId(i)));
+    }
+    fileUUIDs.add(
+      IdUtils.getFileId(representation.getAipId(), representation.getId(), Collections.emptyList(), OTHER_FILE));
+
+    Job job = TestsHelper.executeJob(PluginThatConvertsToUpperCase.class, getParameters(false), PluginType.AIP_TO_AIP,
+      SelectedItemsList.create(File.class, fileUUIDs));
+    List<Report> reports = TestsHelper.getJobReports(index, job, false);
+    index.commitAIPs();
+
+    Assert.assertEquals(reports.size(), TEXT_FILES + 1);
+    for (Report report : reports) {
+      IndexedFile source = index.retrieve(IndexedFile.class, report.getSourceObjectId(), new ArrayList<>());
+      String content = contents.get(source.getId());
+
+      if (OTHER_FILE.equals(source.getId())) {
+        // not applicable, and not ignored
+        Assert.assertEquals(report.getPluginState(), PluginState.FAILURE);
+      } else if (content.contains(PluginThatConvertsToUpperCase.FAIL)) {
+        Assert.assertEquals(report.getPluginState(), PluginState.PARTIAL_SUCCESS, source.getId());
+      } else {
+        Assert.assertEquals(report.getPluginState(), PluginState.SUCCESS, source.getId());
+        IndexedFile outcome = index.retrieve(IndexedFile.class, report.getOutcomeObjectId(), new ArrayList<>());
+        Assert.assertEquals(outcome.getId(), source.getId().replaceFirst("txt$", OUTPUT_FORMAT));
+        Assert.assertEquals(read(outcome.getAipId(), outcome.getRepresentationId(), outcome.getPath(),
+          outcome.getId()), content.toUpperCase());
+      }
+    }
+
+    assertWorkingDirectoryIsEmpty();
+  }
+
+  @Test
+  public void testRepresentationGetsTheResultsOfTheConversions() throws RODAException, IOException {
+    Map<String, String> contents = new HashMap<>();
+    Representation representation = createRepresentation(contents);
+
+    Job job = TestsHelper.executeJob(PluginThatConvertsToUpperCase.class, getParameters(true), PluginType.AIP_TO_AIP,
+      SelectedItemsList.create(Representation.class,
+        IdUtils.getRepresentationId(representation.getAipId(), representation.getId())));
+    List<Report> reports = TestsHelper.getJobReports(index, job, false);
+    Assert.assertEquals(reports.size(), 1);
+    Assert.assertEquals(reports.get(0).getPluginState(), PluginState.PARTIAL_SUCCESS);
+
+    AIP aip = model.retrieveAIP(representation.getAipId());
+    Assert.assertEquals(aip.getRepresentations().size(), 2);
+    Representation converted = aip.getRepresentations().stream()
+      .filter(r -> !r.getId().equals(representation.getId())).findFirst().get();
+
+    // converted files, the ignored file and not the files that failed
+    Map<String, String> expected = new HashMap<>();
+    contents.forEach((fileId, content) -> {
+      if (OTHER_FILE.equals(fileId)) {
+        expected.put(fileId, content);
+      } else if (!content.contains(PluginThatConvertsToUpperCase.FAIL)) {
+        expected.put(fileId.replaceFirst("txt$", OUTPUT_FORMAT), content.toUpperCase());
+      }
+    });
+
+    Map<String, String> files = new HashMap<>();
+    try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(converted.getAipId(),
+      converted.getId(), true)) {
+      for (OptionalWithCause<File> file : allFiles) {
+        Assert.assertTrue(file.isPresent());
+        files.put(file.get().getId(), read(file.get().getAipId(), file.get().getRepresentationId(),
+          file.get().getPath(), file.get().getId()));
+      }
+    }
+    Assert.assertEquals(files, expected);
+
+    assertWorkingDirectoryIsEmpty();
+  }
+
+  private Map<String, String> getParameters(boolean ignoreOtherFiles) {
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put(RodaConstants.PLUGIN_PARAMS_OUTPUT_FORMAT, OUTPUT_FORMAT);
+    parameters.put(RodaConstants.PLUGIN_PARAMS_IGNORE_OTHER_FILES, Boolean.toString(ignoreOtherFiles));
+    parameters.put(RodaConstants.PLUGIN_PARAMS_REPRESENTATION_OR_DIP, Boolean.FALSE.toString());
+    parameters.put(PluginThatConvertsToUpperCase.PLUGIN_PARAM_WORKING_DIRECTORY, workingDirectory.toString());
+    return parameters;
+  }
+
+  /**
+   * Creates a representation with text files, some of which fail to convert,
+   * and a file the plugin does not convert.
+   */
+  private static Representation createRepresentation(Map<String, String> contents) throws RODAException {
+    AIP aip = model.createAIP(null, "", new Permissions(), RodaConstants.ADMIN);
+    Representation representation = model.createRepresentation(aip.getId(), IdUtils.createUUID(), true, "", true,
+      RodaConstants.ADMIN);
+
+    for (int i = 0; i < TEXT_FILES; i++) {
+      String content = "content of file " + i + (i % 5 == 3 ? " " + PluginThatConvertsToUpperCase.FAIL : "");
+      contents.put(textFileId(i), content);
+    }
+    contents.put(OTHER_FILE, "other content");
+
+    for (int i = 0; i < TEXT_FILES; i++) {
+      model.createFile(aip.getId(), representation.getId(), Collections.emptyList(), textFileId(i),
+        new StringContentPayload(contents.get(textFileId(i))), true);
+    }
+    model.createFile(aip.getId(), representation.getId(), Collections.emptyList(), OTHER_FILE,
+      new StringContentPayload(contents.get(OTHER_FILE)), true);
+
+    index.commitAIPs();
+    return representation;
+  }
+
+  private static String textFileId(int i) {
+    return String.format("f%02d.txt", i);
+  }
+
+  private static String read(String aipId, String representationId, List<String> directoryPath, String fileId)
+    throws RODAException, IOException {
+    try (InputStream inputStream = model.getStorage()
+      .getBinary(ModelUtils.getFileStoragePath(aipId, representationId, directoryPath, fileId)).getContent()
+      .createInputStream()) {
+      return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Outputs are moved into the storage or deleted, also when the conversion
+   * fails after writing them.
+   */
+  private void assertWorkingDirectoryIsEmpty() throws IOException {
+    try (Stream<Path> files = Files.list(workingDirectory)) {
+      Assert.assertEquals(files.count(), 0L);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.CommandException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ConverterProcessPoolTest {
+  /**
+   * Stand-in for a tool in batch mode, which reads quoted arguments, copies the
+   * input file to the output file, fails if the input file does not exist,
+   * terminates if its name contains "crash" and hangs if it contains "hang"
+   */
+  private static final String SERVER = "while IFS= read -r line; do eval \"set -- $line\"; in=\"$2\"; out=\"$3\"; "
+    + "case \"$in\" in *crash*) exit 1;; *hang*) sleep 60;; esac; "
+    + "if [ -f \"$in\" ]; then echo \"converted by $$\"; cp \"$in\" \"$out\"; echo PASS; "
+    + "else echo \"$in not found\"; echo FAIL; fi; done";
+
+  private Path basePath;
+  private ConverterProcessPool pool;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = Files.createTempDirectory("converterProcessPool");
+    pool = new ConverterProcessPool("test", Arrays.asList("sh", "-c", SERVER), "convert {input_file} {output_file}",
+      "PASS", "FAIL", 1, 2);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    pool.shutdown();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testFilesAreConvertedByTheSameProcess() throws IOException, CommandException {
+    String firstOutput = null;
+    for (int i = 0; i < 5; i++) {
+      Path input = write("input" + i, "content " + i);
+      Path output = basePath.resolve("output" + i);
+
+      String commandOutput = pool.convert(input, output, "txt", "txt", "");
+      Assert.assertTrue(commandOutput.startsWith("converted by "), commandOutput);
+      Assert.assertEquals(new String(Files.readAllBytes(output), StandardCharsets.UTF_8), "content " + i);
+
+      if (firstOutput == null) {
+        firstOutput = commandOutput;
+      } else {
+        Assert.assertEquals(commandOutput, firstOutput);
+      }
+    }
+  }
+
+  @Test
+  public void testFailedConversionsKeepTheProcess() throws IOException, CommandException {
+    Path input = write("input", "content");
+    String commandOutput = pool.convert(input, basePath.resolve("output"), "txt", "txt", "");
+
+    try {
+      pool.convert(basePath.resolve("missing"), basePath.resolve("output2"), "txt", "txt", "");
+      Assert.fail("Conversion of a missing file should fail");
+    } catch (CommandException e) {
+      Assert.assertTrue(e.getOutput().contains("not found"), e.getOutput());
+    }
+
+    Assert.assertEquals(pool.convert(input, basePath.resolve("output3"), "txt", "txt", ""), commandOutput);
+  }
+
+  @Test
+  public void testTerminatedProcessesAreRestarted() throws IOException, CommandException {
+    Path input = write("input", "content");
+    String commandOutput = pool.convert(input, basePath.resolve("output"), "txt", "txt", "");
+
+    try {
+      pool.convert(write("crash", "content"), basePath.resolve("output2"), "txt", "txt", "");
+      Assert.fail("Conversion with a terminated process should fail");
+    } catch (CommandException e) {
+      // expected
+    }
+
+    Path output = basePath.resolve("output3");
+    String newCommandOutput = pool.convert(input, output, "txt", "txt", "");
+    Assert.assertNotEquals(newCommandOutput, commandOutput);
+    Assert.assertTrue(Files.exists(output));
+  }
+
+  @Test
+  public void testValuesAreQuoted() throws IOException, CommandException {
+    Path input = write("input with \"quotes\" and \\ spaces", "content");
+    Path output = basePath.resolve("output with spaces");
+    pool.convert(input, output, "txt", "txt", "");
+    Assert.assertEquals(new String(Files.readAllBytes(output), StandardCharsets.UTF_8), "content");
+  }
+
+  @Test(expectedExceptions = CommandException.class)
+  public void testLineBreaksAreRejected() throws IOException, CommandException {
+    pool.convert(write("input", "content"), basePath.resolve("output\nconvert a b"), "txt", "txt", "");
+  }
+
+  @Test
+  public void testHangingProcessesAreStopped() throws IOException, CommandException {
+    Path input = write("input", "content");
+    String commandOutput = pool.convert(input, basePath.resolve("output"), "txt", "txt", "");
+
+    try {
+      pool.convert(write("hang", "content"), basePath.resolve("output2"), "txt", "txt", "");
+      Assert.fail("Conversion with a hanging process should fail");
+    } catch (CommandException e) {
+      // expected
+    }
+
+    Assert.assertNotEquals(pool.convert(input, basePath.resolve("output3"), "txt", "txt", ""), commandOutput);
+  }
+
+  private Path write(String name, String content) throws IOException {
+    return Files.write(basePath.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class CachingStorageServiceTest {
+  private static final long MAX_BINARY_SIZE = 16;
+
+  private Path basePath;
+  private CachingStorageService storage;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(CachingStorageServiceTest.class, true);
+    storage = new CachingStorageService(new FileStorageService(basePath), 1024 * 1024, MAX_BINARY_SIZE,
+      Collections.emptyList(), true);
+  }
+
+  @AfterMethod
+  public void tearDown() throws RODAException {
+    deleteStorage(basePath);
+  }
+
+  private static void deleteStorage(Path path) throws RODAException {
+    FSUtils.deletePath(path);
+    FSUtils.deletePath(path.getParent().resolve(path.getFileName() + FileStorageService.HISTORY_SUFFIX));
+    FSUtils.deletePathQuietly(path.getParent().resolve(path.getFileName() + FileStorageService.DIGESTS_SUFFIX));
+    FSUtils.deletePathQuietly(path.getParent().resolve(path.getFileName() + FileStorageService.CAS_SUFFIX));
+  }
+
+  @Test
+  public void testCachedBinaryIsReturnedUntilUpdated() throws RODAException, IOException {
+    StoragePath binaryPath = createBinary("container", "dir", "binary", "content 1");
+    Assert.assertEquals(read(binaryPath), "content 1");
+
+    // changed on disk without changing size nor modification time, so the
+    // cached content is returned
+    overwriteOnDisk(binaryPath, "content 2", false);
+    Assert.assertEquals(read(binaryPath), "content 1");
+
+    storage.updateBinaryContent(binaryPath, new StringContentPayload("content 3"), false, false);
+    Assert.assertEquals(read(binaryPath), "content 3");
+  }
+
+  @Test
+  public void testChangesOnDiskAreDetected() throws RODAException, IOException {
+    StoragePath binaryPath = createBinary("container", "binary", "content 1");
+    Assert.assertEquals(read(binaryPath), "content 1");
+
+    overwriteOnDisk(binaryPath, "content 2", true);
+    Assert.assertEquals(read(binaryPath), "content 2");
+  }
+
+  @Test
+  public void testDeletingDirectoryInvalidatesBinariesUnderIt() throws RODAException, IOException {
+    StoragePath binaryPath = createBinary("container", "dir", "sub", "binary", "content 1");
+    Assert.assertEquals(read(binaryPath), "content 1");
+
+    storage.deleteResource(DefaultStoragePath.parse("container", "dir"));
+    Assert.assertFalse(storage.hasBinary(binaryPath));
+
+    createBinary("container", "dir", "sub", "binary", "content 2");
+    Assert.assertEquals(read(binaryPath), "content 2");
+  }
+
+  @Test
+  public void testLargeBinariesAreNotCached() throws RODAException, IOException {
+    String content = "a content larger than the limit";
+    Assert.assertTrue(content.length() > MAX_BINARY_SIZE);
+    StoragePath binaryPath = createBinary("container", "binary", content);
+    Assert.assertEquals(read(binaryPath), content);
+
+    String newContent = content.toUpperCase();
+    overwriteOnDisk(binaryPath, newContent, false);
+    Assert.assertEquals(read(binaryPath), newContent);
+  }
+
+  @Test
+  public void testMovingToAnotherFileStorageInvalidatesBinaries() throws RODAException, IOException {
+    StoragePath binaryPath = createBinary("container", "binary", "content 1");
+    Assert.assertEquals(read(binaryPath), "content 1");
+
+    Path otherBasePath = Files.createTempDirectory("otherStorage");
+    try {
+      FileStorageService otherStorage = new FileStorageService(otherBasePath);
+      otherStorage.createContainer(DefaultStoragePath.parse("container"));
+      otherStorage.move(storage, binaryPath, binaryPath);
+      Assert.assertTrue(otherStorage.hasBinary(binaryPath));
+      Assert.assertFalse(storage.hasBinary(binaryPath));
+
+      // created again with the same size and modification time
+      Path path = FSUtils.getEntityPath(basePath, binaryPath);
+      Files.write(path, "content 2".getBytes(StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(path, Files.getLastModifiedTime(FSUtils.getEntityPath(otherBasePath, binaryPath)));
+      Assert.assertEquals(read(binaryPath), "content 2");
+    } finally {
+      deleteStorage(otherBasePath);
+    }
+  }
+
+  private StoragePath createBinary(String... pathAndContent) throws RODAException {
+    String[] path = new String[pathAndContent.length - 1];
+    System.arraycopy(pathAndContent, 0, path, 0, path.length);
+    StoragePath binaryPath = DefaultStoragePath.parse(path);
+    if (!storage.exists(DefaultStoragePath.parse(path[0]))) {
+      storage.createContainer(DefaultStoragePath.parse(path[0]));
+    }
+    storage.createBinary(binaryPath, new StringContentPayload(pathAndContent[pathAndContent.length - 1]), false);
+    return binaryPath;
+  }
+
+  private String read(StoragePath binaryPath) throws RODAException, IOException {
+    try (InputStream inputStream = storage.getBinary(binaryPath).getContent().createInputStream()) {
+      return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+    }
+  }
+
+  private void overwriteOnDisk(StoragePath binaryPath, String content, boolean touch) throws IOException {
+    Path path = FSUtils.getEntityPath(basePath, binaryPath);
+    FileTime lastModified = Files.getLastModifiedTime(path);
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(path,
+      touch ? FileTime.fromMillis(lastModified.toMillis() + 10000) : lastModified);
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.util.FileUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ContentDigestEngineTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContentDigestEngineTest.class);
+
+  private static final List<String> ALGORITHMS = Arrays.asList("MD5", "SHA-1", "SHA-256");
+  private static final int WINDOW_SIZE = 1024 * 1024;
+
+  private Path basePath;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    basePath = Files.createTempDirectory("contentDigestEngine");
+    // small windows, so that files of a few MB span several of them
+    ContentDigestEngine.injectWindowSize(WINDOW_SIZE);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    ContentDigestEngine.injectWindowSize(64L * 1024 * 1024);
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testDigestIsTheSameAsStreamDigest() throws IOException, GenericException, NoSuchAlgorithmException {
+    long[] sizes = {0, 1, WINDOW_SIZE - 1, WINDOW_SIZE, WINDOW_SIZE + 1, 3L * WINDOW_SIZE + WINDOW_SIZE / 2};
+    for (long size : sizes) {
+      Path file = createFile("file" + size, size);
+      Assert.assertEquals(ContentDigestEngine.digest(file, ALGORITHMS), streamDigest(file), "File size " + size);
+      Assert.assertEquals(FSUtils.computeContentDigest(file, "SHA-256"),
+        streamDigest(file).get("SHA-256").toLowerCase());
+    }
+  }
+
+  @Test
+  public void testDigestAll() throws IOException, GenericException, NoSuchAlgorithmException {
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      files.add(createFile("small" + i, 1000 + i));
+    }
+
+    Map<Path, Map<String, String>> digests = ContentDigestEngine.digestAll(files, ALGORITHMS);
+    Assert.assertEquals(new ArrayList<>(digests.keySet()), files);
+    for (Path file : files) {
+      Assert.assertEquals(digests.get(file), streamDigest(file));
+    }
+  }
+
+  @Test
+  public void testDigestAgainstStreamDigestTime() throws IOException, GenericException, NoSuchAlgorithmException {
+    Path file = createFile("large", 32L * WINDOW_SIZE);
+
+    // warm up
+    streamDigest(file);
+    ContentDigestEngine.digest(file, ALGORITHMS);
+
+    long start = System.nanoTime();
+    Map<String, String> stream = streamDigest(file);
+    long streamTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    Map<String, String> mapped = ContentDigestEngine.digest(file, ALGORITHMS);
+    long mappedTime = System.nanoTime() - start;
+
+    Assert.assertEquals(mapped, stream);
+    LOGGER.info("Digested {} bytes with {} in {} ms (stream) and {} ms (mapped windows)", Files.size(file), ALGORITHMS,
+      streamTime / 1000000, mappedTime / 1000000);
+  }
+
+  private Path createFile(String name, long size) throws IOException {
+    Path file = basePath.resolve(name);
+    Random random = new Random(size);
+    byte[] buffer = new byte[64 * 1024];
+    try (OutputStream outputStream = Files.newOutputStream(file)) {
+      long remaining = size;
+      while (remaining > 0) {
+        random.nextBytes(buffer);
+        int n = (int) Math.min(buffer.length, remaining);
+        outputStream.write(buffer, 0, n);
+        remaining -= n;
+      }
+    }
+    return file;
+  }
+
+  private static Map<String, String> streamDigest(Path file) throws IOException, NoSuchAlgorithmException {
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      return FileUtility.checksums(inputStream, ALGORITHMS);
+    }
+  }
+}
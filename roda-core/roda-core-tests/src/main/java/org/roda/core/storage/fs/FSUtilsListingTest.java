@@ -0,0 +1,182 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.storage.DefaultBinary;
+import org.roda.core.storage.Directory;
+import org.roda.core.storage.Resource;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class FSUtilsListingTest {
+  private static final String CONTAINER = "container";
+  private static final long LAST_MODIFIED = 1500000000000L;
+
+  private Path basePath;
+  private Path containerPath;
+
+  // contents of the binaries, by storage path
+  private Map<String, String> binaries;
+  private List<String> directories;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = Files.createTempDirectory("fsUtilsListing");
+    containerPath = Files.createDirectory(basePath.resolve(CONTAINER));
+
+    binaries = new HashMap<>();
+    directories = new ArrayList<>();
+    createBinary("f0", "content 0");
+    createDirectory("a");
+    createBinary("a/f1", "content of file 1");
+    createDirectory("a/b");
+    createBinary("a/b/f2", "");
+    createDirectory("a/b/c");
+    createDirectory("d");
+    createBinary("d/f3", "content of the third file");
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  private void createBinary(String path, String content) throws IOException {
+    Path file = Files.write(containerPath.resolve(path), content.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(LAST_MODIFIED + binaries.size() * 1000L));
+    binaries.put(CONTAINER + "/" + path, content);
+  }
+
+  private void createDirectory(String path) throws IOException {
+    Files.createDirectory(containerPath.resolve(path));
+    directories.add(CONTAINER + "/" + path);
+  }
+
+  @Test
+  public void testRecursiveListingReturnsEachEntryOnceWithItsAttributes() throws RODAException, IOException {
+    List<String> listed = recursivelyList(containerPath);
+
+    Assert.assertEquals(listed.size(), binaries.size() + directories.size(), listed.toString());
+    Assert.assertEquals(new HashSet<>(listed).size(), listed.size(), listed.toString());
+    Assert.assertEquals((long) FSUtils.recursivelyCountPath(containerPath), listed.size());
+
+    // each directory comes before its content
+    for (String directory : directories) {
+      int index = listed.indexOf(directory);
+      Assert.assertTrue(index >= 0, directory);
+      for (int i = 0; i < listed.size(); i++) {
+        if (listed.get(i).startsWith(directory + "/")) {
+          Assert.assertTrue(i > index, listed.get(i) + " listed before " + directory);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testListedBinariesCarryTheirSizeAndModificationTime() throws RODAException, IOException {
+    Map<String, Resource> resources = new HashMap<>();
+    try (CloseableIterable<Resource> iterable = FSUtils.recursivelyListPath(basePath, containerPath)) {
+      for (Resource resource : iterable) {
+        resources.put(asString(resource), resource);
+      }
+    }
+
+    for (String directory : directories) {
+      Assert.assertTrue(resources.get(directory) instanceof Directory, directory);
+    }
+
+    for (Map.Entry<String, String> binary : binaries.entrySet()) {
+      Resource resource = resources.get(binary.getKey());
+      Assert.assertTrue(resource instanceof DefaultBinary, binary.getKey());
+      DefaultBinary defaultBinary = (DefaultBinary) resource;
+      Path path = basePath.resolve(binary.getKey());
+      Assert.assertEquals(defaultBinary.getSizeInBytes().longValue(), binary.getValue().length(), binary.getKey());
+      Assert.assertEquals(defaultBinary.getLastModified().longValue(), Files.getLastModifiedTime(path).toMillis(),
+        binary.getKey());
+
+      // the same as when converting the path on its own
+      DefaultBinary converted = (DefaultBinary) FSUtils.convertPathToResource(basePath, path);
+      Assert.assertEquals(converted.getStoragePath(), defaultBinary.getStoragePath());
+      Assert.assertEquals(converted.getSizeInBytes(), defaultBinary.getSizeInBytes());
+      Assert.assertEquals(converted.getLastModified(), defaultBinary.getLastModified());
+    }
+  }
+
+  @Test
+  public void testListingOfASingleLevel() throws RODAException, IOException {
+    List<String> listed = new ArrayList<>();
+    try (CloseableIterable<Resource> iterable = FSUtils.listPath(basePath, containerPath.resolve("a"))) {
+      for (Resource resource : iterable) {
+        listed.add(asString(resource));
+      }
+    }
+
+    Assert.assertEquals(new HashSet<>(listed), new HashSet<>(Arrays.asList(CONTAINER + "/a/f1", CONTAINER + "/a/b")));
+    Assert.assertEquals((long) FSUtils.countPath(containerPath.resolve("a")), 2L);
+  }
+
+  @Test
+  public void testRecursiveListingDoesNotWalkIntoLinkCycles() throws RODAException, IOException {
+    // links to an ancestor, which would make the walk endless
+    Files.createSymbolicLink(containerPath.resolve("a/b/c/loop"), containerPath.resolve("a"));
+
+    List<String> listed = recursivelyList(containerPath);
+    Assert.assertEquals(listed.size(), binaries.size() + directories.size() + 1, listed.toString());
+    Assert.assertTrue(listed.contains(CONTAINER + "/a/b/c/loop"), listed.toString());
+    Assert.assertEquals((long) FSUtils.recursivelyCountPath(containerPath), listed.size());
+
+    // but links to other directories are followed
+    Files.createSymbolicLink(containerPath.resolve("link"), containerPath.resolve("d"));
+    listed = recursivelyList(containerPath);
+    Assert.assertTrue(listed.contains(CONTAINER + "/link/f3"), listed.toString());
+  }
+
+  @Test
+  public void testRecursiveListingOfAMissingDirectory() throws RODAException, IOException {
+    try {
+      recursivelyList(containerPath.resolve("missing"));
+      Assert.fail("Listing a missing directory should fail");
+    } catch (NotFoundException e) {
+      // expected
+    }
+  }
+
+  private List<String> recursivelyList(Path path) throws RODAException, IOException {
+    List<String> listed = new ArrayList<>();
+    try (CloseableIterable<Resource> iterable = FSUtils.recursivelyListPath(basePath, path)) {
+      for (Resource resource : iterable) {
+        Assert.assertNotNull(resource);
+        listed.add(asString(resource));
+      }
+    }
+    return listed;
+  }
+
+  private static String asString(Resource resource) {
+    return String.join("/", resource.getStoragePath().asList());
+  }
+}
@@ -8,17 +8,37 @@
 package org.roda.core.storage.fs;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomStringUtils;
 import org.roda.core.TestsHelper;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.storage.AbstractStorageServiceTest;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.RandomMockContentPayload;
 import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.util.FileUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -52,6 +72,8 @@ public class FileStorageServiceTest extends AbstractStorageServiceTest<FileStora
   public static void tearDown() throws RODAException {
     FSUtils.deletePath(basePath);
     FSUtils.deletePath(basePath.getParent().resolve(basePath.getFileName() + FileStorageService.HISTORY_SUFFIX));
+    FSUtils.deletePathQuietly(basePath.getParent().resolve(basePath.getFileName() + FileStorageService.DIGESTS_SUFFIX));
+    FSUtils.deletePathQuietly(basePath.getParent().resolve(basePath.getFileName() + FileStorageService.CAS_SUFFIX));
   }
 
   @Override
@@ -109,6 +131,193 @@ public class FileStorageServiceTest extends AbstractStorageServiceTest<FileStora
     }
   }
 
+  @Test
+  public void testContentDigestOnWrite() throws RODAException, IOException, NoSuchAlgorithmException {
+    List<String> algorithms = Arrays.asList("MD5", "SHA-256");
+    StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    storage.setContentDigestOnWrite(algorithms, Arrays.asList(containerStoragePath.getContainerName()));
+
+    StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    ContentPayload payload = new RandomMockContentPayload();
+    Binary created = storage.createBinary(binaryStoragePath, payload, false);
+
+    Map<String, String> expected;
+    try (InputStream inputStream = payload.createInputStream()) {
+      expected = FileUtility.checksums(inputStream, algorithms);
+    }
+    Assert.assertEquals(created.getContentDigest(), expected);
+    Assert.assertEquals(storage.getBinary(binaryStoragePath).getContentDigest(), expected);
+
+    // digests are not used once the binary is changed by other means
+    Files.write(storage.resolve(binaryStoragePath), "changed".getBytes(), StandardOpenOption.APPEND);
+    Assert.assertNull(storage.getBinary(binaryStoragePath).getContentDigest());
+
+    // and are computed again when the binary is updated
+    payload = new RandomMockContentPayload();
+    storage.updateBinaryContent(binaryStoragePath, payload, false, false);
+    try (InputStream inputStream = payload.createInputStream()) {
+      expected = FileUtility.checksums(inputStream, algorithms);
+    }
+    Assert.assertEquals(storage.getBinary(binaryStoragePath).getContentDigest(), expected);
+  }
+
+  @Test
+  public void testContentDigestsFollowCopiedAndMovedBinaries()
+    throws RODAException, IOException, NoSuchAlgorithmException {
+    List<String> algorithms = Arrays.asList("MD5", "SHA-256");
+    StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    storage.setContentDigestOnWrite(algorithms, Arrays.asList(containerStoragePath.getContainerName()));
+
+    StoragePath sourceStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createDirectory(sourceStoragePath);
+    StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(sourceStoragePath);
+    ContentPayload payload = new RandomMockContentPayload();
+    storage.createBinary(binaryStoragePath, payload, false);
+    String binaryName = binaryStoragePath.getName();
+
+    Map<String, String> expected;
+    try (InputStream inputStream = payload.createInputStream()) {
+      expected = FileUtility.checksums(inputStream, algorithms);
+    }
+
+    StoragePath copyStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.copy(storage, sourceStoragePath, copyStoragePath);
+    Assert.assertEquals(storage.getBinary(DefaultStoragePath.parse(copyStoragePath, binaryName)).getContentDigest(),
+      expected);
+    Assert.assertEquals(storage.getBinary(binaryStoragePath).getContentDigest(), expected);
+
+    StoragePath moveStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.move(storage, sourceStoragePath, moveStoragePath);
+    Assert.assertEquals(storage.getBinary(DefaultStoragePath.parse(moveStoragePath, binaryName)).getContentDigest(),
+      expected);
+
+    // no digests are left behind for the moved binaries
+    Path sourcePath = storage.resolve(sourceStoragePath);
+    Assert.assertFalse(Files.exists(storage.getDigestsPath().resolve(basePath.relativize(sourcePath))));
+  }
+
+  @Test
+  public void testDeduplication() throws RODAException, IOException {
+    StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    storage.setDeduplication(Arrays.asList(containerStoragePath.getContainerName()));
+    ContentAddressedStore store = storage.getContentAddressedStore();
+
+    String content = RandomStringUtils.randomAlphanumeric(10000);
+    String digest = FSUtils.computeContentDigest(writeTempFile(content), ContentAddressedStore.ALGORITHM);
+    StoragePath binary1 = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    StoragePath binary2 = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(binary1, new StringContentPayload(content), false);
+    storage.createBinary(binary2, new StringContentPayload(content), false);
+    Assert.assertTrue(Files.isSameFile(storage.resolve(binary1), storage.resolve(binary2)));
+    Assert.assertEquals(store.getReferenceCount(digest), 2);
+
+    // versions share the contents of the binary
+    BinaryVersion version = storage.createBinaryVersion(binary1, new HashMap<>());
+    Assert.assertEquals(store.getReferenceCount(digest), 3);
+
+    // updating a binary does not change the others
+    String otherContent = RandomStringUtils.randomAlphanumeric(10000);
+    storage.updateBinaryContent(binary1, new StringContentPayload(otherContent), false, false);
+    Assert.assertEquals(readContent(storage.resolve(binary1)), otherContent);
+    Assert.assertEquals(readContent(storage.resolve(binary2)), content);
+    Assert.assertEquals(store.getReferenceCount(digest), 2);
+
+    storage.revertBinaryVersion(binary1, version.getId());
+    Assert.assertEquals(readContent(storage.resolve(binary1)), content);
+    Assert.assertEquals(store.getReferenceCount(digest), 3);
+
+    // contents no longer referenced are removed
+    Assert.assertEquals(store.collectGarbage(), 1);
+  }
+
+  @Test
+  public void testDirectAccessDoesNotChangeSharedContents() throws RODAException, IOException {
+    StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    storage.setDeduplication(Arrays.asList(containerStoragePath.getContainerName()));
+    ContentAddressedStore store = storage.getContentAddressedStore();
+
+    String content = RandomStringUtils.randomAlphanumeric(10000);
+    String digest = FSUtils.computeContentDigest(writeTempFile(content), ContentAddressedStore.ALGORITHM);
+    StoragePath directoryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    StoragePath binary1 = StorageTestUtils.generateRandomResourceStoragePathUnder(directoryStoragePath);
+    StoragePath binary2 = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(binary1, new StringContentPayload(content), false);
+    storage.createBinary(binary2, new StringContentPayload(content), false);
+
+    // a small binary, not deduplicated, but linked into the history
+    String smallContent = "small";
+    StoragePath smallBinary = StorageTestUtils.generateRandomResourceStoragePathUnder(directoryStoragePath);
+    storage.createBinary(smallBinary, new StringContentPayload(smallContent), false);
+    BinaryVersion version = storage.createBinaryVersion(smallBinary, new HashMap<>());
+
+    // binaries are writable, even if deduplicated
+    Assert.assertTrue(Files.isWritable(storage.resolve(binary1)));
+
+    // contents unchanged through direct access are deduplicated again
+    try (DirectResourceAccess directAccess = storage.getDirectAccess(directoryStoragePath)) {
+      Assert.assertTrue(Files.isDirectory(directAccess.getPath()));
+      Assert.assertEquals(store.getReferenceCount(digest), 1);
+    }
+    Assert.assertEquals(store.getReferenceCount(digest), 2);
+
+    // changes made in place through direct access are copy-on-write
+    String otherContent = RandomStringUtils.randomAlphanumeric(10000);
+    try (DirectResourceAccess directAccess = storage.getDirectAccess(directoryStoragePath)) {
+      Path path = directAccess.getPath();
+      Files.write(path.resolve(binary1.getName()), otherContent.getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.TRUNCATE_EXISTING);
+      Files.write(path.resolve(smallBinary.getName()), "changed".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    Assert.assertEquals(readContent(storage.resolve(binary1)), otherContent);
+    Assert.assertEquals(readContent(storage.resolve(binary2)), content);
+    Assert.assertEquals(store.getReferenceCount(digest), 1);
+    Assert.assertEquals(readContent(storage.resolve(smallBinary)), "changed");
+    try (InputStream inputStream = storage.getBinaryVersion(smallBinary, version.getId()).getBinary().getContent()
+      .createInputStream()) {
+      Assert.assertEquals(IOUtils.toString(inputStream, StandardCharsets.UTF_8), smallContent);
+    }
+  }
+
+  private static Path writeTempFile(String content) throws IOException {
+    Path file = Files.createTempFile("dedup", ".tmp");
+    file.toFile().deleteOnExit();
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static String readContent(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testCopyDirectoryWithHardLinks() throws RODAException, IOException {
+    StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    StoragePath sourceStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createDirectory(sourceStoragePath);
+    StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(sourceStoragePath);
+    storage.createBinary(binaryStoragePath, new RandomMockContentPayload(), false);
+    StorageTestUtils.populate(storage, sourceStoragePath);
+
+    StoragePath targetStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    FileCopyEngine.injectLinkMode(FileCopyEngine.LinkMode.HARDLINK);
+    try {
+      storage.copy(storage, sourceStoragePath, targetStoragePath);
+    } finally {
+      FileCopyEngine.injectLinkMode(FileCopyEngine.LinkMode.NONE);
+    }
+    StorageTestUtils.testEntityEqualRecursively(storage, sourceStoragePath, storage, targetStoragePath);
+
+    Path sourceBinaryPath = storage.resolve(binaryStoragePath);
+    Path targetBinaryPath = storage.resolve(targetStoragePath).resolve(sourceBinaryPath.getFileName());
+    Assert.assertTrue(Files.isSameFile(sourceBinaryPath, targetBinaryPath));
+  }
+
   @Override
   protected FileStorageService getStorage() {
     return storage;
@@ -0,0 +1,181 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.Directory;
+import org.roda.core.storage.Resource;
+import org.roda.core.storage.StringContentPayload;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_TRAVIS})
+public class ShardedLayoutTest {
+  private static final String CONTAINER = RodaConstants.STORAGE_CONTAINER_AIP;
+  private static final ShardedLayout LAYOUT = new ShardedLayout(Arrays.asList(CONTAINER), 2, 2);
+
+  private Path dataPath;
+  private Path basePath;
+  private FileStorageService storage;
+
+  @BeforeMethod
+  public void setUp() throws IOException, RODAException {
+    dataPath = Files.createTempDirectory("shardedLayout");
+    basePath = dataPath.resolve("storage");
+    storage = new FileStorageService(basePath);
+    storage.createContainer(DefaultStoragePath.parse(CONTAINER));
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FSUtils.deletePathQuietly(dataPath);
+  }
+
+  @Test
+  public void testStoragePathsDoNotShowShards() throws RODAException, IOException {
+    storage.setShardedLayout(LAYOUT);
+    StoragePath binaryPath = DefaultStoragePath.parse(CONTAINER, "aip1", "metadata", "file.txt");
+    storage.createBinary(binaryPath, new StringContentPayload("content"), false);
+
+    List<String> shards = LAYOUT.getShards("aip1");
+    Path expected = basePath.resolve(CONTAINER).resolve(shards.get(0)).resolve(shards.get(1)).resolve("aip1")
+      .resolve("metadata").resolve("file.txt");
+    Assert.assertTrue(Files.isRegularFile(expected));
+    Assert.assertEquals(storage.resolve(binaryPath), expected);
+    Assert.assertEquals(read(binaryPath), "content");
+
+    Directory random = storage.createRandomDirectory(DefaultStoragePath.parse(CONTAINER));
+    Assert.assertEquals(random.getStoragePath().asList().size(), 2);
+    Assert.assertTrue(storage.hasDirectory(random.getStoragePath()));
+
+    Assert.assertEquals(list(DefaultStoragePath.parse(CONTAINER), false),
+      new HashSet<>(Arrays.asList(CONTAINER + "/aip1", CONTAINER + "/" + random.getStoragePath().getName())));
+    Assert.assertEquals(list(DefaultStoragePath.parse(CONTAINER), true), new HashSet<>(Arrays.asList(CONTAINER + "/aip1",
+      CONTAINER + "/aip1/metadata", CONTAINER + "/aip1/metadata/file.txt", asString(random.getStoragePath()))));
+    Assert.assertEquals(storage.countResourcesUnderContainer(DefaultStoragePath.parse(CONTAINER), false),
+      Long.valueOf(2));
+    Assert.assertEquals(storage.countResourcesUnderContainer(DefaultStoragePath.parse(CONTAINER), true),
+      Long.valueOf(4));
+  }
+
+  @Test
+  public void testMigrationIsTransparent() throws RODAException, IOException {
+    StoragePath containerBinaryPath = DefaultStoragePath.parse(CONTAINER, "binary");
+    StoragePath binaryPath = DefaultStoragePath.parse(CONTAINER, "aip1", "file.txt");
+    storage.setContentDigestOnWrite(Arrays.asList("MD5"), Arrays.asList(CONTAINER));
+    storage.createBinary(containerBinaryPath, new StringContentPayload("content 1"), false);
+    storage.createBinary(binaryPath, new StringContentPayload("content 2"), false);
+    BinaryVersion version = storage.createBinaryVersion(containerBinaryPath, Collections.emptyMap());
+    storage.updateBinaryContent(containerBinaryPath, new StringContentPayload("content 3"), false, false);
+
+    ShardedLayoutMigration migration = new ShardedLayoutMigration(storage);
+    Assert.assertTrue(migration.isNecessary(LAYOUT));
+    migration.migrate(LAYOUT);
+    Assert.assertEquals(migration.getInstalledLayout().getContainers(), LAYOUT.getContainers());
+    Assert.assertFalse(migration.isNecessary(LAYOUT));
+    assertSameContents();
+    Assert.assertEquals(storage.getBinaryVersion(containerBinaryPath, version.getId()).getBinary().getStoragePath(),
+      containerBinaryPath);
+    Assert.assertNotNull(storage.getBinary(binaryPath).getContentDigest());
+
+    // back to the flat layout
+    Assert.assertTrue(migration.isNecessary(ShardedLayout.FLAT));
+    migration.migrate(ShardedLayout.FLAT);
+    Assert.assertTrue(Files.isRegularFile(basePath.resolve(CONTAINER).resolve("binary")));
+    assertSameContents();
+    Assert.assertNotNull(storage.getBinary(binaryPath).getContentDigest());
+
+    storage.revertBinaryVersion(containerBinaryPath, version.getId());
+    Assert.assertEquals(read(containerBinaryPath), "content 1");
+  }
+
+  @Test
+  public void testInterruptedMigrationIsResumed() throws RODAException, IOException {
+    storage.setContentDigestOnWrite(Arrays.asList("MD5"), Arrays.asList(CONTAINER));
+    storage.createBinary(DefaultStoragePath.parse(CONTAINER, "binary"), new StringContentPayload("content 3"), false);
+    storage.createBinary(DefaultStoragePath.parse(CONTAINER, "aip1", "file.txt"), new StringContentPayload("content 2"),
+      false);
+
+    // the content digests cannot be moved to the work folder, so the migration
+    // stops after the storage folder is migrated
+    Path blocker = dataPath.resolve("storage-layout-migration").resolve(storage.getDigestsPath().getFileName());
+    Files.createDirectories(blocker.getParent());
+    Files.createFile(blocker);
+
+    ShardedLayoutMigration migration = new ShardedLayoutMigration(storage);
+    try {
+      migration.migrate(LAYOUT);
+      Assert.fail("Migration should be interrupted");
+    } catch (RODAException e) {
+      // expected
+    }
+    Assert.assertEquals(migration.getInstalledLayout(), ShardedLayout.FLAT);
+
+    Files.delete(blocker);
+    Assert.assertTrue(migration.isNecessary(LAYOUT));
+    migration.migrate(LAYOUT);
+    assertSameContents();
+    Assert.assertFalse(migration.isNecessary(LAYOUT));
+  }
+
+  @Test
+  public void testMigrationOfEmptyContainersIsNotNecessary() throws RODAException {
+    ShardedLayoutMigration migration = new ShardedLayoutMigration(storage);
+    Assert.assertFalse(migration.isNecessary(LAYOUT));
+    Assert.assertEquals(storage.getShardedLayout(), LAYOUT);
+  }
+
+  private void assertSameContents() throws RODAException, IOException {
+    Assert.assertEquals(read(DefaultStoragePath.parse(CONTAINER, "binary")), "content 3");
+    Assert.assertEquals(read(DefaultStoragePath.parse(CONTAINER, "aip1", "file.txt")), "content 2");
+    Assert.assertEquals(list(DefaultStoragePath.parse(CONTAINER), true),
+      new HashSet<>(Arrays.asList(CONTAINER + "/binary", CONTAINER + "/aip1", CONTAINER + "/aip1/file.txt")));
+  }
+
+  private static String asString(StoragePath storagePath) {
+    return String.join("/", storagePath.asList());
+  }
+
+  private String read(StoragePath binaryPath) throws RODAException, IOException {
+    try (InputStream inputStream = storage.getBinary(binaryPath).getContent().createInputStream()) {
+      return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+    }
+  }
+
+  private Set<String> list(StoragePath containerPath, boolean recursive) throws RODAException, IOException {
+    List<String> paths = new ArrayList<>();
+    try (CloseableIterable<Resource> resources = storage.listResourcesUnderContainer(containerPath, recursive)) {
+      for (Resource resource : resources) {
+        paths.add(asString(resource.getStoragePath()));
+      }
+    }
+    Set<String> unique = new HashSet<>(paths);
+    Assert.assertEquals(unique.size(), paths.size());
+    return unique;
+  }
+}
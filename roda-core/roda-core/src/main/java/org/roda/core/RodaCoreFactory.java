@@ -84,6 +84,7 @@ import org.roda.core.common.RodaUtils;
 import org.roda.core.common.UserUtility;
 import org.roda.core.common.iterables.CloseableIterable;
 import org.roda.core.common.monitor.TransferUpdateStatus;
+import org.roda.core.common.monitor.TransferredResourcesScan;
 import org.roda.core.common.monitor.TransferredResourcesScanner;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.NodeType;
@@ -120,19 +121,30 @@ import org.roda.core.index.schema.SolrBootstrapUtils;
 import org.roda.core.index.schema.SolrCollectionRegistry;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.migration.MigrationManager;
+import org.roda.core.model.AIPCache;
+import org.roda.core.model.AIPHierarchyCache;
+import org.roda.core.model.ActionLogWriter;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.PluginManager;
 import org.roda.core.plugins.PluginManagerException;
 import org.roda.core.plugins.PluginOrchestrator;
 import org.roda.core.plugins.orchestrate.AkkaDistributedPluginOrchestrator;
 import org.roda.core.plugins.orchestrate.AkkaEmbeddedPluginOrchestrator;
+import org.roda.core.plugins.orchestrate.JobReportStore;
 import org.roda.core.plugins.orchestrate.akka.distributed.AkkaDistributedPluginWorker;
+import org.roda.core.plugins.plugins.common.ConverterProcessPool;
+import org.roda.core.storage.CachingStorageService;
 import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.Resource;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fedora.FedoraStorageService;
+import org.roda.core.storage.fs.ContentAddressedStore;
+import org.roda.core.storage.fs.ContentDigestEngine;
 import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileCopyEngine;
 import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.storage.fs.ShardedLayout;
+import org.roda.core.storage.fs.ShardedLayoutMigration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -758,12 +770,100 @@ public class RodaCoreFactory {
   }
 
   private static void instantiateStorageAndModel() throws GenericException {
-    storage = instantiateStorage();
+    storage = instantiateStorageCache(instantiateStorage());
     LOGGER.debug("Finished instantiating storage...");
     model = new ModelService(storage);
+    instantiateAIPCache();
+    instantiateAIPHierarchyCache();
+    instantiateActionLogWriter();
     LOGGER.debug("Finished instantiating model...");
   }
 
+  private static StorageService instantiateStorageCache(StorageService storageService) {
+    if (getRodaConfiguration().getBoolean("core.storage.cache.enabled", false)) {
+      long maximumWeight = getRodaConfiguration().getLong("core.storage.cache.max_size_in_bytes", 256L * 1024 * 1024);
+      long maxBinarySize = getRodaConfiguration().getLong("core.storage.cache.max_binary_size_in_bytes", 65536L);
+      List<String> containers = getRodaConfigurationAsList("core", "storage", "cache", "containers");
+      boolean validateModificationTime = getRodaConfiguration()
+        .getBoolean("core.storage.cache.validate_modification_time", true);
+      CachingStorageService cachingStorageService = new CachingStorageService(storageService, maximumWeight,
+        maxBinarySize, containers, validateModificationTime);
+      cachingStorageService.registerMetrics(metricsRegistry);
+      LOGGER.debug("Finished instantiating storage cache...");
+      return cachingStorageService;
+    }
+    return storageService;
+  }
+
+  private static void instantiateAIPCache() {
+    if (getRodaConfiguration().getBoolean("core.model.aip_cache.enabled", false)) {
+      long maximumWeight = getRodaConfiguration().getLong("core.model.aip_cache.max_size_in_bytes",
+        64L * 1024 * 1024);
+      boolean validateModificationTime = getRodaConfiguration()
+        .getBoolean("core.model.aip_cache.validate_modification_time", true);
+      AIPCache aipCache = new AIPCache(storage, maximumWeight, validateModificationTime);
+      aipCache.registerMetrics(metricsRegistry);
+      model.setAIPCache(aipCache);
+      LOGGER.debug("Finished instantiating AIP cache...");
+    }
+  }
+
+  private static void instantiateAIPHierarchyCache() {
+    if (getRodaConfiguration().getBoolean("core.model.aip_hierarchy_cache.enabled", false)) {
+      long maximumSize = getRodaConfiguration().getLong("core.model.aip_hierarchy_cache.max_size", 1000000L);
+      AIPHierarchyCache aipHierarchyCache = new AIPHierarchyCache(maximumSize);
+      aipHierarchyCache.registerMetrics(metricsRegistry);
+      model.setAIPHierarchyCache(aipHierarchyCache);
+      LOGGER.debug("Finished instantiating AIP hierarchy cache...");
+    }
+  }
+
+  private static void collectContentAddressedStoreGarbage(ContentAddressedStore store) {
+    Thread thread = new Thread(() -> {
+      try {
+        long removed = store.collectGarbage();
+        LOGGER.info("Removed {} contents no longer used from the content addressed store", removed);
+      } catch (GenericException e) {
+        LOGGER.error("Error removing contents no longer used from the content addressed store", e);
+      }
+    }, "content-addressed-store-gc");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private static void configFileCopyEngine() {
+    FileCopyEngine.LinkMode linkMode = FileCopyEngine.LinkMode.NONE;
+    try {
+      linkMode = FileCopyEngine.LinkMode
+        .valueOf(getRodaConfiguration().getString("core.storage.filesystem.copy.link_mode", linkMode.name()));
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Invalid file copy link mode, using '{}'", linkMode);
+    }
+    FileCopyEngine.injectLinkMode(linkMode);
+    FileCopyEngine.injectParallelism(getRodaConfiguration().getInt("core.storage.filesystem.copy.threads",
+      Runtime.getRuntime().availableProcessors()));
+    FileCopyEngine
+      .injectMeter(metricsRegistry.meter(MetricRegistry.name(FileCopyEngine.class.getSimpleName(), "bytesCopied")));
+  }
+
+  private static void instantiateActionLogWriter() {
+    if (getRodaConfiguration().getBoolean("core.actionlogs.async_writer.enabled", false)) {
+      int capacity = getRodaConfiguration().getInt("core.actionlogs.async_writer.queue_capacity", 10000);
+      int maxBatchSize = getRodaConfiguration().getInt("core.actionlogs.async_writer.max_batch_size", 500);
+      ActionLogWriter.Durability durability = ActionLogWriter.Durability.BATCH;
+      try {
+        durability = ActionLogWriter.Durability.valueOf(
+          getRodaConfiguration().getString("core.actionlogs.async_writer.durability", durability.name()));
+      } catch (IllegalArgumentException e) {
+        LOGGER.warn("Invalid action log writer durability, using '{}'", durability);
+      }
+      ActionLogWriter actionLogWriter = new ActionLogWriter(model, capacity, maxBatchSize, durability);
+      actionLogWriter.registerMetrics(metricsRegistry);
+      model.setActionLogWriter(actionLogWriter);
+      LOGGER.debug("Finished instantiating action log writer...");
+    }
+  }
+
   private static StorageService instantiateStorage() throws GenericException {
     String newStorageService = getRodaConfiguration().getString(RodaConstants.CORE_STORAGE_NEW_SERVICE);
     if (StringUtils.isNotBlank(newStorageService)) {
@@ -802,7 +902,31 @@ public class RodaCoreFactory {
       LOGGER.debug("Going to instantiate Filesystem on '{}'", storagePath);
       String trashDirName = getRodaConfiguration().getString("core.storage.filesystem.trash",
         RodaConstants.TRASH_CONTAINER);
-      StorageService fileStorageService = new FileStorageService(storagePath, trashDirName);
+      FileStorageService fileStorageService = new FileStorageService(storagePath, trashDirName);
+      ContentDigestEngine.injectWindowSize(
+        getRodaConfiguration().getLong("core.storage.filesystem.digest.window_size_in_bytes", 64L * 1024 * 1024));
+      ContentDigestEngine.injectParallelism(getRodaConfiguration().getInt("core.storage.filesystem.digest.threads",
+        Runtime.getRuntime().availableProcessors()));
+      configFileCopyEngine();
+      if (getRodaConfiguration().getBoolean("core.storage.filesystem.digest_on_write.enabled", true)) {
+        List<String> containers = getRodaConfigurationAsList("core", "storage", "filesystem", "digest_on_write",
+          "containers");
+        if (containers.isEmpty()) {
+          containers = Arrays.asList(RodaConstants.STORAGE_CONTAINER_AIP);
+        }
+        fileStorageService.setContentDigestOnWrite(getFixityAlgorithms(), containers);
+      }
+      if (getRodaConfiguration().getBoolean("core.storage.filesystem.deduplication.enabled", false)) {
+        List<String> containers = getRodaConfigurationAsList("core", "storage", "filesystem", "deduplication",
+          "containers");
+        if (containers.isEmpty()) {
+          containers = Arrays.asList(RodaConstants.STORAGE_CONTAINER_AIP);
+        }
+        fileStorageService.setDeduplication(containers);
+        collectContentAddressedStoreGarbage(fileStorageService.getContentAddressedStore());
+      }
+      // the configured layout is only used after the storage is migrated to it
+      fileStorageService.setShardedLayout(new ShardedLayoutMigration(fileStorageService).getInstalledLayout());
       return fileStorageService;
     } else {
       LOGGER.error("Unknown storage service '{}'", storageType.name());
@@ -1161,6 +1285,7 @@ public class RodaCoreFactory {
   }
 
   private static void instantiateOrchestrator() {
+    configJobReportStore();
     OrchestratorType orchestratorType = getOrchestratorType();
     if (orchestratorType == OrchestratorType.AKKA_DISTRIBUTED) {
       pluginOrchestrator = new AkkaDistributedPluginOrchestrator(
@@ -1174,6 +1299,16 @@ public class RodaCoreFactory {
     }
   }
 
+  private static void configJobReportStore() {
+    JobReportStore.injectEnabled(getRodaConfiguration().getBoolean("core.orchestrator.job_report_store.enabled", false));
+    JobReportStore.injectFlushIntervalInMillis(
+      getRodaConfiguration().getLong("core.orchestrator.job_report_store.flush_interval_in_millis", 5000));
+    JobReportStore.injectMaxPendingReports(
+      getRodaConfiguration().getInt("core.orchestrator.job_report_store.max_pending_reports", 1000));
+    JobReportStore.injectHistogram(
+      metricsRegistry.histogram(MetricRegistry.name(JobReportStore.class.getSimpleName(), "reportsPerFlush")));
+  }
+
   private static OrchestratorType getOrchestratorType() {
     OrchestratorType res = RodaConstants.DEFAULT_ORCHESTRATOR_TYPE;
     try {
@@ -1212,6 +1347,20 @@ public class RodaCoreFactory {
 
   public static void shutdown() throws IOException {
     if (instantiated) {
+      // persist the reports of the jobs still running
+      JobReportStore.flushAll();
+      if (model != null && model.getActionLogWriter() != null) {
+        try {
+          model.getActionLogWriter().flush();
+        } catch (GenericException e) {
+          LOGGER.error("Error writing the queued action log entries", e);
+        }
+        model.getActionLogWriter().shutdown();
+      }
+      if (transferredResourcesScanner != null) {
+        transferredResourcesScanner.stopWatching();
+      }
+
       if (INSTANTIATE_SOLR) {
         solr.close();
       }
@@ -1224,6 +1373,7 @@ public class RodaCoreFactory {
       if (INSTANTIATE_PLUGIN_ORCHESTRATOR) {
         pluginOrchestrator.shutdown();
       }
+      ConverterProcessPool.shutdownAll();
       if (nodeType == NodeType.TEST) {
         // final cleanup
         FSUtils.deletePathQuietly(workingDirectoryPath);
@@ -1383,7 +1533,19 @@ public class RodaCoreFactory {
         Files.createDirectories(transferredResourcesFolderPath);
       }
 
+      TransferredResourcesScan.injectParallelism(getRodaConfiguration().getInt("core.transferred_resources.scan.threads",
+        Runtime.getRuntime().availableProcessors()));
       transferredResourcesScanner = new TransferredResourcesScanner(transferredResourcesFolderPath, getIndexService());
+      transferredResourcesScanner.getUploads().setContentDigestAlgorithms(getFixityAlgorithms());
+      transferredResourcesScanner.getUploads().setExpirationInMillis(
+        getRodaConfiguration().getLong("core.transferred_resources.upload.expiration_in_hours", 24L) * 3600000L);
+      transferredResourcesScanner.getUploads()
+        .setMaxNumberOfChunks(getRodaConfiguration().getInt("core.transferred_resources.upload.max_chunks", 100000));
+
+      if (getRodaConfiguration().getBoolean("core.transferred_resources.watcher.enabled", false)) {
+        transferredResourcesScanner
+          .startWatching(getRodaConfiguration().getLong("core.transferred_resources.watcher.delay_in_millis", 1000L));
+      }
     } catch (final Exception e) {
       LOGGER.error("Error starting Transferred Resources Scanner: " + e.getMessage(), e);
       instantiatedWithoutErrors = false;
@@ -1809,6 +1971,19 @@ public class RodaCoreFactory {
     return algorithms;
   }
 
+  /**
+   * @return the layout of the storage folder set in the configuration, which
+   *         the storage is migrated to with <code>migrate storage</code>
+   */
+  public static ShardedLayout getStorageShardedLayout() {
+    List<String> containers = getRodaConfigurationAsList("core", "storage", "filesystem", "sharding", "containers");
+    if (containers.isEmpty()) {
+      return ShardedLayout.FLAT;
+    }
+    return new ShardedLayout(containers, getRodaConfiguration().getInt("core.storage.filesystem.sharding.levels", 2),
+      getRodaConfiguration().getInt("core.storage.filesystem.sharding.width", 2));
+  }
+
   public static Map<String, String> getPropertiesFromCache(String cacheName, List<String> prefixesToCache) {
     if (rodaPropertiesCache.get(cacheName) == null) {
       fillInPropertiesToCache(cacheName, prefixesToCache);
@@ -1999,6 +2174,7 @@ public class RodaCoreFactory {
     System.err.println("\treset admin");
     System.err.println("\tmigrate model");
     System.err.println("\tmigrate index");
+    System.err.println("\tmigrate storage");
   }
 
   private static void printResetUsage() {
@@ -2009,6 +2185,7 @@ public class RodaCoreFactory {
   private static void printMigrateUsage() {
     System.err.println("Migrate command parameters:");
     System.err.println("\tmodel - performs model related migrations.");
+    System.err.println("\tstorage - moves storage entries into (or out of) the configured shard directories.");
   }
 
   private static void mainMasterTasks(final List<String> args) throws GenericException, RequestNotValidException {
@@ -2054,6 +2231,8 @@ public class RodaCoreFactory {
         if ("model".equals(migrateParam)) {
           migrationManager.setupModelMigrations();
           migrationManager.performModelMigrations();
+        } else if ("storage".equals(migrateParam)) {
+          migrationManager.performStorageLayoutMigration();
         } else {
           printMigrateUsage();
         }
@@ -39,6 +39,12 @@ import org.slf4j.LoggerFactory;
 public final class MetadataUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(MetadataUtils.class);
 
+  // save options are only read when saving, so they are shared by all saves
+  private static final XmlOptions SAVE_OPTIONS = new XmlOptions().setUseDefaultNamespace().setSavePrettyPrint()
+    .setSaveAggressiveNamespaces();
+  private static final XmlOptions SAVE_OPTIONS_NO_XML_DECL = new XmlOptions().setUseDefaultNamespace()
+    .setSavePrettyPrint().setSaveAggressiveNamespaces().setSaveNoXmlDecl();
+
   /** Private empty constructor */
   private MetadataUtils() {
 
@@ -161,14 +167,7 @@ public final class MetadataUtils {
 
       try {
 
-        XmlOptions xmlSaveOptions = new XmlOptions().setUseDefaultNamespace().setSavePrettyPrint()
-          .setSaveAggressiveNamespaces();
-
-        if (!writeXMLDeclaration) {
-          xmlSaveOptions = xmlSaveOptions.setSaveNoXmlDecl();
-        }
-
-        xmlObject.save(outputStream, xmlSaveOptions);
+        xmlObject.save(outputStream, writeXMLDeclaration ? SAVE_OPTIONS : SAVE_OPTIONS_NO_XML_DECL);
 
       } catch (IOException e) {
         LOGGER.debug("Error serializing XML object - " + e.getMessage(), e);
@@ -192,14 +191,7 @@ public final class MetadataUtils {
     boolean isValid = xmlObject.validate(validateOptions);
     if (isValid) {
 
-      XmlOptions xmlSaveOptions = new XmlOptions().setUseDefaultNamespace().setSavePrettyPrint()
-        .setSaveAggressiveNamespaces();
-
-      if (!writeXMLDeclaration) {
-        xmlSaveOptions = xmlSaveOptions.setSaveNoXmlDecl();
-      }
-
-      return xmlObject.newInputStream(xmlSaveOptions);
+      return xmlObject.newInputStream(writeXMLDeclaration ? SAVE_OPTIONS : SAVE_OPTIONS_NO_XML_DECL);
 
     } else {
       throw new ValidationException(xmlValidationErrorsToValidationReport(errorList));
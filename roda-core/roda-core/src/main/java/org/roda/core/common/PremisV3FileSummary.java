@@ -0,0 +1,259 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.v2.ip.metadata.Fixity;
+
+/**
+ * The fields of a PREMIS v3 file object that are indexed or checked the most
+ * (original name, size, fixities, format and creating application), read with
+ * StAX without building the whole XMLBeans object.
+ *
+ * <p>
+ * As with the XMLBeans object, only the first object characteristics are read,
+ * as well as the format designation of its first format and its first creating
+ * application.
+ * </p>
+ */
+public final class PremisV3FileSummary {
+  private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+  // paths of the elements read, without the object element
+  private static final String ORIGINAL_NAME = "originalName";
+  private static final String OBJECT_CHARACTERISTICS = "objectCharacteristics";
+  private static final String SIZE = OBJECT_CHARACTERISTICS + "/size";
+  private static final String FIXITY = OBJECT_CHARACTERISTICS + "/fixity";
+  private static final String MESSAGE_DIGEST_ALGORITHM = FIXITY + "/messageDigestAlgorithm";
+  private static final String MESSAGE_DIGEST = FIXITY + "/messageDigest";
+  private static final String MESSAGE_DIGEST_ORIGINATOR = FIXITY + "/messageDigestOriginator";
+  private static final String FORMAT = OBJECT_CHARACTERISTICS + "/format";
+  private static final String FORMAT_NAME = FORMAT + "/formatDesignation/formatName";
+  private static final String FORMAT_VERSION = FORMAT + "/formatDesignation/formatVersion";
+  private static final String FORMAT_REGISTRY = FORMAT + "/formatRegistry";
+  private static final String FORMAT_REGISTRY_NAME = FORMAT_REGISTRY + "/formatRegistryName";
+  private static final String FORMAT_REGISTRY_KEY = FORMAT_REGISTRY + "/formatRegistryKey";
+  private static final String CREATING_APPLICATION = OBJECT_CHARACTERISTICS + "/creatingApplication";
+  private static final String CREATING_APPLICATION_NAME = CREATING_APPLICATION + "/creatingApplicationName";
+  private static final String CREATING_APPLICATION_VERSION = CREATING_APPLICATION + "/creatingApplicationVersion";
+  private static final String DATE_CREATED_BY_APPLICATION = CREATING_APPLICATION + "/dateCreatedByApplication";
+
+  private String originalName = null;
+  private boolean hasObjectCharacteristics = false;
+  private long size = 0;
+  private final List<Fixity> fixities = new ArrayList<>();
+  private boolean hasFormat = false;
+  private String formatName = null;
+  private String formatVersion = null;
+  private final Map<String, String> formatRegistryKeys = new HashMap<>();
+  private boolean hasCreatingApplication = false;
+  private String creatingApplicationName = null;
+  private String creatingApplicationVersion = null;
+  private String dateCreatedByApplication = null;
+
+  private PremisV3FileSummary() {
+    // do nothing
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /**
+   * @throws GenericException
+   *           if the XML cannot be read or is not the PREMIS object of a file
+   */
+  public static PremisV3FileSummary read(InputStream inputStream) throws GenericException {
+    PremisV3FileSummary summary = new PremisV3FileSummary();
+    XMLStreamReader reader = null;
+    try {
+      reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+      summary.read(reader);
+    } catch (XMLStreamException | NumberFormatException e) {
+      throw new GenericException("Error reading PREMIS file", e);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // do nothing
+        }
+      }
+    }
+    return summary;
+  }
+
+  private void read(XMLStreamReader reader) throws XMLStreamException, GenericException {
+    Deque<String> path = new ArrayDeque<>();
+    boolean root = true;
+    int objectCharacteristics = 0;
+    int formats = 0;
+    int creatingApplications = 0;
+    Fixity fixity = null;
+    String registryName = null;
+    String registryKey = null;
+
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        if (root) {
+          checkIsFile(reader);
+          root = false;
+          continue;
+        }
+
+        path.addLast(reader.getLocalName());
+        String current = String.join("/", path);
+        boolean first = objectCharacteristics == 1;
+
+        if (ORIGINAL_NAME.equals(current)) {
+          originalName = readText(reader, path);
+        } else if (OBJECT_CHARACTERISTICS.equals(current)) {
+          objectCharacteristics++;
+          hasObjectCharacteristics = true;
+        } else if (!first) {
+          // only the first object characteristics are read
+        } else if (SIZE.equals(current)) {
+          size = Long.parseLong(readText(reader, path).trim());
+        } else if (FIXITY.equals(current)) {
+          fixity = new Fixity();
+        } else if (MESSAGE_DIGEST_ALGORITHM.equals(current)) {
+          fixity.setMessageDigestAlgorithm(readText(reader, path));
+        } else if (MESSAGE_DIGEST.equals(current)) {
+          fixity.setMessageDigest(readText(reader, path));
+        } else if (MESSAGE_DIGEST_ORIGINATOR.equals(current)) {
+          fixity.setMessageDigestOriginator(readText(reader, path));
+        } else if (FORMAT.equals(current)) {
+          formats++;
+          hasFormat = true;
+        } else if (FORMAT_NAME.equals(current) && formats == 1) {
+          formatName = readText(reader, path);
+        } else if (FORMAT_VERSION.equals(current) && formats == 1) {
+          formatVersion = readText(reader, path);
+        } else if (FORMAT_REGISTRY.equals(current)) {
+          registryName = null;
+          registryKey = null;
+        } else if (FORMAT_REGISTRY_NAME.equals(current)) {
+          registryName = readText(reader, path);
+        } else if (FORMAT_REGISTRY_KEY.equals(current)) {
+          registryKey = readText(reader, path);
+        } else if (CREATING_APPLICATION.equals(current)) {
+          creatingApplications++;
+          hasCreatingApplication = true;
+        } else if (CREATING_APPLICATION_NAME.equals(current) && creatingApplications == 1) {
+          creatingApplicationName = readText(reader, path);
+        } else if (CREATING_APPLICATION_VERSION.equals(current) && creatingApplications == 1) {
+          creatingApplicationVersion = readText(reader, path);
+        } else if (DATE_CREATED_BY_APPLICATION.equals(current) && creatingApplications == 1) {
+          dateCreatedByApplication = readText(reader, path);
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT && !path.isEmpty()) {
+        String current = String.join("/", path);
+        if (objectCharacteristics == 1 && FIXITY.equals(current)) {
+          fixities.add(fixity);
+        } else if (objectCharacteristics == 1 && FORMAT_REGISTRY.equals(current) && registryName != null) {
+          String key = registryName.toLowerCase(Locale.ROOT);
+          if (!formatRegistryKeys.containsKey(key)) {
+            formatRegistryKeys.put(key, registryKey);
+          }
+        }
+        path.removeLast();
+      }
+    }
+  }
+
+  /**
+   * Reads the text of the current element, which then ends.
+   */
+  private static String readText(XMLStreamReader reader, Deque<String> path) throws XMLStreamException {
+    String text = reader.getElementText();
+    path.removeLast();
+    return text;
+  }
+
+  private static void checkIsFile(XMLStreamReader reader) throws GenericException {
+    String type = reader.getAttributeValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "type");
+    String localType = type == null ? null : type.substring(type.indexOf(':') + 1);
+    if (!"object".equals(reader.getLocalName()) || !"file".equals(localType)) {
+      throw new GenericException("Trying to load a file but was a " + reader.getLocalName() + " of type " + type);
+    }
+  }
+
+  public String getOriginalName() {
+    return originalName;
+  }
+
+  public boolean hasObjectCharacteristics() {
+    return hasObjectCharacteristics;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public List<Fixity> getFixities() {
+    return fixities;
+  }
+
+  /**
+   * @return if the first object characteristics have a format
+   */
+  public boolean hasFormat() {
+    return hasFormat;
+  }
+
+  public String getFormatName() {
+    return formatName;
+  }
+
+  public String getFormatVersion() {
+    return formatVersion;
+  }
+
+  /**
+   * @return the key in the first format registry with the name (ignoring
+   *         case), or <code>null</code> if there is no such registry
+   */
+  public String getFormatRegistryKey(String registryName) {
+    return formatRegistryKeys.get(registryName.toLowerCase(Locale.ROOT));
+  }
+
+  public boolean hasCreatingApplication() {
+    return hasCreatingApplication;
+  }
+
+  public String getCreatingApplicationName() {
+    return creatingApplicationName;
+  }
+
+  public String getCreatingApplicationVersion() {
+    return creatingApplicationVersion;
+  }
+
+  public String getDateCreatedByApplication() {
+    return dateCreatedByApplication;
+  }
+}
@@ -17,6 +17,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
@@ -55,7 +57,7 @@ import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.plugins.characterization.PremisSkeletonPluginUtils;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.ContentPayload;
-import org.roda.core.util.FileUtility;
+import org.roda.core.storage.fs.ContentDigestEngine;
 import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -94,8 +96,10 @@ import gov.loc.premis.v3.StringPlusAuthority;
 public final class PremisV3Utils {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PremisV3Utils.class);
-  private static final String FIXITY_ORIGINATOR = "RODA";
+  public static final String FIXITY_ORIGINATOR = "RODA";
   private static final String W3C_XML_SCHEMA_NS_URI = "http://www.w3.org/2001/XMLSchema";
+  private static Schema premisV2Schema = null;
+  private static final Queue<Validator> PREMIS_V2_VALIDATORS = new ConcurrentLinkedQueue<>();
 
   /** Private empty constructor */
   private PremisV3Utils() {
@@ -105,14 +109,19 @@ public final class PremisV3Utils {
   public static List<Fixity> calculateFixities(Binary binary, Collection<String> algorithms, String originator)
     throws IOException, NoSuchAlgorithmException {
     List<Fixity> ret = new ArrayList<>();
-    try (InputStream stream = binary.getContent().createInputStream()) {
-      Map<String, String> checksums = FileUtility.checksums(stream, algorithms);
+    try {
+      Map<String, String> checksums = ContentDigestEngine.digest(binary.getContent(), algorithms);
 
       for (Entry<String, String> entry : checksums.entrySet()) {
         String algorithm = entry.getKey();
         String checksum = entry.getValue();
         ret.add(new Fixity(algorithm, checksum, originator));
       }
+    } catch (GenericException e) {
+      if (e.getCause() instanceof NoSuchAlgorithmException) {
+        throw (NoSuchAlgorithmException) e.getCause();
+      }
+      throw new IOException(e);
     }
 
     return ret;
@@ -120,12 +129,9 @@ public final class PremisV3Utils {
 
   public static boolean isPremisV2(Binary binary) throws IOException, SAXException {
     boolean premisV2 = true;
-    try (InputStream inputStream = binary.getContent().createInputStream();
-      InputStream schemaStream = RodaCoreFactory.getConfigurationFileAsStream("schemas/premis-v2-0.xsd")) {
+    Validator validator = borrowPremisV2Validator();
+    try (InputStream inputStream = binary.getContent().createInputStream()) {
       Source xmlFile = new StreamSource(inputStream);
-      SchemaFactory schemaFactory = SchemaFactory.newInstance(W3C_XML_SCHEMA_NS_URI);
-      Schema schema = schemaFactory.newSchema(new StreamSource(schemaStream));
-      Validator validator = schema.newValidator();
       RodaErrorHandler errorHandler = new RodaErrorHandler();
       validator.setErrorHandler(errorHandler);
       try {
@@ -137,11 +143,33 @@ public final class PremisV3Utils {
       } catch (SAXException e) {
         premisV2 = false;
       }
+    } finally {
+      validator.reset();
+      PREMIS_V2_VALIDATORS.offer(validator);
     }
 
     return premisV2;
   }
 
+  /**
+   * Validators are not thread-safe, so each one is used by a thread at a time
+   * and then returned to the pool, while the schema is compiled only once.
+   */
+  private static Validator borrowPremisV2Validator() throws IOException, SAXException {
+    Validator validator = PREMIS_V2_VALIDATORS.poll();
+    return validator != null ? validator : getPremisV2Schema().newValidator();
+  }
+
+  private static synchronized Schema getPremisV2Schema() throws IOException, SAXException {
+    if (premisV2Schema == null) {
+      try (InputStream schemaStream = RodaCoreFactory.getConfigurationFileAsStream("schemas/premis-v2-0.xsd")) {
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(W3C_XML_SCHEMA_NS_URI);
+        premisV2Schema = schemaFactory.newSchema(new StreamSource(schemaStream));
+      }
+    }
+    return premisV2Schema;
+  }
+
   private static class RodaErrorHandler extends DefaultHandler {
     List<SAXParseException> errors;
 
@@ -381,6 +409,34 @@ public final class PremisV3Utils {
   public static ContentPayload createBaseFile(File originalFile, ModelService model,
     Collection<String> fixityAlgorithms) throws GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException, ValidationException, XmlException {
+    Binary binary = model.getStorage().getBinary(ModelUtils.getFileStoragePath(originalFile));
+
+    Map<String, String> contentDigest = binary.getContentDigest();
+    List<Fixity> fixities = new ArrayList<>();
+    if (contentDigest != null && !contentDigest.isEmpty() && contentDigest.keySet().containsAll(fixityAlgorithms)) {
+      // use binary content digest information (algorithm -> digest), e.g.
+      // computed when the binary was written
+      for (String algorithm : fixityAlgorithms) {
+        fixities.add(new Fixity(algorithm, contentDigest.get(algorithm), FIXITY_ORIGINATOR));
+      }
+    } else {
+      // if binary does not contain digest, create a new one
+      try {
+        fixities = calculateFixities(binary, fixityAlgorithms, FIXITY_ORIGINATOR);
+      } catch (IOException | NoSuchAlgorithmException e) {
+        LOGGER.warn("Could not calculate fixity for file " + originalFile);
+      }
+    }
+
+    return createBaseFile(originalFile, binary.getSizeInBytes(), fixities);
+  }
+
+  /**
+   * Creates the PREMIS object of a file whose fixities are already known, e.g.
+   * computed for many files at once.
+   */
+  public static ContentPayload createBaseFile(File originalFile, Long sizeInBytes, List<Fixity> fixities)
+    throws GenericException, ValidationException {
     ObjectDocument document = ObjectDocument.Factory.newInstance();
     gov.loc.premis.v3.File file = gov.loc.premis.v3.File.Factory.newInstance();
     file.addNewPreservationLevel()
@@ -396,33 +452,15 @@ public final class PremisV3Utils {
     FormatDesignationComplexType fdct = fct.addNewFormatDesignation();
     fdct.setFormatName(getStringPlusAuthority(""));
     fdct.setFormatVersion("");
-    Binary binary = model.getStorage().getBinary(ModelUtils.getFileStoragePath(originalFile));
 
-    if (binary.getContentDigest() != null && !binary.getContentDigest().isEmpty()) {
-      // use binary content digest information
-      for (Entry<String, String> entry : binary.getContentDigest().entrySet()) {
-        FixityComplexType premisFixity = occt.addNewFixity();
-        premisFixity.setMessageDigest(entry.getKey());
-        premisFixity.setMessageDigestAlgorithm(getStringPlusAuthority(entry.getValue()));
-        premisFixity.setMessageDigestOriginator(getStringPlusAuthority(FIXITY_ORIGINATOR));
-      }
-    } else {
-      // if binary does not contain digest, create a new one
-      try {
-        List<Fixity> fixities = calculateFixities(binary, fixityAlgorithms, FIXITY_ORIGINATOR);
-
-        for (Fixity fixity : fixities) {
-          FixityComplexType premisFixity = occt.addNewFixity();
-          premisFixity.setMessageDigest(fixity.getMessageDigest());
-          premisFixity.setMessageDigestAlgorithm(getStringPlusAuthority(fixity.getMessageDigestAlgorithm()));
-          premisFixity.setMessageDigestOriginator(getStringPlusAuthority(fixity.getMessageDigestOriginator()));
-        }
-      } catch (IOException | NoSuchAlgorithmException e) {
-        LOGGER.warn("Could not calculate fixity for file " + originalFile);
-      }
+    for (Fixity fixity : fixities) {
+      FixityComplexType premisFixity = occt.addNewFixity();
+      premisFixity.setMessageDigest(fixity.getMessageDigest());
+      premisFixity.setMessageDigestAlgorithm(getStringPlusAuthority(fixity.getMessageDigestAlgorithm()));
+      premisFixity.setMessageDigestOriginator(getStringPlusAuthority(fixity.getMessageDigestOriginator()));
     }
 
-    occt.setSize(binary.getSizeInBytes());
+    occt.setSize(sizeInBytes);
     // occt.addNewObjectCharacteristicsExtension().set("");
     file.addNewOriginalName().setStringValue(originalFile.getId());
     StorageComplexType sct = file.addNewStorage();
@@ -436,41 +474,18 @@ public final class PremisV3Utils {
   }
 
   public static List<Fixity> extractFixities(Binary premisFile) throws GenericException, XmlException, IOException {
-    List<Fixity> fixities = new ArrayList<>();
     try (InputStream inputStream = premisFile.getContent().createInputStream()) {
-      gov.loc.premis.v3.File f = binaryToFile(inputStream);
-      if (f.getObjectCharacteristicsArray() != null && f.getObjectCharacteristicsArray().length > 0) {
-        ObjectCharacteristicsComplexType occt = f.getObjectCharacteristicsArray(0);
-        if (occt.getFixityArray() != null && occt.getFixityArray().length > 0) {
-          for (FixityComplexType fct : occt.getFixityArray()) {
-            Fixity fix = new Fixity();
-            fix.setMessageDigest(fct.getMessageDigest());
-            fix.setMessageDigestAlgorithm(fct.getMessageDigestAlgorithm().getStringValue());
-            fix.setMessageDigestOriginator(fct.getMessageDigestOriginator().getStringValue());
-            fixities.add(fix);
-          }
-        }
-      }
+      return PremisV3FileSummary.read(inputStream).getFixities();
     }
-
-    return fixities;
   }
 
   public static String extractFixity(Binary premisFile, String fixityType)
     throws IOException, GenericException, XmlException {
     String fixityValue = null;
-    try (InputStream inputStream = premisFile.getContent().createInputStream()) {
-      gov.loc.premis.v3.File f = binaryToFile(inputStream);
-      if (f.getObjectCharacteristicsArray() != null && f.getObjectCharacteristicsArray().length > 0) {
-        ObjectCharacteristicsComplexType occt = f.getObjectCharacteristicsArray(0);
-        if (occt.getFixityArray() != null && occt.getFixityArray().length > 0) {
-          for (FixityComplexType fct : occt.getFixityArray()) {
-            if (fct.getMessageDigestAlgorithm().getStringValue().equalsIgnoreCase(fixityType)) {
-              fixityValue = fct.getMessageDigest();
-              break;
-            }
-          }
-        }
+    for (Fixity fixity : extractFixities(premisFile)) {
+      if (fixityType.equalsIgnoreCase(fixity.getMessageDigestAlgorithm())) {
+        fixityValue = fixity.getMessageDigest();
+        break;
       }
     }
 
@@ -515,13 +530,8 @@ public final class PremisV3Utils {
 
     try (InputStream inputStream = payload.createInputStream()) {
       representation = binaryToRepresentation(inputStream);
-
-      List<XmlValidationError> validationErrors = new ArrayList<>();
-      XmlOptions validationOptions = new XmlOptions();
-      validationOptions.setErrorListener(validationErrors);
-
-      if (validate && !representation.validate(validationOptions)) {
-        throw new ValidationException(MetadataUtils.xmlValidationErrorsToValidationReport(validationErrors));
+      if (validate) {
+        validate(representation);
       }
     } catch (XmlException | IOException e) {
       throw new GenericException("Error loading representation premis file", e);
@@ -533,20 +543,15 @@ public final class PremisV3Utils {
   public static gov.loc.premis.v3.File binaryToFile(ContentPayload payload, boolean validate)
     throws ValidationException, GenericException {
     gov.loc.premis.v3.File file;
-    List<XmlValidationError> validationErrors = new ArrayList<>();
 
     try (InputStream inputStream = payload.createInputStream()) {
       file = binaryToFile(inputStream);
-
-      XmlOptions validationOptions = new XmlOptions();
-      validationOptions.setErrorListener(validationErrors);
-
-      if (validate && !file.validate(validationOptions)) {
-        throw new ValidationException(MetadataUtils.xmlValidationErrorsToValidationReport(validationErrors));
+      if (validate) {
+        validate(file);
       }
     } catch (XmlException e) {
       ValidationException exception = new ValidationException(e);
-      exception.setReport(MetadataUtils.xmlValidationErrorsToValidationReport(validationErrors));
+      exception.setReport(MetadataUtils.xmlValidationErrorsToValidationReport(new ArrayList<>()));
       throw exception;
     } catch (IOException e) {
       throw new GenericException("Error loading representation premis file", e);
@@ -555,6 +560,20 @@ public final class PremisV3Utils {
     return file;
   }
 
+  /**
+   * Validates the object, creating the validation options (which hold the list
+   * of errors) only when validation is asked for.
+   */
+  private static void validate(XmlObject xmlObject) throws ValidationException {
+    List<XmlValidationError> validationErrors = new ArrayList<>();
+    XmlOptions validationOptions = new XmlOptions();
+    validationOptions.setErrorListener(validationErrors);
+
+    if (!xmlObject.validate(validationOptions)) {
+      throw new ValidationException(MetadataUtils.xmlValidationErrorsToValidationReport(validationErrors));
+    }
+  }
+
   public static ContentPayload fileToBinary(gov.loc.premis.v3.File file) throws GenericException, ValidationException {
     ObjectDocument d = ObjectDocument.Factory.newInstance();
     d.setObject(file);
@@ -574,13 +593,8 @@ public final class PremisV3Utils {
 
     try (InputStream inputStream = payload.createInputStream()) {
       event = binaryToEvent(inputStream);
-
-      List<XmlValidationError> validationErrors = new ArrayList<>();
-      XmlOptions validationOptions = new XmlOptions();
-      validationOptions.setErrorListener(validationErrors);
-
-      if (validate && !event.validate(validationOptions)) {
-        throw new ValidationException(MetadataUtils.xmlValidationErrorsToValidationReport(validationErrors));
+      if (validate) {
+        validate(event);
       }
     } catch (XmlException | IOException e) {
       throw new GenericException("Error loading representation premis file", e);
@@ -595,13 +609,8 @@ public final class PremisV3Utils {
 
     try (InputStream inputStream = payload.createInputStream()) {
       agent = binaryToAgent(inputStream);
-
-      List<XmlValidationError> validationErrors = new ArrayList<>();
-      XmlOptions validationOptions = new XmlOptions();
-      validationOptions.setErrorListener(validationErrors);
-
-      if (validate && !agent.validate(validationOptions)) {
-        throw new ValidationException(MetadataUtils.xmlValidationErrorsToValidationReport(validationErrors));
+      if (validate) {
+        validate(agent);
       }
     } catch (XmlException | IOException e) {
       throw new GenericException("Error loading representation premis file", e);
@@ -614,75 +623,67 @@ public final class PremisV3Utils {
     SolrInputDocument doc = new SolrInputDocument();
 
     try (InputStream inputStream = premisBinary.getContent().createInputStream()) {
-      gov.loc.premis.v3.File premisFile = binaryToFile(inputStream);
+      PremisV3FileSummary premisFile = PremisV3FileSummary.read(inputStream);
       if (premisFile.getOriginalName() != null) {
-        doc.setField(RodaConstants.FILE_ORIGINALNAME, premisFile.getOriginalName().getStringValue());
+        doc.setField(RodaConstants.FILE_ORIGINALNAME, premisFile.getOriginalName());
         // TODO extension
       }
 
-      if (premisFile.getObjectCharacteristicsArray() != null && premisFile.getObjectCharacteristicsArray().length > 0) {
-        ObjectCharacteristicsComplexType occt = premisFile.getObjectCharacteristicsArray(0);
-        doc.setField(RodaConstants.FILE_SIZE, occt.getSize());
-        if (occt.getFixityArray() != null && occt.getFixityArray().length > 0) {
+      if (premisFile.hasObjectCharacteristics()) {
+        doc.setField(RodaConstants.FILE_SIZE, premisFile.getSize());
+        if (!premisFile.getFixities().isEmpty()) {
           List<String> hashes = new ArrayList<>();
-          for (FixityComplexType fct : occt.getFixityArray()) {
+          for (Fixity fixity : premisFile.getFixities()) {
             StringBuilder fixityPrint = new StringBuilder();
-            fixityPrint.append(fct.getMessageDigest());
+            fixityPrint.append(fixity.getMessageDigest());
             fixityPrint.append(" (");
-            fixityPrint.append(fct.getMessageDigestAlgorithm().getStringValue());
-            if (StringUtils.isNotBlank(fct.getMessageDigestOriginator().getStringValue())) {
+            fixityPrint.append(fixity.getMessageDigestAlgorithm());
+            if (StringUtils.isNotBlank(fixity.getMessageDigestOriginator())) {
               fixityPrint.append(", "); //
-              fixityPrint.append(fct.getMessageDigestOriginator().getStringValue());
+              fixityPrint.append(fixity.getMessageDigestOriginator());
             }
             fixityPrint.append(")");
             hashes.add(fixityPrint.toString());
           }
           doc.addField(RodaConstants.FILE_HASH, hashes);
         }
-        if (occt.getFormatArray() != null && occt.getFormatArray().length > 0) {
-          FormatComplexType fct = occt.getFormatArray(0);
-          if (fct.getFormatDesignation() != null) {
-            String format = fct.getFormatDesignation().getFormatName().getStringValue();
-            String formatVersion = fct.getFormatDesignation().getFormatVersion();
-            String formatDesignation = "";
-
-            if (StringUtils.isNotBlank(format)) {
-              doc.addField(RodaConstants.FILE_FILEFORMAT, format);
-              formatDesignation += format;
-            }
-            if (StringUtils.isNotBlank(formatVersion)) {
-              doc.addField(RodaConstants.FILE_FORMAT_VERSION, formatVersion);
-              formatDesignation += " " + formatVersion;
-            }
-            if (StringUtils.isNotBlank(formatDesignation)) {
-              doc.addField(RodaConstants.FILE_FORMAT_DESIGNATION, formatDesignation);
-            }
+        if (premisFile.hasFormat()) {
+          String format = premisFile.getFormatName();
+          String formatVersion = premisFile.getFormatVersion();
+          String formatDesignation = "";
+
+          if (StringUtils.isNotBlank(format)) {
+            doc.addField(RodaConstants.FILE_FILEFORMAT, format);
+            formatDesignation += format;
+          }
+          if (StringUtils.isNotBlank(formatVersion)) {
+            doc.addField(RodaConstants.FILE_FORMAT_VERSION, formatVersion);
+            formatDesignation += " " + formatVersion;
+          }
+          if (StringUtils.isNotBlank(formatDesignation)) {
+            doc.addField(RodaConstants.FILE_FORMAT_DESIGNATION, formatDesignation);
           }
 
-          FormatRegistryComplexType pronomRegistry = getFormatRegistry(premisFile,
-            RodaConstants.PRESERVATION_REGISTRY_PRONOM);
-          if (pronomRegistry != null && pronomRegistry.getFormatRegistryKey() != null) {
-            doc.addField(RodaConstants.FILE_PRONOM, pronomRegistry.getFormatRegistryKey().getStringValue());
+          String pronom = premisFile.getFormatRegistryKey(RodaConstants.PRESERVATION_REGISTRY_PRONOM);
+          if (pronom != null) {
+            doc.addField(RodaConstants.FILE_PRONOM, pronom);
           }
-          FormatRegistryComplexType mimeRegistry = getFormatRegistry(premisFile,
-            RodaConstants.PRESERVATION_REGISTRY_MIME);
-          if (mimeRegistry != null && mimeRegistry.getFormatRegistryKey() != null) {
-            doc.addField(RodaConstants.FILE_FORMAT_MIMETYPE, mimeRegistry.getFormatRegistryKey().getStringValue());
+          String mimetype = premisFile.getFormatRegistryKey(RodaConstants.PRESERVATION_REGISTRY_MIME);
+          if (mimetype != null) {
+            doc.addField(RodaConstants.FILE_FORMAT_MIMETYPE, mimetype);
           }
           // TODO extension
         }
-        if (occt.getCreatingApplicationArray() != null && occt.getCreatingApplicationArray().length > 0) {
-          CreatingApplicationComplexType cact = occt.getCreatingApplicationArray(0);
-          if (cact.getCreatingApplicationName() != null) {
-            doc.addField(RodaConstants.FILE_CREATING_APPLICATION_NAME,
-              cact.getCreatingApplicationName().getStringValue());
+        if (premisFile.hasCreatingApplication()) {
+          if (premisFile.getCreatingApplicationName() != null) {
+            doc.addField(RodaConstants.FILE_CREATING_APPLICATION_NAME, premisFile.getCreatingApplicationName());
           }
-          doc.addField(RodaConstants.FILE_CREATING_APPLICATION_VERSION, cact.getCreatingApplicationVersion());
-          doc.addField(RodaConstants.FILE_DATE_CREATED_BY_APPLICATION, cact.getDateCreatedByApplication());
+          doc.addField(RodaConstants.FILE_CREATING_APPLICATION_VERSION, premisFile.getCreatingApplicationVersion());
+          doc.addField(RodaConstants.FILE_DATE_CREATED_BY_APPLICATION, premisFile.getDateCreatedByApplication());
         }
       }
 
-    } catch (XmlException | IOException e) {
+    } catch (IOException e) {
       LOGGER.error("Error updating Solr document", e);
     }
 
@@ -7,18 +7,10 @@
  */
 package org.roda.core.common.monitor;
 
-import java.io.IOException;
-import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
-import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayDeque;
 import java.util.Date;
-import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
 
 import org.roda.core.RodaCoreFactory;
@@ -29,6 +21,7 @@ import org.roda.core.data.v2.index.filter.NotSimpleFilterParameter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.TransferredResource;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.SolrBatchIndexer;
 import org.roda.core.index.utils.SolrUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,7 +47,6 @@ public class ReindexTransferredResourcesRunnable implements Runnable {
     RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(folderRelativePath, true);
 
     try {
-      EnumSet<FileVisitOption> opts = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
       Path path;
       if (folderRelativePath.isPresent()) {
         path = basePath.resolve(Paths.get(folderRelativePath.get()));
@@ -63,58 +55,13 @@ public class ReindexTransferredResourcesRunnable implements Runnable {
       }
 
       LOGGER.info("Start indexing transferred resources {}", path);
-      Files.walkFileTree(path, opts, Integer.MAX_VALUE, new FileVisitor<Path>() {
-
-        ArrayDeque<BasicFileAttributes> actualDirectoryAttributesStack = new ArrayDeque<>();
-        ArrayDeque<Long> fileSizeStack = new ArrayDeque<>();
-
-        @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-          actualDirectoryAttributesStack.push(attrs);
-          fileSizeStack.push(0L);
-          return FileVisitResult.CONTINUE;
-        }
-
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-          try {
-            long size = Files.size(file);
-            long actualSize = fileSizeStack.pop();
-            fileSizeStack.push(actualSize + size);
-            TransferredResource resource = TransferredResourcesScanner.createTransferredResource(file, attrs, size,
-              basePath, lastScanDate);
-            index.create(TransferredResource.class, resource);
-          } catch (NoSuchFileException e) {
-            // can be a broken symlink (do nothing)
-          }
-
-          return FileVisitResult.CONTINUE;
-        }
-
-        @Override
-        public FileVisitResult visitFileFailed(Path file, IOException exc) {
-          return FileVisitResult.CONTINUE;
-        }
-
-        @Override
-        public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
-          if (!dir.equals(basePath)) {
-            BasicFileAttributes actualDirectoryAttributes = actualDirectoryAttributesStack.pop();
-            long fileSize = fileSizeStack.pop();
-            TransferredResource resource = TransferredResourcesScanner.createTransferredResource(dir,
-              actualDirectoryAttributes, fileSize, basePath, lastScanDate);
-
-            if (!fileSizeStack.isEmpty()) {
-              long actualSize = fileSizeStack.pop();
-              fileSizeStack.push(actualSize + fileSize);
-            }
-
-            index.create(TransferredResource.class, resource);
-          }
-
-          return FileVisitResult.CONTINUE;
-        }
-      });
+      SolrBatchIndexer<ReindexTransferredResourcesRunnable> batch = new SolrBatchIndexer<>(index.getSolrClient(),
+        this);
+      TransferredResourcesScan.scan(path, basePath, lastScanDate, batch, null);
+      List<Exception> exceptions = batch.flush().getExceptions();
+      if (!exceptions.isEmpty()) {
+        LOGGER.error("{} transferred resources could not be indexed", exceptions.size(), exceptions.get(0));
+      }
 
       index.commit(TransferredResource.class);
 
@@ -134,7 +81,7 @@ public class ReindexTransferredResourcesRunnable implements Runnable {
       LOGGER.info("End indexing Transferred Resources. Time elapsed: {} seconds",
         (System.currentTimeMillis() - start) / 1000);
       RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(folderRelativePath, false);
-    } catch (IOException | GenericException | RuntimeException e) {
+    } catch (GenericException | RuntimeException e) {
       LOGGER.error("Error reindexing Transferred Resources", e);
     }
   }
@@ -0,0 +1,413 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
+import org.roda.core.storage.fs.ContentDigestEngine;
+import org.roda.core.storage.fs.ContentDigestSidecar;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Assembles transferred resource files uploaded in chunks.
+ *
+ * <p>
+ * Each upload is kept in its own folder (outside the transferred resources
+ * folder, so that it is not scanned nor indexed) until all its chunks are
+ * received. Chunks are written directly at their position in the file, so
+ * they may be uploaded concurrently, in any order, and again after a failure.
+ * A received chunk is only marked as such after being forced to disk, so
+ * uploads can be resumed after a restart, and is never written again.
+ * </p>
+ *
+ * <p>
+ * Content digests are computed while the upload is assembled, over the chunks
+ * received so far from the start of the file (which are still in the page
+ * cache), and are kept next to the assembled file so that they do not need to
+ * be computed again (see {@link #retrieveContentDigest(Path, Path)}).
+ * </p>
+ */
+public class TransferredResourceUploads {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourceUploads.class);
+
+  private static final String UPLOAD_FILE = "upload.json";
+  private static final String DATA_FILE = "data";
+  private static final String CHUNKS_FOLDER = "chunks";
+  private static final String DIGESTS_FOLDER = "digests";
+  private static final int BUFFER_SIZE = 1048576;
+
+  private final Path uploadsPath;
+  private final Path digestsPath;
+  private Collection<String> contentDigestAlgorithms = Collections.emptyList();
+  private long expirationInMillis = 24L * 60 * 60 * 1000;
+  private int maxNumberOfChunks = 100000;
+
+  // digests of the chunks received in order, per upload
+  private final Map<String, UploadDigests> digests = new ConcurrentHashMap<>();
+  // chunks being written, as upload id and chunk index
+  private final Set<String> chunksBeingReceived = ConcurrentHashMap.newKeySet();
+
+  public TransferredResourceUploads(Path uploadsPath) {
+    this.uploadsPath = uploadsPath;
+    this.digestsPath = uploadsPath.resolve(DIGESTS_FOLDER);
+  }
+
+  public void setContentDigestAlgorithms(Collection<String> contentDigestAlgorithms) {
+    this.contentDigestAlgorithms = new ArrayList<>(contentDigestAlgorithms);
+  }
+
+  public void setExpirationInMillis(long expirationInMillis) {
+    this.expirationInMillis = expirationInMillis;
+  }
+
+  public void setMaxNumberOfChunks(int maxNumberOfChunks) {
+    this.maxNumberOfChunks = maxNumberOfChunks;
+  }
+
+  public TransferredResourceUpload startUpload(String parentUUID, String fileName, long size, long chunkSize)
+    throws RequestNotValidException, GenericException {
+    if (fileName == null || fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\")
+      || "..".equals(fileName)) {
+      throw new RequestNotValidException("Invalid file name: " + fileName);
+    }
+    if (size < 0 || chunkSize <= 0) {
+      throw new RequestNotValidException("Invalid upload size or chunk size: " + size + ", " + chunkSize);
+    }
+    // computed without overflowing, as size and chunk size may be as large as
+    // requested
+    long numberOfChunks = size / chunkSize + (size % chunkSize == 0 ? 0 : 1);
+    if (numberOfChunks > maxNumberOfChunks) {
+      throw new RequestNotValidException("Upload of " + size + " bytes in chunks of " + chunkSize + " bytes has "
+        + numberOfChunks + " chunks, more than the maximum of " + maxNumberOfChunks);
+    }
+
+    deleteExpiredUploads();
+
+    TransferredResourceUpload upload = new TransferredResourceUpload(IdUtils.createUUID(), parentUUID, fileName, size,
+      chunkSize, new Date());
+    Path uploadPath = uploadsPath.resolve(upload.getId());
+    try {
+      Files.createDirectories(uploadPath.resolve(CHUNKS_FOLDER));
+      Files.createFile(uploadPath.resolve(DATA_FILE));
+      JsonUtils.writeObjectToFile(upload, uploadPath.resolve(UPLOAD_FILE));
+    } catch (IOException e) {
+      FSUtils.deletePathQuietly(uploadPath);
+      throw new GenericException("Could not start upload of " + fileName, e);
+    }
+    return upload;
+  }
+
+  public TransferredResourceUpload retrieveUpload(String uploadId) throws NotFoundException, GenericException {
+    Path uploadPath = getUploadPath(uploadId);
+    TransferredResourceUpload upload = JsonUtils.readObjectFromFile(uploadPath.resolve(UPLOAD_FILE),
+      TransferredResourceUpload.class);
+
+    List<Integer> receivedChunks = new ArrayList<>();
+    try (DirectoryStream<Path> chunks = Files.newDirectoryStream(uploadPath.resolve(CHUNKS_FOLDER))) {
+      for (Path chunk : chunks) {
+        receivedChunks.add(Integer.valueOf(chunk.getFileName().toString()));
+      }
+    } catch (IOException | NumberFormatException e) {
+      throw new GenericException("Could not list received chunks of upload " + uploadId, e);
+    }
+    Collections.sort(receivedChunks);
+    upload.setReceivedChunks(receivedChunks);
+
+    UploadDigests uploadDigests = digests.get(uploadId);
+    if (uploadDigests != null) {
+      upload.setContentDigest(uploadDigests.getResult());
+    }
+    return upload;
+  }
+
+  /**
+   * Writes a chunk of an upload. The chunk must have exactly the expected
+   * number of bytes. A chunk that was already received is not written again,
+   * as it may already have been digested, so sending it again has no effect.
+   */
+  public TransferredResourceUpload uploadChunk(String uploadId, int chunkIndex, InputStream inputStream)
+    throws NotFoundException, RequestNotValidException, GenericException {
+    TransferredResourceUpload upload = retrieveUpload(uploadId);
+    if (chunkIndex < 0 || chunkIndex >= upload.getNumberOfChunks()) {
+      throw new RequestNotValidException("Invalid chunk " + chunkIndex + " of upload " + uploadId);
+    }
+
+    Path uploadPath = getUploadPath(uploadId);
+    Path chunkPath = uploadPath.resolve(CHUNKS_FOLDER).resolve(Integer.toString(chunkIndex));
+    if (upload.getReceivedChunks().contains(chunkIndex)) {
+      LOGGER.debug("Chunk {} of upload {} was already received, ignoring it", chunkIndex, uploadId);
+    } else {
+      String chunkId = uploadId + "/" + chunkIndex;
+      if (!chunksBeingReceived.add(chunkId)) {
+        throw new RequestNotValidException("Chunk " + chunkIndex + " of upload " + uploadId + " is being received");
+      }
+      try {
+        // it may have been received after the upload was retrieved
+        if (!FSUtils.exists(chunkPath)) {
+          writeChunk(uploadPath, upload, chunkIndex, inputStream);
+          Files.createFile(chunkPath);
+        }
+      } catch (IOException e) {
+        throw new GenericException("Could not write chunk " + chunkIndex + " of upload " + uploadId, e);
+      } finally {
+        chunksBeingReceived.remove(chunkId);
+      }
+    }
+
+    upload = retrieveUpload(uploadId);
+    advanceDigests(uploadId, upload);
+    upload.setContentDigest(digests.get(uploadId).getResult());
+    return upload;
+  }
+
+  private void writeChunk(Path uploadPath, TransferredResourceUpload upload, int chunkIndex, InputStream inputStream)
+    throws IOException, RequestNotValidException {
+    long position = chunkIndex * upload.getChunkSize();
+    long expected = Math.min(upload.getChunkSize(), upload.getSize() - position);
+    long written = 0;
+    try (FileChannel channel = FileChannel.open(uploadPath.resolve(DATA_FILE), StandardOpenOption.WRITE);
+      ReadableByteChannel in = Channels.newChannel(inputStream)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      while (in.read(buffer) != -1) {
+        if (written + buffer.position() > expected) {
+          throw new RequestNotValidException(
+            "Chunk " + chunkIndex + " of upload " + upload.getId() + " has more than " + expected + " bytes");
+        }
+        if (!buffer.hasRemaining()) {
+          written += writeAt(channel, buffer, position + written);
+        }
+      }
+      written += writeAt(channel, buffer, position + written);
+
+      if (written != expected) {
+        throw new RequestNotValidException("Chunk " + chunkIndex + " of upload " + upload.getId() + " has " + written
+          + " bytes instead of " + expected);
+      }
+      channel.force(false);
+    }
+  }
+
+  /**
+   * Moves the assembled file of a complete upload to the target path and
+   * removes the upload.
+   */
+  public Map<String, String> completeUpload(String uploadId, Path basePath, Path target)
+    throws NotFoundException, RequestNotValidException, GenericException, AlreadyExistsException {
+    TransferredResourceUpload upload = retrieveUpload(uploadId);
+    if (!upload.isComplete()) {
+      throw new RequestNotValidException("Upload " + uploadId + " is missing "
+        + (upload.getNumberOfChunks() - upload.getReceivedChunks().size()) + " chunks");
+    }
+
+    Path uploadPath = getUploadPath(uploadId);
+    Path data = uploadPath.resolve(DATA_FILE);
+    advanceDigests(uploadId, upload);
+    Map<String, String> contentDigest = digests.get(uploadId).getResult();
+    if (contentDigest == null) {
+      contentDigest = ContentDigestEngine.digest(data, contentDigestAlgorithms);
+    }
+
+    try {
+      Files.createDirectories(target.getParent());
+      Files.move(data, target);
+    } catch (FileAlreadyExistsException e) {
+      throw new AlreadyExistsException(target.toString());
+    } catch (IOException e) {
+      throw new GenericException("Could not complete upload " + uploadId, e);
+    }
+
+    writeContentDigest(basePath, target, contentDigest);
+    deleteUpload(uploadId);
+    return contentDigest;
+  }
+
+  public void deleteUpload(String uploadId) throws NotFoundException {
+    FSUtils.deletePathQuietly(getUploadPath(uploadId));
+    digests.remove(uploadId);
+  }
+
+  /**
+   * @return the content digests of a file assembled from an upload, if it was
+   *         not changed since, or null otherwise
+   */
+  public Map<String, String> retrieveContentDigest(Path basePath, Path file) {
+    Path sidecarPath = digestsPath.resolve(basePath.relativize(file).toString() + FSUtils.METADATA_SUFFIX);
+    if (!FSUtils.exists(sidecarPath)) {
+      return null;
+    }
+    try {
+      ContentDigestSidecar sidecar = JsonUtils.readObjectFromFile(sidecarPath, ContentDigestSidecar.class);
+      if (sidecar.getSizeInBytes() == Files.size(file)
+        && sidecar.getLastModified() == Files.getLastModifiedTime(file).toMillis()) {
+        return sidecar.getDigests();
+      }
+    } catch (IOException | GenericException e) {
+      LOGGER.debug("Could not read content digests of {}", file, e);
+    }
+    return null;
+  }
+
+  private void writeContentDigest(Path basePath, Path file, Map<String, String> contentDigest) {
+    if (contentDigest.isEmpty()) {
+      return;
+    }
+    Path sidecarPath = digestsPath.resolve(basePath.relativize(file).toString() + FSUtils.METADATA_SUFFIX);
+    try {
+      Files.createDirectories(sidecarPath.getParent());
+      ContentDigestSidecar sidecar = new ContentDigestSidecar(Files.size(file),
+        Files.getLastModifiedTime(file).toMillis(), contentDigest);
+      JsonUtils.writeObjectToFile(sidecar, sidecarPath);
+    } catch (IOException | GenericException e) {
+      LOGGER.warn("Could not write content digests of {}", file, e);
+    }
+  }
+
+  private static long writeAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    buffer.flip();
+    long written = 0;
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer, position + written);
+    }
+    buffer.clear();
+    return written;
+  }
+
+  /**
+   * Digests the chunks received in order since the last call.
+   */
+  private void advanceDigests(String uploadId, TransferredResourceUpload upload)
+    throws GenericException, NotFoundException {
+    UploadDigests uploadDigests = digests.computeIfAbsent(uploadId, id -> new UploadDigests());
+    synchronized (uploadDigests) {
+      if (uploadDigests.messageDigests == null) {
+        uploadDigests.messageDigests = getMessageDigests(contentDigestAlgorithms);
+      }
+
+      Path data = getUploadPath(uploadId).resolve(DATA_FILE);
+      List<Integer> receivedChunks = upload.getReceivedChunks();
+      try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (uploadDigests.nextChunk < upload.getNumberOfChunks()
+          && receivedChunks.contains(uploadDigests.nextChunk)) {
+          long position = uploadDigests.nextChunk * upload.getChunkSize();
+          long end = Math.min(position + upload.getChunkSize(), upload.getSize());
+          while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+              throw new GenericException("Upload " + uploadId + " is shorter than expected");
+            }
+            buffer.flip();
+            for (MessageDigest messageDigest : uploadDigests.messageDigests) {
+              messageDigest.update(buffer.duplicate());
+            }
+            position += n;
+          }
+          uploadDigests.nextChunk++;
+        }
+      } catch (IOException e) {
+        throw new GenericException("Could not compute content digest of upload " + uploadId, e);
+      }
+
+      if (uploadDigests.nextChunk == upload.getNumberOfChunks() && uploadDigests.result == null) {
+        Map<String, String> result = new LinkedHashMap<>();
+        int i = 0;
+        for (String algorithm : contentDigestAlgorithms) {
+          result.put(algorithm, BaseEncoding.base16().encode(uploadDigests.messageDigests.get(i++).digest()));
+        }
+        uploadDigests.result = result;
+      }
+    }
+  }
+
+  private static List<MessageDigest> getMessageDigests(Collection<String> algorithms) throws GenericException {
+    List<MessageDigest> ret = new ArrayList<>();
+    for (String algorithm : algorithms) {
+      try {
+        ret.add(MessageDigest.getInstance(algorithm));
+      } catch (NoSuchAlgorithmException e) {
+        throw new GenericException("Cannot compute content digest using algorithm " + algorithm, e);
+      }
+    }
+    return ret;
+  }
+
+  private Path getUploadPath(String uploadId) throws NotFoundException {
+    if (uploadId == null || DIGESTS_FOLDER.equals(uploadId)) {
+      throw new NotFoundException("Upload not found: " + uploadId);
+    }
+    Path uploadPath = uploadsPath.resolve(uploadId).normalize();
+    if (!uploadsPath.normalize().equals(uploadPath.getParent()) || !FSUtils.exists(uploadPath.resolve(UPLOAD_FILE))) {
+      throw new NotFoundException("Upload not found: " + uploadId);
+    }
+    return uploadPath;
+  }
+
+  private void deleteExpiredUploads() {
+    if (!FSUtils.exists(uploadsPath)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    try (DirectoryStream<Path> uploads = Files.newDirectoryStream(uploadsPath)) {
+      for (Path uploadPath : uploads) {
+        Path chunksPath = uploadPath.resolve(CHUNKS_FOLDER);
+        if (FSUtils.exists(chunksPath)
+          && now - Files.getLastModifiedTime(chunksPath).toMillis() > expirationInMillis) {
+          LOGGER.info("Deleting expired upload {}", uploadPath.getFileName());
+          FSUtils.deletePathQuietly(uploadPath);
+          digests.remove(uploadPath.getFileName().toString());
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Could not delete expired uploads", e);
+    }
+  }
+
+  private static final class UploadDigests {
+    private List<MessageDigest> messageDigests = null;
+    private int nextChunk = 0;
+    private Map<String, String> result = null;
+
+    private synchronized Map<String, String> getResult() {
+      return result;
+    }
+  }
+}
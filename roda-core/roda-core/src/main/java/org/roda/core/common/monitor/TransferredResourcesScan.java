@@ -0,0 +1,233 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.index.IndexingAdditionalInfo;
+import org.roda.core.index.utils.SolrBatchIndexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans a folder of transferred resources, creating the index documents of
+ * all the files and directories under it.
+ *
+ * <p>
+ * Each directory is listed by its own fork/join task, so that sub-directories
+ * are scanned in parallel, and its size is the sum of the sizes of its files
+ * and of the sizes returned by the tasks of its sub-directories. Documents are
+ * sent to a {@link SolrBatchIndexer} as they are created.
+ * </p>
+ */
+public final class TransferredResourcesScan {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesScan.class);
+
+  private static int PARALLELISM = Runtime.getRuntime().availableProcessors();
+  private static ForkJoinPool POOL;
+
+  /**
+   * Notified of each directory scanned, from the threads of the scan.
+   */
+  @FunctionalInterface
+  public interface DirectoryListener {
+    /**
+     * Called before the directory is listed, e.g. to start watching it so that
+     * no change made while it is scanned is missed.
+     */
+    default void onDirectoryStarted(Path dir) {
+      // do nothing
+    }
+
+    /**
+     * Called once the directory and everything under it is scanned.
+     *
+     * @param ownSize
+     *          the sum of the sizes of the files directly inside the directory
+     * @param size
+     *          the sum of the sizes of all files under the directory
+     */
+    void onDirectory(Path dir, long ownSize, long size);
+  }
+
+  private TransferredResourcesScan() {
+    // do nothing
+  }
+
+  /**
+   * Scans a directory (following links) and everything under it.
+   *
+   * @param dir
+   *          the directory to scan, which is also indexed unless it is the
+   *          base path
+   * @param basePath
+   *          the transferred resources folder
+   * @param listener
+   *          notified of each directory scanned, may be null
+   * @return the sum of the sizes of all files under the directory
+   */
+  public static <S> long scan(Path dir, Path basePath, Date scanDate, SolrBatchIndexer<S> batch,
+    DirectoryListener listener) throws GenericException {
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+    } catch (IOException e) {
+      throw new GenericException("Could not scan transferred resources in " + dir, e);
+    }
+
+    ScanContext<S> context = new ScanContext<>(basePath, scanDate, batch, listener);
+    return getPool().invoke(new DirectoryTask<>(context, dir, attrs, null));
+  }
+
+  private static synchronized ForkJoinPool getPool() {
+    if (POOL == null) {
+      POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("transferred-resources-scan-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+      }, null, false);
+    }
+    return POOL;
+  }
+
+  public static synchronized void injectParallelism(int parallelism) {
+    if (parallelism > 0 && parallelism != PARALLELISM) {
+      PARALLELISM = parallelism;
+      if (POOL != null) {
+        POOL.shutdown();
+        POOL = null;
+      }
+    }
+  }
+
+  private static class ScanContext<S> {
+    private final Path basePath;
+    private final Date scanDate;
+    private final SolrBatchIndexer<S> batch;
+    private final DirectoryListener listener;
+
+    private ScanContext(Path basePath, Date scanDate, SolrBatchIndexer<S> batch, DirectoryListener listener) {
+      this.basePath = basePath;
+      this.scanDate = scanDate;
+      this.batch = batch;
+      this.listener = listener;
+    }
+
+    private void index(Path path, BasicFileAttributes attrs, long size) {
+      batch.create(TransferredResource.class,
+        TransferredResourcesScanner.createTransferredResource(path, attrs, size, basePath, scanDate),
+        IndexingAdditionalInfo.empty());
+    }
+  }
+
+  /**
+   * Directories being scanned from the root to the current one, to detect
+   * cycles caused by links.
+   */
+  private static class Ancestor {
+    private final Object fileKey;
+    private final Ancestor parent;
+
+    private Ancestor(Object fileKey, Ancestor parent) {
+      this.fileKey = fileKey;
+      this.parent = parent;
+    }
+
+    private boolean contains(Object key) {
+      for (Ancestor a = this; a != null; a = a.parent) {
+        if (Objects.equals(a.fileKey, key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class DirectoryTask<S> extends RecursiveTask<Long> {
+    private static final long serialVersionUID = -4290402719462718163L;
+
+    private final transient ScanContext<S> context;
+    private final transient Path dir;
+    private final transient BasicFileAttributes attrs;
+    private final transient Ancestor ancestors;
+
+    private DirectoryTask(ScanContext<S> context, Path dir, BasicFileAttributes attrs, Ancestor parent) {
+      this.context = context;
+      this.dir = dir;
+      this.attrs = attrs;
+      this.ancestors = new Ancestor(attrs.fileKey(), parent);
+    }
+
+    @Override
+    protected Long compute() {
+      long ownSize = 0;
+      List<DirectoryTask<S>> subTasks = new ArrayList<>();
+      if (context.listener != null) {
+        context.listener.onDirectoryStarted(dir);
+      }
+
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+        for (Path entry : stream) {
+          BasicFileAttributes entryAttrs;
+          try {
+            entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class);
+          } catch (NoSuchFileException e) {
+            // can be a broken symlink (do nothing)
+            continue;
+          } catch (IOException e) {
+            LOGGER.debug("Could not read attributes of {}", entry, e);
+            continue;
+          }
+
+          if (entryAttrs.isDirectory()) {
+            if (entryAttrs.fileKey() != null && ancestors.contains(entryAttrs.fileKey())) {
+              LOGGER.warn("Not scanning {} as it links to one of its ancestors", entry);
+              continue;
+            }
+            DirectoryTask<S> subTask = new DirectoryTask<>(context, entry, entryAttrs, ancestors);
+            subTask.fork();
+            subTasks.add(subTask);
+          } else {
+            ownSize += entryAttrs.size();
+            context.index(entry, entryAttrs, entryAttrs.size());
+          }
+        }
+      } catch (IOException e) {
+        LOGGER.debug("Could not list {}", dir, e);
+      }
+
+      long size = ownSize;
+      for (DirectoryTask<S> subTask : subTasks) {
+        size += subTask.join();
+      }
+
+      if (!dir.equals(context.basePath)) {
+        context.index(dir, attrs, size);
+      }
+      if (context.listener != null) {
+        context.listener.onDirectory(dir, ownSize, size);
+      }
+      return size;
+    }
+  }
+}
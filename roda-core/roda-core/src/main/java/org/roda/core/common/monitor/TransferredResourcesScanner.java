@@ -41,6 +41,7 @@ import org.roda.core.data.v2.common.OptionalWithCause;
 import org.roda.core.data.v2.index.filter.Filter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
 import org.roda.core.index.IndexService;
 import org.roda.core.model.LiteRODAObjectFactory;
 import org.roda.core.storage.ContentPayload;
@@ -54,12 +55,17 @@ public class TransferredResourcesScanner {
   private static final List<String> fieldsToReturn = Arrays.asList(RodaConstants.INDEX_UUID,
     RodaConstants.TRANSFERRED_RESOURCE_RELATIVEPATH);
 
+  public static final String UPLOADS_SUFFIX = "-uploads";
+
   private final Path basePath;
   private IndexService index;
+  private final TransferredResourceUploads uploads;
+  private TransferredResourcesWatcher watcher = null;
 
   public TransferredResourcesScanner(Path basePath, IndexService index) {
     this.basePath = basePath;
     this.index = index;
+    this.uploads = new TransferredResourceUploads(basePath.resolveSibling(basePath.getFileName() + UPLOADS_SUFFIX));
   }
 
   public void commit() throws GenericException {
@@ -70,6 +76,29 @@ public class TransferredResourcesScanner {
     return basePath;
   }
 
+  public TransferredResourceUploads getUploads() {
+    return uploads;
+  }
+
+  /**
+   * Starts keeping the index up to date with the changes made to the
+   * transferred resources folder (see {@link TransferredResourcesWatcher}),
+   * which begins with a full scan.
+   */
+  public synchronized void startWatching(long delayInMillis) throws GenericException {
+    if (watcher == null) {
+      watcher = new TransferredResourcesWatcher(basePath, index, delayInMillis);
+      watcher.start();
+    }
+  }
+
+  public synchronized void stopWatching() {
+    if (watcher != null) {
+      watcher.stop();
+      watcher = null;
+    }
+  }
+
   public TransferredResource createFolder(String parentUUID, String folderName)
     throws GenericException, NotFoundException {
     Path parentPath;
@@ -94,14 +123,7 @@ public class TransferredResourcesScanner {
 
   public TransferredResource createFile(String parentUUID, String fileName, InputStream inputStream)
     throws GenericException, NotFoundException, AlreadyExistsException {
-    Path parentPath;
-    if (StringUtils.isNotBlank(parentUUID)) {
-      TransferredResource parent = index.retrieve(TransferredResource.class, parentUUID, fieldsToReturn);
-      parentPath = basePath.resolve(parent.getRelativePath());
-    } else {
-      parentPath = basePath;
-    }
-
+    Path parentPath = getParentPath(parentUUID);
     Path file = parentPath.resolve(fileName);
     try {
       try {
@@ -124,6 +146,57 @@ public class TransferredResourcesScanner {
     }
   }
 
+  private Path getParentPath(String parentUUID) throws GenericException, NotFoundException {
+    if (StringUtils.isNotBlank(parentUUID)) {
+      TransferredResource parent = index.retrieve(TransferredResource.class, parentUUID, fieldsToReturn);
+      return basePath.resolve(parent.getRelativePath());
+    } else {
+      return basePath;
+    }
+  }
+
+  /**
+   * Starts the upload of a file in chunks (see
+   * {@link TransferredResourceUploads}), to be created under the given parent
+   * once all chunks are uploaded.
+   */
+  public TransferredResourceUpload startUpload(String parentUUID, String fileName, long size, long chunkSize)
+    throws GenericException, NotFoundException, RequestNotValidException, AlreadyExistsException {
+    Path file = getParentPath(parentUUID).resolve(fileName);
+    if (FSUtils.exists(file)) {
+      throw new AlreadyExistsException(file.toString());
+    }
+    return uploads.startUpload(parentUUID, fileName, size, chunkSize);
+  }
+
+  /**
+   * Creates (and indexes) the file of an upload whose chunks were all uploaded.
+   */
+  public TransferredResource completeUpload(String uploadId)
+    throws GenericException, NotFoundException, RequestNotValidException, AlreadyExistsException {
+    TransferredResourceUpload upload = uploads.retrieveUpload(uploadId);
+    Path file = getParentPath(upload.getParentUUID()).resolve(upload.getName());
+    uploads.completeUpload(uploadId, basePath, file);
+
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+      TransferredResource resource = createTransferredResource(file, attrs, attrs.size(), basePath, new Date());
+      index.create(TransferredResource.class, resource);
+      return resource;
+    } catch (IOException e) {
+      throw new GenericException("Cannot create file", e);
+    }
+  }
+
+  /**
+   * @return the content digests of a transferred resource file, if they were
+   *         computed while uploading it and it did not change since, or null
+   *         otherwise
+   */
+  public Map<String, String> retrieveFileContentDigest(String path) {
+    return uploads.retrieveContentDigest(basePath, basePath.resolve(path));
+  }
+
   public InputStream retrieveFile(String path) throws NotFoundException, RequestNotValidException, GenericException {
     InputStream ret;
     Path p = basePath.resolve(path);
@@ -223,6 +296,15 @@ public class TransferredResourcesScanner {
 
   public void updateTransferredResources(Optional<String> folderRelativePath, boolean waitToFinish)
     throws IsStillUpdatingException, GenericException {
+    TransferredResourcesWatcher currentWatcher = watcher;
+    if (folderRelativePath.isPresent() && currentWatcher != null && currentWatcher.isRunning()) {
+      // the changes are already being indexed by the watcher
+      if (waitToFinish) {
+        currentWatcher.sync();
+      }
+      return;
+    }
+
     if (!RodaCoreFactory.getTransferredResourcesScannerUpdateStatus(folderRelativePath)) {
       if (index != null) {
         ReindexTransferredResourcesRunnable reindexRunnable = new ReindexTransferredResourcesRunnable(index, basePath,
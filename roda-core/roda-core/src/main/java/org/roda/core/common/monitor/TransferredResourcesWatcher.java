@@ -0,0 +1,479 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.NotSimpleFilterParameter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
+import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.index.IndexService;
+import org.roda.core.index.IndexingAdditionalInfo;
+import org.roda.core.index.utils.SolrBatchIndexer;
+import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the index of transferred resources up to date by watching the
+ * transferred resources folder for changes, instead of scanning it all again.
+ *
+ * <p>
+ * All directories are registered in a {@link WatchService} by an initial full
+ * scan, which also computes the size of each directory. Afterwards, only the
+ * directories where something changed are listed again: changed files are
+ * re-indexed, new directories are scanned, removed ones are deleted from the
+ * index and the size difference is added to the directory and to all its
+ * ancestors, which are re-indexed with their new size. Changes are gathered
+ * until no more arrive for a while and their documents are sent to the index in
+ * batches.
+ * </p>
+ *
+ * <p>
+ * If the watch service loses events (overflow), the whole folder is scanned
+ * again.
+ * </p>
+ */
+public class TransferredResourcesWatcher implements Runnable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourcesWatcher.class);
+
+  // maximum number of changed directories handled at once
+  private static final int MAX_CHANGED_DIRECTORIES = 10000;
+
+  private final Path basePath;
+  private final IndexService index;
+  private final long delayInMillis;
+
+  private WatchService watchService;
+  private Thread thread;
+  private volatile boolean running = false;
+  private volatile boolean changesLost = false;
+  private final SyncRequests syncRequests = new SyncRequests();
+
+  // the following are only changed by the watcher thread (and by the threads
+  // of its scans)
+  private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+  private final Map<Path, DirectorySize> sizes = new ConcurrentHashMap<>();
+  private volatile boolean registrationFailed = false;
+
+  /**
+   * @param delayInMillis
+   *          time without new changes after which the gathered changes are
+   *          indexed
+   */
+  public TransferredResourcesWatcher(Path basePath, IndexService index, long delayInMillis) {
+    this.basePath = basePath;
+    this.index = index;
+    this.delayInMillis = delayInMillis;
+  }
+
+  public synchronized void start() throws GenericException {
+    if (running) {
+      return;
+    }
+    try {
+      watchService = basePath.getFileSystem().newWatchService();
+    } catch (IOException e) {
+      throw new GenericException("Could not watch transferred resources folder " + basePath, e);
+    }
+    running = true;
+    thread = new Thread(this, "transferred-resources-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      LOGGER.warn("Error closing transferred resources watch service", e);
+    }
+    syncRequests.completeAll();
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Waits until the changes made so far are indexed.
+   */
+  public void sync() throws GenericException {
+    if (!running) {
+      return;
+    }
+    CompletableFuture<Void> request = new CompletableFuture<>();
+    syncRequests.add(request);
+    if (!running) {
+      // stopped meanwhile
+      syncRequests.completeAll();
+    }
+    try {
+      request.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while waiting for transferred resources to be indexed", e);
+    } catch (ExecutionException e) {
+      throw new GenericException("Error waiting for transferred resources to be indexed", e.getCause());
+    }
+  }
+
+  /**
+   * Makes the watcher scan the whole folder again in its next round, as when
+   * the watch service loses events.
+   */
+  void changesLost() {
+    changesLost = true;
+  }
+
+  @Override
+  public void run() {
+    try {
+      fullScan();
+
+      while (running) {
+        WatchKey key = watchService.poll(delayInMillis, TimeUnit.MILLISECONDS);
+        // changes made before a sync request are already queued in the watch
+        // service and are handled in this round
+        List<CompletableFuture<Void>> syncs = syncRequests.drain();
+        try {
+          Changes changes = new Changes();
+          while (key != null && changes.directories.size() < MAX_CHANGED_DIRECTORIES) {
+            collect(key, changes);
+            key = syncs.isEmpty() ? watchService.poll(delayInMillis, TimeUnit.MILLISECONDS) : watchService.poll();
+          }
+          if (key != null) {
+            collect(key, changes);
+          }
+
+          if (changesLost) {
+            changesLost = false;
+            changes.overflow = true;
+          }
+
+          if (changes.overflow) {
+            LOGGER.warn("Transferred resources changes were lost, scanning {} again", basePath);
+            fullScan();
+          } else if (!changes.directories.isEmpty()) {
+            update(changes);
+          }
+        } catch (ClosedWatchServiceException e) {
+          throw e;
+        } catch (GenericException | RuntimeException e) {
+          LOGGER.error("Error indexing transferred resources changes", e);
+        } finally {
+          syncs.forEach(s -> s.complete(null));
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // stopped
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (GenericException | RuntimeException e) {
+      LOGGER.error("Transferred resources watcher stopped because of an error", e);
+    } finally {
+      running = false;
+      syncRequests.completeAll();
+    }
+  }
+
+  private void collect(WatchKey key, Changes changes) {
+    Path dir = keys.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        changes.overflow = true;
+      } else if (dir != null) {
+        changes.directories.computeIfAbsent(dir, d -> new LinkedHashSet<>()).add(dir.resolve((Path) event.context()));
+      }
+    }
+    if (!key.reset()) {
+      // directory no longer exists
+      keys.remove(key);
+    }
+  }
+
+  /**
+   * Scans the whole transferred resources folder, registering all directories
+   * and indexing all resources, and deletes from the index the resources that
+   * no longer exist.
+   */
+  private void fullScan() throws GenericException {
+    long start = System.currentTimeMillis();
+    Date scanDate = new Date();
+    RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(Optional.empty(), true);
+    try {
+      keys.keySet().forEach(WatchKey::cancel);
+      keys.clear();
+      sizes.clear();
+
+      SolrBatchIndexer<TransferredResourcesWatcher> batch = new SolrBatchIndexer<>(index.getSolrClient(), this);
+      scan(basePath, scanDate, batch);
+      logErrors(batch.flush());
+      index.commit(TransferredResource.class);
+
+      index.delete(TransferredResource.class, new Filter(new NotSimpleFilterParameter(
+        RodaConstants.TRANSFERRED_RESOURCE_LAST_SCAN_DATE, SolrUtils.formatDateWithMillis(scanDate))));
+      index.commit(TransferredResource.class);
+      LOGGER.info("Scanned and indexed {} directories of transferred resources in {} seconds", sizes.size(),
+        (System.currentTimeMillis() - start) / 1000);
+    } finally {
+      RodaCoreFactory.setTransferredResourcesScannerUpdateStatus(Optional.empty(), false);
+    }
+  }
+
+  /**
+   * Registers and indexes a directory and everything under it.
+   *
+   * @return the size of the directory
+   */
+  private long scan(Path dir, Date scanDate, SolrBatchIndexer<TransferredResourcesWatcher> batch)
+    throws GenericException {
+    return TransferredResourcesScan.scan(dir, basePath, scanDate, batch,
+      new TransferredResourcesScan.DirectoryListener() {
+        @Override
+        public void onDirectoryStarted(Path d) {
+          // registered before it is listed, so that changes made meanwhile are
+          // not missed
+          register(d);
+        }
+
+        @Override
+        public void onDirectory(Path d, long ownSize, long size) {
+          sizes.put(d, new DirectorySize(ownSize, size));
+        }
+      });
+  }
+
+  private void register(Path dir) {
+    try {
+      keys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+        StandardWatchEventKinds.ENTRY_MODIFY), dir);
+    } catch (IOException e) {
+      if (!registrationFailed) {
+        // e.g. the maximum number of watches was reached
+        LOGGER.error("Could not watch {}, changes to some transferred resources will not be indexed", dir, e);
+        registrationFailed = true;
+      }
+    }
+  }
+
+  /**
+   * Indexes the changes of some directories and updates the size of those
+   * directories and of their ancestors.
+   */
+  private void update(Changes changes) throws GenericException {
+    Date scanDate = new Date();
+    SolrBatchIndexer<TransferredResourcesWatcher> batch = new SolrBatchIndexer<>(index.getSolrClient(), this);
+    Set<Path> resized = new HashSet<>();
+    List<String> deletedIds = new ArrayList<>();
+    List<Path> deletedDirs = new ArrayList<>();
+
+    // parents first, so that removed directories are no longer considered
+    List<Path> dirs = new ArrayList<>(changes.directories.keySet());
+    dirs.sort(Comparator.comparingInt(Path::getNameCount));
+
+    for (Path dir : dirs) {
+      DirectorySize size = sizes.get(dir);
+      if (size == null) {
+        // removed meanwhile, or not yet scanned
+        continue;
+      }
+
+      long delta = 0;
+      for (Path child : changes.directories.get(dir)) {
+        BasicFileAttributes attrs = readAttributes(child);
+        DirectorySize childSize = sizes.get(child);
+
+        if (childSize != null && (attrs == null || !attrs.isDirectory())) {
+          // directory removed
+          delta -= childSize.subtree;
+          deletedDirs.add(child);
+          deleteDirectory(child, deletedIds);
+        } else if (attrs == null) {
+          // file removed
+          deletedIds.add(IdUtils.getTransferredResourceUUID(basePath.relativize(child)));
+        }
+
+        if (attrs == null) {
+          continue;
+        } else if (attrs.isDirectory()) {
+          if (childSize == null) {
+            delta += scan(child, scanDate, batch);
+          }
+        } else {
+          batch.create(TransferredResource.class,
+            TransferredResourcesScanner.createTransferredResource(child, attrs, attrs.size(), basePath, scanDate),
+            IndexingAdditionalInfo.empty());
+        }
+      }
+
+      Long own = listOwnSize(dir);
+      if (own == null) {
+        continue;
+      }
+      delta += own - size.own;
+      size.own = own;
+
+      resized.add(dir);
+      if (delta != 0) {
+        for (Path ancestor = dir; ancestor != null && ancestor.startsWith(basePath); ancestor = ancestor.getParent()) {
+          DirectorySize ancestorSize = sizes.get(ancestor);
+          if (ancestorSize != null) {
+            ancestorSize.subtree += delta;
+            resized.add(ancestor);
+          }
+        }
+      }
+    }
+
+    if (!deletedDirs.isEmpty()) {
+      sizes.keySet().removeIf(p -> deletedDirs.stream().anyMatch(p::startsWith));
+      keys.values().removeIf(p -> deletedDirs.stream().anyMatch(p::startsWith));
+    }
+
+    for (Path dir : resized) {
+      DirectorySize size = sizes.get(dir);
+      BasicFileAttributes attrs = readAttributes(dir);
+      if (size != null && attrs != null && !dir.equals(basePath)) {
+        batch.create(TransferredResource.class,
+          TransferredResourcesScanner.createTransferredResource(dir, attrs, size.subtree, basePath, scanDate),
+          IndexingAdditionalInfo.empty());
+      }
+    }
+
+    logErrors(batch.flush());
+    if (!deletedIds.isEmpty()) {
+      try {
+        index.delete(TransferredResource.class, deletedIds);
+      } catch (RequestNotValidException e) {
+        LOGGER.error("Could not delete removed transferred resources from index", e);
+      }
+    }
+    index.commit(TransferredResource.class);
+    LOGGER.debug("Indexed changes of {} transferred resources directories", dirs.size());
+  }
+
+  private void deleteDirectory(Path dir, List<String> deletedIds) {
+    Path relative = basePath.relativize(dir);
+    index.delete(TransferredResource.class,
+      new Filter(new SimpleFilterParameter(RodaConstants.TRANSFERRED_RESOURCE_ANCESTORS, relative.toString())));
+    deletedIds.add(IdUtils.getTransferredResourceUUID(relative));
+  }
+
+  /**
+   * @return the sum of the sizes of the files directly inside the directory, or
+   *         null if it no longer exists
+   */
+  private Long listOwnSize(Path dir) {
+    long own = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path entry : stream) {
+        BasicFileAttributes attrs = readAttributes(entry);
+        if (attrs != null && !attrs.isDirectory()) {
+          own += attrs.size();
+        }
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return own;
+  }
+
+  private static BasicFileAttributes readAttributes(Path path) {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      LOGGER.debug("Could not read attributes of {}", path, e);
+      return null;
+    }
+  }
+
+  private static void logErrors(ReturnWithExceptions<Void, TransferredResourcesWatcher> ret) {
+    if (!ret.getExceptions().isEmpty()) {
+      LOGGER.error("{} transferred resources could not be indexed", ret.getExceptions().size(),
+        ret.getExceptions().get(0));
+    }
+  }
+
+  private static class DirectorySize {
+    // size of the files directly inside the directory
+    private long own;
+    // size of everything inside the directory
+    private long subtree;
+
+    private DirectorySize(long own, long subtree) {
+      this.own = own;
+      this.subtree = subtree;
+    }
+  }
+
+  private static class Changes {
+    private boolean overflow = false;
+    // changed directory -> changed entries
+    private final Map<Path, Set<Path>> directories = new HashMap<>();
+  }
+
+  private static class SyncRequests {
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> requests = new ConcurrentLinkedQueue<>();
+
+    private void add(CompletableFuture<Void> request) {
+      requests.add(request);
+    }
+
+    private List<CompletableFuture<Void>> drain() {
+      List<CompletableFuture<Void>> drained = new ArrayList<>();
+      CompletableFuture<Void> request;
+      while ((request = requests.poll()) != null) {
+        drained.add(request);
+      }
+      return drained;
+    }
+
+    private void completeAll() {
+      drain().forEach(r -> r.complete(null));
+    }
+  }
+}
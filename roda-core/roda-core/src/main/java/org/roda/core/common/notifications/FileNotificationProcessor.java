@@ -12,15 +12,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
 
-import org.roda.core.RodaCoreFactory;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.notifications.Notification;
 import org.roda.core.data.v2.notifications.Notification.NOTIFICATION_STATE;
 import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fs.FSUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,22 +55,23 @@ public class FileNotificationProcessor implements NotificationProcessor {
         Path trimmedDropPath = Paths.get(dropPath.substring(7));
 
         if (FSUtils.isDirectory(trimmedDropPath)) {
-          try {
+          // job & reports are resolved by the storage, as they may be in shard
+          // directories
+          StorageService storage = model.getStorage();
+          try (
+            DirectResourceAccess jobFile = storage.getDirectAccess(ModelUtils.getJobStoragePath(job.getId()));
+            DirectResourceAccess jobReports = storage.getDirectAccess(ModelUtils.getJobReportsStoragePath(job.getId()))) {
             Path jobPath = FSUtils.createDirectory(trimmedDropPath, job.getId());
 
-            Path jobFilePath = RodaCoreFactory.getStoragePath().resolve(RodaConstants.STORAGE_CONTAINER_JOB)
-              .resolve(job.getId() + RodaConstants.JOB_FILE_EXTENSION);
-            FSUtils.copy(jobFilePath, jobPath.resolve(job.getId() + RodaConstants.JOB_FILE_EXTENSION), true);
-
-            Path jobReportPath = RodaCoreFactory.getStoragePath().resolve(RodaConstants.STORAGE_CONTAINER_JOB_REPORT)
-              .resolve(job.getId());
-            FSUtils.copy(jobReportPath, jobPath.resolve(RodaConstants.RODA_OBJECT_REPORTS), true);
+            FSUtils.copy(jobFile.getPath(), jobPath.resolve(job.getId() + RodaConstants.JOB_FILE_EXTENSION), true);
+            FSUtils.copy(jobReports.getPath(), jobPath.resolve(RodaConstants.RODA_OBJECT_REPORTS), true);
 
             FSUtils.createFile(jobPath, ".ready");
 
             LOGGER.debug("Notification sent");
             notification.setState(NOTIFICATION_STATE.COMPLETED);
-          } catch (AlreadyExistsException | GenericException | IOException e) {
+          } catch (AlreadyExistsException | GenericException | RequestNotValidException | AuthorizationDeniedException
+            | NotFoundException | IOException e) {
             LOGGER.warn("Notification not sent", e);
           }
         } else {
@@ -28,6 +28,7 @@ import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.NotSupportedException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.exceptions.ReturnWithExceptions;
 import org.roda.core.data.utils.JsonUtils;
@@ -75,6 +76,7 @@ import org.roda.core.index.schema.collections.PreservationEventCollection;
 import org.roda.core.index.schema.collections.RepresentationCollection;
 import org.roda.core.index.schema.collections.RiskCollection;
 import org.roda.core.index.utils.IterableIndexResult;
+import org.roda.core.index.utils.SolrBatchIndexer;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
@@ -94,6 +96,8 @@ import org.xml.sax.SAXException;
 public class IndexModelObserver implements ModelObserver {
   private static final Logger LOGGER = LoggerFactory.getLogger(IndexModelObserver.class);
 
+  private static boolean INCREMENTAL_UPDATE = true;
+
   private final SolrClient index;
   private final ModelService model;
 
@@ -110,9 +114,12 @@ public class IndexModelObserver implements ModelObserver {
       List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
       indexAIP(aip, ancestors).addTo(ret);
       if (ret.isEmpty()) {
-        indexRepresentations(aip, ancestors).addTo(ret);
+        SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+        indexRepresentations(aip, ancestors, batch).addTo(ret);
+        batch.flush().addTo(ret);
         if (ret.isEmpty()) {
-          indexPreservationsEvents(aip.getId(), null).addTo(ret);
+          indexPreservationsEvents(aip.getId(), null, batch).addTo(ret);
+          batch.flush().addTo(ret);
         }
       }
     } catch (RequestNotValidException | GenericException | AuthorizationDeniedException e) {
@@ -123,6 +130,14 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
+  public static void injectIncrementalUpdate(boolean incrementalUpdate) {
+    INCREMENTAL_UPDATE = incrementalUpdate;
+  }
+
+  private SolrBatchIndexer<ModelObserver> newBatchIndexer() {
+    return new SolrBatchIndexer<>(index, this);
+  }
+
   private ReturnWithExceptions<Void, ModelObserver> indexAIP(final AIP aip, final List<String> ancestors) {
     return indexAIP(aip, ancestors, false);
   }
@@ -153,6 +168,14 @@ public class IndexModelObserver implements ModelObserver {
 
   public ReturnWithExceptions<Void, ModelObserver> indexPreservationsEvents(final String aipId,
     final String representationId) {
+    SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+    ReturnWithExceptions<Void, ModelObserver> ret = indexPreservationsEvents(aipId, representationId, batch);
+    batch.flush().addTo(ret);
+    return ret;
+  }
+
+  private ReturnWithExceptions<Void, ModelObserver> indexPreservationsEvents(final String aipId,
+    final String representationId, final SolrBatchIndexer<ModelObserver> batch) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
 
     try (CloseableIterable<OptionalWithCause<PreservationMetadata>> preservationMetadata = (representationId == null)
@@ -163,7 +186,7 @@ public class IndexModelObserver implements ModelObserver {
         if (opm.isPresent()) {
           PreservationMetadata pm = opm.get();
           if (pm.getType().equals(PreservationMetadataType.EVENT)) {
-            indexPreservationEvent(pm).addTo(ret);
+            indexPreservationEvent(pm, batch).addTo(ret);
           }
         } else {
           LOGGER.error("Cannot index premis event", opm.getCause());
@@ -179,7 +202,8 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
-  private ReturnWithExceptions<Void, ModelObserver> indexPreservationEvent(PreservationMetadata pm) {
+  private ReturnWithExceptions<Void, ModelObserver> indexPreservationEvent(PreservationMetadata pm,
+    SolrBatchIndexer<ModelObserver> batch) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     AIP aip = null;
     try {
@@ -189,16 +213,24 @@ public class IndexModelObserver implements ModelObserver {
       ret.add(e);
     }
 
-    SolrUtils.create2(index, (ModelObserver) this, IndexedPreservationEvent.class, pm,
-      new PreservationEventCollection.Info(aip)).addTo(ret);
+    batch.create(IndexedPreservationEvent.class, pm, new PreservationEventCollection.Info(aip)).addTo(ret);
 
     return ret;
   }
 
-  private ReturnWithExceptions<Void, ModelObserver> indexRepresentations(final AIP aip, final List<String> ancestors) {
+  private ReturnWithExceptions<Void, ModelObserver> indexRepresentations(final AIP aip, final List<String> ancestors,
+    final SolrBatchIndexer<ModelObserver> batch) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
-    for (Representation representation : aip.getRepresentations()) {
-      indexRepresentation(aip, representation, ancestors).addTo(ret);
+    if (ParallelFileIndexer.isEnabled() && !aip.getRepresentations().isEmpty()) {
+      List<ParallelFileIndexer.Totals> allTotals = new ParallelFileIndexer(model, batch, this).indexFiles(aip,
+        aip.getRepresentations(), ancestors);
+      for (int i = 0; i < allTotals.size(); i++) {
+        indexRepresentation(aip, aip.getRepresentations().get(i), ancestors, allTotals.get(i), batch).addTo(ret);
+      }
+    } else {
+      for (Representation representation : aip.getRepresentations()) {
+        indexRepresentation(aip, representation, ancestors, batch).addTo(ret);
+      }
     }
 
     return ret;
@@ -206,6 +238,20 @@ public class IndexModelObserver implements ModelObserver {
 
   private ReturnWithExceptions<Void, ModelObserver> indexRepresentation(final AIP aip,
     final Representation representation, final List<String> ancestors) {
+    SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+    ReturnWithExceptions<Void, ModelObserver> ret = indexRepresentation(aip, representation, ancestors, batch);
+    batch.flush().addTo(ret);
+    return ret;
+  }
+
+  private ReturnWithExceptions<Void, ModelObserver> indexRepresentation(final AIP aip,
+    final Representation representation, final List<String> ancestors, final SolrBatchIndexer<ModelObserver> batch) {
+    if (ParallelFileIndexer.isEnabled()) {
+      ParallelFileIndexer.Totals totals = new ParallelFileIndexer(model, batch, this).indexFiles(aip, representation,
+        ancestors);
+      return indexRepresentation(aip, representation, ancestors, totals, batch);
+    }
+
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     Long sizeInBytes = 0L;
     Long numberOfDataFiles = 0L;
@@ -215,7 +261,7 @@ public class IndexModelObserver implements ModelObserver {
       representation.getId(), true)) {
       for (OptionalWithCause<File> file : allFiles) {
         if (file.isPresent()) {
-          sizeInBytes += indexFile(aip, file.get(), ancestors, false).addTo(ret).getReturnedObject();
+          sizeInBytes += indexFile(aip, file.get(), ancestors, false, batch).addTo(ret).getReturnedObject();
 
           if (file.get().isDirectory()) {
             numberOfDataFolders++;
@@ -228,12 +274,8 @@ public class IndexModelObserver implements ModelObserver {
         }
       }
 
-      // TODO support safemode
-      boolean safemode = false;
-
-      RepresentationCollection.Info info = new RepresentationCollection.Info(aip, ancestors, sizeInBytes,
-        numberOfDataFiles, numberOfDataFolders, safemode);
-      SolrUtils.create2(index, (ModelObserver) this, IndexedRepresentation.class, representation, info).addTo(ret);
+      createRepresentation(aip, representation, ancestors, sizeInBytes, numberOfDataFiles, numberOfDataFolders, false,
+        batch).addTo(ret);
     } catch (IOException | RequestNotValidException | GenericException | NotFoundException
       | AuthorizationDeniedException e) {
       LOGGER.error("Cannot index representation", e);
@@ -243,14 +285,61 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
+  /**
+   * Creates the representation document once all of its files have been
+   * indexed in parallel, so that its totals are complete.
+   */
+  private ReturnWithExceptions<Void, ModelObserver> indexRepresentation(final AIP aip,
+    final Representation representation, final List<String> ancestors, final ParallelFileIndexer.Totals totals,
+    final SolrBatchIndexer<ModelObserver> batch) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    totals.getReturnWithExceptions().addTo(ret);
+
+    createRepresentation(aip, representation, ancestors, totals.getSizeInBytes(), totals.getNumberOfDataFiles(),
+      totals.getNumberOfDataFolders(), false, batch).addTo(ret);
+    return ret;
+  }
+
+  private ReturnWithExceptions<Void, ModelObserver> createRepresentation(final AIP aip,
+    final Representation representation, final List<String> ancestors, final Long sizeInBytes,
+    final Long numberOfDataFiles, final Long numberOfDataFolders, final boolean safemode,
+    final SolrBatchIndexer<ModelObserver> batch) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+
+    RepresentationCollection.Info info = new RepresentationCollection.Info(aip, ancestors, sizeInBytes,
+      numberOfDataFiles, numberOfDataFolders, safemode);
+    batch.create(IndexedRepresentation.class, representation, info).addTo(ret);
+
+    // if there was an error converting the document, try in safe mode
+    if (!ret.isEmpty()) {
+      if (!safemode) {
+        LOGGER.error("Error indexing representation, trying safe mode", ret.getExceptions().get(0));
+        createRepresentation(aip, representation, ancestors, sizeInBytes, numberOfDataFiles, numberOfDataFolders, true,
+          batch).addTo(ret);
+      } else {
+        LOGGER.error("Cannot index representation", ret.getExceptions().get(0));
+      }
+    }
+
+    return ret;
+  }
+
   private ReturnWithExceptions<Long, ModelObserver> indexFile(AIP aip, File file, List<String> ancestors,
     boolean recursive) {
+    SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+    ReturnWithExceptions<Long, ModelObserver> ret = indexFile(aip, file, ancestors, recursive, batch);
+    batch.flush().addTo(ret);
+    return ret;
+  }
+
+  private ReturnWithExceptions<Long, ModelObserver> indexFile(AIP aip, File file, List<String> ancestors,
+    boolean recursive, SolrBatchIndexer<ModelObserver> batch) {
     ReturnWithExceptions<Long, ModelObserver> ret = new ReturnWithExceptions<>(this);
 
     Long sizeInBytes = 0L;
 
     FileCollection.Info info = new FileCollection.Info(aip, ancestors);
-    SolrUtils.create2(index, (ModelObserver) this, IndexedFile.class, file, info).addTo(ret);
+    batch.create(IndexedFile.class, file, info).addTo(ret);
 
     sizeInBytes = (Long) info.getAccumulators().get(RodaConstants.FILE_SIZE);
 
@@ -259,7 +348,7 @@ public class IndexModelObserver implements ModelObserver {
         try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(file, true)) {
           for (OptionalWithCause<File> subfile : allFiles) {
             if (subfile.isPresent()) {
-              sizeInBytes += indexFile(aip, subfile.get(), ancestors, false).addTo(ret).getReturnedObject();
+              sizeInBytes += indexFile(aip, subfile.get(), ancestors, false, batch).addTo(ret).getReturnedObject();
             } else {
               LOGGER.error("Cannot index file", subfile.getCause());
               ret.add(subfile.getCause());
@@ -281,12 +370,53 @@ public class IndexModelObserver implements ModelObserver {
 
   @Override
   public ReturnWithExceptions<Void, ModelObserver> aipUpdated(AIP aip) {
-    // TODO Is this the best way to update?
+    if (INCREMENTAL_UPDATE) {
+      try {
+        return aipUpdatedIncrementally(aip);
+      } catch (RequestNotValidException | GenericException | NotSupportedException | AuthorizationDeniedException e) {
+        LOGGER.warn("Could not update AIP {} incrementally, re-indexing it", aip.getId(), e);
+      }
+    }
+
     ReturnWithExceptions<Void, ModelObserver> ret = aipDeleted(aip.getId(), false);
     aipCreated(aip).addTo(ret);
     return ret;
   }
 
+  /**
+   * Re-generates all documents of the AIP but only sends the ones whose
+   * content hash differs from the indexed one, and deletes the indexed
+   * documents that no longer exist. The AIP document itself is always sent, as
+   * when the AIP is created, so that it is indexed in safe mode if needed.
+   */
+  private ReturnWithExceptions<Void, ModelObserver> aipUpdatedIncrementally(AIP aip)
+    throws RequestNotValidException, GenericException, NotSupportedException, AuthorizationDeniedException {
+    List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+
+    SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+    batch.diffAgainst(IndexedRepresentation.class, SolrUtils.retrieveContentHashes(index, IndexedRepresentation.class,
+      new Filter(new SimpleFilterParameter(RodaConstants.REPRESENTATION_AIP_ID, aip.getId()))));
+    batch.diffAgainst(IndexedFile.class, SolrUtils.retrieveContentHashes(index, IndexedFile.class,
+      new Filter(new SimpleFilterParameter(RodaConstants.FILE_AIP_ID, aip.getId()))));
+    batch.diffAgainst(IndexedPreservationEvent.class,
+      SolrUtils.retrieveContentHashes(index, IndexedPreservationEvent.class,
+        new Filter(new SimpleFilterParameter(RodaConstants.PRESERVATION_EVENT_AIP_ID, aip.getId()))));
+
+    ReturnWithExceptions<Void, ModelObserver> ret = indexAIP(aip, ancestors);
+    if (!ret.isEmpty()) {
+      return ret;
+    }
+
+    indexRepresentations(aip, ancestors, batch).addTo(ret);
+    indexPreservationsEvents(aip.getId(), null, batch).addTo(ret);
+    batch.flush().addTo(ret);
+    if (ret.isEmpty()) {
+      batch.deleteNotRecreated().addTo(ret);
+    }
+
+    return ret;
+  }
+
   @Override
   public ReturnWithExceptions<Void, ModelObserver> aipStateUpdated(AIP aip) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
@@ -299,23 +429,26 @@ public class IndexModelObserver implements ModelObserver {
 
     if (ret.isEmpty()) {
       // change Representations, Files & Preservation events
-      representationsStateUpdated(aip).addTo(ret);
-      preservationEventsStateUpdated(aip).addTo(ret);
+      SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+      representationsStateUpdated(aip, batch).addTo(ret);
+      preservationEventsStateUpdated(aip, batch).addTo(ret);
+      batch.flush().addTo(ret);
     }
 
     return ret;
   }
 
-  private ReturnWithExceptions<Void, ModelObserver> representationsStateUpdated(final AIP aip) {
+  private ReturnWithExceptions<Void, ModelObserver> representationsStateUpdated(final AIP aip,
+    final SolrBatchIndexer<ModelObserver> batch) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
     for (Representation representation : aip.getRepresentations()) {
-      representationStateUpdated(aip, representation).addTo(ret);
+      representationStateUpdated(aip, representation, batch).addTo(ret);
     }
     return ret;
   }
 
   private ReturnWithExceptions<Void, ModelObserver> representationStateUpdated(final AIP aip,
-    final Representation representation) {
+    final Representation representation, final SolrBatchIndexer<ModelObserver> batch) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
 
     try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(representation.getAipId(),
@@ -327,7 +460,7 @@ public class IndexModelObserver implements ModelObserver {
       if (ret.isEmpty()) {
         for (OptionalWithCause<File> file : allFiles) {
           if (file.isPresent()) {
-            fileStateUpdated(aip, file.get(), false).addTo(ret);
+            fileStateUpdated(aip, file.get(), false, batch).addTo(ret);
           } else {
             LOGGER.error("Cannot do a partial update on File", file.getCause());
             ret.add(file.getCause());
@@ -345,20 +478,19 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
-  private ReturnWithExceptions<Void, ModelObserver> fileStateUpdated(AIP aip, File file, boolean recursive) {
+  private ReturnWithExceptions<Void, ModelObserver> fileStateUpdated(AIP aip, File file, boolean recursive,
+    SolrBatchIndexer<ModelObserver> batch) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
 
-    SolrUtils
-      .update(index, IndexedFile.class, IdUtils.getFileId(file),
-        Collections.singletonMap(RodaConstants.INDEX_STATE, SolrUtils.formatEnum(aip.getState())), (ModelObserver) this)
-      .addTo(ret);
+    batch.update(IndexedFile.class, IdUtils.getFileId(file),
+      Collections.singletonMap(RodaConstants.INDEX_STATE, SolrUtils.formatEnum(aip.getState()))).addTo(ret);
 
     if (ret.isEmpty()) {
       if (recursive && file.isDirectory()) {
         try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(file, true)) {
           for (OptionalWithCause<File> subfile : allFiles) {
             if (subfile.isPresent()) {
-              fileStateUpdated(aip, subfile.get(), false).addTo(ret);
+              fileStateUpdated(aip, subfile.get(), false, batch).addTo(ret);
             } else {
               LOGGER.error("Cannot index file sub-resources", subfile.getCause());
               ret.add(subfile.getCause());
@@ -377,7 +509,8 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
-  private ReturnWithExceptions<Void, ModelObserver> preservationEventsStateUpdated(final AIP aip) {
+  private ReturnWithExceptions<Void, ModelObserver> preservationEventsStateUpdated(final AIP aip,
+    final SolrBatchIndexer<ModelObserver> batch) {
     ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
 
     try (CloseableIterable<OptionalWithCause<PreservationMetadata>> preservationMetadata = model
@@ -386,7 +519,7 @@ public class IndexModelObserver implements ModelObserver {
         if (opm.isPresent()) {
           PreservationMetadata pm = opm.get();
           if (pm.getType().equals(PreservationMetadataType.EVENT)) {
-            preservationEventStateUpdated(pm, aip.getState()).addTo(ret);
+            preservationEventStateUpdated(pm, aip.getState(), batch).addTo(ret);
           }
         } else {
           LOGGER.error("Cannot index premis event", opm.getCause());
@@ -403,13 +536,12 @@ public class IndexModelObserver implements ModelObserver {
   }
 
   private ReturnWithExceptions<Void, ModelObserver> preservationEventStateUpdated(PreservationMetadata pm,
-    AIPState state) {
+    AIPState state, SolrBatchIndexer<ModelObserver> batch) {
     Map<String, Object> fieldsToUpdate = new HashMap<>();
     fieldsToUpdate.put(RodaConstants.INDEX_STATE, SolrUtils.formatEnum(state));
     fieldsToUpdate.put(RodaConstants.PRESERVATION_EVENT_AIP_ID, pm.getAipId());
     fieldsToUpdate.put(RodaConstants.INDEX_ID, pm.getId());
-    return SolrUtils.update(index, IndexedPreservationEvent.class, IdUtils.getPreservationId(pm), fieldsToUpdate,
-      (ModelObserver) this);
+    return batch.update(IndexedPreservationEvent.class, IdUtils.getPreservationId(pm), fieldsToUpdate);
   }
 
   @Override
@@ -443,7 +575,7 @@ public class IndexModelObserver implements ModelObserver {
           try {
             LOGGER.debug("Reindexing aip {} descendant {}", aip.getId(), item.getId());
             List<String> ancestors = SolrUtils.getAncestors(item.getParentID(), model);
-            SolrUtils.update(index, IndexedAIP.class, aip.getId(),
+            SolrUtils.update(index, IndexedAIP.class, item.getId(),
               Collections.singletonMap(RodaConstants.AIP_ANCESTORS, ancestors), (ModelObserver) this).addTo(ret);
 
             // update representation and file ancestors information
@@ -649,6 +781,30 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> filesCreated(List<File> files) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+    Map<String, AIP> aips = new HashMap<>();
+    Map<String, List<String>> ancestors = new HashMap<>();
+    for (File file : files) {
+      try {
+        AIP aip = aips.get(file.getAipId());
+        if (aip == null) {
+          aip = model.retrieveAIP(file.getAipId());
+          aips.put(aip.getId(), aip);
+          ancestors.put(aip.getId(), SolrUtils.getAncestors(aip.getParentId(), model));
+        }
+        indexFile(aip, file, ancestors.get(aip.getId()), true, batch).addTo(ret);
+      } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
+        LOGGER.error("Error indexing file: {}", file, e);
+        ret.add(e);
+      }
+    }
+    batch.flush().addTo(ret);
+    return ret;
+  }
+
   @Override
   public ReturnWithExceptions<Void, ModelObserver> fileUpdated(File file) {
     ReturnWithExceptions<Void, ModelObserver> ret = fileDeleted(file.getAipId(), file.getRepresentationId(),
@@ -677,6 +833,17 @@ public class IndexModelObserver implements ModelObserver {
     return SolrUtils.create2(index, this, LogEntry.class, entry);
   }
 
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> logEntriesCreated(List<LogEntry> entries) {
+    SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    for (LogEntry entry : entries) {
+      batch.create(LogEntry.class, entry, IndexingAdditionalInfo.empty()).addTo(ret);
+    }
+    batch.flush().addTo(ret);
+    return ret;
+  }
+
   @Override
   public ReturnWithExceptions<Void, ModelObserver> userCreated(User user) {
     return addDocumentToIndex(RODAMember.class, user);
@@ -851,6 +1018,17 @@ public class IndexModelObserver implements ModelObserver {
     return SolrUtils.create2(index, this, IndexedReport.class, jobReport, new JobReportCollection.Info(jobReport, job));
   }
 
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> jobReportsCreatedOrUpdated(List<Report> jobReports, Job job) {
+    SolrBatchIndexer<ModelObserver> batch = newBatchIndexer();
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    for (Report jobReport : jobReports) {
+      batch.create(IndexedReport.class, jobReport, new JobReportCollection.Info(jobReport, job)).addTo(ret);
+    }
+    batch.flush().addTo(ret);
+    return ret;
+  }
+
   @Override
   public ReturnWithExceptions<Void, ModelObserver> jobReportDeleted(String jobReportId) {
     return deleteDocumentFromIndex(IndexedReport.class, jobReportId);
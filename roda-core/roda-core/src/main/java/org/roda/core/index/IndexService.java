@@ -74,6 +74,7 @@ import org.roda.core.data.v2.risks.RiskIncidence;
 import org.roda.core.data.v2.user.User;
 import org.roda.core.index.utils.IndexResultIterator;
 import org.roda.core.index.utils.IterableIndexResult;
+import org.roda.core.index.utils.SolrBatchIndexer;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
@@ -106,6 +107,9 @@ public class IndexService {
     model.addModelObserver(observer);
 
     configIterableIndexResult(metricRegistry, rodaConfiguration);
+    configSolrBatchIndexer(metricRegistry, rodaConfiguration);
+    ParallelFileIndexer.injectParallelism(rodaConfiguration.getInt("core.index.parallel.threads", 0));
+    IndexModelObserver.injectIncrementalUpdate(rodaConfiguration.getBoolean("core.index.incremental_update", true));
   }
 
   private void configIterableIndexResult(MetricRegistry metricRegistry, Configuration rodaConfiguration) {
@@ -119,6 +123,22 @@ public class IndexService {
       rodaConfiguration.getInt("core.index_result.retries", IndexResultIterator.DEFAULT_RETRIES));
     IterableIndexResult.injectSleepBetweenRetries(
       rodaConfiguration.getInt("core.index_result.sleep", IndexResultIterator.DEFAULT_SLEEP_BETWEEN_RETRIES));
+    IndexResultIterator.injectPrefetchThreads(
+      rodaConfiguration.getInt("core.index_result.prefetch_threads", IndexResultIterator.DEFAULT_PREFETCH_THREADS));
+  }
+
+  private void configSolrBatchIndexer(MetricRegistry metricRegistry, Configuration rodaConfiguration) {
+    Histogram batchSizeHistogram = metricRegistry
+      .histogram(MetricRegistry.name(SolrBatchIndexer.class.getSimpleName(), "batchSizeHistogram"));
+    SolrBatchIndexer.injectHistogram(batchSizeHistogram);
+    SolrBatchIndexer.injectUnchangedCounter(
+      metricRegistry.counter(MetricRegistry.name(SolrBatchIndexer.class.getSimpleName(), "unchangedDocuments")));
+
+    SolrBatchIndexer.injectMaxDocuments(rodaConfiguration.getInt("core.index.batch.max_documents", 500));
+    SolrBatchIndexer.injectMaxBytes(rodaConfiguration.getLong("core.index.batch.max_bytes", 5L * 1024 * 1024));
+    SolrBatchIndexer.injectMaxDelayInMillis(rodaConfiguration.getLong("core.index.batch.max_delay_in_millis", 1000L));
+    SolrBatchIndexer.injectMaxBatchesInFlight(rodaConfiguration.getInt("core.index.batch.max_batches_in_flight", 4));
+    SolrBatchIndexer.injectNumberOfThreads(rodaConfiguration.getInt("core.index.batch.threads", 2));
   }
 
   public IndexedAIP getParent(IndexedAIP aip, User user, List<String> fieldsToReturn)
@@ -0,0 +1,201 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.IndexedFile;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.index.schema.collections.FileCollection;
+import org.roda.core.index.utils.SolrBatchIndexer;
+import org.roda.core.model.ModelObserver;
+import org.roda.core.model.ModelService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Indexes the files of representations using a fork/join pool, forking one
+ * task per representation and per directory, so that AIPs with many files are
+ * not indexed by a single thread.
+ *
+ * <p>
+ * The size and number of files/folders of each directory subtree are merged
+ * bottom-up, so the representation totals are only known (and the
+ * representation document should only be created) after
+ * {@link #indexFiles(AIP, Representation, List)} returns.
+ * </p>
+ */
+public class ParallelFileIndexer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ParallelFileIndexer.class);
+
+  private static int PARALLELISM = 0;
+  private static ForkJoinPool POOL;
+
+  private final ModelService model;
+  private final SolrBatchIndexer<ModelObserver> batch;
+  private final ModelObserver source;
+
+  public ParallelFileIndexer(ModelService model, SolrBatchIndexer<ModelObserver> batch, ModelObserver source) {
+    this.model = model;
+    this.batch = batch;
+    this.source = source;
+  }
+
+  public static boolean isEnabled() {
+    return PARALLELISM > 1;
+  }
+
+  public static void injectParallelism(int parallelism) {
+    PARALLELISM = parallelism;
+  }
+
+  private static synchronized ForkJoinPool getPool() {
+    if (POOL == null) {
+      POOL = new ForkJoinPool(PARALLELISM);
+    }
+    return POOL;
+  }
+
+  /**
+   * Indexes the files of several representations concurrently.
+   *
+   * @return the totals of each representation, in the same order
+   */
+  public List<Totals> indexFiles(AIP aip, List<Representation> representations, List<String> ancestors) {
+    return getPool().invoke(new RecursiveTask<List<Totals>>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected List<Totals> compute() {
+        List<DirectoryTask> tasks = new ArrayList<>();
+        for (Representation representation : representations) {
+          tasks.add(new DirectoryTask(aip, representation, null, ancestors));
+        }
+        invokeAll(tasks);
+
+        List<Totals> totals = new ArrayList<>();
+        for (DirectoryTask task : tasks) {
+          totals.add(task.join());
+        }
+        return totals;
+      }
+    });
+  }
+
+  public Totals indexFiles(AIP aip, Representation representation, List<String> ancestors) {
+    return getPool().invoke(new DirectoryTask(aip, representation, null, ancestors));
+  }
+
+  private class DirectoryTask extends RecursiveTask<Totals> {
+    private static final long serialVersionUID = 1L;
+
+    private final transient AIP aip;
+    private final transient Representation representation;
+    private final transient File directory;
+    private final transient List<String> ancestors;
+
+    private DirectoryTask(AIP aip, Representation representation, File directory, List<String> ancestors) {
+      this.aip = aip;
+      this.representation = representation;
+      this.directory = directory;
+      this.ancestors = ancestors;
+    }
+
+    @Override
+    protected Totals compute() {
+      Totals totals = new Totals(source);
+      List<DirectoryTask> subtasks = new ArrayList<>();
+
+      try (CloseableIterable<OptionalWithCause<File>> files = directory == null
+        ? model.listFilesUnder(representation.getAipId(), representation.getId(), false)
+        : model.listFilesUnder(directory, false)) {
+        for (OptionalWithCause<File> file : files) {
+          if (file.isPresent()) {
+            totals.sizeInBytes += indexFile(file.get(), totals.ret);
+            if (file.get().isDirectory()) {
+              totals.numberOfDataFolders++;
+              DirectoryTask subtask = new DirectoryTask(aip, representation, file.get(), ancestors);
+              subtask.fork();
+              subtasks.add(subtask);
+            } else {
+              totals.numberOfDataFiles++;
+            }
+          } else {
+            LOGGER.error("Cannot index representation file", file.getCause());
+            totals.ret.add(file.getCause());
+          }
+        }
+      } catch (IOException | RequestNotValidException | GenericException | NotFoundException
+        | AuthorizationDeniedException e) {
+        LOGGER.error("Cannot index representation files", e);
+        totals.ret.add(e);
+      }
+
+      for (DirectoryTask subtask : subtasks) {
+        totals.merge(subtask.join());
+      }
+
+      return totals;
+    }
+
+    private long indexFile(File file, ReturnWithExceptions<Void, ModelObserver> ret) {
+      FileCollection.Info info = new FileCollection.Info(aip, ancestors);
+      batch.create(IndexedFile.class, file, info).addTo(ret);
+      Long sizeInBytes = (Long) info.getAccumulators().get(RodaConstants.FILE_SIZE);
+      return sizeInBytes == null ? 0L : sizeInBytes;
+    }
+  }
+
+  public static class Totals {
+    private final ReturnWithExceptions<Void, ModelObserver> ret;
+    private long sizeInBytes = 0L;
+    private long numberOfDataFiles = 0L;
+    private long numberOfDataFolders = 0L;
+
+    private Totals(ModelObserver source) {
+      this.ret = new ReturnWithExceptions<>(source);
+    }
+
+    private void merge(Totals other) {
+      sizeInBytes += other.sizeInBytes;
+      numberOfDataFiles += other.numberOfDataFiles;
+      numberOfDataFolders += other.numberOfDataFolders;
+      ret.add(other.ret);
+    }
+
+    public ReturnWithExceptions<Void, ModelObserver> getReturnWithExceptions() {
+      return ret;
+    }
+
+    public long getSizeInBytes() {
+      return sizeInBytes;
+    }
+
+    public long getNumberOfDataFiles() {
+      return numberOfDataFiles;
+    }
+
+    public long getNumberOfDataFolders() {
+      return numberOfDataFolders;
+    }
+  }
+}
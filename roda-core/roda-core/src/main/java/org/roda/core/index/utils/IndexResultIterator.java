@@ -5,6 +5,10 @@ import java.time.Instant;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.common.params.CursorMarkParams;
@@ -19,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.Histogram;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class IndexResultIterator<T extends IsIndexed> implements Iterator<T> {
 
@@ -27,6 +32,7 @@ public class IndexResultIterator<T extends IsIndexed> implements Iterator<T> {
   public static final int DEFAULT_PAGE_SIZE = 1000;
   public static final int DEFAULT_RETRIES = 100;
   public static final int DEFAULT_SLEEP_BETWEEN_RETRIES = 10000;
+  public static final int DEFAULT_PREFETCH_THREADS = 2;
 
   private int pageSize = DEFAULT_PAGE_SIZE;
   private int retries = DEFAULT_RETRIES;
@@ -47,6 +53,11 @@ public class IndexResultIterator<T extends IsIndexed> implements Iterator<T> {
 
   private T next = null;
 
+  private static int PREFETCH_THREADS = DEFAULT_PREFETCH_THREADS;
+  private static ExecutorService PREFETCH_EXECUTOR;
+  private boolean prefetch = false;
+  private CompletableFuture<Pair<IndexResult<T>, String>> prefetchedPage = null;
+
   public IndexResultIterator(SolrClient index, Class<T> classToRetrieve, Filter filter, User user, boolean justActive,
     List<String> fieldsToReturn) {
     this.index = index;
@@ -73,7 +84,18 @@ public class IndexResultIterator<T extends IsIndexed> implements Iterator<T> {
       nextCursorMark = null;
       int availableRetries = retries;
 
-      do {
+      if (prefetchedPage != null) {
+        try {
+          Pair<IndexResult<T>, String> page = prefetchedPage.join();
+          result = page.getFirst();
+          nextCursorMark = page.getSecond();
+        } catch (CompletionException e) {
+          LOGGER.warn("Error prefetching next page from Solr, trying again", e);
+        }
+        prefetchedPage = null;
+      }
+
+      while (result == null) {
         try {
           Pair<IndexResult<T>, String> page = SolrUtils.find(index, classToRetrieve, filter, pageSize, cursorMark, user,
             justActive, fieldsToReturn);
@@ -94,13 +116,14 @@ public class IndexResultIterator<T extends IsIndexed> implements Iterator<T> {
             throw new NoSuchElementException("Error getting next item in list: " + e.getMessage());
           }
         }
-      } while (result == null);
+      }
 
       Instant end = Instant.now();
       if (histogram != null) {
         histogram.update(Duration.between(start, end).toNanos());
       }
 
+      prefetchNextPage();
     }
 
     if (indexInResult < result.getResults().size()) {
@@ -112,6 +135,53 @@ public class IndexResultIterator<T extends IsIndexed> implements Iterator<T> {
     return current;
   }
 
+  private void prefetchNextPage() {
+    // cursor does not change after the last page
+    if (prefetch && prefetchedPage == null && result != null && !result.getResults().isEmpty()
+      && nextCursorMark != null && !nextCursorMark.equals(cursorMark)) {
+      String prefetchCursorMark = nextCursorMark;
+      prefetchedPage = CompletableFuture.supplyAsync(() -> {
+        try {
+          return SolrUtils.find(index, classToRetrieve, filter, pageSize, prefetchCursorMark, user, justActive,
+            fieldsToReturn);
+        } catch (GenericException | RequestNotValidException e) {
+          throw new CompletionException(e);
+        }
+      }, getPrefetchExecutor());
+    }
+  }
+
+  private static synchronized ExecutorService getPrefetchExecutor() {
+    if (PREFETCH_EXECUTOR == null) {
+      PREFETCH_EXECUTOR = Executors.newFixedThreadPool(PREFETCH_THREADS,
+        new ThreadFactoryBuilder().setNameFormat("index-prefetch-%d").setDaemon(true).build());
+    }
+    return PREFETCH_EXECUTOR;
+  }
+
+  /**
+   * Sets the number of threads fetching pages in background, shared by all
+   * iterators, which bounds the requests prefetching sends to Solr at once.
+   */
+  public static synchronized void injectPrefetchThreads(int prefetchThreads) {
+    if (prefetchThreads > 0 && prefetchThreads != PREFETCH_THREADS) {
+      PREFETCH_THREADS = prefetchThreads;
+      if (PREFETCH_EXECUTOR != null) {
+        PREFETCH_EXECUTOR.shutdown();
+        PREFETCH_EXECUTOR = null;
+      }
+    }
+  }
+
+  /**
+   * If enabled, the next page is fetched in background as soon as the current
+   * one is retrieved.
+   */
+  public void setPrefetch(boolean prefetch) {
+    this.prefetch = prefetch;
+    prefetchNextPage();
+  }
+
   @Override
   public boolean hasNext() {
     return next != null;
@@ -84,6 +84,13 @@ public class IterableIndexResult<T extends IsIndexed> implements CloseableIterab
     HISTOGRAM = histogram;
   }
 
+  /**
+   * @see IndexResultIterator#setPrefetch(boolean)
+   */
+  public void setPrefetch(boolean prefetch) {
+    iterator.setPrefetch(prefetch);
+  }
+
   /**
    * @see IndexResultIterator#getTotalCount()
    */
@@ -0,0 +1,451 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.NotSupportedException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.IsModelObject;
+import org.roda.core.data.v2.index.IsIndexed;
+import org.roda.core.index.IndexingAdditionalInfo;
+import org.roda.core.index.schema.SolrCollectionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Buffers Solr documents per collection and sends them to the index in
+ * batches, instead of one request per document.
+ *
+ * <p>
+ * A batch is sent when it reaches a maximum number of documents, a maximum
+ * (estimated) size in bytes or when its oldest document has been waiting for
+ * longer than a maximum delay. Batches are sent by a background thread pool,
+ * keeping the order of the batches of each collection, and the number of
+ * batches in flight is bounded so that producers block (back-pressure) when
+ * the index cannot keep up. Batches sent because of their delay do not wait
+ * for the bound, as the thread that sends them is shared.
+ * </p>
+ *
+ * <p>
+ * If a batch fails, its documents are re-sent one by one so that the failures
+ * can be reported per document. All failures are returned, as usual, in the
+ * {@link ReturnWithExceptions} of {@link #flush()}, which must always be called
+ * once the producer is done.
+ * </p>
+ *
+ * <p>
+ * Created documents carry a hash of their contents. When the indexer is told
+ * the hashes of the documents already in the index (see
+ * {@link #diffAgainst(Class, Map)}), re-created documents that did not change
+ * are not sent and the previous documents that were not re-created can be
+ * deleted with {@link #deleteNotRecreated()}.
+ * </p>
+ *
+ * @param <S>
+ *          the source of the returned {@link ReturnWithExceptions}
+ */
+public class SolrBatchIndexer<S> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SolrBatchIndexer.class);
+
+  private static int MAX_DOCUMENTS = 500;
+  private static long MAX_BYTES = 5L * 1024 * 1024;
+  private static long MAX_DELAY_IN_MILLIS = 1000;
+  private static int MAX_BATCHES_IN_FLIGHT = 4;
+  private static int THREADS = 2;
+
+  private static Histogram HISTOGRAM;
+  private static Counter UNCHANGED;
+
+  private static ExecutorService FLUSH_EXECUTOR;
+  private static ScheduledExecutorService DEADLINE_EXECUTOR;
+
+  private final SolrClient index;
+  private final S source;
+  private final Map<String, Batch> batches = new HashMap<>();
+  private final Map<String, CompletableFuture<Void>> lastFlushes = new HashMap<>();
+  private final Semaphore batchesInFlight = new Semaphore(MAX_BATCHES_IN_FLIGHT);
+  private final List<Exception> exceptions = new ArrayList<>();
+  private final Map<String, Map<String, String>> previousContentHashes = new ConcurrentHashMap<>();
+
+  public SolrBatchIndexer(SolrClient index, S source) {
+    this.index = index;
+    this.source = source;
+  }
+
+  /**
+   * Converts the object into a Solr document, using its collection, and
+   * buffers it. Only conversion errors are returned, index errors are returned
+   * by {@link #flush()}.
+   */
+  public <I extends IsIndexed, M extends IsModelObject> ReturnWithExceptions<Void, S> create(Class<I> indexClass,
+    M object, IndexingAdditionalInfo info) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    if (object != null) {
+      try {
+        SolrInputDocument solrDocument = SolrCollectionRegistry.toSolrDocument(indexClass, object, info);
+        if (solrDocument != null) {
+          String collection = SolrCollectionRegistry.getIndexName(indexClass);
+          String contentHash = SolrUtils.computeContentHash(solrDocument);
+          solrDocument.setField(RodaConstants.INDEX_CONTENT_HASH, contentHash);
+          if (!isUnchanged(collection, solrDocument, contentHash)) {
+            add(collection, solrDocument);
+          }
+        }
+      } catch (GenericException | NotSupportedException | RequestNotValidException | NotFoundException
+        | AuthorizationDeniedException e) {
+        LOGGER.error("Error adding document to index", e);
+        ret.add(e);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Sets the content hashes of the documents of a collection that are already
+   * in the index, so that only documents that changed are sent.
+   *
+   * @param contentHashes
+   *          map from document unique id to content hash, as returned by
+   *          {@code SolrUtils.retrieveContentHashes}
+   */
+  public <I extends IsIndexed> void diffAgainst(Class<I> indexClass, Map<String, String> contentHashes)
+    throws NotSupportedException {
+    Map<String, String> hashes = new ConcurrentHashMap<>();
+    // documents indexed without a content hash are always sent
+    contentHashes.forEach((uuid, hash) -> hashes.put(uuid, hash == null ? "" : hash));
+    previousContentHashes.put(SolrCollectionRegistry.getIndexName(indexClass), hashes);
+  }
+
+  private boolean isUnchanged(String collection, SolrInputDocument document, String contentHash) {
+    Map<String, String> hashes = previousContentHashes.get(collection);
+    if (hashes == null) {
+      return false;
+    }
+    String previousContentHash = hashes.remove(String.valueOf(document.getFieldValue(RodaConstants.INDEX_UUID)));
+    boolean unchanged = contentHash.equals(previousContentHash);
+    if (unchanged && UNCHANGED != null) {
+      UNCHANGED.inc();
+    }
+    return unchanged;
+  }
+
+  /**
+   * Deletes the documents given to {@link #diffAgainst(Class, Map)} that were
+   * not created again since then. Should be called after {@link #flush()}.
+   */
+  public ReturnWithExceptions<Void, S> deleteNotRecreated() {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    for (Map.Entry<String, Map<String, String>> entry : previousContentHashes.entrySet()) {
+      List<String> uuids = new ArrayList<>(entry.getValue().keySet());
+      if (!uuids.isEmpty()) {
+        try {
+          index.deleteById(entry.getKey(), uuids);
+        } catch (SolrServerException | IOException | SolrException e) {
+          LOGGER.error("Error deleting documents from index {}", entry.getKey(), e);
+          ret.add(e);
+        }
+      }
+    }
+    previousContentHashes.clear();
+    return ret;
+  }
+
+  /**
+   * Buffers a partial (atomic) update of some fields of a document.
+   */
+  public <I extends IsIndexed> ReturnWithExceptions<Void, S> update(Class<I> indexClass, String uuid,
+    Map<String, Object> fields) {
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    try {
+      add(SolrCollectionRegistry.getIndexName(indexClass), SolrUtils.createPartialUpdateDocument(uuid, fields));
+    } catch (NotSupportedException e) {
+      LOGGER.error("Error adding document to index", e);
+      ret.add(e);
+    }
+    return ret;
+  }
+
+  public void add(String collection, SolrInputDocument document) {
+    if (MAX_DOCUMENTS <= 1) {
+      send(collection, Collections.singletonList(document));
+      return;
+    }
+
+    boolean full;
+    synchronized (batches) {
+      Batch batch = batches.computeIfAbsent(collection, c -> new Batch());
+      if (batch.documents.isEmpty() && MAX_DELAY_IN_MILLIS > 0) {
+        // the deadline thread is shared, so it never waits for a permit
+        batch.deadline = getDeadlineExecutor().schedule(() -> dispatch(collection, false, false),
+          MAX_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      batch.documents.add(document);
+      batch.sizeInBytes += estimateSizeInBytes(document);
+      full = batch.isFull();
+    }
+
+    if (full) {
+      dispatch(collection, true, true);
+    }
+  }
+
+  /**
+   * Sends all buffered documents, waits for all batches to be indexed and
+   * returns the index errors that happened since the last flush.
+   */
+  public ReturnWithExceptions<Void, S> flush() {
+    List<String> collections;
+    synchronized (batches) {
+      collections = new ArrayList<>(batches.keySet());
+    }
+    for (String collection : collections) {
+      dispatch(collection, true, false);
+    }
+
+    List<CompletableFuture<Void>> pending;
+    synchronized (batches) {
+      pending = new ArrayList<>(lastFlushes.values());
+      lastFlushes.clear();
+    }
+
+    CompletableFuture.allOf(pending.toArray(new CompletableFuture[pending.size()])).join();
+
+    ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>(source);
+    synchronized (exceptions) {
+      ret.add(new ArrayList<>(exceptions));
+      exceptions.clear();
+    }
+    return ret;
+  }
+
+  /**
+   * Sends the buffered batch of a collection, after the previous batches of the
+   * collection.
+   *
+   * @param block
+   *          if the producer is to wait (back-pressure) while there are too
+   *          many batches being sent, otherwise the batch is sent anyway
+   * @param onlyIfFull
+   *          if the batch is only sent if it is (still) full
+   */
+  private void dispatch(String collection, boolean block, boolean onlyIfFull) {
+    // the permit is acquired before taking the batch, so that batches are
+    // still chained in the order they are taken, but outside the lock, so that
+    // other producers and the deadline thread are not blocked meanwhile
+    boolean acquired;
+    if (block) {
+      acquirePermit();
+      acquired = true;
+    } else {
+      acquired = batchesInFlight.tryAcquire();
+    }
+
+    synchronized (batches) {
+      Batch batch = batches.get(collection);
+      if (batch == null || batch.documents.isEmpty() || (onlyIfFull && !batch.isFull())) {
+        if (acquired) {
+          batchesInFlight.release();
+        }
+        return;
+      }
+
+      batches.remove(collection);
+      if (batch.deadline != null) {
+        batch.deadline.cancel(false);
+      }
+
+      List<SolrInputDocument> documents = batch.documents;
+      CompletableFuture<Void> previous = lastFlushes.getOrDefault(collection, CompletableFuture.completedFuture(null));
+      // handled whatever the outcome of the previous batch, so that a failure
+      // neither breaks the chain nor keeps permits from being released
+      lastFlushes.put(collection, previous.handleAsync((result, error) -> {
+        try {
+          send(collection, documents);
+        } catch (Throwable e) {
+          LOGGER.error("Error adding batch of {} documents to index {}", documents.size(), collection, e);
+          synchronized (exceptions) {
+            exceptions.add(new GenericException(
+              "Error adding batch of " + documents.size() + " documents to index '" + collection + "'", e));
+          }
+        } finally {
+          if (acquired) {
+            batchesInFlight.release();
+          }
+        }
+        return null;
+      }, getFlushExecutor()));
+    }
+  }
+
+  /**
+   * Waits for a batch in flight to end, as a managed blocker so that a fork/join
+   * pool producing the documents (e.g. the parallel file indexer) can
+   * compensate the worker that is waiting.
+   */
+  private void acquirePermit() {
+    ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+      private boolean acquired = false;
+
+      @Override
+      public boolean block() {
+        if (!acquired) {
+          batchesInFlight.acquireUninterruptibly();
+          acquired = true;
+        }
+        return true;
+      }
+
+      @Override
+      public boolean isReleasable() {
+        if (!acquired) {
+          acquired = batchesInFlight.tryAcquire();
+        }
+        return acquired;
+      }
+    };
+
+    try {
+      ForkJoinPool.managedBlock(blocker);
+    } catch (InterruptedException e) {
+      // cannot happen, as the blocker waits uninterruptibly
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void send(String collection, List<SolrInputDocument> documents) {
+    if (HISTOGRAM != null) {
+      HISTOGRAM.update(documents.size());
+    }
+
+    try {
+      index.add(collection, documents);
+    } catch (SolrServerException | IOException | SolrException e) {
+      if (documents.size() == 1) {
+        addException(collection, documents.get(0), e);
+      } else {
+        LOGGER.warn("Error adding batch of {} documents to index {}, retrying one by one", documents.size(),
+          collection, e);
+        for (SolrInputDocument document : documents) {
+          try {
+            index.add(collection, document);
+          } catch (SolrServerException | IOException | SolrException e1) {
+            addException(collection, document, e1);
+          }
+        }
+      }
+    }
+  }
+
+  private void addException(String collection, SolrInputDocument document, Exception e) {
+    LOGGER.error("Error adding document to index", e);
+    synchronized (exceptions) {
+      exceptions.add(new GenericException("Error adding document '"
+        + document.getFieldValue(RodaConstants.INDEX_UUID) + "' to index '" + collection + "'", e));
+    }
+  }
+
+  private static long estimateSizeInBytes(SolrInputDocument document) {
+    long size = 0;
+    for (SolrInputField field : document) {
+      size += field.getName().length();
+      Object value = field.getValue();
+      if (value instanceof Collection) {
+        for (Object v : (Collection<?>) value) {
+          size += v == null ? 0 : v.toString().length();
+        }
+      } else if (value != null) {
+        size += value.toString().length();
+      }
+    }
+    return size;
+  }
+
+  private static synchronized ExecutorService getFlushExecutor() {
+    if (FLUSH_EXECUTOR == null) {
+      FLUSH_EXECUTOR = Executors.newFixedThreadPool(THREADS,
+        new ThreadFactoryBuilder().setNameFormat("index-batch-%d").setDaemon(true).build());
+    }
+    return FLUSH_EXECUTOR;
+  }
+
+  private static synchronized ScheduledExecutorService getDeadlineExecutor() {
+    if (DEADLINE_EXECUTOR == null) {
+      DEADLINE_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("index-batch-deadline-%d").setDaemon(true).build());
+    }
+    return DEADLINE_EXECUTOR;
+  }
+
+  public static void injectMaxDocuments(int maxDocuments) {
+    MAX_DOCUMENTS = maxDocuments;
+  }
+
+  public static void injectMaxBytes(long maxBytes) {
+    MAX_BYTES = maxBytes;
+  }
+
+  public static void injectMaxDelayInMillis(long maxDelayInMillis) {
+    MAX_DELAY_IN_MILLIS = maxDelayInMillis;
+  }
+
+  public static void injectMaxBatchesInFlight(int maxBatchesInFlight) {
+    MAX_BATCHES_IN_FLIGHT = Math.max(1, maxBatchesInFlight);
+  }
+
+  public static void injectNumberOfThreads(int threads) {
+    THREADS = Math.max(1, threads);
+  }
+
+  public static void injectHistogram(Histogram histogram) {
+    HISTOGRAM = histogram;
+  }
+
+  public static void injectUnchangedCounter(Counter unchanged) {
+    UNCHANGED = unchanged;
+  }
+
+  private static class Batch {
+    private final List<SolrInputDocument> documents = new ArrayList<>();
+    private long sizeInBytes = 0;
+    private ScheduledFuture<?> deadline = null;
+
+    private boolean isFull() {
+      return documents.size() >= MAX_DOCUMENTS || sizeInBytes >= MAX_BYTES;
+    }
+  }
+}
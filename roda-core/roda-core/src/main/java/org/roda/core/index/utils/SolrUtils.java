@@ -10,6 +10,7 @@ package org.roda.core.index.utils;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
@@ -18,6 +19,7 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -123,6 +125,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
 /**
  * Utilities class related to Apache Solr
  * 
@@ -1260,9 +1265,7 @@ public class SolrUtils {
   public static <T extends IsIndexed, S extends Object> ReturnWithExceptions<Void, S> update(SolrClient index,
     Class<T> classToCreate, String uuid, Map<String, Object> fields, S source) {
     ReturnWithExceptions<Void, S> ret = new ReturnWithExceptions<>();
-    SolrInputDocument doc = new SolrInputDocument();
-    doc.addField(RodaConstants.INDEX_UUID, uuid);
-    fields.entrySet().forEach(e -> doc.addField(e.getKey(), set(e.getValue())));
+    SolrInputDocument doc = createPartialUpdateDocument(uuid, fields);
     try {
       create(index, SolrCollectionRegistry.getIndexName(classToCreate), doc, source).addTo(ret);
     } catch (NotSupportedException e) {
@@ -1272,6 +1275,83 @@ public class SolrUtils {
     return ret;
   }
 
+  static SolrInputDocument createPartialUpdateDocument(String uuid, Map<String, Object> fields) {
+    SolrInputDocument doc = new SolrInputDocument();
+    doc.addField(RodaConstants.INDEX_UUID, uuid);
+    fields.entrySet().forEach(e -> doc.addField(e.getKey(), set(e.getValue())));
+    // the content hash no longer matches the updated document, so it is
+    // removed and the document is always sent on the next incremental update
+    if (!fields.containsKey(RodaConstants.INDEX_CONTENT_HASH)) {
+      doc.addField(RodaConstants.INDEX_CONTENT_HASH, set(null));
+    }
+    return doc;
+  }
+
+  /**
+   * Computes a hash of the contents of a document, ignoring the content hash
+   * field itself and field order, to detect if a re-generated document differs
+   * from the indexed one.
+   */
+  public static String computeContentHash(SolrInputDocument doc) {
+    List<String> fieldNames = new ArrayList<>(doc.getFieldNames());
+    Collections.sort(fieldNames);
+
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (String fieldName : fieldNames) {
+      if (RodaConstants.INDEX_CONTENT_HASH.equals(fieldName)) {
+        continue;
+      }
+      hasher.putString(fieldName, StandardCharsets.UTF_8).putByte((byte) 0);
+      for (Object value : doc.getFieldValues(fieldName)) {
+        hasher.putString(value == null ? "" : value.toString(), StandardCharsets.UTF_8).putByte((byte) 1);
+      }
+      hasher.putByte((byte) 2);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Retrieves the content hash of every document matching the filter, using
+   * cursors and only fetching the unique id and content hash fields.
+   *
+   * @return map from document unique id to content hash (which is
+   *         <code>null</code> for documents indexed without one)
+   */
+  public static <T extends IsIndexed> Map<String, String> retrieveContentHashes(SolrClient index,
+    Class<T> classToRetrieve, Filter filter) throws GenericException, RequestNotValidException {
+    Map<String, String> ret = new HashMap<>();
+    SolrQuery query = new SolrQuery();
+    query.setParam("q.op", DEFAULT_QUERY_PARSER_OPERATOR);
+    query.setQuery(parseFilter(filter));
+    query.setRows(IndexResultIterator.DEFAULT_PAGE_SIZE);
+    query.setSorts(Arrays.asList(SortClause.asc(RodaConstants.INDEX_UUID)));
+    query.setFields(RodaConstants.INDEX_UUID, RodaConstants.INDEX_CONTENT_HASH);
+
+    try {
+      String collection = SolrCollectionRegistry.getIndexName(classToRetrieve);
+      String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+      String nextCursorMark = null;
+      while (!cursorMark.equals(nextCursorMark)) {
+        if (nextCursorMark != null) {
+          cursorMark = nextCursorMark;
+        }
+        query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+        QueryResponse response = index.query(collection, query);
+        for (SolrDocument doc : response.getResults()) {
+          ret.put(objectToString(doc.get(RodaConstants.INDEX_UUID), null),
+            objectToString(doc.get(RodaConstants.INDEX_CONTENT_HASH), null));
+        }
+        nextCursorMark = response.getNextCursorMark();
+      }
+    } catch (SolrServerException | IOException | NotSupportedException e) {
+      throw new GenericException("Could not query index", e);
+    } catch (SolrException e) {
+      throw new RequestNotValidException(e);
+    }
+
+    return ret;
+  }
+
   private static Map<String, Object> set(Object value) {
     Map<String, Object> fieldModifier = new HashMap<>(1);
     // 20160511 this workaround fixes solr wrong behaviour with partial update
@@ -1348,6 +1428,8 @@ public class SolrUtils {
     for (Map.Entry<String, List<String>> entry : otherProperties.entrySet()) {
       solrDocument.setField(prefix + entry.getKey(), entry.getValue());
     }
+    // the content hash no longer matches the updated document
+    solrDocument.removeFields(RodaConstants.INDEX_CONTENT_HASH);
 
     return solrDocumentToSolrInputDocument(solrDocument);
   }
@@ -1454,12 +1536,12 @@ public class SolrUtils {
     String nextAncestorId = parentId;
     while (nextAncestorId != null) {
       try {
-        AIP nextAncestor = model.retrieveAIP(nextAncestorId);
+        String nextAncestorParentId = model.retrieveAIPParentId(nextAncestorId);
         if (ancestors.contains(nextAncestorId)) {
           break;
         }
         ancestors.add(nextAncestorId);
-        nextAncestorId = nextAncestor.getParentId();
+        nextAncestorId = nextAncestorParentId;
       } catch (NotFoundException e) {
         LOGGER.warn("Could not find one AIP ancestor. Ancestor id: {}", nextAncestorId);
         nextAncestorId = null;
@@ -43,7 +43,11 @@ import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.migration.model.PreservationMetadataFileToVersion2;
 import org.roda.core.migration.model.RepresentationToVersion2;
 import org.roda.core.migration.model.RiskToVersion2;
+import org.roda.core.storage.CachingStorageService;
+import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.storage.fs.ShardedLayoutMigration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -105,6 +109,9 @@ public class MigrationManager {
     // check if index migration is necessary
     migrationIsNecessary |= isIndexMigrationNecessary(solrClient, tempIndexConfigsPath);
 
+    // check if storage layout migration is necessary
+    migrationIsNecessary |= isStorageLayoutMigrationNecessary();
+
     return migrationIsNecessary;
   }
 
@@ -241,6 +248,33 @@ public class MigrationManager {
     JsonUtils.writeObjectToFile(modelInfo, modelInfoFile);
   }
 
+  private boolean isStorageLayoutMigrationNecessary() throws GenericException {
+    Optional<ShardedLayoutMigration> migration = getStorageLayoutMigration();
+    return migration.isPresent() && migration.get().isNecessary(RodaCoreFactory.getStorageShardedLayout());
+  }
+
+  /**
+   * Moves the children of the containers of the storage into the shard
+   * directories of the configured layout (or out of them).
+   */
+  public void performStorageLayoutMigration() throws GenericException {
+    Optional<ShardedLayoutMigration> migration = getStorageLayoutMigration();
+    if (migration.isPresent()) {
+      migration.get().migrate(RodaCoreFactory.getStorageShardedLayout());
+    } else {
+      LOGGER.info("Storage is not a file system storage, so there is no storage layout to migrate");
+    }
+  }
+
+  private Optional<ShardedLayoutMigration> getStorageLayoutMigration() {
+    StorageService storage = CachingStorageService.unwrap(RodaCoreFactory.getStorageService());
+    if (storage instanceof FileStorageService) {
+      return Optional.of(new ShardedLayoutMigration((FileStorageService) storage));
+    } else {
+      return Optional.empty();
+    }
+  }
+
   private boolean isIndexMigrationNecessary(SolrClient solrClient, Optional<Path> tempIndexConfigsPath)
     throws GenericException {
     boolean migrationIsNecessary = false;
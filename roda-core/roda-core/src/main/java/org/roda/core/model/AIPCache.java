@@ -0,0 +1,156 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.model.utils.ResourceParseUtils;
+import org.roda.core.storage.CachingStorageService;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.fs.FileStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Size-bounded cache of parsed AIP metadata ({@code aip.json}).
+ *
+ * <p>
+ * Entries are weighted by the size of their {@code aip.json} and are
+ * invalidated by {@link ModelService} whenever it changes an AIP. When the
+ * storage is a {@link FileStorageService}, the modification time of the
+ * metadata file is also checked on every hit so that changes made outside this
+ * model service (e.g. by another node) are not missed.
+ * </p>
+ *
+ * <p>
+ * As AIPs are mutable, callers always get their own copy of the cached AIP.
+ * </p>
+ */
+public class AIPCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AIPCache.class);
+
+  private final StorageService storage;
+  private final StorageService baseStorage;
+  private final boolean validateModificationTime;
+  private final Cache<String, CachedAIP> cache;
+  // incremented on every invalidation so that loads racing with a change are
+  // not put in the cache
+  private final AtomicLong generation = new AtomicLong();
+
+  private Counter hits;
+  private Counter misses;
+  private Counter invalidations;
+
+  public AIPCache(StorageService storage, long maximumWeightInBytes, boolean validateModificationTime) {
+    this.storage = storage;
+    this.baseStorage = CachingStorageService.unwrap(storage);
+    this.validateModificationTime = validateModificationTime && baseStorage instanceof FileStorageService;
+    this.cache = CacheBuilder.newBuilder().maximumWeight(maximumWeightInBytes)
+      .weigher((String aipId, CachedAIP cached) -> cached.weight).build();
+    this.hits = new Counter();
+    this.misses = new Counter();
+    this.invalidations = new Counter();
+  }
+
+  public void registerMetrics(MetricRegistry metricRegistry) {
+    String prefix = AIPCache.class.getSimpleName();
+    hits = metricRegistry.counter(MetricRegistry.name(prefix, "hits"));
+    misses = metricRegistry.counter(MetricRegistry.name(prefix, "misses"));
+    invalidations = metricRegistry.counter(MetricRegistry.name(prefix, "invalidations"));
+    metricRegistry.register(MetricRegistry.name(prefix, "size"), (Gauge<Long>) cache::size);
+  }
+
+  public AIP retrieve(String aipId)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    StoragePath aipPath = ModelUtils.getAIPStoragePath(aipId);
+    StoragePath metadataPath = DefaultStoragePath.parse(aipPath, RodaConstants.STORAGE_AIP_METADATA_FILENAME);
+
+    CachedAIP cached = cache.getIfPresent(aipId);
+    if (cached != null && isStillValid(cached, metadataPath)) {
+      hits.inc();
+      return copy(cached.aip, aipId);
+    }
+
+    misses.inc();
+    long loadGeneration = generation.get();
+    long lastModified = getLastModifiedTime(metadataPath);
+    Long sizeInBytes = storage.getBinary(metadataPath).getSizeInBytes();
+    AIP aip = ResourceParseUtils.getAIPMetadata(storage, aipId, aipPath);
+    if (loadGeneration == generation.get()) {
+      cache.put(aipId, new CachedAIP(copy(aip, aipId), lastModified, sizeInBytes));
+    }
+    return aip;
+  }
+
+  private static AIP copy(AIP aip, String aipId) throws GenericException {
+    AIP copy = JsonUtils.copyObject(aip, AIP.class);
+    // Setting information that does not come in JSON
+    copy.setId(aipId);
+    return copy;
+  }
+
+  public void invalidate(String aipId) {
+    generation.incrementAndGet();
+    invalidations.inc();
+    cache.invalidate(aipId);
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    invalidations.inc();
+    cache.invalidateAll();
+  }
+
+  private boolean isStillValid(CachedAIP cached, StoragePath metadataPath) {
+    if (!validateModificationTime) {
+      return true;
+    }
+
+    try {
+      return cached.lastModified == getLastModifiedTime(metadataPath);
+    } catch (NotFoundException | GenericException e) {
+      LOGGER.debug("Could not validate cached AIP metadata at {}", metadataPath, e);
+      return false;
+    }
+  }
+
+  private long getLastModifiedTime(StoragePath metadataPath) throws NotFoundException, GenericException {
+    if (validateModificationTime) {
+      return ((FileStorageService) baseStorage).getLastModifiedTime(metadataPath);
+    }
+    return 0L;
+  }
+
+  private static final class CachedAIP {
+    private final AIP aip;
+    private final long lastModified;
+    private final int weight;
+
+    private CachedAIP(AIP aip, long lastModified, Long sizeInBytes) {
+      this.aip = aip;
+      this.lastModified = lastModified;
+      this.weight = sizeInBytes == null ? 1 : (int) Math.min(Integer.MAX_VALUE, Math.max(1L, sizeInBytes));
+    }
+  }
+}
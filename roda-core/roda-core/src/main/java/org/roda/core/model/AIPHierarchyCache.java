@@ -0,0 +1,88 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * In-memory materialization of the AIP hierarchy, i.e. the parent of each AIP.
+ *
+ * <p>
+ * Only the direct parent link is kept per AIP, so moving an AIP only
+ * invalidates that AIP entry and all of its descendants automatically resolve
+ * their new ancestors. Ancestor paths are then computed by walking these links
+ * in memory instead of reading every ancestor {@code aip.json} from storage.
+ * </p>
+ */
+public class AIPHierarchyCache {
+  private final Cache<String, Optional<String>> parents;
+  // incremented on every invalidation so that loads racing with a change are
+  // not put in the cache
+  private final AtomicLong generation = new AtomicLong();
+
+  private Counter hits;
+  private Counter misses;
+
+  public AIPHierarchyCache(long maximumSize) {
+    this.parents = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    this.hits = new Counter();
+    this.misses = new Counter();
+  }
+
+  public void registerMetrics(MetricRegistry metricRegistry) {
+    String prefix = AIPHierarchyCache.class.getSimpleName();
+    hits = metricRegistry.counter(MetricRegistry.name(prefix, "hits"));
+    misses = metricRegistry.counter(MetricRegistry.name(prefix, "misses"));
+    metricRegistry.register(MetricRegistry.name(prefix, "size"), (Gauge<Long>) parents::size);
+  }
+
+  /**
+   * @return the cached parent link of the AIP (which is empty for top-level
+   *         AIPs) or <code>null</code> if it is not known.
+   */
+  public Optional<String> getParentId(String aipId) {
+    Optional<String> parentId = parents.getIfPresent(aipId);
+    if (parentId != null) {
+      hits.inc();
+    } else {
+      misses.inc();
+    }
+    return parentId;
+  }
+
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Caches the parent link of an AIP, read from storage, unless some change
+   * happened since the given generation (obtained before reading it).
+   */
+  public void putParentId(String aipId, String parentId, long loadGeneration) {
+    if (loadGeneration == generation.get()) {
+      parents.put(aipId, Optional.ofNullable(parentId));
+    }
+  }
+
+  public void invalidate(String aipId) {
+    generation.incrementAndGet();
+    parents.invalidate(aipId);
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    parents.invalidateAll();
+  }
+}
@@ -0,0 +1,323 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.log.LogEntry;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Asynchronous writer of action log entries.
+ *
+ * <p>
+ * Entries are put in a bounded queue (callers only block when it is full) and
+ * a single thread takes them in batches, appends them to the daily log file
+ * through a file channel that is kept open and indexes each batch at once.
+ * Batches are appended while holding the lock that {@link ModelService} holds
+ * to move log files to storage.
+ * </p>
+ *
+ * <p>
+ * The file channel is forced to disk once per batch or once per entry,
+ * depending on the {@link Durability}. Entries still in the queue when the
+ * process crashes are lost, so {@link #flush()} should be used when an entry
+ * must be persisted before going on.
+ * </p>
+ *
+ * <p>
+ * Entries and flush markers are only queued while the writer is running, and
+ * {@link #shutdown()} stops it only when nothing is being queued, so the writer
+ * thread always takes what was queued before it stops. Once stopped, entries
+ * are no longer accepted and must be written synchronously.
+ * </p>
+ */
+public class ActionLogWriter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ActionLogWriter.class);
+
+  public enum Durability {
+    BATCH, ENTRY
+  }
+
+  private final ModelService model;
+  private final BlockingQueue<PendingEntry> queue;
+  private final int maxBatchSize;
+  private final Durability durability;
+  private final Thread writerThread;
+  // held for reading while queuing and for writing while stopping
+  private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+  private volatile boolean running = true;
+
+  // only used by the writer thread
+  private Path currentLogFile = null;
+  private FileChannel channel = null;
+  private boolean channelChecked = false;
+
+  private Histogram batchSizes = null;
+
+  public ActionLogWriter(ModelService model, int capacity, int maxBatchSize, Durability durability) {
+    this.model = model;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.durability = durability;
+    this.writerThread = new Thread(this::run, "action-log-writer");
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  public void registerMetrics(MetricRegistry metricRegistry) {
+    String prefix = ActionLogWriter.class.getSimpleName();
+    batchSizes = metricRegistry.histogram(MetricRegistry.name(prefix, "batchSize"));
+    metricRegistry.register(MetricRegistry.name(prefix, "queueDepth"), (Gauge<Integer>) queue::size);
+    metricRegistry.register(MetricRegistry.name(prefix, "queueRemainingCapacity"),
+      (Gauge<Integer>) queue::remainingCapacity);
+  }
+
+  /**
+   * Queues a log entry to be written (and indexed if notify is true), waiting
+   * if the queue is full.
+   *
+   * @return false if the writer is stopped, in which case the entry was not
+   *         queued and must be written by the caller
+   */
+  public boolean append(LogEntry logEntry, Path logDirectory, boolean notify) throws GenericException {
+    return put(new PendingEntry(logEntry, logDirectory, notify, null));
+  }
+
+  /**
+   * Waits until all entries queued before this call are written and indexed.
+   */
+  public void flush() throws GenericException {
+    CountDownLatch written = new CountDownLatch(1);
+    try {
+      if (put(new PendingEntry(null, null, false, written))) {
+        written.await();
+      } else {
+        // stopped, so only the entries queued before stopping are left
+        writerThread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while waiting for action log entries to be written", e);
+    }
+  }
+
+  /**
+   * Writes the entries still queued and stops the writer thread.
+   */
+  public void shutdown() {
+    stateLock.writeLock().lock();
+    try {
+      running = false;
+    } finally {
+      stateLock.writeLock().unlock();
+    }
+
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while waiting for the action log writer to stop");
+    }
+  }
+
+  /**
+   * @return false if the writer is stopped
+   */
+  private boolean put(PendingEntry pending) throws GenericException {
+    // the writer thread never takes this lock, so it keeps emptying the queue
+    // while callers wait for room in it
+    stateLock.readLock().lock();
+    try {
+      if (!running) {
+        return false;
+      }
+      queue.put(pending);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while queuing action log entry", e);
+    } finally {
+      stateLock.readLock().unlock();
+    }
+  }
+
+  private void run() {
+    List<PendingEntry> batch = new ArrayList<>(maxBatchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        PendingEntry first = queue.poll(1, TimeUnit.SECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch, maxBatchSize - 1);
+          write(batch);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOGGER.warn("Action log writer interrupted, {} entries were not written", queue.size());
+        // do not leave flushes waiting
+        queue.stream().filter(p -> p.flushed != null).forEach(p -> p.flushed.countDown());
+        break;
+      } catch (RuntimeException e) {
+        LOGGER.error("Error writing action log entries", e);
+      } finally {
+        batch.clear();
+      }
+    }
+    closeChannel();
+  }
+
+  private void write(List<PendingEntry> batch) {
+    List<LogEntry> toIndex = new ArrayList<>();
+    List<CountDownLatch> flushes = new ArrayList<>();
+
+    // the same lock as the one held while moving log files to storage, so that
+    // the current file is not moved while the batch is appended to it
+    synchronized (model.getLogFileLock()) {
+      channelChecked = false;
+      for (PendingEntry pending : batch) {
+        if (pending.flushed != null) {
+          flushes.add(pending.flushed);
+          continue;
+        }
+
+        try {
+          FileChannel logChannel = getChannel(pending.logDirectory);
+          byte[] json = JsonUtils.getJsonBytesFromObject(pending.logEntry, null);
+          byte[] line = Arrays.copyOf(json, json.length + 1);
+          line[json.length] = '\n';
+          ByteBuffer buffer = ByteBuffer.wrap(line);
+          while (buffer.hasRemaining()) {
+            logChannel.write(buffer);
+          }
+          if (durability == Durability.ENTRY) {
+            logChannel.force(false);
+          }
+          if (pending.notify) {
+            toIndex.add(pending.logEntry);
+          }
+        } catch (GenericException | IOException e) {
+          LOGGER.error("Error writing action log entry {}", pending.logEntry.getId(), e);
+        }
+      }
+
+      if (durability == Durability.BATCH) {
+        force();
+      }
+    }
+
+    if (!toIndex.isEmpty()) {
+      try {
+        model.notifyLogEntriesCreated(toIndex).failOnError();
+      } catch (GenericException e) {
+        LOGGER.error("Error indexing {} action log entries", toIndex.size(), e);
+      }
+    }
+
+    if (batchSizes != null) {
+      batchSizes.update(batch.size() - flushes.size());
+    }
+    flushes.forEach(CountDownLatch::countDown);
+  }
+
+  private FileChannel getChannel(Path logDirectory) throws IOException {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+    Path logFile = logDirectory.resolve(sdf.format(new Date()) + ".log");
+    if (channel != null && logFile.equals(currentLogFile) && channelChecked) {
+      return channel;
+    }
+
+    // the current file may have been moved to storage since the previous batch
+    // (e.g. by an action log reindex), which cannot happen while the lock is
+    // held, so it is only checked once per batch
+    boolean logFileExists = FSUtils.exists(logFile);
+    if (channel == null || !logFile.equals(currentLogFile) || !logFileExists) {
+      closeChannel();
+
+      // verify if file exists and if not, if older files exist (in that case,
+      // move them to storage)
+      if (!logFileExists) {
+        try {
+          model.findOldLogsAndMoveThemToStorage(logDirectory, logFile);
+        } catch (RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
+          LOGGER.error("Error archiving old log files", e);
+        }
+      }
+
+      channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+      currentLogFile = logFile;
+    }
+    channelChecked = true;
+    return channel;
+  }
+
+  private void force() {
+    if (channel != null) {
+      try {
+        channel.force(false);
+      } catch (IOException e) {
+        LOGGER.error("Error forcing action log file {} to disk", currentLogFile, e);
+      }
+    }
+  }
+
+  private void closeChannel() {
+    if (channel != null) {
+      force();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.error("Error closing action log file {}", currentLogFile, e);
+      }
+      channel = null;
+      currentLogFile = null;
+    }
+  }
+
+  private static final class PendingEntry {
+    private final LogEntry logEntry;
+    private final Path logDirectory;
+    private final boolean notify;
+    // not null for the markers used by flush
+    private final CountDownLatch flushed;
+
+    private PendingEntry(LogEntry logEntry, Path logDirectory, boolean notify, CountDownLatch flushed) {
+      this.logEntry = logEntry;
+      this.logDirectory = logDirectory;
+      this.notify = notify;
+      this.flushed = flushed;
+    }
+  }
+}
@@ -114,6 +114,10 @@ public abstract class ModelObservable {
     return notifyObserversSafely(observer -> observer.fileCreated(file));
   }
 
+  public ReturnWithExceptionsWrapper notifyFilesCreated(List<File> files) {
+    return notifyObserversSafely(observer -> observer.filesCreated(files));
+  }
+
   public ReturnWithExceptionsWrapper notifyFileUpdated(File file) {
     return notifyObserversSafely(observer -> observer.fileUpdated(file));
   }
@@ -128,6 +132,10 @@ public abstract class ModelObservable {
     return notifyObserversSafely(observer -> observer.logEntryCreated(entry));
   }
 
+  public ReturnWithExceptionsWrapper notifyLogEntriesCreated(List<LogEntry> entries) {
+    return notifyObserversSafely(observer -> observer.logEntriesCreated(entries));
+  }
+
   public ReturnWithExceptionsWrapper notifyUserCreated(User user) {
     return notifyObserversSafely(observer -> observer.userCreated(user));
   }
@@ -182,6 +190,10 @@ public abstract class ModelObservable {
     return notifyObserversSafely(observer -> observer.jobReportCreatedOrUpdated(jobReport, job));
   }
 
+  public ReturnWithExceptionsWrapper notifyJobReportsCreatedOrUpdated(List<Report> jobReports, Job job) {
+    return notifyObserversSafely(observer -> observer.jobReportsCreatedOrUpdated(jobReports, job));
+  }
+
   public ReturnWithExceptionsWrapper notifyJobReportDeleted(String jobReportId) {
     return notifyObserversSafely(observer -> observer.jobReportDeleted(jobReportId));
   }
@@ -59,6 +59,8 @@ public interface ModelObserver {
 
   public ReturnWithExceptions<Void, ModelObserver> fileCreated(File file);
 
+  public ReturnWithExceptions<Void, ModelObserver> filesCreated(List<File> files);
+
   public ReturnWithExceptions<Void, ModelObserver> fileUpdated(File file);
 
   public ReturnWithExceptions<Void, ModelObserver> fileDeleted(String aipId, String representationId,
@@ -66,6 +68,8 @@ public interface ModelObserver {
 
   public ReturnWithExceptions<Void, ModelObserver> logEntryCreated(LogEntry entry);
 
+  public ReturnWithExceptions<Void, ModelObserver> logEntriesCreated(List<LogEntry> entries);
+
   public ReturnWithExceptions<Void, ModelObserver> userCreated(User user);
 
   public ReturnWithExceptions<Void, ModelObserver> userUpdated(User user);
@@ -95,6 +99,8 @@ public interface ModelObserver {
 
   public ReturnWithExceptions<Void, ModelObserver> jobReportCreatedOrUpdated(Report jobReport, Job job);
 
+  public ReturnWithExceptions<Void, ModelObserver> jobReportsCreatedOrUpdated(List<Report> jobReports, Job job);
+
   public ReturnWithExceptions<Void, ModelObserver> jobReportDeleted(String jobReportId);
 
   public ReturnWithExceptions<Void, ModelObserver> aipPermissionsUpdated(AIP aip);
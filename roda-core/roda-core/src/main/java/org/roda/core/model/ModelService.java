@@ -108,6 +108,7 @@ import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.Directory;
 import org.roda.core.storage.EmptyClosableIterable;
 import org.roda.core.storage.Entity;
+import org.roda.core.storage.JsonContentPayload;
 import org.roda.core.storage.Resource;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.StringContentPayload;
@@ -131,7 +132,10 @@ public class ModelService extends ModelObservable {
   private static final DateTimeFormatter LOG_NAME_DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
   private static final boolean FAIL_IF_NO_DESCRIPTIVE_METADATA_SCHEMA = false;
   private final StorageService storage;
-  private Object logFileLock = new Object();
+  private final Object logFileLock = new Object();
+  private AIPCache aipCache = null;
+  private AIPHierarchyCache aipHierarchyCache = null;
+  private ActionLogWriter actionLogWriter = null;
 
   public ModelService(StorageService storage) {
     super(LOGGER);
@@ -190,6 +194,45 @@ public class ModelService extends ModelObservable {
     return storage;
   }
 
+  /**
+   * Enables caching of parsed AIP metadata. It should only be used when all
+   * changes to AIP metadata go through this model service (or, on a file
+   * system storage, with modification time validation enabled).
+   */
+  public void setAIPCache(AIPCache aipCache) {
+    this.aipCache = aipCache;
+  }
+
+  /**
+   * Enables caching of the AIP hierarchy (i.e. parent links) used to compute
+   * AIP ancestors. It should only be used when all changes to AIP metadata go
+   * through this model service.
+   */
+  public void setAIPHierarchyCache(AIPHierarchyCache aipHierarchyCache) {
+    this.aipHierarchyCache = aipHierarchyCache;
+  }
+
+  /**
+   * Makes log entries be written and indexed asynchronously, in batches.
+   */
+  public void setActionLogWriter(ActionLogWriter actionLogWriter) {
+    this.actionLogWriter = actionLogWriter;
+  }
+
+  public ActionLogWriter getActionLogWriter() {
+    return actionLogWriter;
+  }
+
+  private void invalidateCachedAIP(String aipId) {
+    if (aipCache != null) {
+      aipCache.invalidate(aipId);
+    }
+
+    if (aipHierarchyCache != null) {
+      aipHierarchyCache.invalidate(aipId);
+    }
+  }
+
   /***************** AIP related *****************/
   /***********************************************/
 
@@ -200,11 +243,11 @@ public class ModelService extends ModelObservable {
 
   private void createAIPMetadata(AIP aip, StoragePath storagePath) throws RequestNotValidException, GenericException,
     AlreadyExistsException, AuthorizationDeniedException, NotFoundException {
-    String json = JsonUtils.getJsonFromObject(aip);
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_AIP_METADATA_FILENAME);
     boolean asReference = false;
-    storage.createBinary(metadataStoragePath, new StringContentPayload(json), asReference);
+    storage.createBinary(metadataStoragePath, new JsonContentPayload(aip), asReference);
+    invalidateCachedAIP(aip.getId());
   }
 
   private void updateAIPMetadata(AIP aip)
@@ -214,12 +257,12 @@ public class ModelService extends ModelObservable {
 
   private void updateAIPMetadata(AIP aip, StoragePath storagePath)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
-    String json = JsonUtils.getJsonFromObject(aip);
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_AIP_METADATA_FILENAME);
     boolean asReference = false;
     boolean createIfNotExists = true;
-    storage.updateBinaryContent(metadataStoragePath, new StringContentPayload(json), asReference, createIfNotExists);
+    storage.updateBinaryContent(metadataStoragePath, new JsonContentPayload(aip), asReference, createIfNotExists);
+    invalidateCachedAIP(aip.getId());
   }
 
   private void updateDIPMetadata(DIP dip)
@@ -236,9 +279,33 @@ public class ModelService extends ModelObservable {
 
   public AIP retrieveAIP(String aipId)
     throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
+    if (aipCache != null) {
+      return aipCache.retrieve(aipId);
+    }
     return ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
   }
 
+  /**
+   * Retrieves the id of the parent of an AIP, or <code>null</code> if it is a
+   * top-level AIP.
+   */
+  public String retrieveAIPParentId(String aipId)
+    throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
+    if (aipHierarchyCache == null) {
+      return retrieveAIP(aipId).getParentId();
+    }
+
+    Optional<String> cachedParentId = aipHierarchyCache.getParentId(aipId);
+    if (cachedParentId != null) {
+      return cachedParentId.orElse(null);
+    }
+
+    long loadGeneration = aipHierarchyCache.getGeneration();
+    String parentId = retrieveAIP(aipId).getParentId();
+    aipHierarchyCache.putParentId(aipId, parentId, loadGeneration);
+    return parentId;
+  }
+
   /**
    * Create a new AIP
    * 
@@ -269,6 +336,7 @@ public class ModelService extends ModelObservable {
 
     if (validationReport.isValid()) {
       storage.copy(sourceStorage, sourcePath, ModelUtils.getAIPStoragePath(aipId));
+      invalidateCachedAIP(aipId);
       Directory newDirectory = storage.getDirectory(ModelUtils.getAIPStoragePath(aipId));
 
       aip = ResourceParseUtils.getAIPMetadata(getStorage(), newDirectory.getStoragePath());
@@ -372,14 +440,14 @@ public class ModelService extends ModelObservable {
 
   public AIP notifyAipCreated(String aipId)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     notifyAipCreated(aip).failOnError();
     return aip;
   }
 
   public AIP notifyAipUpdated(String aipId)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     notifyAipUpdated(aip).failOnError();
     return aip;
   }
@@ -427,6 +495,7 @@ public class ModelService extends ModelObservable {
       storage.deleteResource(aipPath);
 
       storage.copy(sourceStorage, sourcePath, aipPath);
+      invalidateCachedAIP(aipId);
       Directory directoryUpdated = storage.getDirectory(aipPath);
 
       aip = ResourceParseUtils.getAIPMetadata(getStorage(), directoryUpdated.getStoragePath());
@@ -467,7 +536,7 @@ public class ModelService extends ModelObservable {
     }
 
     // TODO ADD RESTRICTIONS
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     String oldParentId = aip.getParentId();
     aip.setParentId(parentId);
     aip.setUpdatedOn(new Date());
@@ -483,6 +552,7 @@ public class ModelService extends ModelObservable {
     throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
     StoragePath aipPath = ModelUtils.getAIPStoragePath(aipId);
     storage.deleteResource(aipPath);
+    invalidateCachedAIP(aipId);
     notifyAipDeleted(aipId).failOnError();
   }
 
@@ -539,7 +609,7 @@ public class ModelService extends ModelObservable {
     String descriptiveMetadataId)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
 
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
 
     DescriptiveMetadata ret = null;
     for (DescriptiveMetadata descriptiveMetadata : getDescriptiveMetadata(aip, representationId)) {
@@ -593,7 +663,7 @@ public class ModelService extends ModelObservable {
     DescriptiveMetadata descriptiveMetadata = new DescriptiveMetadata(descriptiveMetadataId, aipId, representationId,
       descriptiveMetadataType, descriptiveMetadataVersion);
 
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     aip.addDescriptiveMetadata(descriptiveMetadata);
     updateAIPMetadata(aip);
 
@@ -630,7 +700,7 @@ public class ModelService extends ModelObservable {
     storage.updateBinaryContent(binaryPath, descriptiveMetadataPayload, asReference, createIfNotExists);
 
     // set descriptive metadata type
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     ret = updateDescriptiveMetadata(aip, representationId, descriptiveMetadataId, descriptiveMetadataType,
       descriptiveMetadataVersion);
 
@@ -672,7 +742,7 @@ public class ModelService extends ModelObservable {
     storage.deleteResource(binaryPath);
 
     // update AIP metadata
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     deleteDescriptiveMetadata(aip, representationId, descriptiveMetadataId);
 
     updateAIPMetadata(aip);
@@ -825,7 +895,7 @@ public class ModelService extends ModelObservable {
   public Representation retrieveRepresentation(String aipId, String representationId)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
 
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
 
     Representation ret = null;
     for (Representation representation : aip.getRepresentations()) {
@@ -853,7 +923,7 @@ public class ModelService extends ModelObservable {
     storage.createDirectory(directoryPath);
 
     // update AIP metadata
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     aip.getRepresentations().add(representation);
     updateAIPMetadata(aip);
 
@@ -887,7 +957,7 @@ public class ModelService extends ModelObservable {
     representation.setUpdatedBy(createdBy);
 
     // update AIP metadata
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     aip.getRepresentations().add(representation);
     updateAIPMetadata(aip);
 
@@ -972,7 +1042,7 @@ public class ModelService extends ModelObservable {
     storage.deleteResource(representationPath);
 
     // update AIP metadata
-    AIP aip = ResourceParseUtils.getAIPMetadata(getStorage(), aipId);
+    AIP aip = retrieveAIP(aipId);
     for (Iterator<Representation> it = aip.getRepresentations().iterator(); it.hasNext();) {
       Representation representation = it.next();
       if (representation.getId().equals(representationId)) {
@@ -1646,6 +1716,10 @@ public class ModelService extends ModelObservable {
   /*****************************************************/
   public void addLogEntry(LogEntry logEntry, Path logDirectory, boolean notify)
     throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    if (actionLogWriter != null && actionLogWriter.append(logEntry, logDirectory, notify)) {
+      return;
+    }
+
     SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
     String datePlusExtension = sdf.format(new Date()) + ".log";
     Path logFile = logDirectory.resolve(datePlusExtension);
@@ -1679,26 +1753,37 @@ public class ModelService extends ModelObservable {
     addLogEntry(logEntry, logDirectory, true);
   }
 
-  public synchronized void findOldLogsAndMoveThemToStorage(Path logDirectory, Path currentLogFile)
+  public void findOldLogsAndMoveThemToStorage(Path logDirectory, Path currentLogFile)
     throws RequestNotValidException, AuthorizationDeniedException, NotFoundException {
-    try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(logDirectory)) {
-
-      for (Path path : directoryStream) {
-        if (!path.equals(currentLogFile)) {
-          try {
-            StoragePath logPath = ModelUtils.getLogStoragePath(path.getFileName().toString());
-            storage.createBinary(logPath, new FSPathContentPayload(path), false);
-            Files.delete(path);
-          } catch (IOException | GenericException | AlreadyExistsException e) {
-            LOGGER.error("Error archiving log file", e);
+    // log files are only moved while no entry is being appended to them
+    synchronized (logFileLock) {
+      try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(logDirectory)) {
+
+        for (Path path : directoryStream) {
+          if (!path.equals(currentLogFile)) {
+            try {
+              StoragePath logPath = ModelUtils.getLogStoragePath(path.getFileName().toString());
+              storage.createBinary(logPath, new FSPathContentPayload(path), false);
+              Files.delete(path);
+            } catch (IOException | GenericException | AlreadyExistsException e) {
+              LOGGER.error("Error archiving log file", e);
+            }
           }
         }
+      } catch (IOException e) {
+        LOGGER.error("Error listing directory for log files", e);
       }
-    } catch (IOException e) {
-      LOGGER.error("Error listing directory for log files", e);
     }
   }
 
+  /**
+   * The lock held while appending entries to a log file or moving log files to
+   * storage.
+   */
+  Object getLogFileLock() {
+    return logFileLock;
+  }
+
   /***************** Users/Groups related *****************/
   /********************************************************/
 
@@ -1921,9 +2006,8 @@ public class ModelService extends ModelObservable {
   public void createOrUpdateJob(Job job)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
     // create or update job in storage
-    String jobAsJson = JsonUtils.getJsonFromObject(job);
     StoragePath jobPath = ModelUtils.getJobStoragePath(job.getId());
-    storage.updateBinaryContent(jobPath, new StringContentPayload(jobAsJson), false, true);
+    storage.updateBinaryContent(jobPath, new JsonContentPayload(job), false, true);
 
     // index it
     notifyJobCreatedOrUpdated(job, false).failOnError();
@@ -1979,9 +2063,8 @@ public class ModelService extends ModelObservable {
   public void createOrUpdateJobReport(Report jobReport, Job job) throws GenericException {
     // create job report in storage
     try {
-      String jobReportAsJson = JsonUtils.getJsonFromObject(jobReport);
       StoragePath jobReportPath = ModelUtils.getJobReportStoragePath(jobReport.getJobId(), jobReport.getId());
-      storage.updateBinaryContent(jobReportPath, new StringContentPayload(jobReportAsJson), false, true);
+      storage.updateBinaryContent(jobReportPath, new JsonContentPayload(jobReport), false, true);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
       LOGGER.error("Error creating/updating job report in storage", e);
     }
@@ -1990,6 +2073,25 @@ public class ModelService extends ModelObservable {
     notifyJobReportCreatedOrUpdated(jobReport, job).failOnError();
   }
 
+  /**
+   * Creates or updates several reports of the same job, indexing them in
+   * batch.
+   */
+  public void createOrUpdateJobReports(List<Report> jobReports, Job job) throws GenericException {
+    // create job reports in storage
+    for (Report jobReport : jobReports) {
+      try {
+        StoragePath jobReportPath = ModelUtils.getJobReportStoragePath(jobReport.getJobId(), jobReport.getId());
+        storage.updateBinaryContent(jobReportPath, new JsonContentPayload(jobReport), false, true);
+      } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
+        LOGGER.error("Error creating/updating job report in storage", e);
+      }
+    }
+
+    // index them
+    notifyJobReportsCreatedOrUpdated(jobReports, job).failOnError();
+  }
+
   public void deleteJobReport(String jobId, String jobReportId)
     throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
     StoragePath jobReportPath = ModelUtils.getJobReportStoragePath(jobId, jobReportId);
@@ -2043,9 +2145,8 @@ public class ModelService extends ModelObservable {
       risk.setCreatedOn(new Date());
       risk.setUpdatedOn(new Date());
 
-      String riskAsJson = JsonUtils.getJsonFromObject(risk);
       StoragePath riskPath = ModelUtils.getRiskStoragePath(risk.getId());
-      storage.createBinary(riskPath, new StringContentPayload(riskAsJson), false);
+      storage.createBinary(riskPath, new JsonContentPayload(risk), false);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
       | AlreadyExistsException e) {
       LOGGER.error("Error creating risk in storage", e);
@@ -2059,7 +2160,6 @@ public class ModelService extends ModelObservable {
     throws GenericException {
     try {
       risk.setUpdatedOn(new Date());
-      String riskAsJson = JsonUtils.getJsonFromObject(risk);
       StoragePath riskPath = ModelUtils.getRiskStoragePath(risk.getId());
 
       // Create version snapshot
@@ -2067,7 +2167,7 @@ public class ModelService extends ModelObservable {
         storage.createBinaryVersion(riskPath, properties);
       }
 
-      storage.updateBinaryContent(riskPath, new StringContentPayload(riskAsJson), false, true);
+      storage.updateBinaryContent(riskPath, new JsonContentPayload(risk), false, true);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
       LOGGER.error("Error updating risk in storage", e);
     }
@@ -2122,9 +2222,8 @@ public class ModelService extends ModelObservable {
       riskIncidence.setId(IdUtils.createUUID());
       riskIncidence.setDetectedOn(new Date());
 
-      String riskIncidenceAsJson = JsonUtils.getJsonFromObject(riskIncidence);
       StoragePath riskIncidencePath = ModelUtils.getRiskIncidenceStoragePath(riskIncidence.getId());
-      storage.createBinary(riskIncidencePath, new StringContentPayload(riskIncidenceAsJson), false);
+      storage.createBinary(riskIncidencePath, new JsonContentPayload(riskIncidence), false);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
       | AlreadyExistsException e) {
       LOGGER.error("Error creating risk incidence in storage", e);
@@ -2137,9 +2236,8 @@ public class ModelService extends ModelObservable {
   public RiskIncidence updateRiskIncidence(RiskIncidence riskIncidence, boolean commit) throws GenericException {
     try {
       riskIncidence.setRiskId(riskIncidence.getRiskId());
-      String riskIncidenceAsJson = JsonUtils.getJsonFromObject(riskIncidence);
       StoragePath riskIncidencePath = ModelUtils.getRiskIncidenceStoragePath(riskIncidence.getId());
-      storage.updateBinaryContent(riskIncidencePath, new StringContentPayload(riskIncidenceAsJson), false, true);
+      storage.updateBinaryContent(riskIncidencePath, new JsonContentPayload(riskIncidence), false, true);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
       LOGGER.error("Error updating risk incidence in storage", e);
     }
@@ -2184,9 +2282,8 @@ public class ModelService extends ModelObservable {
     }
 
     try {
-      String notificationAsJson = JsonUtils.getJsonFromObject(notification);
       StoragePath notificationPath = ModelUtils.getNotificationStoragePath(notification.getId());
-      storage.createBinary(notificationPath, new StringContentPayload(notificationAsJson), false);
+      storage.createBinary(notificationPath, new JsonContentPayload(notification), false);
       notifyNotificationCreatedOrUpdated(notification).failOnError();
     } catch (NotFoundException | RequestNotValidException | AlreadyExistsException e) {
       LOGGER.error("Error creating notification in storage", e);
@@ -2199,9 +2296,8 @@ public class ModelService extends ModelObservable {
   public Notification updateNotification(Notification notification)
     throws GenericException, NotFoundException, AuthorizationDeniedException {
     try {
-      String notificationAsJson = JsonUtils.getJsonFromObject(notification);
       StoragePath notificationPath = ModelUtils.getNotificationStoragePath(notification.getId());
-      storage.updateBinaryContent(notificationPath, new StringContentPayload(notificationAsJson), false, true);
+      storage.updateBinaryContent(notificationPath, new JsonContentPayload(notification), false, true);
     } catch (GenericException | RequestNotValidException e) {
       LOGGER.error("Error updating notification in storage", e);
       throw new GenericException(e);
@@ -2300,20 +2396,18 @@ public class ModelService extends ModelObservable {
 
   private void createDIPMetadata(DIP dip, StoragePath storagePath) throws RequestNotValidException, GenericException,
     AlreadyExistsException, AuthorizationDeniedException, NotFoundException {
-    String json = JsonUtils.getJsonFromObject(dip);
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_DIP_METADATA_FILENAME);
-    storage.createBinary(metadataStoragePath, new StringContentPayload(json), false);
+    storage.createBinary(metadataStoragePath, new JsonContentPayload(dip), false);
   }
 
   private void updateDIPMetadata(DIP dip, StoragePath storagePath)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
-    String json = JsonUtils.getJsonFromObject(dip);
     DefaultStoragePath metadataStoragePath = DefaultStoragePath.parse(storagePath,
       RodaConstants.STORAGE_DIP_METADATA_FILENAME);
     boolean asReference = false;
     boolean createIfNotExists = true;
-    storage.updateBinaryContent(metadataStoragePath, new StringContentPayload(json), asReference, createIfNotExists);
+    storage.updateBinaryContent(metadataStoragePath, new JsonContentPayload(dip), asReference, createIfNotExists);
   }
 
   public DIP createDIP(DIP dip, boolean notify) throws GenericException, AuthorizationDeniedException {
@@ -2893,9 +2987,8 @@ public class ModelService extends ModelObservable {
   public Format createFormat(Format format, boolean commit) throws GenericException {
     try {
       format.setId(IdUtils.createUUID());
-      String formatAsJson = JsonUtils.getJsonFromObject(format);
       StoragePath formatPath = ModelUtils.getFormatStoragePath(format.getId());
-      storage.createBinary(formatPath, new StringContentPayload(formatAsJson), false);
+      storage.createBinary(formatPath, new JsonContentPayload(format), false);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
       | AlreadyExistsException e) {
       LOGGER.error("Error creating format in storage", e);
@@ -2907,9 +3000,8 @@ public class ModelService extends ModelObservable {
 
   public Format updateFormat(Format format, boolean commit) throws GenericException {
     try {
-      String formatAsJson = JsonUtils.getJsonFromObject(format);
       StoragePath formatPath = ModelUtils.getFormatStoragePath(format.getId());
-      storage.updateBinaryContent(formatPath, new StringContentPayload(formatAsJson), false, true);
+      storage.updateBinaryContent(formatPath, new JsonContentPayload(format), false, true);
     } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException e) {
       LOGGER.error("Error updating format in storage", e);
     }
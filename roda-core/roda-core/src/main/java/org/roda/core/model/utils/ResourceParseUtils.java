@@ -12,7 +12,6 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -20,7 +19,6 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.iterables.CloseableIterable;
@@ -239,9 +237,7 @@ public class ResourceParseUtils {
 
     Binary binary = (Binary) resource;
     try (InputStream inputStream = binary.getContent().createInputStream()) {
-      String jsonString = IOUtils.toString(inputStream, RodaConstants.DEFAULT_ENCODING);
-      T ret = JsonUtils.getObjectFromJson(jsonString, objectClass);
-      return ret;
+      return JsonUtils.getObjectFromJson(inputStream, objectClass);
     }
   }
 
@@ -361,11 +357,9 @@ public class ResourceParseUtils {
       RodaConstants.STORAGE_AIP_METADATA_FILENAME);
     Binary binary = storage.getBinary(metadataStoragePath);
 
-    String json;
     AIP aip = null;
     try (InputStream inputStream = binary.getContent().createInputStream()) {
-      json = IOUtils.toString(inputStream, Charset.forName(RodaConstants.DEFAULT_ENCODING));
-      aip = JsonUtils.getObjectFromJson(json, AIP.class);
+      aip = JsonUtils.getObjectFromJson(inputStream, AIP.class);
 
       // Setting information that does not come in JSON
       aip.setId(aipId);
@@ -388,11 +382,9 @@ public class ResourceParseUtils {
       RodaConstants.STORAGE_DIP_METADATA_FILENAME);
     Binary binary = storage.getBinary(metadataStoragePath);
 
-    String json;
     DIP dip;
     try (InputStream inputStream = binary.getContent().createInputStream()) {
-      json = IOUtils.toString(inputStream, Charset.forName(RodaConstants.DEFAULT_ENCODING));
-      dip = JsonUtils.getObjectFromJson(json, DIP.class);
+      dip = JsonUtils.getObjectFromJson(inputStream, DIP.class);
     } catch (IOException | GenericException e) {
       throw new GenericException("Could not parse DIP metadata of " + dipId + " at " + metadataStoragePath, e);
     }
@@ -15,6 +15,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.io.IOUtils;
@@ -54,6 +57,7 @@ import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginOrchestrator;
 import org.roda.core.plugins.orchestrate.akka.AkkaJobsManager;
+import org.roda.core.plugins.orchestrate.akka.AkkaLockManager;
 import org.roda.core.plugins.orchestrate.akka.DeadLetterActor;
 import org.roda.core.plugins.orchestrate.akka.Messages;
 import org.roda.core.plugins.orchestrate.akka.Messages.JobPartialUpdate;
@@ -86,12 +90,14 @@ import scala.concurrent.duration.Duration;
  * */
 public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
   private static final Logger LOGGER = LoggerFactory.getLogger(AkkaEmbeddedPluginOrchestrator.class);
+  private static final int DEFAULT_NUMBER_OF_LOCK_SHARDS = 4;
 
   private final IndexService index;
   private final ModelService model;
 
   private ActorSystem jobsSystem;
   private ActorRef jobsManager;
+  private List<ActorRef> lockManagers;
   private int maxNumberOfJobsInParallel;
 
   // Map<jobId, ActorRef>
@@ -118,6 +124,13 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
 
     jobsManager = jobsSystem.actorOf(Props.create(AkkaJobsManager.class, maxNumberOfJobsInParallel), "jobsManager");
 
+    int numberOfLockShards = RodaCoreFactory.getRodaConfiguration().getInt("core.orchestrator.lock_shards",
+      DEFAULT_NUMBER_OF_LOCK_SHARDS);
+    lockManagers = new ArrayList<>();
+    for (int i = 0; i < Math.max(1, numberOfLockShards); i++) {
+      lockManagers.add(jobsSystem.actorOf(Props.create(AkkaLockManager.class), "lockManager" + i));
+    }
+
   }
 
   private Config getAkkaConfiguration() {
@@ -171,45 +184,98 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
     try {
       LOGGER.info("Starting {} (which will be done asynchronously)", plugin.getName());
       ActorRef jobActor = (ActorRef) context;
-      ActorRef jobStateInfoActor = getJobContextInformation(PluginHelper.getJobId(plugin));
-      int blockSize = JobsHelper.getBlockSize();
-      Plugin<T> innerPlugin;
+      String jobId = PluginHelper.getJobId(plugin);
+      ActorRef jobStateInfoActor = getJobContextInformation(jobId);
       Class<T> modelClassToActOn = (Class<T>) ModelUtils.giveRespectiveModelClass(classToActOn);
 
       jobStateInfoActor.tell(new Messages.PluginBeforeAllExecuteIsReady<>(plugin), jobActor);
 
       List<String> liteFields = SolrUtils.getClassLiteFields(classToActOn);
-      try (IterableIndexResult<T1> findAll = index.findAll(classToActOn, filter, liteFields)) {
-        Iterator<T1> findAllIterator = findAll.iterator();
-        List<T1> indexObjects = new ArrayList<>();
+      IterableIndexResult<T1> findAll = index.findAll(classToActOn, filter, liteFields);
+      // next page is fetched from the index while the current one is sent
+      findAll.setPrefetch(true);
+      new IndexBlockProducer<>(plugin, modelClassToActOn, findAll, jobActor, jobStateInfoActor).sendBlocks();
+
+    } catch (Exception e) {
+      LOGGER.error("Error running plugin from index", e);
+      JobsHelper.updateJobStateAsync(plugin, JOB_STATE.FAILED_TO_COMPLETE, e);
+    }
+
+  }
 
+  /**
+   * Sends the blocks of objects found in the index while the flow control
+   * allows it. The job actor is not blocked waiting for blocks to be
+   * processed: it is told to send the next blocks when one is.
+   */
+  private class IndexBlockProducer<T extends IsRODAObject, T1 extends IsIndexed>
+    implements JobBlockFlowControl.BlockProducer {
+    private final Plugin<T> plugin;
+    private final Class<T> modelClassToActOn;
+    private final IterableIndexResult<T1> findAll;
+    private final Iterator<T1> findAllIterator;
+    private final ActorRef jobActor;
+    private final ActorRef jobStateInfoActor;
+    private final JobBlockFlowControl flowControl;
+    private boolean closed = false;
+
+    IndexBlockProducer(Plugin<T> plugin, Class<T> modelClassToActOn, IterableIndexResult<T1> findAll,
+      ActorRef jobActor, ActorRef jobStateInfoActor) {
+      this.plugin = plugin;
+      this.modelClassToActOn = modelClassToActOn;
+      this.findAll = findAll;
+      this.findAllIterator = findAll.iterator();
+      this.jobActor = jobActor;
+      this.jobStateInfoActor = jobStateInfoActor;
+      this.flowControl = JobBlockFlowControl.register(PluginHelper.getJobId(plugin), this,
+        id -> jobActor.tell(new Messages.JobBlocksCanBeSent(id), ActorRef.noSender()));
+    }
+
+    @Override
+    public synchronized void sendBlocks() {
+      if (closed) {
+        return;
+      }
+
+      try {
         while (findAllIterator.hasNext()) {
-          if (indexObjects.size() == blockSize) {
-            innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, modelClassToActOn, blockSize, jobActor);
-            jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-              LiteRODAObjectFactory.transformIntoLiteWithCause(model, indexObjects)), jobActor);
-            indexObjects = new ArrayList<>();
+          if (!flowControl.tryAcquire()) {
+            // resumed once a block is processed
+            return;
           }
-          indexObjects.add(findAllIterator.next());
-        }
 
-        if (!indexObjects.isEmpty()) {
-          innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, modelClassToActOn, indexObjects.size(),
-            jobActor);
+          List<T1> indexObjects = new ArrayList<>();
+          int blockSize = flowControl.getNextBlockSize();
+          while (findAllIterator.hasNext() && indexObjects.size() < blockSize) {
+            indexObjects.add(findAllIterator.next());
+          }
+
+          Plugin<T> innerPlugin = getNewPluginInstanceAndInitJobPluginInfo(plugin, modelClassToActOn,
+            indexObjects.size(), jobActor);
           jobStateInfoActor.tell(new Messages.PluginExecuteIsReady<>(innerPlugin,
-            LiteRODAObjectFactory.transformIntoLiteWithCause(model, indexObjects)), jobActor);
+            LiteRODAObjectFactory.transformIntoLiteWithCause(model, indexObjects), flowControl.getId()), jobActor);
         }
-      }
 
-      jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
-
-    } catch (JobIsStoppingException | JobInErrorException e) {
-      // do nothing
-    } catch (Exception e) {
-      LOGGER.error("Error running plugin from index", e);
-      JobsHelper.updateJobStateAsync(plugin, JOB_STATE.FAILED_TO_COMPLETE, e);
+        close();
+        jobStateInfoActor.tell(new Messages.JobInitEnded(), jobActor);
+      } catch (JobIsStoppingException | JobInErrorException e) {
+        close();
+      } catch (Exception e) {
+        close();
+        LOGGER.error("Error running plugin from index", e);
+        JobsHelper.updateJobStateAsync(plugin, JOB_STATE.FAILED_TO_COMPLETE, e);
+      }
     }
 
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        // blocks still in flight no longer need to be accounted for
+        flowControl.unregister();
+        IOUtils.closeQuietly(findAll);
+      }
+    }
   }
 
   @Override
@@ -500,31 +566,70 @@ public class AkkaEmbeddedPluginOrchestrator implements PluginOrchestrator {
   @Override
   public void acquireObjectLock(List<String> lites, int timeoutInSeconds, boolean waitForLockIfLocked,
     String requestUuid) throws LockingException {
-    Timeout timeout = new Timeout(Duration.create(timeoutInSeconds, "seconds"));
-
     if (StringUtils.isBlank(requestUuid)) {
       throw new LockingException("One must provide valid (i.e. non blank) request uuid!");
     }
 
-    Object result = null;
-    Future<Object> future = Patterns.ask(jobsManager,
-      new Messages.JobsManagerAcquireLock(lites, waitForLockIfLocked, timeoutInSeconds, requestUuid), timeout);
-    try {
-      result = Await.result(future, timeout.duration());
-    } catch (Exception e) {
-      LOGGER.error("Unable to acquire locks for the objects being processed '{}'", lites, e);
-      throw new AcquireLockTimeoutException("Unable to acquire locks for the objects being processed '" + lites + "'");
-    }
+    // shards are always locked in the same (ascending) order, so that
+    // requests spanning several shards cannot deadlock
+    long deadline = System.currentTimeMillis() + timeoutInSeconds * 1000L;
+    List<Integer> lockedShards = new ArrayList<>();
+    for (Map.Entry<Integer, List<String>> shard : groupLitesByLockShard(lites).entrySet()) {
+      long remainingInMillis = deadline - System.currentTimeMillis();
+      Object result = null;
+      try {
+        if (remainingInMillis <= 0) {
+          throw new TimeoutException();
+        }
+        Timeout timeout = new Timeout(Duration.create(remainingInMillis, TimeUnit.MILLISECONDS));
+        int secondsToExpire = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remainingInMillis));
+        Future<Object> future = Patterns.ask(lockManagers.get(shard.getKey()),
+          new Messages.JobsManagerAcquireLock(shard.getValue(), waitForLockIfLocked, secondsToExpire, requestUuid),
+          timeout);
+        result = Await.result(future, timeout.duration());
+      } catch (Exception e) {
+        LOGGER.error("Unable to acquire locks for the objects being processed '{}'", lites, e);
+        // also releasing the shard that timed out, which cancels the request
+        // still waiting there (or releases the lock acquired meanwhile)
+        lockedShards.add(shard.getKey());
+        releaseObjectLockAsync(lites, requestUuid, lockedShards);
+        throw new AcquireLockTimeoutException(
+          "Unable to acquire locks for the objects being processed '" + lites + "'");
+      }
 
-    if (result != null && result instanceof Messages.JobsManagerNotLockableAtTheTime) {
-      throw new NotLockableAtTheTimeException(
-        "Not lockable at the time due to requester not willing to await to obtain the lock!");
+      if (result != null && result instanceof Messages.JobsManagerNotLockableAtTheTime) {
+        releaseObjectLockAsync(lites, requestUuid, lockedShards);
+        throw new NotLockableAtTheTimeException(
+          "Not lockable at the time due to requester not willing to await to obtain the lock!");
+      }
+      lockedShards.add(shard.getKey());
     }
   }
 
   @Override
   public void releaseObjectLockAsync(List<String> lites, String requestUuid) {
-    jobsManager.tell(new Messages.JobsManagerReleaseLock(lites, requestUuid), ActorRef.noSender());
+    for (Map.Entry<Integer, List<String>> shard : groupLitesByLockShard(lites).entrySet()) {
+      lockManagers.get(shard.getKey()).tell(new Messages.JobsManagerReleaseLock(shard.getValue(), requestUuid),
+        ActorRef.noSender());
+    }
+  }
+
+  private void releaseObjectLockAsync(List<String> lites, String requestUuid, List<Integer> lockedShards) {
+    for (Map.Entry<Integer, List<String>> shard : groupLitesByLockShard(lites).entrySet()) {
+      if (lockedShards.contains(shard.getKey())) {
+        lockManagers.get(shard.getKey()).tell(new Messages.JobsManagerReleaseLock(shard.getValue(), requestUuid),
+          ActorRef.noSender());
+      }
+    }
+  }
+
+  private SortedMap<Integer, List<String>> groupLitesByLockShard(List<String> lites) {
+    SortedMap<Integer, List<String>> shards = new TreeMap<>();
+    for (String lite : lites) {
+      int shard = Math.floorMod(lite.hashCode(), lockManagers.size());
+      shards.computeIfAbsent(shard, k -> new ArrayList<>()).add(lite);
+    }
+    return shards;
   }
 
 }
@@ -223,7 +223,7 @@ public class IngestJobPluginInfo extends JobPluginInfo {
 
         try {
           Job job = model.retrieveJob(report.getJobId());
-          model.createOrUpdateJobReport(report, job);
+          JobReportStore.createOrUpdateJobReport(model, report, job);
         } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
           LOGGER.error("Error updating last job report indicating other AIP failure.");
         }
@@ -0,0 +1,189 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.roda.core.util.IdUtils;
+
+/**
+ * Flow control of the blocks of objects of a job that are sent to the workers.
+ *
+ * <p>
+ * Bounds the number of blocks in flight (sent but not yet processed) so that
+ * the producer stops sending instead of flooding the workers mailboxes, and
+ * adapts the size of the next blocks to the observed processing time per
+ * object so that each block takes roughly a target duration.
+ * </p>
+ *
+ * <p>
+ * The producer never waits: when no block can be sent it returns and, once a
+ * block is processed, it is woken up (e.g. by telling the job actor a message
+ * on which it calls {@link #sendBlocks(String)}) to send the next blocks. Each
+ * registration has its own id, sent with its blocks, so that only the blocks
+ * sent with a flow control release its permits.
+ * </p>
+ */
+public class JobBlockFlowControl {
+  // <flowControlId,flowControl>
+  private static final Map<String, JobBlockFlowControl> FLOW_CONTROLS = new ConcurrentHashMap<>();
+
+  // weight of the last block on the processing time per object average
+  private static final double SMOOTHING_FACTOR = 0.3;
+
+  private final String id;
+  private final String jobId;
+  private final BlockProducer producer;
+  private final Consumer<String> wakeUp;
+  private final int maxBlocksInFlight;
+  private final int initialBlockSize;
+  private final int minBlockSize;
+  private final int maxBlockSize;
+  private final long targetBlockDurationInMillis;
+
+  private int blocksInFlight = 0;
+  // if the producer stopped sending blocks and must be resumed
+  private boolean waiting = false;
+
+  // -1 while no block has been processed
+  private volatile double millisPerObject = -1;
+
+  private JobBlockFlowControl(String jobId, BlockProducer producer, Consumer<String> wakeUp, int maxBlocksInFlight,
+    int initialBlockSize, int minBlockSize, int maxBlockSize, long targetBlockDurationInMillis) {
+    this.id = IdUtils.createUUID();
+    this.jobId = jobId;
+    this.producer = producer;
+    this.wakeUp = wakeUp;
+    this.maxBlocksInFlight = Math.max(1, maxBlocksInFlight);
+    this.initialBlockSize = initialBlockSize;
+    this.minBlockSize = Math.max(1, Math.min(minBlockSize, initialBlockSize));
+    this.maxBlockSize = Math.max(maxBlockSize, initialBlockSize);
+    this.targetBlockDurationInMillis = targetBlockDurationInMillis;
+  }
+
+  /**
+   * Creates a flow control using the orchestrator configuration. Block size
+   * only adapts if a target block duration is configured.
+   *
+   * @param producer
+   *          the producer of the blocks of the job
+   * @param wakeUp
+   *          called with the id, by the thread that processed a block, when
+   *          the producer can send blocks again after {@link #tryAcquire()}
+   *          failed
+   */
+  public static JobBlockFlowControl register(String jobId, BlockProducer producer, Consumer<String> wakeUp) {
+    int blockSize = JobsHelper.getBlockSize();
+    JobBlockFlowControl flowControl = new JobBlockFlowControl(jobId, producer, wakeUp,
+      JobsHelper.getMaxBlocksInFlight(), blockSize, JobsHelper.getMinBlockSize(), JobsHelper.getMaxBlockSize(),
+      JobsHelper.getTargetBlockDurationInMillis());
+    FLOW_CONTROLS.put(flowControl.id, flowControl);
+    return flowControl;
+  }
+
+  public void unregister() {
+    FLOW_CONTROLS.remove(id, this);
+  }
+
+  /**
+   * Unregisters the flow controls of a job that ended and closes their
+   * producers, e.g. if the job was stopped while they waited.
+   */
+  public static void unregisterAll(String jobId) {
+    for (JobBlockFlowControl flowControl : FLOW_CONTROLS.values()) {
+      if (flowControl.jobId.equals(jobId) && FLOW_CONTROLS.remove(flowControl.id, flowControl)) {
+        flowControl.producer.close();
+      }
+    }
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Runs the producer of the flow control with the id, if still registered.
+   */
+  public static void sendBlocks(String flowControlId) {
+    JobBlockFlowControl flowControl = FLOW_CONTROLS.get(flowControlId);
+    if (flowControl != null) {
+      flowControl.producer.sendBlocks();
+    }
+  }
+
+  /**
+   * Informs the flow control with the id, if still registered, that a block
+   * sent with it was processed.
+   */
+  public static void blockProcessed(String flowControlId, int numberOfObjects, long durationInMillis) {
+    if (flowControlId != null) {
+      JobBlockFlowControl flowControl = FLOW_CONTROLS.get(flowControlId);
+      if (flowControl != null) {
+        flowControl.blockProcessed(numberOfObjects, durationInMillis);
+      }
+    }
+  }
+
+  private void blockProcessed(int numberOfObjects, long durationInMillis) {
+    if (numberOfObjects > 0) {
+      double blockMillisPerObject = (double) durationInMillis / numberOfObjects;
+      double previous = millisPerObject;
+      millisPerObject = previous < 0 ? blockMillisPerObject
+        : SMOOTHING_FACTOR * blockMillisPerObject + (1 - SMOOTHING_FACTOR) * previous;
+    }
+
+    boolean wakeUpProducer;
+    synchronized (this) {
+      blocksInFlight = Math.max(0, blocksInFlight - 1);
+      wakeUpProducer = waiting;
+      waiting = false;
+    }
+    if (wakeUpProducer) {
+      wakeUp.accept(id);
+    }
+  }
+
+  /**
+   * Takes a permit to send a block, without waiting.
+   *
+   * @return false if too many blocks are in flight, in which case the
+   *         producer is woken up once one of them is processed
+   */
+  public synchronized boolean tryAcquire() {
+    if (blocksInFlight < maxBlocksInFlight) {
+      blocksInFlight++;
+      return true;
+    }
+    waiting = true;
+    return false;
+  }
+
+  public int getNextBlockSize() {
+    double current = millisPerObject;
+    if (targetBlockDurationInMillis <= 0 || current < 0) {
+      return initialBlockSize;
+    }
+    long blockSize = current == 0 ? maxBlockSize : Math.round(targetBlockDurationInMillis / current);
+    return (int) Math.max(minBlockSize, Math.min(maxBlockSize, blockSize));
+  }
+
+  public interface BlockProducer {
+    /**
+     * Sends blocks while {@link JobBlockFlowControl#tryAcquire()} succeeds and
+     * there are objects left.
+     */
+    void sendBlocks();
+
+    /**
+     * Releases the resources of the producer, which sends no more blocks.
+     */
+    void close();
+  }
+}
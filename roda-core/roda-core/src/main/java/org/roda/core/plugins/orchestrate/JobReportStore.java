@@ -0,0 +1,256 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.Report;
+import org.roda.core.model.ModelService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Histogram;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Write-behind store of the reports of running jobs.
+ *
+ * <p>
+ * Report updates are kept in memory, per job, so that the several updates of
+ * the same report (one per plugin step of each object) are coalesced into one
+ * write. Reports are persisted and indexed in batches periodically, when too
+ * many are pending, and when the job ends (see {@link #flush(String)}).
+ * Updates that arrive while or after the reports of a job are flushed for good
+ * are written through, after that flush, so they are never lost nor
+ * overwritten by older updates.
+ * </p>
+ *
+ * <p>
+ * Each report file is replaced atomically, so a crash loses at most the
+ * updates done since the last flush but never leaves a partially written
+ * report.
+ * </p>
+ */
+public final class JobReportStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobReportStore.class);
+
+  private static boolean ENABLED = false;
+  private static long FLUSH_INTERVAL_IN_MILLIS = 5000;
+  private static int MAX_PENDING_REPORTS = 1000;
+
+  private static Histogram HISTOGRAM;
+
+  // <jobId,reports>
+  private static final Map<String, JobReports> JOBS = new ConcurrentHashMap<>();
+  private static ScheduledExecutorService FLUSH_EXECUTOR;
+
+  private JobReportStore() {
+    // do nothing
+  }
+
+  /**
+   * Retrieves a report, from the pending updates if there are any or from the
+   * model otherwise. Callers get their own copy of the report.
+   */
+  public static Report retrieveJobReport(ModelService model, String jobId, String jobReportId)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    JobReports reports = JOBS.get(jobId);
+    if (reports != null) {
+      Report report = reports.get(jobReportId);
+      if (report != null) {
+        Report copy = JsonUtils.copyObject(report, Report.class);
+        copy.injectLineSeparator(System.lineSeparator());
+        return copy;
+      }
+    }
+    return model.retrieveJobReport(jobId, jobReportId);
+  }
+
+  /**
+   * Queues the creation or update of a report. A copy of the report is kept,
+   * so the caller may keep changing it.
+   */
+  public static void createOrUpdateJobReport(ModelService model, Report jobReport, Job job) throws GenericException {
+    if (!ENABLED) {
+      model.createOrUpdateJobReport(jobReport, job);
+      return;
+    }
+
+    Report copy = JsonUtils.copyObject(jobReport, Report.class);
+    JobReports reports = JOBS.computeIfAbsent(jobReport.getJobId(), id -> new JobReports(model));
+    int pending = reports.put(copy, job);
+    if (pending < 0) {
+      // the reports of the job were closed meanwhile
+      reports.writeThrough(copy, job);
+    } else if (pending >= MAX_PENDING_REPORTS) {
+      reports.flush();
+    }
+    scheduleFlushes();
+  }
+
+  /**
+   * Persists and indexes all pending reports of a job and stops keeping them
+   * in memory. Must be called when the job ends, before anything reads its
+   * reports from the model or the index.
+   */
+  public static void flush(String jobId) {
+    JobReports reports = JOBS.get(jobId);
+    if (reports != null) {
+      // closed before being removed, so that readers still see the pending
+      // reports until they are written and later updates are written through
+      reports.close();
+      JOBS.remove(jobId, reports);
+    }
+  }
+
+  public static void flushAll() {
+    for (String jobId : new ArrayList<>(JOBS.keySet())) {
+      flush(jobId);
+    }
+  }
+
+  private static synchronized void scheduleFlushes() {
+    if (FLUSH_EXECUTOR == null) {
+      FLUSH_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("job-report-flush-%d").setDaemon(true).build());
+      FLUSH_EXECUTOR.scheduleWithFixedDelay(() -> {
+        for (Map.Entry<String, JobReports> entry : JOBS.entrySet()) {
+          JobReports reports = entry.getValue();
+          reports.flush();
+          // e.g. reports updated after their job ended
+          if (reports.isIdle()) {
+            reports.close();
+            JOBS.remove(entry.getKey(), reports);
+          }
+        }
+      }, FLUSH_INTERVAL_IN_MILLIS, FLUSH_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public static void injectEnabled(boolean enabled) {
+    ENABLED = enabled;
+  }
+
+  public static void injectFlushIntervalInMillis(long flushIntervalInMillis) {
+    FLUSH_INTERVAL_IN_MILLIS = Math.max(1, flushIntervalInMillis);
+  }
+
+  public static void injectMaxPendingReports(int maxPendingReports) {
+    MAX_PENDING_REPORTS = maxPendingReports;
+  }
+
+  public static void injectHistogram(Histogram histogram) {
+    HISTOGRAM = histogram;
+  }
+
+  private static final class JobReports {
+    private final ModelService model;
+    // reports updated since the last flush
+    private Map<String, Report> pending = new LinkedHashMap<>();
+    // reports being flushed, still visible to readers until written
+    private Map<String, Report> flushing = new LinkedHashMap<>();
+    private Job job;
+    private boolean closed = false;
+    // if updated since the last check for idleness
+    private boolean updated = true;
+    private final Object flushLock = new Object();
+
+    private JobReports(ModelService model) {
+      this.model = model;
+    }
+
+    private synchronized Report get(String jobReportId) {
+      Report report = pending.get(jobReportId);
+      return report != null ? report : flushing.get(jobReportId);
+    }
+
+    /**
+     * @return the number of pending reports, or -1 if closed
+     */
+    private synchronized int put(Report jobReport, Job job) {
+      if (closed) {
+        return -1;
+      }
+      pending.put(jobReport.getId(), jobReport);
+      this.job = job;
+      updated = true;
+      return pending.size();
+    }
+
+    private synchronized boolean isIdle() {
+      boolean idle = !updated && pending.isEmpty();
+      updated = false;
+      return idle;
+    }
+
+    /**
+     * Flushes the pending reports for the last time. Reports put afterwards
+     * are rejected, to be written through.
+     */
+    private void close() {
+      synchronized (flushLock) {
+        synchronized (this) {
+          closed = true;
+        }
+        flush();
+      }
+    }
+
+    /**
+     * Writes a report put after closing, after the last flush.
+     */
+    private void writeThrough(Report jobReport, Job job) throws GenericException {
+      synchronized (flushLock) {
+        model.createOrUpdateJobReport(jobReport, job);
+      }
+    }
+
+    private void flush() {
+      // only one flush at a time, so that older updates never overwrite newer
+      synchronized (flushLock) {
+        List<Report> reports;
+        Job currentJob;
+        synchronized (this) {
+          if (pending.isEmpty()) {
+            return;
+          }
+          flushing = pending;
+          pending = new LinkedHashMap<>();
+          reports = new ArrayList<>(flushing.values());
+          currentJob = job;
+        }
+
+        try {
+          model.createOrUpdateJobReports(reports, currentJob);
+          if (HISTOGRAM != null) {
+            HISTOGRAM.update(reports.size());
+          }
+        } catch (GenericException | RuntimeException e) {
+          LOGGER.error("Error flushing {} reports of job {}", reports.size(), currentJob.getId(), e);
+        } finally {
+          synchronized (this) {
+            flushing = new LinkedHashMap<>();
+          }
+        }
+      }
+    }
+  }
+}
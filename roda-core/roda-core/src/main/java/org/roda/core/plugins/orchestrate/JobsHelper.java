@@ -60,6 +60,10 @@ public final class JobsHelper {
   private static final String NUMBER_OF_JOB_WORKERS_PROPERTY = "core.orchestrator.nr_of_jobs_workers";
   private static final String BLOCK_SIZE_PROPERTY = "core.orchestrator.block_size";
   private static final int DEFAULT_BLOCK_SIZE = 100;
+  private static final String MIN_BLOCK_SIZE_PROPERTY = "core.orchestrator.min_block_size";
+  private static final String MAX_BLOCK_SIZE_PROPERTY = "core.orchestrator.max_block_size";
+  private static final String TARGET_BLOCK_DURATION_PROPERTY = "core.orchestrator.target_block_duration_in_millis";
+  private static final String MAX_BLOCKS_IN_FLIGHT_PROPERTY = "core.orchestrator.max_blocks_in_flight";
   private static final String SYNC_TIMEOUT_PROPERTY = "core.orchestrator.sync_timeout";
   private static final int DEFAULT_SYNC_TIMEOUT = 600;
   private static final String MAX_JOBS_IN_PARALLEL_PROPERTY = "core.orchestrator.max_jobs_in_parallel";
@@ -94,6 +98,27 @@ public final class JobsHelper {
     RodaCoreFactory.getRodaConfiguration().setProperty(BLOCK_SIZE_PROPERTY, blockSize);
   }
 
+  public static int getMinBlockSize() {
+    return RodaCoreFactory.getRodaConfiguration().getInt(MIN_BLOCK_SIZE_PROPERTY, 1);
+  }
+
+  public static int getMaxBlockSize() {
+    return RodaCoreFactory.getRodaConfiguration().getInt(MAX_BLOCK_SIZE_PROPERTY, getBlockSize());
+  }
+
+  /**
+   * @return the duration each block should take to process, used to adapt the
+   *         block size, or 0 if the block size should not be adapted.
+   */
+  public static long getTargetBlockDurationInMillis() {
+    return RodaCoreFactory.getRodaConfiguration().getLong(TARGET_BLOCK_DURATION_PROPERTY, 0L);
+  }
+
+  public static int getMaxBlocksInFlight() {
+    return Math.max(1,
+      RodaCoreFactory.getRodaConfiguration().getInt(MAX_BLOCKS_IN_FLIGHT_PROPERTY, 2 * getNumberOfJobsWorkers()));
+  }
+
   public static int getSyncTimeout() {
     return RodaCoreFactory.getRodaConfiguration().getInt(SYNC_TIMEOUT_PROPERTY, DEFAULT_SYNC_TIMEOUT);
   }
@@ -21,6 +21,7 @@ import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.orchestrate.JobBlockFlowControl;
 import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -88,6 +89,8 @@ public class AkkaJobActor extends AkkaBaseActor {
         getSender().tell("Failed to complete", getSelf());
       }
 
+    } else if (msg instanceof Messages.JobBlocksCanBeSent) {
+      JobBlockFlowControl.sendBlocks(((Messages.JobBlocksCanBeSent) msg).getFlowControlId());
     } else {
       LOGGER.error("Received a message that don't know how to process ({})...", msg.getClass().getName());
       unhandled(msg);
@@ -22,8 +22,10 @@ import org.roda.core.data.v2.jobs.Job.JOB_STATE;
 import org.roda.core.index.IndexService;
 import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginException;
+import org.roda.core.plugins.orchestrate.JobBlockFlowControl;
 import org.roda.core.plugins.orchestrate.JobInfo;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
+import org.roda.core.plugins.orchestrate.JobReportStore;
 import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.roda.core.plugins.plugins.PluginHelper;
 import org.slf4j.Logger;
@@ -120,6 +122,11 @@ public class AkkaJobStateInfoActor extends AkkaBaseActor {
     } catch (NotFoundException | GenericException | RequestNotValidException e) {
       LOGGER.warn("Unable to get Job from index to log its state change. Reason: {}", e.getMessage());
     }
+    if (Job.isFinalState(message.getState())) {
+      // reports must be persisted before the job is seen as ended
+      JobReportStore.flush(jobId);
+      JobBlockFlowControl.unregisterAll(jobId);
+    }
     JobsHelper.updateJobState(p, getModel(), message.getState(), message.getStateDatails());
     if (Job.isFinalState(message.getState())) {
       // 20160817 hsilva: the following instruction is needed for the "sync"
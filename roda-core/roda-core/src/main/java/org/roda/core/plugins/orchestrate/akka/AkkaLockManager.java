@@ -0,0 +1,195 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.plugins.orchestrate.akka.Messages.JobsManagerAcquireLock;
+import org.roda.core.plugins.orchestrate.akka.Messages.JobsManagerReleaseLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import scala.concurrent.duration.Duration;
+
+/**
+ * Actor that manages the locks of a shard of the objects (lites) being
+ * processed, keeping them in a {@link ObjectLockTable}.
+ *
+ * <p>
+ * Waiting lock requests are woken up as soon as the locks they wait for are
+ * released. The periodic tick is only used to expire old locks and lock
+ * requests.
+ * </p>
+ */
+public class AkkaLockManager extends AkkaBaseActor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AkkaLockManager.class);
+
+  public static final String LOCK_REQUESTS_WAITING_TO_ACQUIRE_LOCK = "lockRequestsWaitingToAcquireLock";
+
+  private static final String LOCK_TIMEOUT = "core.orchestrator.lock_timeout";
+  private static final int DEFAULT_LOCK_TIMEOUT = 600;
+
+  // state
+  private final ObjectLockTable lockTable;
+  private final Cancellable tick;
+  private long numberOfLocks = 0;
+
+  // metrics
+  private Counter lockRequestsWaitingToAcquireLock;
+  private Histogram lockRequestsWaitingToAcquireLockHisto;
+  private Counter objectsWaitingToAcquireLock;
+  private Histogram objectsWaitingToAcquireLockHisto;
+  private Counter objectsLocked;
+  private Histogram lockAcquireTimeInMillis;
+
+  public AkkaLockManager() {
+    super();
+    this.lockTable = new ObjectLockTable();
+
+    initMetrics();
+
+    tick = getContext().system().scheduler().schedule(Duration.create(2, TimeUnit.SECONDS),
+      Duration.create(2, TimeUnit.SECONDS), getSelf(), new Messages.JobsManagerTick(), getContext().dispatcher(),
+      ActorRef.noSender());
+  }
+
+  @Override
+  public void postStop() throws Exception {
+    tick.cancel();
+    super.postStop();
+  }
+
+  @Override
+  public void onReceive(Object msg) throws Throwable {
+    if (msg instanceof Messages.JobsManagerAcquireLock) {
+      handleAcquireLock(((Messages.JobsManagerAcquireLock) msg).setSender(getSender()));
+    } else if (msg instanceof Messages.JobsManagerReleaseLock) {
+      handleReleaseLock((Messages.JobsManagerReleaseLock) msg);
+    } else if (msg instanceof Messages.JobsManagerTick) {
+      handleTick();
+    } else {
+      LOGGER.error("Received a message that don't know how to process ({})...", msg.getClass().getName());
+      unhandled(msg);
+    }
+  }
+
+  private void handleAcquireLock(JobsManagerAcquireLock msg) {
+    msg.logProcessingStarted();
+
+    if (lockTable.tryAcquire(msg)) {
+      replyLockAcquired(msg);
+    } else if (msg.isWaitForLockIfLocked()) {
+      lockTable.await(msg);
+      updateLockRequestsWaitingToAcquireLock(msg, true);
+    } else {
+      // 20180530 hsilva: message stating that lock was not possible
+      // (in order to avoid spending timeout to realize that)
+      getSender().tell(new Messages.JobsManagerNotLockableAtTheTime(
+        "Unable to acquire lock & configured to not wait for lock if already locked"), getSelf());
+    }
+    updateObjectsLocked();
+
+    msg.logProcessingEnded();
+  }
+
+  private void handleReleaseLock(JobsManagerReleaseLock msg) {
+    msg.logProcessingStarted();
+
+    // a requester that timed out releases the lock it was waiting for, so its
+    // request must not acquire it afterwards
+    List<String> lites = new ArrayList<>(msg.getLites());
+    for (JobsManagerAcquireLock cancelled : lockTable.cancel(msg.getRequestUuid())) {
+      LOGGER.debug("Cancelled lock request for objects '{}'", cancelled.getLites());
+      updateLockRequestsWaitingToAcquireLock(cancelled, false);
+      lites.removeAll(cancelled.getLites());
+    }
+
+    List<JobsManagerAcquireLock> acquired = lockTable.release(lites, msg.getRequestUuid());
+    // 20180606 hsilva: not sending any list to the sender as it will most
+    // certainly end up in deadletters
+    getSender().tell(new Messages.JobsManagerReplyToReleaseLock(Collections.emptyList()), getSelf());
+    replyWaitingLocksAcquired(acquired);
+    updateObjectsLocked();
+
+    msg.logProcessingEnded();
+  }
+
+  private void handleTick() {
+    if (lockTable.isEmpty()) {
+      return;
+    }
+
+    for (JobsManagerAcquireLock expired : lockTable.removeExpiredWaiters()) {
+      // FIXME 20180605 hsilva: send message?
+      updateLockRequestsWaitingToAcquireLock(expired, false);
+    }
+
+    int lockTimeout = RodaCoreFactory.getRodaConfiguration().getInt(LOCK_TIMEOUT, DEFAULT_LOCK_TIMEOUT);
+    replyWaitingLocksAcquired(lockTable.releaseExpiredLocks(lockTimeout * 1000L));
+    updateObjectsLocked();
+  }
+
+  private void replyWaitingLocksAcquired(List<JobsManagerAcquireLock> acquired) {
+    for (JobsManagerAcquireLock msg : acquired) {
+      updateLockRequestsWaitingToAcquireLock(msg, false);
+      replyLockAcquired(msg);
+    }
+  }
+
+  private void replyLockAcquired(JobsManagerAcquireLock msg) {
+    lockAcquireTimeInMillis.update(msg.getTimeSinceCreation());
+    // 20180606 hsilva: not sending any list to the sender as it will most
+    // certainly end up in deadletters
+    msg.getSender().tell(new Messages.JobsManagerReplyToAcquireLock(Collections.emptyList()), getSelf());
+  }
+
+  private void updateLockRequestsWaitingToAcquireLock(JobsManagerAcquireLock msg, boolean increment) {
+    if (increment) {
+      lockRequestsWaitingToAcquireLock.inc();
+      objectsWaitingToAcquireLock.inc(msg.getLites().size());
+    } else {
+      lockRequestsWaitingToAcquireLock.dec();
+      objectsWaitingToAcquireLock.dec(msg.getLites().size());
+    }
+    lockRequestsWaitingToAcquireLockHisto.update(lockRequestsWaitingToAcquireLock.getCount());
+    objectsWaitingToAcquireLockHisto.update(objectsWaitingToAcquireLock.getCount());
+  }
+
+  private void updateObjectsLocked() {
+    // counters are shared by all shards, so only this shard delta is applied
+    long delta = lockTable.getNumberOfLocks() - numberOfLocks;
+    objectsLocked.inc(delta);
+    numberOfLocks += delta;
+  }
+
+  private void initMetrics() {
+    // metrics are shared by all lock manager shards
+    MetricRegistry metrics = getMetricRegistry();
+    String className = AkkaLockManager.class.getSimpleName();
+    lockRequestsWaitingToAcquireLock = metrics
+      .counter(MetricRegistry.name(className, LOCK_REQUESTS_WAITING_TO_ACQUIRE_LOCK));
+    lockRequestsWaitingToAcquireLockHisto = metrics
+      .histogram(MetricRegistry.name(className, "lockRequestsWaitingToAcquireLockHisto"));
+    objectsWaitingToAcquireLock = metrics.counter(MetricRegistry.name(className, "objectsWaitingToAcquireLock"));
+    objectsWaitingToAcquireLockHisto = metrics
+      .histogram(MetricRegistry.name(className, "objectsWaitingToAcquireLockHisto"));
+    objectsLocked = metrics.counter(MetricRegistry.name(className, "objectsLocked"));
+    lockAcquireTimeInMillis = metrics.histogram(MetricRegistry.name(className, "lockAcquireTimeInMillis"));
+  }
+
+}
@@ -14,6 +14,9 @@ import org.roda.core.data.v2.LiteOptionalWithCause;
 import org.roda.core.index.IndexService;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.Plugin;
+import org.roda.core.plugins.orchestrate.JobBlockFlowControl;
+import org.roda.core.plugins.orchestrate.JobReportStore;
+import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.storage.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +53,7 @@ public class AkkaWorkerActor extends AkkaBaseActor {
     List<LiteOptionalWithCause> objectsToBeProcessed = message.getList();
     message.logProcessingStarted();
     Plugin<IsRODAObject> messagePlugin = message.getPlugin();
+    long start = System.currentTimeMillis();
     try {
       messagePlugin.execute(index, model, storage, objectsToBeProcessed);
       getSender().tell(new Messages.PluginExecuteIsDone(messagePlugin, false), getSelf());
@@ -59,6 +63,9 @@ public class AkkaWorkerActor extends AkkaBaseActor {
       // java.lang.NoSuchMethodError)
       LOGGER.error("Error executing plugin.execute()", e);
       getSender().tell(new Messages.PluginExecuteIsDone(messagePlugin, true, getErrorMessage(e)), getSelf());
+    } finally {
+      JobBlockFlowControl.blockProcessed(message.getFlowControlId(), objectsToBeProcessed.size(),
+        System.currentTimeMillis() - start);
     }
     message.logProcessingEnded();
   }
@@ -79,6 +86,8 @@ public class AkkaWorkerActor extends AkkaBaseActor {
     message.logProcessingStarted();
     Plugin<?> plugin = message.getPlugin();
     try {
+      // afterAllExecute may read the job reports from the model or the index
+      JobReportStore.flush(PluginHelper.getJobId(plugin));
       plugin.afterAllExecute(index, model, storage);
       getSender().tell(new Messages.PluginAfterAllExecuteIsDone(plugin, false), getSelf());
     } catch (Throwable e) {
@@ -358,6 +358,26 @@ public class Messages {
     }
   }
 
+  public static final class JobBlocksCanBeSent extends AbstractMessage {
+    private static final long serialVersionUID = -2934071537281065716L;
+
+    private String flowControlId;
+
+    public JobBlocksCanBeSent(String flowControlId) {
+      super();
+      this.flowControlId = flowControlId;
+    }
+
+    public String getFlowControlId() {
+      return flowControlId;
+    }
+
+    @Override
+    public String toString() {
+      return "JobBlocksCanBeSent [flowControlId=" + flowControlId + "]";
+    }
+  }
+
   public static final class JobInitEnded extends AbstractMessage {
     private static final long serialVersionUID = 5040958276243865900L;
 
@@ -488,6 +508,7 @@ public class Messages {
     private static final long serialVersionUID = 1821489252490235130L;
 
     private List<LiteOptionalWithCause> list;
+    private String flowControlId = null;
     private boolean hasBeenForwarded = false;
 
     public PluginExecuteIsReady(Plugin<T> plugin, List<LiteOptionalWithCause> list) {
@@ -495,18 +516,31 @@ public class Messages {
       this.list = list;
     }
 
+    /**
+     * @param flowControlId
+     *          the id of the flow control that allowed sending the block
+     */
+    public PluginExecuteIsReady(Plugin<T> plugin, List<LiteOptionalWithCause> list, String flowControlId) {
+      this(plugin, list);
+      this.flowControlId = flowControlId;
+    }
+
     public List<LiteOptionalWithCause> getList() {
       return list;
     }
 
+    public String getFlowControlId() {
+      return flowControlId;
+    }
+
     public void setHasBeenForwarded() {
       this.hasBeenForwarded = true;
     }
 
     @Override
     public String toString() {
-      return "PluginExecuteIsReady [list=" + list + ", hasBeenForwarded=" + hasBeenForwarded + ", getPlugin()="
-        + getPlugin() + "]";
+      return "PluginExecuteIsReady [list=" + list + ", flowControlId=" + flowControlId + ", hasBeenForwarded="
+        + hasBeenForwarded + ", getPlugin()=" + getPlugin() + "]";
     }
   }
 
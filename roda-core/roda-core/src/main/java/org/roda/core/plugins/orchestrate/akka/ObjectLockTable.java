@@ -0,0 +1,253 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.akka;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.roda.core.plugins.orchestrate.akka.Messages.JobsManagerAcquireLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Table of the objects (lites) that are locked and of the lock requests waiting
+ * for them.
+ *
+ * <p>
+ * Each waiting request is indexed by one of the lites that prevents it from
+ * acquiring the lock, so releasing a lite only re-evaluates the requests
+ * waiting for that lite (in arrival order) instead of every waiting request.
+ * Locks are kept in acquisition order and waiting requests in expire date
+ * order, so that expiring them only touches the expired ones.
+ * </p>
+ *
+ * <p>
+ * Not thread-safe: it is meant to be owned by a single actor.
+ * </p>
+ */
+public class ObjectLockTable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ObjectLockTable.class);
+
+  // <Lite,LockInfo> in acquisition order
+  private final Map<String, LockInfo> locks = new LinkedHashMap<>();
+  // <Lite,requests waiting for it>
+  private final Map<String, Deque<Waiter>> waitersByLite = new HashMap<>();
+  private final TreeSet<Waiter> waitersByExpireDate = new TreeSet<>(
+    Comparator.comparingLong((Waiter w) -> w.request.getExpireDate().getTime()).thenComparingLong(w -> w.sequence));
+  private long sequence = 0;
+
+  /**
+   * Locks all lites of the request, if none is locked by another request.
+   *
+   * @return true if the lock was acquired
+   */
+  public boolean tryAcquire(JobsManagerAcquireLock request) {
+    if (getBlockingLite(request) == null) {
+      lock(request);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Adds a request, that could not acquire the lock, to the requests waiting.
+   */
+  public void await(JobsManagerAcquireLock request) {
+    Waiter waiter = new Waiter(request, sequence++);
+    waitersByExpireDate.add(waiter);
+    String blockingLite = getBlockingLite(request);
+    if (blockingLite == null) {
+      // lite released meanwhile, will be acquired when some lock is released
+      blockingLite = request.getLites().get(0);
+    }
+    addWaiter(blockingLite, waiter);
+  }
+
+  /**
+   * Releases the lites locked by the request and acquires the lock for the
+   * requests that were waiting for them and are now lockable.
+   *
+   * @return the waiting requests that acquired the lock
+   */
+  public List<JobsManagerAcquireLock> release(List<String> lites, String requestUuid) {
+    List<String> released = new ArrayList<>();
+    for (String lite : lites) {
+      LockInfo lockInfo = locks.get(lite);
+      if (lockInfo == null || !lockInfo.requestUuid.equals(requestUuid)) {
+        LOGGER.warn("Trying to remove lock from object '{}' whose lock wasn't created by this requester (uuid={})",
+          lite, requestUuid);
+      } else {
+        locks.remove(lite);
+        released.add(lite);
+      }
+    }
+    return wakeWaiters(released);
+  }
+
+  /**
+   * Removes the waiting requests with the given uuid, e.g. because the requester
+   * gave up waiting for them, so that they do not acquire the lock afterwards.
+   *
+   * @return the removed requests
+   */
+  public List<JobsManagerAcquireLock> cancel(String requestUuid) {
+    List<JobsManagerAcquireLock> cancelled = new ArrayList<>();
+    for (Iterator<Waiter> it = waitersByExpireDate.iterator(); it.hasNext();) {
+      Waiter waiter = it.next();
+      if (waiter.request.getRequestUuid().equals(requestUuid)) {
+        it.remove();
+        removeWaiterFromLite(waiter);
+        cancelled.add(waiter.request);
+      }
+    }
+    return cancelled;
+  }
+
+  /**
+   * Releases the locks acquired more than the given timeout ago.
+   *
+   * @return the waiting requests that acquired the lock
+   */
+  public List<JobsManagerAcquireLock> releaseExpiredLocks(long lockTimeoutInMillis) {
+    long now = System.currentTimeMillis();
+    List<String> released = new ArrayList<>();
+    for (Iterator<Map.Entry<String, LockInfo>> it = locks.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, LockInfo> lock = it.next();
+      if (now - lock.getValue().lockDate < lockTimeoutInMillis) {
+        break;
+      }
+      LOGGER.warn("Releasing lock for object '{}' due to lock timeout ({} ms; no lock release was issued)",
+        lock.getKey(), lockTimeoutInMillis);
+      it.remove();
+      released.add(lock.getKey());
+    }
+    return wakeWaiters(released);
+  }
+
+  /**
+   * Removes the waiting requests whose expire date has passed.
+   *
+   * @return the removed requests
+   */
+  public List<JobsManagerAcquireLock> removeExpiredWaiters() {
+    long now = System.currentTimeMillis();
+    List<JobsManagerAcquireLock> expired = new ArrayList<>();
+    while (!waitersByExpireDate.isEmpty() && waitersByExpireDate.first().request.getExpireDate().getTime() < now) {
+      Waiter waiter = waitersByExpireDate.pollFirst();
+      removeWaiterFromLite(waiter);
+      LOGGER.warn("Deleting lock request for objects '{}' due to expire ({})", waiter.request.getLites(),
+        waiter.request.getExpireDate());
+      expired.add(waiter.request);
+    }
+    return expired;
+  }
+
+  public boolean isEmpty() {
+    return locks.isEmpty() && waitersByExpireDate.isEmpty();
+  }
+
+  public int getNumberOfLocks() {
+    return locks.size();
+  }
+
+  public int getNumberOfWaitingRequests() {
+    return waitersByExpireDate.size();
+  }
+
+  private List<JobsManagerAcquireLock> wakeWaiters(Collection<String> releasedLites) {
+    long now = System.currentTimeMillis();
+    List<JobsManagerAcquireLock> acquired = new ArrayList<>();
+    for (String lite : releasedLites) {
+      Deque<Waiter> waiters = waitersByLite.remove(lite);
+      if (waiters == null) {
+        continue;
+      }
+
+      for (Waiter waiter : waiters) {
+        String blockingLite = getBlockingLite(waiter.request);
+        if (waiter.request.getExpireDate().getTime() < now) {
+          // the requester already gave up, it is removed on the next expire
+          waiter.blockingLite = null;
+        } else if (blockingLite == null) {
+          lock(waiter.request);
+          waitersByExpireDate.remove(waiter);
+          acquired.add(waiter.request);
+        } else {
+          addWaiter(blockingLite, waiter);
+        }
+      }
+    }
+    return acquired;
+  }
+
+  private void addWaiter(String blockingLite, Waiter waiter) {
+    waiter.blockingLite = blockingLite;
+    waitersByLite.computeIfAbsent(blockingLite, k -> new ArrayDeque<>()).add(waiter);
+  }
+
+  private void removeWaiterFromLite(Waiter waiter) {
+    if (waiter.blockingLite == null) {
+      return;
+    }
+    Deque<Waiter> waiters = waitersByLite.get(waiter.blockingLite);
+    if (waiters != null) {
+      waiters.remove(waiter);
+      if (waiters.isEmpty()) {
+        waitersByLite.remove(waiter.blockingLite);
+      }
+    }
+  }
+
+  private String getBlockingLite(JobsManagerAcquireLock request) {
+    for (String lite : request.getLites()) {
+      LockInfo lockInfo = locks.get(lite);
+      if (lockInfo != null && !lockInfo.requestUuid.equals(request.getRequestUuid())) {
+        return lite;
+      }
+    }
+    return null;
+  }
+
+  private void lock(JobsManagerAcquireLock request) {
+    for (String lite : request.getLites()) {
+      // re-inserting so that the acquisition order is kept
+      locks.remove(lite);
+      locks.put(lite, new LockInfo(request.getRequestUuid()));
+    }
+  }
+
+  private static final class Waiter {
+    private final JobsManagerAcquireLock request;
+    private final long sequence;
+    private String blockingLite;
+
+    private Waiter(JobsManagerAcquireLock request, long sequence) {
+      this.request = request;
+      this.sequence = sequence;
+    }
+  }
+
+  private static final class LockInfo {
+    private final long lockDate;
+    private final String requestUuid;
+
+    private LockInfo(String requestUuid) {
+      this.lockDate = System.currentTimeMillis();
+      this.requestUuid = requestUuid;
+    }
+  }
+}
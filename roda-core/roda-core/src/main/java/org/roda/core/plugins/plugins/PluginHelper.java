@@ -88,6 +88,7 @@ import org.roda.core.plugins.RODAObjectsProcessingLogic;
 import org.roda.core.plugins.RODAProcessingLogic;
 import org.roda.core.plugins.orchestrate.IngestJobPluginInfo;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
+import org.roda.core.plugins.orchestrate.JobReportStore;
 import org.roda.core.plugins.orchestrate.SimpleJobPluginInfo;
 import org.roda.core.plugins.orchestrate.akka.Messages;
 import org.roda.core.plugins.plugins.reindex.ReindexAIPPlugin;
@@ -403,7 +404,7 @@ public final class PluginHelper {
 
     try {
       Job job = model.retrieveJob(jobId);
-      model.createOrUpdateJobReport(report, job);
+      JobReportStore.createOrUpdateJobReport(model, report, job);
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error creating Job Report", e);
     }
@@ -415,10 +416,11 @@ public final class PluginHelper {
       sourceObjectId)) {
       try {
         String jobId = getJobId(plugin);
-        Report jobReport = model.retrieveJobReport(jobId, sourceObjectIdCalculated, outcomeObjectId);
+        Report jobReport = JobReportStore.retrieveJobReport(model, jobId,
+          IdUtils.getJobReportId(jobId, sourceObjectIdCalculated, outcomeObjectId));
         jobReport.setOutcomeObjectState(newState);
         Job job = model.retrieveJob(jobId);
-        model.createOrUpdateJobReport(jobReport, job);
+        JobReportStore.createOrUpdateJobReport(model, jobReport, job);
       } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
         LOGGER.error("Error while updating Job Report", e);
       }
@@ -436,7 +438,7 @@ public final class PluginHelper {
       try {
         Report jobReport;
         try {
-          jobReport = model.retrieveJobReport(jobId, sourceObjectId, reportItem.getOutcomeObjectId());
+          jobReport = JobReportStore.retrieveJobReport(model, jobId, reportItem.getId());
 
           if (!replaceLastReportItemIfTheSame) {
             jobReport.addReport(reportItem);
@@ -459,7 +461,7 @@ public final class PluginHelper {
           jobReport.addReport(reportItem);
         }
 
-        model.createOrUpdateJobReport(jobReport, cachedJob);
+        JobReportStore.createOrUpdateJobReport(model, jobReport, cachedJob);
       } catch (GenericException | RequestNotValidException | AuthorizationDeniedException e) {
         LOGGER.error("Error while updating Job Report", e);
       }
@@ -469,7 +471,7 @@ public final class PluginHelper {
   private static void updateJobReport(ModelService model, Report report) {
     try {
       Job job = model.retrieveJob(report.getJobId());
-      model.createOrUpdateJobReport(report, job);
+      JobReportStore.createOrUpdateJobReport(model, report, job);
     } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException e) {
       LOGGER.error("Error while updating Job Report", e);
     }
@@ -0,0 +1,411 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.antivirus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.io.IOUtils;
+import org.roda.core.RodaCoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Anti-virus that streams the files to a running ClamAV daemon (clamd), over
+ * its TCP socket, using the <code>INSTREAM</code> command.
+ *
+ * <p>
+ * Unlike {@link ClamAntiVirus}, no process is forked and the signature
+ * database is not reloaded for each scan. Connections are kept open in clamd
+ * sessions (<code>IDSESSION</code>) and reused, and the files under the
+ * scanned path are scanned in parallel, one per connection. As files are
+ * streamed, clamd does not need access to the storage folder, but its
+ * <code>StreamMaxLength</code> must be larger than the largest file to scan.
+ * </p>
+ */
+public class ClamdAntiVirus implements AntiVirus {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClamdAntiVirus.class);
+
+  private static final String CONFIG_PREFIX = "core.plugins.internal.virus_check.clamd.";
+  private static final String DEFAULT_HOST = "localhost";
+  private static final int DEFAULT_PORT = 3310;
+  private static final int DEFAULT_TIMEOUT = 60000;
+  private static final int DEFAULT_CHUNK_SIZE = 65536;
+
+  private static final String RESULT_OK = "OK";
+  private static final String RESULT_FOUND = "FOUND";
+  private static final String RESULT_ERROR = "ERROR";
+
+  private final String host;
+  private final int port;
+  private final int threads;
+  private final int timeout;
+  private final int chunkSize;
+
+  private final BlockingQueue<Connection> connections = new LinkedBlockingQueue<>();
+  private ExecutorService pool = null;
+  private String version = null;
+
+  /**
+   * Constructs a clamd anti-virus configured in the RODA configuration.
+   */
+  public ClamdAntiVirus() {
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    this.host = configuration.getString(CONFIG_PREFIX + "host", DEFAULT_HOST);
+    this.port = configuration.getInt(CONFIG_PREFIX + "port", DEFAULT_PORT);
+    this.threads = Math.max(1,
+      configuration.getInt(CONFIG_PREFIX + "threads", Runtime.getRuntime().availableProcessors()));
+    this.timeout = configuration.getInt(CONFIG_PREFIX + "timeout", DEFAULT_TIMEOUT);
+    this.chunkSize = Math.max(1, configuration.getInt(CONFIG_PREFIX + "chunk_size", DEFAULT_CHUNK_SIZE));
+  }
+
+  /**
+   * @param threads
+   *          the maximum number of files scanned in parallel (and of open
+   *          connections)
+   * @param timeout
+   *          the timeout, in milliseconds, to connect and to wait for clamd
+   * @param chunkSize
+   *          the size of each chunk of a file sent to clamd
+   */
+  public ClamdAntiVirus(String host, int port, int threads, int timeout, int chunkSize) {
+    this.host = host;
+    this.port = port;
+    this.threads = Math.max(1, threads);
+    this.timeout = timeout;
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * Performs a virus check on all the files under the specified path.
+   *
+   * @param path
+   *          a path (file or directory) to scan.
+   *
+   * @return the results of the virus check as a {@link VirusCheckResult}, clean
+   *         only if clamd found no virus in any file and could scan all files.
+   *
+   * @throws RuntimeException
+   *           if the files could not be listed or clamd could not be reached.
+   * @see AntiVirus
+   */
+  @Override
+  public VirusCheckResult checkForVirus(Path path) throws RuntimeException {
+    LOGGER.debug("Executing virus scan in {} using clamd at {}:{}", path, host, port);
+
+    List<Path> files;
+    try (Stream<Path> stream = Files.walk(path)) {
+      files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not list files to scan under " + path, e);
+    }
+
+    ExecutorService executor = getPool();
+    Map<Path, Future<String>> futures = new LinkedHashMap<>();
+    for (Path file : files) {
+      futures.put(file, executor.submit(() -> scan(file)));
+    }
+
+    int infected = 0;
+    int errors = 0;
+    StringBuilder report = new StringBuilder();
+    try {
+      for (Map.Entry<Path, Future<String>> future : futures.entrySet()) {
+        String result = future.getValue().get();
+        if (!RESULT_OK.equals(result)) {
+          if (result.endsWith(RESULT_FOUND)) {
+            infected++;
+          } else {
+            errors++;
+          }
+          report.append(future.getKey()).append(": ").append(result).append("\n");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      futures.values().forEach(f -> f.cancel(true));
+      throw new IllegalStateException("Interrupted while scanning " + path, e);
+    } catch (ExecutionException e) {
+      futures.values().forEach(f -> f.cancel(true));
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Could not scan " + path, e.getCause());
+    }
+
+    report.append("\n----------- SCAN SUMMARY -----------\n");
+    report.append("Engine version: ").append(getVersion()).append("\n");
+    report.append("Scanned files: ").append(files.size()).append("\n");
+    report.append("Infected files: ").append(infected).append("\n");
+    if (errors > 0) {
+      report.append("Total errors: ").append(errors).append("\n");
+    }
+
+    return new VirusCheckResult(infected == 0 && errors == 0, report.toString());
+  }
+
+  /**
+   * @return the result of clamd for the file, i.e. <code>OK</code>,
+   *         <code>&lt;signature&gt; FOUND</code> or
+   *         <code>&lt;message&gt; ERROR</code>
+   */
+  private String scan(Path file) {
+    Connection connection = connections.poll();
+    if (connection != null) {
+      try {
+        return scan(file, connection);
+      } catch (IOException e) {
+        // session may have been closed by clamd meanwhile (idle timeout)
+        LOGGER.debug("Reconnecting to clamd at {}:{}", host, port, e);
+      }
+    }
+
+    try {
+      return scan(file, newConnection());
+    } catch (IOException e) {
+      LOGGER.warn("Could not scan {} using clamd at {}:{}", file, host, port, e);
+      return e.getClass().getSimpleName() + " " + e.getMessage() + " " + RESULT_ERROR;
+    }
+  }
+
+  private String scan(Path file, Connection connection) throws IOException {
+    try {
+      String result = connection.instream(file);
+      if (connection.isOpen()) {
+        connections.add(connection);
+      }
+      return result;
+    } catch (FileIOException e) {
+      // the connection may be left in the middle of a stream
+      connection.close();
+      return e.getCause().getClass().getSimpleName() + " " + e.getCause().getMessage() + " " + RESULT_ERROR;
+    } catch (IOException e) {
+      connection.close();
+      throw e;
+    }
+  }
+
+  private Connection newConnection() {
+    try {
+      return new Connection();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not connect to clamd at " + host + ":" + port, e);
+    }
+  }
+
+  @Override
+  public synchronized String getVersion() {
+    if (version == null) {
+      try (Socket socket = connect()) {
+        OutputStream out = socket.getOutputStream();
+        out.write(command("VERSION"));
+        out.flush();
+        version = readReply(socket.getInputStream());
+      } catch (IOException e) {
+        LOGGER.warn("Could not get version of clamd at {}:{}", host, port, e);
+        return "1.0";
+      }
+    }
+    return version;
+  }
+
+  private synchronized ExecutorService getPool() {
+    if (pool == null) {
+      pool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat("clamd-scan-%d").setDaemon(true).build());
+    }
+    return pool;
+  }
+
+  /**
+   * Closes the connections to clamd and stops the scanning threads.
+   */
+  public synchronized void close() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+    Connection connection;
+    while ((connection = connections.poll()) != null) {
+      connection.close();
+    }
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(host, port), timeout);
+      socket.setSoTimeout(timeout);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(socket);
+      throw e;
+    }
+    return socket;
+  }
+
+  private static byte[] command(String command) {
+    return ("z" + command + "\0").getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Reads a reply, terminated by a null character (as commands are prefixed
+   * with <code>z</code>).
+   */
+  private static String readReply(InputStream in) throws IOException {
+    ByteArrayOutputStream reply = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) > 0) {
+      reply.write(b);
+    }
+    if (b < 0) {
+      throw new EOFException("Connection closed by clamd");
+    }
+    return new String(reply.toByteArray(), StandardCharsets.UTF_8).trim();
+  }
+
+  /**
+   * Error reading a file to scan, not related to the connection to clamd.
+   */
+  private static class FileIOException extends IOException {
+    private static final long serialVersionUID = -1925427470870569358L;
+
+    public FileIOException(IOException cause) {
+      super(cause);
+    }
+  }
+
+  /**
+   * A connection to clamd in a session, in which many files can be scanned.
+   */
+  private class Connection {
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final InputStream in;
+    private int nextId = 1;
+
+    Connection() throws IOException {
+      socket = connect();
+      try {
+        out = new DataOutputStream(socket.getOutputStream());
+        in = socket.getInputStream();
+        out.write(command("IDSESSION"));
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    String instream(Path file) throws IOException {
+      InputStream fileIn;
+      try {
+        fileIn = Files.newInputStream(file);
+      } catch (IOException e) {
+        throw new FileIOException(e);
+      }
+
+      int id = nextId++;
+      try {
+        try {
+          out.write(command("INSTREAM"));
+          byte[] buffer = new byte[chunkSize];
+          int n;
+          while ((n = read(fileIn, buffer)) > 0) {
+            out.writeInt(n);
+            out.write(buffer, 0, n);
+          }
+        } finally {
+          IOUtils.closeQuietly(fileIn);
+        }
+        out.writeInt(0);
+        out.flush();
+      } catch (FileIOException e) {
+        throw e;
+      } catch (IOException e) {
+        // clamd may have replied and closed the session before the whole file
+        // was sent, e.g. "<id>: INSTREAM size limit exceeded. ERROR"
+        String reply;
+        try {
+          reply = readReply(in);
+        } catch (IOException readException) {
+          e.addSuppressed(readException);
+          throw e;
+        }
+        close();
+        return result(id, reply);
+      }
+
+      String reply = readReply(in);
+      if (!reply.startsWith(id + ": stream: ")) {
+        // clamd closes the session after errors
+        close();
+      }
+      return result(id, reply);
+    }
+
+    /**
+     * @return the result in a reply, which is "&lt;id&gt;: stream:
+     *         &lt;result&gt;" or "&lt;id&gt;: &lt;message&gt; ERROR"
+     */
+    private String result(int id, String reply) {
+      String prefix = id + ": stream: ";
+      if (reply.startsWith(prefix)) {
+        return reply.substring(prefix.length());
+      }
+      return reply.substring(reply.indexOf(':') + 1).trim();
+    }
+
+    private int read(InputStream fileIn, byte[] buffer) throws FileIOException {
+      try {
+        return IOUtils.read(fileIn, buffer);
+      } catch (IOException e) {
+        throw new FileIOException(e);
+      }
+    }
+
+    boolean isOpen() {
+      return !socket.isClosed();
+    }
+
+    void close() {
+      try {
+        if (out != null && !socket.isClosed()) {
+          out.write(command("END"));
+          out.flush();
+        }
+      } catch (IOException e) {
+        // do nothing
+      } finally {
+        IOUtils.closeQuietly(socket);
+      }
+    }
+  }
+}
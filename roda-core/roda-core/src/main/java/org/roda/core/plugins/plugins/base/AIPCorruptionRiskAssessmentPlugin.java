@@ -8,7 +8,6 @@
 package org.roda.core.plugins.plugins.base;
 
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -67,7 +66,7 @@ import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.plugins.PluginHelper;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.StorageService;
-import org.roda.core.util.FileUtility;
+import org.roda.core.storage.fs.ContentDigestEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -167,8 +166,8 @@ public class AIPCorruptionRiskAssessmentPlugin extends AbstractPlugin<AIP> {
 
                 // calculate hashes
                 try {
-                  Map<String, String> checksums = FileUtility
-                    .checksums(currentFileBinary.getContent().createInputStream(), algorithms);
+                  Map<String, String> checksums = ContentDigestEngine.digest(currentFileBinary.getContent(),
+                    algorithms);
 
                   for (Fixity f : fixities) {
                     String checksum = checksums.get(f.getMessageDigestAlgorithm());
@@ -185,7 +184,7 @@ public class AIPCorruptionRiskAssessmentPlugin extends AbstractPlugin<AIP> {
                       break;
                     }
                   }
-                } catch (NoSuchAlgorithmException | IOException e) {
+                } catch (GenericException e) {
                   passedFixity = false;
                   ValidationIssue issue = new ValidationIssue("Could not check fixity: " + e.getMessage());
                   validationReport.addIssue(issue);
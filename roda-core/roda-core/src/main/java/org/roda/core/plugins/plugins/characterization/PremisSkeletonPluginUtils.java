@@ -8,7 +8,13 @@
 package org.roda.core.plugins.plugins.characterization;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.xmlbeans.XmlException;
 import org.roda.core.common.PremisV3Utils;
@@ -21,12 +27,16 @@ import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.common.OptionalWithCause;
 import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.metadata.Fixity;
 import org.roda.core.data.v2.ip.metadata.PreservationMetadata;
 import org.roda.core.data.v2.ip.metadata.PreservationMetadata.PreservationMetadataType;
 import org.roda.core.data.v2.validation.ValidationException;
 import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.fs.ContentDigestEngine;
+import org.roda.core.storage.fs.FSPathContentPayload;
 import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +60,7 @@ public class PremisSkeletonPluginUtils {
       representation = PremisV3Utils.createBaseRepresentation(aipId, representationId);
     }
 
+    List<File> files = new ArrayList<>();
     try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aipId, representationId, true)) {
       for (OptionalWithCause<File> oFile : allFiles) {
         if (oFile.isPresent()) {
@@ -61,7 +72,7 @@ public class PremisSkeletonPluginUtils {
               // method in the catch also does the same logging
               LOGGER.debug("Processing {}", file);
             } catch (NotFoundException e1) {
-              PremisSkeletonPluginUtils.createPremisSkeletonOnFile(model, file, fixityAlgorithms, representation);
+              files.add(file);
             }
           }
         } else {
@@ -70,6 +81,8 @@ public class PremisSkeletonPluginUtils {
       }
     }
 
+    createPremisSkeletonOnFiles(model, files, fixityAlgorithms, representation);
+
     ContentPayload representationPayload = PremisV3Utils.representationToBinary(representation);
     try {
       model.createPreservationMetadata(PreservationMetadataType.REPRESENTATION, aipId, representationId,
@@ -82,6 +95,97 @@ public class PremisSkeletonPluginUtils {
     }
   }
 
+  /**
+   * Creates the PREMIS objects of the files of a representation at once. The
+   * fixities computed when the files were written are reused and the missing
+   * ones are computed in parallel, reading each file once, and the files are
+   * indexed in a single batch.
+   */
+  private static void createPremisSkeletonOnFiles(ModelService model, List<File> files,
+    Collection<String> fixityAlgorithms, gov.loc.premis.v3.Representation representation)
+    throws RequestNotValidException, GenericException, AuthorizationDeniedException, NotFoundException,
+    ValidationException {
+    if (files.isEmpty()) {
+      return;
+    }
+
+    List<Binary> binaries = new ArrayList<>();
+    List<Path> toDigest = new ArrayList<>();
+    for (File file : files) {
+      Binary binary = model.getStorage().getBinary(ModelUtils.getFileStoragePath(file));
+      binaries.add(binary);
+      if (!hasContentDigest(binary, fixityAlgorithms) && binary.getContent() instanceof FSPathContentPayload) {
+        toDigest.add(((FSPathContentPayload) binary.getContent()).getPath());
+      }
+    }
+
+    Map<Path, Map<String, String>> digests = Collections.emptyMap();
+    if (!toDigest.isEmpty()) {
+      try {
+        digests = ContentDigestEngine.digestAll(toDigest, fixityAlgorithms);
+      } catch (GenericException e) {
+        // fixities will be calculated file by file
+        LOGGER.warn("Could not calculate fixities of the files of representation {}",
+          files.get(0).getRepresentationId(), e);
+      }
+    }
+
+    for (int i = 0; i < files.size(); i++) {
+      File file = files.get(i);
+      Binary binary = binaries.get(i);
+      LOGGER.debug("Processing {}", file);
+
+      ContentPayload filePreservation = PremisV3Utils.createBaseFile(file, binary.getSizeInBytes(),
+        getFixities(file, binary, digests, fixityAlgorithms));
+      String pmId;
+      try {
+        PreservationMetadata pm = model.createPreservationMetadata(PreservationMetadataType.FILE, file.getAipId(),
+          file.getRepresentationId(), file.getPath(), file.getId(), filePreservation, false);
+        pmId = pm.getId();
+      } catch (AlreadyExistsException e) {
+        pmId = IdUtils.getPreservationFileId(file.getId());
+        model.updatePreservationMetadata(pmId, PreservationMetadataType.FILE, file.getAipId(),
+          file.getRepresentationId(), file.getPath(), file.getId(), filePreservation, false);
+      }
+
+      PremisV3Utils.linkFileToRepresentation(pmId, RodaConstants.PREMIS_RELATIONSHIP_TYPE_STRUCTURAL,
+        RodaConstants.PREMIS_RELATIONSHIP_SUBTYPE_HASPART, representation);
+    }
+
+    // indexing a file replaces its document, if any
+    model.notifyFilesCreated(files).failOnError();
+  }
+
+  private static boolean hasContentDigest(Binary binary, Collection<String> fixityAlgorithms) {
+    Map<String, String> contentDigest = binary.getContentDigest();
+    return contentDigest != null && contentDigest.keySet().containsAll(fixityAlgorithms);
+  }
+
+  private static List<Fixity> getFixities(File file, Binary binary, Map<Path, Map<String, String>> digests,
+    Collection<String> fixityAlgorithms) {
+    Map<String, String> digest = null;
+    if (hasContentDigest(binary, fixityAlgorithms)) {
+      digest = binary.getContentDigest();
+    } else if (binary.getContent() instanceof FSPathContentPayload) {
+      digest = digests.get(((FSPathContentPayload) binary.getContent()).getPath());
+    }
+
+    if (digest == null) {
+      try {
+        return PremisV3Utils.calculateFixities(binary, fixityAlgorithms, PremisV3Utils.FIXITY_ORIGINATOR);
+      } catch (IOException | NoSuchAlgorithmException e) {
+        LOGGER.warn("Could not calculate fixity for file {}", file);
+        return Collections.emptyList();
+      }
+    }
+
+    List<Fixity> fixities = new ArrayList<>();
+    for (String algorithm : fixityAlgorithms) {
+      fixities.add(new Fixity(algorithm, digest.get(algorithm), PremisV3Utils.FIXITY_ORIGINATOR));
+    }
+    return fixities;
+  }
+
   public static void createPremisSkeletonOnFile(ModelService model, File file, Collection<String> fixityAlgorithms)
     throws RequestNotValidException, GenericException, AuthorizationDeniedException, NotFoundException,
     ValidationException, XmlException, IOException {
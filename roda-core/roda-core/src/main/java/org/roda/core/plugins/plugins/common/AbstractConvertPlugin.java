@@ -11,11 +11,16 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
@@ -34,6 +39,9 @@ import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.common.Pair;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPState;
 import org.roda.core.data.v2.ip.DIP;
@@ -66,6 +74,7 @@ import org.roda.core.storage.ContentPayload;
 import org.roda.core.storage.DirectResourceAccess;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fs.FSPathContentPayload;
+import org.roda.core.storage.fs.FSUtils;
 import org.roda.core.util.CommandException;
 import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
@@ -231,6 +240,8 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
   @Override
   protected Report executeOnAIP(IndexService index, ModelService model, StorageService storage, Report report,
     JobPluginInfo jobPluginInfo, List<AIP> list, Job job) {
+    FormatRules formatRules = new FormatRules();
+
     for (AIP aip : list) {
       LOGGER.debug("Processing AIP {}", aip.getId());
       List<String> newRepresentations = new ArrayList<>();
@@ -254,9 +265,11 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
           reportItem.setOutcomeObjectClass(DIP.class.getName());
         }
 
+        ConversionQueue conversions = new ConversionQueue(storage);
         try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aip.getId(),
           representation.getId(), true)) {
           LOGGER.debug("Processing representation {}", representation);
+          Map<String, IndexedFile> fileFormats = retrieveFileFormats(index, aip.getId(), representation.getId());
 
           for (OptionalWithCause<File> oFile : allFiles) {
             if (oFile.isPresent()) {
@@ -264,94 +277,10 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
               LOGGER.debug("Processing file {}", file);
 
               if (!file.isDirectory()) {
-                IndexedFile ifile = index.retrieve(IndexedFile.class, IdUtils.getFileId(file),
-                  RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN);
-                String fileMimetype = ifile.getFileFormat().getMimeType();
-                String filePronom = ifile.getFileFormat().getPronom();
-                String fileFormat = ifile.getId().substring(ifile.getId().lastIndexOf('.') + 1, ifile.getId().length());
-                List<String> applicableTo = getApplicableTo();
-                List<String> convertableTo = getConvertableTo();
-                Map<String, List<String>> pronomToExtension = getPronomToExtension();
-                Map<String, List<String>> mimetypeToExtension = getMimetypeToExtension();
-
-                if (doPluginExecute(fileFormat, filePronom, fileMimetype, applicableTo, convertableTo,
-                  pronomToExtension, mimetypeToExtension)) {
-
-                  fileFormat = getNewFileFormat(fileFormat, filePronom, fileMimetype, applicableTo, pronomToExtension,
-                    mimetypeToExtension);
-
-                  StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
-                  DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath);
-
-                  LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
-                  try {
-                    Path pluginResult = Files.createTempFile(getWorkingDirectory(), "converted",
-                      "." + getOutputFormat());
-                    String result = executePlugin(directAccess.getPath(), pluginResult, fileFormat);
-
-                    String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
-                    ContentPayload payload = new FSPathContentPayload(pluginResult);
-
-                    if (createDIP) {
-                      FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
-                        file.getId());
-                      List<FileLink> links = new ArrayList<>();
-                      links.add(fileLink);
-
-                      DIP dip = new DIP();
-                      dip.setId(IdUtils.createUUID());
-                      dip.setFileIds(links);
-                      dip.setPermissions(aip.getPermissions());
-                      dip.setTitle(dipTitle);
-                      dip.setDescription(dipDescription);
-                      dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
-                      dip = model.createDIP(dip, true);
-                      newRepresentationID = dip.getId();
-
-                      DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
-                        directAccess.getPath().toFile().length(), payload, notify);
-                      newDIPFiles.add(f);
-                    } else {
-                      // create a new representation if it does not exist
-                      if (!newRepresentations.contains(newRepresentationID)) {
-                        LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aip.getId());
-                        boolean original = false;
-                        newRepresentations.add(newRepresentationID);
-                        String newRepresentationType = representation.getType();
-
-                        if (StringUtils.isNotBlank(representationType)) {
-                          newRepresentationType = representationType;
-                        }
-
-                        model.createRepresentation(aip.getId(), newRepresentationID, original, newRepresentationType,
-                          notify, job.getUsername());
-                        reportItem.setSourceAndOutcomeObjectId(reportItem.getSourceObjectId(),
-                          IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
-                      }
-
-                      File f = model.createFile(aip.getId(), newRepresentationID, file.getPath(), newFileId, payload,
-                        notify);
-                      newFiles.add(f);
-                    }
-
-                    alteredFiles.add(file);
-                    IOUtils.closeQuietly(directAccess);
-
-                    Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
-                      AIPState.ACTIVE);
-                    fileReportItem.setPluginState(pluginResultState).setPluginDetails(result);
-                    reportItem.addReport(fileReportItem);
-
-                  } catch (CommandException e) {
-                    pluginResultState = PluginState.PARTIAL_SUCCESS;
-                    reportState = pluginResultState;
-                    reportItem.setPluginState(pluginResultState)
-                      .addPluginDetails(e.getMessage() + "\n" + e.getOutput() + "\n");
-
-                    LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}", fileFormat,
-                      outputFormat, file.getId(), representation.getId(), aip.getId());
-                  }
+                IndexedFile ifile = getFileFormat(index, fileFormats, file);
 
+                if (formatRules.isApplicable(ifile)) {
+                  conversions.add(file, formatRules.getFileFormat(ifile));
                 } else {
                   unchangedFiles.add(file);
 
@@ -369,6 +298,79 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
             }
           }
 
+          Conversion conversion;
+          while ((conversion = conversions.next()) != null) {
+            File file = conversion.getFile();
+            try {
+              String result = conversion.getResult();
+
+              String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
+              ContentPayload payload = new FSPathContentPayload(conversion.getOutputPath(), true);
+
+              if (createDIP) {
+                FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
+                  file.getId());
+                List<FileLink> links = new ArrayList<>();
+                links.add(fileLink);
+
+                DIP dip = new DIP();
+                dip.setId(IdUtils.createUUID());
+                dip.setFileIds(links);
+                dip.setPermissions(aip.getPermissions());
+                dip.setTitle(dipTitle);
+                dip.setDescription(dipDescription);
+                dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
+                dip = model.createDIP(dip, true);
+                newRepresentationID = dip.getId();
+
+                DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
+                  conversion.getInputPath().toFile().length(), payload, notify);
+                newDIPFiles.add(f);
+              } else {
+                // create a new representation if it does not exist
+                if (!newRepresentations.contains(newRepresentationID)) {
+                  LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aip.getId());
+                  boolean original = false;
+                  newRepresentations.add(newRepresentationID);
+                  String newRepresentationType = representation.getType();
+
+                  if (StringUtils.isNotBlank(representationType)) {
+                    newRepresentationType = representationType;
+                  }
+
+                  model.createRepresentation(aip.getId(), newRepresentationID, original, newRepresentationType,
+                    notify, job.getUsername());
+                  reportItem.setSourceAndOutcomeObjectId(reportItem.getSourceObjectId(),
+                    IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
+                }
+
+                File f = model.createFile(aip.getId(), newRepresentationID, file.getPath(), newFileId, payload,
+                  notify);
+                newFiles.add(f);
+              }
+
+              alteredFiles.add(file);
+
+              Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
+                AIPState.ACTIVE);
+              fileReportItem.setPluginState(PluginState.SUCCESS).setPluginDetails(result);
+              reportItem.addReport(fileReportItem);
+
+            } catch (CommandException e) {
+              if (pluginResultState != PluginState.FAILURE) {
+                pluginResultState = PluginState.PARTIAL_SUCCESS;
+                reportState = pluginResultState;
+              }
+              reportItem.setPluginState(pluginResultState)
+                .addPluginDetails(e.getMessage() + "\n" + e.getOutput() + "\n");
+
+              LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}",
+                conversion.getFileFormat(), outputFormat, file.getId(), representation.getId(), aip.getId());
+            } finally {
+              conversion.close();
+            }
+          }
+
           reportItem.setPluginState(pluginResultState);
 
           if (reportState.equals(PluginState.SUCCESS)) {
@@ -395,6 +397,7 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
           reportState = pluginResultState;
           reportItem.setPluginState(pluginResultState).setPluginDetails(e.getMessage());
         } finally {
+          conversions.close();
           report.addReport(reportItem);
           PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
 
@@ -432,6 +435,7 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
     Report report, JobPluginInfo jobPluginInfo, List<Representation> list, Job job) throws PluginException {
     List<String> newRepresentations = new ArrayList<>();
     String aipId = null;
+    FormatRules formatRules = new FormatRules();
 
     for (Representation representation : list) {
       List<File> unchangedFiles = new ArrayList<>();
@@ -452,9 +456,12 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
       ValidationReport validationReport = new ValidationReport();
       boolean hasNonPdfFiles = false;
 
+      ConversionQueue conversions = new ConversionQueue(storage);
       try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(representation.getAipId(),
         representation.getId(), true)) {
         LOGGER.debug("Processing representation {}", representation);
+        Map<String, IndexedFile> fileFormats = retrieveFileFormats(index, representation.getAipId(),
+          representation.getId());
 
         for (OptionalWithCause<File> oFile : allFiles) {
           if (oFile.isPresent()) {
@@ -462,94 +469,10 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
             LOGGER.debug("Processing file {}", file);
 
             if (!file.isDirectory()) {
-              IndexedFile ifile = index.retrieve(IndexedFile.class, IdUtils.getFileId(file),
-                RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN);
-              String fileMimetype = ifile.getFileFormat().getMimeType();
-              String filePronom = ifile.getFileFormat().getPronom();
-              String fileFormat = ifile.getId().substring(ifile.getId().lastIndexOf('.') + 1);
-              List<String> applicableTo = getApplicableTo();
-              List<String> convertableTo = getConvertableTo();
-              Map<String, List<String>> pronomToExtension = getPronomToExtension();
-              Map<String, List<String>> mimetypeToExtension = getMimetypeToExtension();
-
-              if (doPluginExecute(fileFormat, filePronom, fileMimetype, applicableTo, convertableTo, pronomToExtension,
-                mimetypeToExtension)) {
-
-                fileFormat = getNewFileFormat(fileFormat, filePronom, fileMimetype, applicableTo, pronomToExtension,
-                  mimetypeToExtension);
-
-                StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
-                DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath);
-
-                LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
-                try {
-                  Path pluginResult = Files.createTempFile(getWorkingDirectory(), "converted", "." + getOutputFormat());
-                  String result = executePlugin(directAccess.getPath(), pluginResult, fileFormat);
-                  ContentPayload payload = new FSPathContentPayload(pluginResult);
-
-                  if (!newRepresentations.contains(newRepresentationID)) {
-                    LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aipId);
-                    boolean original = false;
-                    newRepresentations.add(newRepresentationID);
-
-                    if (createDIP) {
-                      FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
-                        file.getId());
-                      List<FileLink> links = new ArrayList<>();
-                      links.add(fileLink);
-
-                      AIP aip = model.retrieveAIP(aipId);
-
-                      DIP dip = new DIP();
-                      dip.setId(IdUtils.createUUID());
-                      dip.setFileIds(links);
-                      dip.setPermissions(aip.getPermissions());
-                      dip.setTitle(dipTitle);
-                      dip.setDescription(dipDescription);
-                      dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
-                      dip = model.createDIP(dip, true);
-                      newRepresentationID = dip.getId();
-                    } else {
-                      // INFO will be a parameter
-                      String newRepresentationType = RodaConstants.REPRESENTATION_TYPE_MIXED;
-
-                      if (StringUtils.isNotBlank(representationType)) {
-                        newRepresentationType = representationType;
-                      }
-
-                      model.createRepresentation(aipId, newRepresentationID, original, newRepresentationType, notify,
-                        job.getUsername());
-                      reportItem.setSourceAndOutcomeObjectId(reportItem.getSourceObjectId(),
-                        IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
-                    }
-                  }
-
-                  String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
-                  if (createDIP) {
-                    DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
-                      directAccess.getPath().toFile().length(), payload, notify);
-                    newDIPFiles.add(f);
-                  } else {
-                    File newFile = model.createFile(aipId, newRepresentationID, file.getPath(), newFileId, payload,
-                      notify);
-                    newFiles.add(newFile);
-                  }
+              IndexedFile ifile = getFileFormat(index, fileFormats, file);
 
-                  alteredFiles.add(file);
-                  IOUtils.closeQuietly(directAccess);
-
-                  Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
-                    AIPState.ACTIVE);
-                  fileReportItem.setPluginState(PluginState.SUCCESS).setPluginDetails(result);
-                  reportItem.addReport(fileReportItem);
-
-                } catch (CommandException e) {
-                  reportState = PluginState.PARTIAL_SUCCESS;
-                  reportItem.setPluginState(reportState).addPluginDetails(e.getMessage() + "\n" + e.getOutput() + "\n");
-
-                  LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}", fileFormat,
-                    outputFormat, file.getId(), representation.getId(), representation.getAipId());
-                }
+              if (formatRules.isApplicable(ifile)) {
+                conversions.add(file, formatRules.getFileFormat(ifile));
               } else {
                 unchangedFiles.add(file);
 
@@ -566,6 +489,81 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
           }
         }
 
+        Conversion conversion;
+        while ((conversion = conversions.next()) != null) {
+          File file = conversion.getFile();
+          try {
+            String result = conversion.getResult();
+            ContentPayload payload = new FSPathContentPayload(conversion.getOutputPath(), true);
+
+            if (!newRepresentations.contains(newRepresentationID)) {
+              LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aipId);
+              boolean original = false;
+              newRepresentations.add(newRepresentationID);
+
+              if (createDIP) {
+                FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
+                  file.getId());
+                List<FileLink> links = new ArrayList<>();
+                links.add(fileLink);
+
+                AIP aip = model.retrieveAIP(aipId);
+
+                DIP dip = new DIP();
+                dip.setId(IdUtils.createUUID());
+                dip.setFileIds(links);
+                dip.setPermissions(aip.getPermissions());
+                dip.setTitle(dipTitle);
+                dip.setDescription(dipDescription);
+                dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
+                dip = model.createDIP(dip, true);
+                newRepresentationID = dip.getId();
+              } else {
+                // INFO will be a parameter
+                String newRepresentationType = RodaConstants.REPRESENTATION_TYPE_MIXED;
+
+                if (StringUtils.isNotBlank(representationType)) {
+                  newRepresentationType = representationType;
+                }
+
+                model.createRepresentation(aipId, newRepresentationID, original, newRepresentationType, notify,
+                  job.getUsername());
+                reportItem.setSourceAndOutcomeObjectId(reportItem.getSourceObjectId(),
+                  IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
+              }
+            }
+
+            String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
+            if (createDIP) {
+              DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
+                conversion.getInputPath().toFile().length(), payload, notify);
+              newDIPFiles.add(f);
+            } else {
+              File newFile = model.createFile(aipId, newRepresentationID, file.getPath(), newFileId, payload, notify);
+              newFiles.add(newFile);
+            }
+
+            alteredFiles.add(file);
+
+            Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
+              AIPState.ACTIVE);
+            fileReportItem.setPluginState(PluginState.SUCCESS).setPluginDetails(result);
+            reportItem.addReport(fileReportItem);
+
+          } catch (CommandException e) {
+            if (reportState != PluginState.FAILURE) {
+              reportState = PluginState.PARTIAL_SUCCESS;
+            }
+            reportItem.setPluginState(reportState).addPluginDetails(e.getMessage() + "\n" + e.getOutput() + "\n");
+
+            LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}",
+              conversion.getFileFormat(), outputFormat, file.getId(), representation.getId(),
+              representation.getAipId());
+          } finally {
+            conversion.close();
+          }
+        }
+
         reportItem.setPluginState(reportState);
         if (reportState.equals(PluginState.SUCCESS) && ignoreFiles && !validationReport.getIssues().isEmpty()) {
           reportItem.setHtmlPluginDetails(true)
@@ -596,6 +594,8 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
 
         reportItem.setPluginState(PluginState.FAILURE).setPluginDetails(e.getMessage());
         report.addReport(reportItem);
+      } finally {
+        conversions.close();
       }
 
       jobPluginInfo.incrementObjectsProcessed(reportState);
@@ -638,7 +638,20 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
     PluginState reportState = PluginState.SUCCESS;
     PluginState pluginResultState = PluginState.SUCCESS;
 
+    FormatRules formatRules = new FormatRules();
+    Map<String, IndexedFile> fileFormats = retrieveFileFormats(index, list);
+
+    // conversions of the following files run while each file is processed
+    ConversionQueue conversions = new ConversionQueue(storage);
+    for (File file : list) {
+      IndexedFile ifile = fileFormats.get(IdUtils.getFileId(file));
+      if (!file.isDirectory() && ifile != null && formatRules.isApplicable(ifile)) {
+        conversions.add(file, formatRules.getFileFormat(ifile));
+      }
+    }
+
     for (File file : list) {
+      Conversion conversion = null;
       try {
         LOGGER.debug("Processing file {}", file.getId());
         newRepresentationID = IdUtils.createUUID();
@@ -650,30 +663,20 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
         }
 
         if (!file.isDirectory()) {
-          IndexedFile ifile = index.retrieve(IndexedFile.class, IdUtils.getFileId(file),
-            RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN);
-          String fileMimetype = ifile.getFileFormat().getMimeType();
-          String filePronom = ifile.getFileFormat().getPronom();
-          String fileFormat = ifile.getId().substring(ifile.getId().lastIndexOf('.') + 1);
-          List<String> applicableTo = getApplicableTo();
-          List<String> convertableTo = getConvertableTo();
-          Map<String, List<String>> pronomToExtension = getPronomToExtension();
-          Map<String, List<String>> mimetypeToExtension = getMimetypeToExtension();
-
-          if (doPluginExecute(fileFormat, filePronom, fileMimetype, applicableTo, convertableTo, pronomToExtension,
-            mimetypeToExtension)) {
-            fileFormat = getNewFileFormat(fileFormat, filePronom, fileMimetype, applicableTo, pronomToExtension,
-              mimetypeToExtension);
-
-            StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
-            DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath);
-
-            LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
+          IndexedFile ifile = getFileFormat(index, fileFormats, file);
+
+          if (formatRules.isApplicable(ifile)) {
+            if (conversions.isNext(file)) {
+              conversion = conversions.next();
+            } else {
+              // format not retrieved before, e.g. file indexed meanwhile
+              conversion = new Conversion(storage, file, formatRules.getFileFormat(ifile));
+            }
+
             try {
-              Path pluginResult = Files.createTempFile(getWorkingDirectory(), "converted", "." + getOutputFormat());
-              String result = executePlugin(directAccess.getPath(), pluginResult, fileFormat);
+              String result = conversion.getResult();
 
-              ContentPayload payload = new FSPathContentPayload(pluginResult);
+              ContentPayload payload = new FSPathContentPayload(conversion.getOutputPath(), true);
               StoragePath storagePath = ModelUtils.getRepresentationStoragePath(file.getAipId(),
                 file.getRepresentationId());
 
@@ -714,7 +717,7 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
 
               if (createDIP) {
                 DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
-                  directAccess.getPath().toFile().length(), payload, notify);
+                  conversion.getInputPath().toFile().length(), payload, notify);
                 newDIPFiles.add(f);
               } else {
                 model.deleteFile(file.getAipId(), newRepresentationID, file.getPath(), file.getId(), notify);
@@ -738,8 +741,8 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
                 .setPluginDetails(e.getMessage() + "\n" + e.getOutput());
               reportItem.addReport(fileReportItem);
 
-              LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}", fileFormat,
-                outputFormat, file.getId(), file.getRepresentationId(), file.getAipId());
+              LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}",
+                conversion.getFileFormat(), outputFormat, file.getId(), file.getRepresentationId(), file.getAipId());
             }
           } else {
             if (ignoreFiles) {
@@ -766,6 +769,9 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
         reportItem.setPluginDetails(e.getMessage());
         jobPluginInfo.incrementObjectsProcessedWithFailure();
       } finally {
+        if (conversion != null) {
+          conversion.close();
+        }
         reportItem.setPluginState(pluginResultState);
         report.addReport(reportItem);
         PluginHelper.updatePartialJobReport(this, model, reportItem, true, job);
@@ -786,12 +792,23 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
       }
     }
 
+    conversions.close();
     return report;
   }
 
   public abstract String executePlugin(Path inputPath, Path outputPath, String fileFormat)
     throws UnsupportedOperationException, IOException, CommandException;
 
+  /**
+   * Converts a file, on a thread of the {@link ConversionExecutor}. By default,
+   * with {@link #executePlugin(Path, Path, String)}; plugins may override it to
+   * use e.g. a {@link ConverterProcessPool} instead.
+   */
+  protected String convert(Path inputPath, Path outputPath, String fileFormat)
+    throws UnsupportedOperationException, IOException, CommandException {
+    return executePlugin(inputPath, outputPath, fileFormat);
+  }
+
   private void createPremisSkeletonOnRepresentation(ModelService model, String aipId, Representation representation)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
     ValidationException, IOException, XmlException {
@@ -880,6 +897,275 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
     return newFileFormat;
   }
 
+  /**
+   * Retrieves the format of all files of a representation with a single
+   * (cursor) search, instead of retrieving the format of each file.
+   *
+   * @return map from the file UUID to the file format fields
+   */
+  private Map<String, IndexedFile> retrieveFileFormats(IndexService index, String aipId, String representationId)
+    throws GenericException, RequestNotValidException {
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.FILE_AIP_ID, aipId),
+      new SimpleFilterParameter(RodaConstants.FILE_REPRESENTATION_ID, representationId),
+      new SimpleFilterParameter(RodaConstants.FILE_ISDIRECTORY, Boolean.FALSE.toString()));
+
+    Map<String, IndexedFile> fileFormats = new HashMap<>();
+    for (IndexedFile ifile : index.findAll(IndexedFile.class, filter, false,
+      RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN)) {
+      fileFormats.put(ifile.getUUID(), ifile);
+    }
+    return fileFormats;
+  }
+
+  /**
+   * Retrieves the format of all the files with a single request.
+   *
+   * @return map from the file UUID to the file format fields, without the files
+   *         that could not be retrieved
+   */
+  private Map<String, IndexedFile> retrieveFileFormats(IndexService index, List<File> files) {
+    Map<String, IndexedFile> fileFormats = new HashMap<>();
+    List<String> fileUUIDs = files.stream().filter(file -> !file.isDirectory()).map(IdUtils::getFileId)
+      .collect(Collectors.toList());
+    try {
+      for (IndexedFile ifile : index.retrieve(IndexedFile.class, fileUUIDs,
+        RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN)) {
+        fileFormats.put(ifile.getUUID(), ifile);
+      }
+    } catch (NotFoundException | GenericException e) {
+      LOGGER.warn("Could not retrieve file formats, retrieving them one by one", e);
+    }
+    return fileFormats;
+  }
+
+  /**
+   * @return the format of the file, from the retrieved file formats or, if not
+   *         there (e.g. file indexed meanwhile), from the index
+   */
+  private IndexedFile getFileFormat(IndexService index, Map<String, IndexedFile> fileFormats, File file)
+    throws NotFoundException, GenericException {
+    IndexedFile ifile = fileFormats.get(IdUtils.getFileId(file));
+    if (ifile == null) {
+      ifile = index.retrieve(IndexedFile.class, IdUtils.getFileId(file), RodaConstants.FILE_FORMAT_FIELDS_TO_RETURN);
+    }
+    return ifile;
+  }
+
+  /**
+   * @return the name of the conversion tool, as in the tool configuration
+   *         (<code>core.tools.&lt;tool&gt;.*</code>), used to limit how many
+   *         conversions run at the same time with the tool. By default, the
+   *         class name in lower case and without the <code>Plugin</code>
+   *         suffix, e.g. <code>imagemagickconvert</code>.
+   */
+  protected String getToolName() {
+    return getClass().getSimpleName().replaceFirst("Plugin$", "").toLowerCase();
+  }
+
+  /**
+   * The formats the plugin converts from and to, got once for all files.
+   */
+  private class FormatRules {
+    private final List<String> applicableTo = getApplicableTo();
+    private final List<String> convertableTo = getConvertableTo();
+    private final Map<String, List<String>> pronomToExtension = getPronomToExtension();
+    private final Map<String, List<String>> mimetypeToExtension = getMimetypeToExtension();
+
+    boolean isApplicable(IndexedFile ifile) {
+      return doPluginExecute(getExtension(ifile), ifile.getFileFormat().getPronom(),
+        ifile.getFileFormat().getMimeType(), applicableTo, convertableTo, pronomToExtension, mimetypeToExtension);
+    }
+
+    String getFileFormat(IndexedFile ifile) {
+      return getNewFileFormat(getExtension(ifile), ifile.getFileFormat().getPronom(),
+        ifile.getFileFormat().getMimeType(), applicableTo, pronomToExtension, mimetypeToExtension);
+    }
+
+    private String getExtension(IndexedFile ifile) {
+      return ifile.getId().substring(ifile.getId().lastIndexOf('.') + 1);
+    }
+  }
+
+  /**
+   * Conversions of the files of an object, started in order so that at most
+   * {@link ConversionExecutor#getWindowSize()} of them are outstanding (started
+   * and not yet applied) at a time.
+   */
+  private class ConversionQueue {
+    private final StorageService storage;
+    private final int windowSize = ConversionExecutor.getWindowSize();
+    private final Deque<Pair<File, String>> files = new ArrayDeque<>();
+    private final Deque<Conversion> started = new ArrayDeque<>();
+
+    ConversionQueue(StorageService storage) {
+      this.storage = storage;
+    }
+
+    void add(File file, String fileFormat) {
+      files.add(Pair.of(file, fileFormat));
+    }
+
+    /**
+     * @return if the conversion {@link #next()} takes is the one of the file
+     */
+    boolean isNext(File file) {
+      File next = started.isEmpty() ? (files.isEmpty() ? null : files.peek().getFirst())
+        : started.peek().getFile();
+      return next != null && IdUtils.getFileId(next).equals(IdUtils.getFileId(file));
+    }
+
+    /**
+     * Starts conversions up to the window size and takes the oldest one, to
+     * be applied and closed by the caller. A conversion that cannot be started
+     * is tried again when it is the oldest one, so that the error is thrown
+     * when its file is processed.
+     *
+     * @return the oldest conversion, or <code>null</code> if there are no more
+     */
+    Conversion next()
+      throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException, IOException {
+      while (!files.isEmpty() && started.size() < windowSize) {
+        Pair<File, String> file = files.peek();
+        try {
+          started.add(new Conversion(storage, file.getFirst(), file.getSecond()));
+        } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
+          | IOException | RuntimeException e) {
+          if (started.isEmpty()) {
+            files.poll();
+            throw e;
+          }
+          LOGGER.debug("Could not start conversion of file {}", file.getFirst().getId(), e);
+          break;
+        }
+        files.poll();
+      }
+      return started.poll();
+    }
+
+    /**
+     * Closes the conversions not taken, e.g. after an error.
+     */
+    void close() {
+      started.forEach(Conversion::close);
+      started.clear();
+      files.clear();
+    }
+  }
+
+  /**
+   * Conversion of a file, started on the {@link ConversionExecutor} when
+   * created. Its output is deleted if the conversion fails or is cancelled,
+   * and when closed if it was not used.
+   */
+  private class Conversion {
+    private final File file;
+    private final String fileFormat;
+    private final DirectResourceAccess directAccess;
+    private final Path inputPath;
+    private final Path outputPath;
+    private final Future<String> result;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    Conversion(StorageService storage, File file, String fileFormat)
+      throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException, IOException {
+      this.file = file;
+      this.fileFormat = fileFormat;
+      StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
+      this.directAccess = storage.getDirectAccess(fileStoragePath);
+
+      try {
+        this.inputPath = directAccess.getPath();
+        this.outputPath = Files.createTempFile(getWorkingDirectory(), "converted", "." + getOutputFormat());
+      } catch (GenericException | RequestNotValidException | AuthorizationDeniedException | NotFoundException
+        | IOException | RuntimeException e) {
+        IOUtils.closeQuietly(directAccess);
+        throw e;
+      }
+
+      try {
+        LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
+        this.result = ConversionExecutor.submit(getToolName(), this::convertFile);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        throw new GenericException("Interrupted while waiting to convert file " + file.getId(), e);
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
+
+    private String convertFile() throws UnsupportedOperationException, IOException, CommandException {
+      boolean converted = false;
+      try {
+        String output = convert(inputPath, outputPath, fileFormat);
+        converted = true;
+        return output;
+      } finally {
+        // also if closed while converting, as the output may be written until
+        // the conversion stops
+        if (!converted || closed.get()) {
+          FSUtils.deletePathQuietly(outputPath);
+        }
+      }
+    }
+
+    File getFile() {
+      return file;
+    }
+
+    String getFileFormat() {
+      return fileFormat;
+    }
+
+    Path getInputPath() {
+      return inputPath;
+    }
+
+    Path getOutputPath() {
+      return outputPath;
+    }
+
+    /**
+     * Waits for the conversion to finish.
+     *
+     * @return the output of the conversion
+     */
+    String getResult() throws CommandException, IOException, GenericException {
+      try {
+        return result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new GenericException("Interrupted while converting file " + file.getId(), e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof CommandException) {
+          throw (CommandException) cause;
+        } else if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else {
+          throw new GenericException("Could not convert file " + file.getId(), cause);
+        }
+      }
+    }
+
+    /**
+     * Cancels the conversion, if not finished, releases the file and deletes
+     * the output, if not used.
+     */
+    void close() {
+      if (closed.compareAndSet(false, true)) {
+        if (result != null) {
+          result.cancel(true);
+        }
+        IOUtils.closeQuietly(directAccess);
+        FSUtils.deletePathQuietly(outputPath);
+      }
+    }
+  }
+
   private void createNewFilesOnRepresentation(StorageService storage, ModelService model, List<File> unchangedFiles,
     String newRepresentationID, boolean notify) throws RequestNotValidException, GenericException, NotFoundException,
     AuthorizationDeniedException, UnsupportedOperationException, IOException, AlreadyExistsException {
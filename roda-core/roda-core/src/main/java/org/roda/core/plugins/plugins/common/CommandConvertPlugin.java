@@ -7,6 +7,8 @@
  */
 package org.roda.core.plugins.plugins.common;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +19,7 @@ import org.roda.core.data.exceptions.InvalidParameterException;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.jobs.PluginParameter;
 import org.roda.core.data.v2.jobs.PluginParameter.PluginParameterType;
+import org.roda.core.util.CommandException;
 
 public abstract class CommandConvertPlugin<T extends IsRODAObject> extends AbstractConvertPlugin<T> {
 
@@ -73,4 +76,19 @@ public abstract class CommandConvertPlugin<T extends IsRODAObject> extends Abstr
     }
   }
 
+  /**
+   * Converts the file with a warm process of the tool if a server mode is
+   * configured for it (<code>core.tools.&lt;tool&gt;.server.*</code>), or with
+   * {@link #executePlugin(Path, Path, String)} otherwise.
+   */
+  @Override
+  protected String convert(Path inputPath, Path outputPath, String fileFormat)
+    throws UnsupportedOperationException, IOException, CommandException {
+    ConverterProcessPool pool = ConverterProcessPool.getPool(getToolName());
+    if (pool == null) {
+      return executePlugin(inputPath, outputPath, fileFormat);
+    }
+    return pool.convert(inputPath, outputPath, fileFormat, getOutputFormat(), getCommandArguments());
+  }
+
 }
@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.common;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.roda.core.RodaCoreFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the conversions of convert plugins on a pool with a bounded number of
+ * threads, shared by all jobs.
+ *
+ * <p>
+ * The number of conversions running at the same time with a tool may be
+ * further limited with <code>core.tools.&lt;tool&gt;.maxConcurrency</code>,
+ * e.g. for tools that use a lot of memory or that cannot run many instances at
+ * once.
+ * </p>
+ */
+public final class ConversionExecutor {
+  private static int PARALLELISM = -1;
+  private static ExecutorService POOL;
+  private static final Map<String, Semaphore> TOOL_PERMITS = new ConcurrentHashMap<>();
+
+  private ConversionExecutor() {
+    // do nothing
+  }
+
+  /**
+   * Submits a conversion done with the tool, waiting first, if the tool is
+   * running as many conversions as allowed, for one of them to finish.
+   *
+   * @throws InterruptedException
+   *           if interrupted while waiting for another conversion to finish
+   */
+  public static <T> Future<T> submit(String tool, Callable<T> conversion) throws InterruptedException {
+    Semaphore permits = getToolPermits(tool);
+    if (permits == null) {
+      return getPool().submit(conversion);
+    }
+
+    permits.acquire();
+    try {
+      return getPool().submit(() -> {
+        try {
+          return conversion.call();
+        } finally {
+          permits.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the number of conversions a plugin may have submitted and not yet
+   *         applied, twice the number of threads, which keeps the pool busy
+   *         without converting ahead all the files of a large object
+   */
+  public static synchronized int getWindowSize() {
+    getPool();
+    return 2 * Math.max(1, PARALLELISM);
+  }
+
+  private static Semaphore getToolPermits(String tool) {
+    int maxConcurrency = RodaCoreFactory.getRodaConfigurationAsInt(0, "core", "tools", tool, "maxConcurrency");
+    return maxConcurrency > 0 ? TOOL_PERMITS.computeIfAbsent(tool, t -> new Semaphore(maxConcurrency)) : null;
+  }
+
+  private static synchronized ExecutorService getPool() {
+    if (POOL == null) {
+      if (PARALLELISM <= 0) {
+        PARALLELISM = RodaCoreFactory.getRodaConfigurationAsInt(Runtime.getRuntime().availableProcessors(), "core",
+          "tools", "convert", "allplugins", "threads");
+      }
+      POOL = Executors.newFixedThreadPool(Math.max(1, PARALLELISM),
+        new ThreadFactoryBuilder().setNameFormat("conversion-%d").setDaemon(true).build());
+    }
+    return POOL;
+  }
+
+  public static synchronized void injectParallelism(int parallelism) {
+    if (parallelism > 0 && parallelism != PARALLELISM) {
+      PARALLELISM = parallelism;
+      if (POOL != null) {
+        POOL.shutdown();
+        POOL = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,313 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.plugins.common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.util.CommandException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Pool of long-lived processes of a conversion tool running in a server (or
+ * batch) mode, which avoids starting a process for each file converted.
+ *
+ * <p>
+ * Each process reads conversion requests from its standard input, one per
+ * line, and prints the output of each conversion followed by a line telling
+ * if it succeeded or failed. For example, GraphicsMagick does so with
+ * <code>gm batch -echo off -feedback on -</code>, reading requests like
+ * <code>convert {input_file} {arguments} {output_file}</code> and answering
+ * <code>PASS</code> or <code>FAIL</code>. Processes are started when needed,
+ * up to the configured number, and started again if they terminate.
+ * </p>
+ *
+ * <p>
+ * Each value put in a request is quoted (with double quotes, escaping
+ * <code>\</code> and <code>"</code> with <code>\</code>), as the arguments of
+ * <code>gm batch</code> are, and the command arguments are quoted one by one.
+ * Values with line breaks are rejected, as they would end the request. A
+ * process that does not answer within the timeout is stopped.
+ * </p>
+ */
+public class ConverterProcessPool {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConverterProcessPool.class);
+
+  public static final String INPUT_FILE = "{input_file}";
+  public static final String OUTPUT_FILE = "{output_file}";
+  public static final String INPUT_FORMAT = "{input_format}";
+  public static final String OUTPUT_FORMAT = "{output_format}";
+  public static final String ARGUMENTS = "{arguments}";
+
+  private static final int DEFAULT_TIMEOUT = 600;
+
+  private static final Map<String, ConverterProcessPool> POOLS = new ConcurrentHashMap<>();
+  // tools whose server mode lacks settings, warned about once
+  private static final Set<String> MISCONFIGURED_TOOLS = ConcurrentHashMap.newKeySet();
+  private static ScheduledExecutorService TIMER;
+
+  private final String tool;
+  private final List<String> command;
+  private final String request;
+  private final String success;
+  private final String failure;
+  private final Semaphore processes;
+  private final long timeoutInSeconds;
+  private final BlockingQueue<ConverterProcess> idle = new LinkedBlockingQueue<>();
+
+  /**
+   * @param tool
+   *          the name of the tool, used in messages
+   * @param command
+   *          the command line that starts a process
+   * @param request
+   *          the request sent to a process for each conversion, with the
+   *          placeholders {@link #INPUT_FILE}, {@link #OUTPUT_FILE},
+   *          {@link #INPUT_FORMAT}, {@link #OUTPUT_FORMAT} and
+   *          {@link #ARGUMENTS}
+   * @param success
+   *          the line printed by a process after a successful conversion
+   * @param failure
+   *          the line printed by a process after a failed conversion
+   * @param processes
+   *          the maximum number of processes
+   * @param timeoutInSeconds
+   *          the time a process has to answer a request before it is stopped
+   */
+  public ConverterProcessPool(String tool, List<String> command, String request, String success, String failure,
+    int processes, long timeoutInSeconds) {
+    this.tool = tool;
+    this.command = command;
+    this.request = request;
+    this.success = success;
+    this.failure = failure;
+    this.processes = new Semaphore(Math.max(1, processes));
+    this.timeoutInSeconds = timeoutInSeconds;
+  }
+
+  /**
+   * Gets the pool of the tool, configured in
+   * <code>core.tools.&lt;tool&gt;.server.*</code>.
+   *
+   * @return the pool, or <code>null</code> if no server mode is configured for
+   *         the tool, i.e. no command, or no request to send it
+   */
+  public static ConverterProcessPool getPool(String tool) {
+    ConverterProcessPool pool = POOLS.get(tool);
+    if (pool == null) {
+      String command = RodaCoreFactory.getRodaConfigurationAsString("core", "tools", tool, "server", "command");
+      if (StringUtils.isBlank(command)) {
+        return null;
+      }
+      String request = RodaCoreFactory.getRodaConfigurationAsString("core", "tools", tool, "server", "request");
+      if (StringUtils.isBlank(request)) {
+        if (MISCONFIGURED_TOOLS.add(tool)) {
+          LOGGER.warn("Server mode of {} has no core.tools.{}.server.request, converting with the command instead",
+            tool, tool);
+        }
+        return null;
+      }
+
+      pool = POOLS.computeIfAbsent(tool,
+        t -> new ConverterProcessPool(t, Arrays.asList(command.trim().split("\\s+")), request,
+          RodaCoreFactory.getRodaConfiguration().getString("core.tools." + t + ".server.success", "PASS"),
+          RodaCoreFactory.getRodaConfiguration().getString("core.tools." + t + ".server.failure", "FAIL"),
+          RodaCoreFactory.getRodaConfigurationAsInt(1, "core", "tools", t, "server", "processes"),
+          RodaCoreFactory.getRodaConfigurationAsInt(DEFAULT_TIMEOUT, "core", "tools", t, "server", "timeout")));
+    }
+    return pool;
+  }
+
+  /**
+   * Stops the processes of all pools.
+   */
+  public static void shutdownAll() {
+    POOLS.values().forEach(ConverterProcessPool::shutdown);
+    POOLS.clear();
+  }
+
+  /**
+   * Converts a file with one of the processes, waiting for one to be free if
+   * all are busy.
+   *
+   * @return the output of the process for the conversion
+   *
+   * @throws CommandException
+   *           if the conversion failed, the process could not be used or a
+   *           value has a line break
+   */
+  public String convert(Path inputPath, Path outputPath, String inputFormat, String outputFormat, String arguments)
+    throws CommandException {
+    List<String> quotedArguments = new ArrayList<>();
+    for (String argument : StringUtils.split(StringUtils.defaultString(arguments))) {
+      quotedArguments.add(quote(argument));
+    }
+
+    String line = request.replace(INPUT_FILE, quote(inputPath.toString()))
+      .replace(OUTPUT_FILE, quote(outputPath.toString()))
+      .replace(INPUT_FORMAT, quote(StringUtils.defaultString(inputFormat)))
+      .replace(OUTPUT_FORMAT, quote(StringUtils.defaultString(outputFormat)))
+      .replace(ARGUMENTS, String.join(" ", quotedArguments)).trim();
+
+    try {
+      processes.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CommandException("Interrupted while waiting for a process of " + tool, e);
+    }
+
+    try {
+      ConverterProcess process = idle.poll();
+      if (process == null || !process.isAlive()) {
+        if (process != null) {
+          process.destroy();
+        }
+        process = new ConverterProcess();
+      }
+
+      try {
+        String output = process.execute(line);
+        idle.add(process);
+        return output;
+      } catch (CommandException e) {
+        idle.add(process);
+        throw e;
+      } catch (IOException e) {
+        process.destroy();
+        throw new CommandException("Error executing " + line + " with " + command + " - " + e.getMessage(), e);
+      }
+    } finally {
+      processes.release();
+    }
+  }
+
+  /**
+   * Quotes a value of a request, so that it is read as a single argument.
+   */
+  static String quote(String value) throws CommandException {
+    if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+      throw new CommandException("Line breaks are not allowed in a request to a server process: " + value);
+    }
+    return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+  }
+
+  private static synchronized ScheduledExecutorService getTimer() {
+    if (TIMER == null) {
+      TIMER = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("converter-process-timeout-%d").setDaemon(true).build());
+    }
+    return TIMER;
+  }
+
+  /**
+   * Stops the idle processes of the pool.
+   */
+  public void shutdown() {
+    ConverterProcess process;
+    while ((process = idle.poll()) != null) {
+      process.destroy();
+    }
+  }
+
+  private class ConverterProcess {
+    private final Process process;
+    private final BufferedWriter in;
+    private final BufferedReader out;
+
+    ConverterProcess() throws CommandException {
+      LOGGER.debug("Starting {}", command);
+      try {
+        process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      } catch (IOException e) {
+        throw new CommandException("Error executing command " + command + " - " + e.getMessage(), e);
+      }
+      in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+      out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    }
+
+    boolean isAlive() {
+      return process.isAlive();
+    }
+
+    String execute(String line) throws IOException, CommandException {
+      LOGGER.debug("Executing {} with {}", line, command);
+      // reading the answer cannot be interrupted, so a process that hangs is
+      // stopped, which ends the reading
+      AtomicBoolean timedOut = new AtomicBoolean(false);
+      ScheduledFuture<?> deadline = getTimer().schedule(() -> {
+        timedOut.set(true);
+        process.destroyForcibly();
+      }, timeoutInSeconds, TimeUnit.SECONDS);
+
+      List<String> output = new ArrayList<>();
+      try {
+        in.write(line);
+        in.newLine();
+        in.flush();
+
+        String outputLine;
+        while ((outputLine = out.readLine()) != null) {
+          String result = outputLine.trim();
+          if (result.equals(success)) {
+            return String.join(System.lineSeparator(), output);
+          } else if (result.equals(failure)) {
+            throw new CommandException("Command " + line + " failed with " + command, 1,
+              String.join(System.lineSeparator(), output));
+          }
+          output.add(outputLine);
+        }
+      } catch (IOException e) {
+        if (!timedOut.get()) {
+          throw e;
+        }
+      } finally {
+        deadline.cancel(false);
+      }
+
+      if (timedOut.get()) {
+        throw new IOException("Process stopped after " + timeoutInSeconds + " seconds without answering, with output: "
+          + String.join(System.lineSeparator(), output));
+      }
+      throw new EOFException("Process terminated, with output: " + String.join(System.lineSeparator(), output));
+    }
+
+    void destroy() {
+      LOGGER.debug("Stopping {}", command);
+      try {
+        in.close();
+      } catch (IOException e) {
+        // do nothing
+      }
+      process.destroy();
+    }
+  }
+}
@@ -0,0 +1,525 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Storage service that keeps the contents of small binaries (e.g. metadata
+ * files) in memory, delegating everything else to another storage service.
+ *
+ * <p>
+ * Contents are kept outside the Java heap (in direct buffers) in a cache
+ * bounded by their total size. Only binaries of the configured containers and
+ * not bigger than a maximum size are cached. Cached binaries are invalidated
+ * whenever they are changed through this service (update, delete, move, copy,
+ * version revert). When the wrapped storage is a {@link FileStorageService},
+ * the modification time of the file is also checked on every hit so that
+ * changes made by other means (e.g. direct access or another node) are not
+ * missed.
+ * </p>
+ */
+public class CachingStorageService implements StorageService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CachingStorageService.class);
+
+  private final StorageService storage;
+  private final long maxBinarySizeInBytes;
+  private final Set<String> containers;
+  private final boolean validateModificationTime;
+  private final Cache<StoragePath, CachedBinary> cache;
+  // incremented on every invalidation so that loads racing with a change are
+  // not put in the cache
+  private final AtomicLong generation = new AtomicLong();
+
+  private Counter hits;
+  private Counter misses;
+  private Counter invalidations;
+
+  /**
+   * @param containers
+   *          the containers whose binaries are cached, all if empty
+   */
+  public CachingStorageService(StorageService storage, long maximumWeightInBytes, long maxBinarySizeInBytes,
+    Collection<String> containers, boolean validateModificationTime) {
+    this.storage = storage;
+    this.maxBinarySizeInBytes = maxBinarySizeInBytes;
+    this.containers = new HashSet<>(containers);
+    this.validateModificationTime = validateModificationTime && storage instanceof FileStorageService;
+    this.cache = CacheBuilder.newBuilder().maximumWeight(maximumWeightInBytes)
+      .weigher((StoragePath path, CachedBinary cached) -> cached.weight).build();
+    this.hits = new Counter();
+    this.misses = new Counter();
+    this.invalidations = new Counter();
+  }
+
+  public void registerMetrics(MetricRegistry metricRegistry) {
+    String prefix = CachingStorageService.class.getSimpleName();
+    hits = metricRegistry.counter(MetricRegistry.name(prefix, "hits"));
+    misses = metricRegistry.counter(MetricRegistry.name(prefix, "misses"));
+    invalidations = metricRegistry.counter(MetricRegistry.name(prefix, "invalidations"));
+    metricRegistry.register(MetricRegistry.name(prefix, "size"), (Gauge<Long>) cache::size);
+    metricRegistry.register(MetricRegistry.name(prefix, "hitRatio"), new RatioGauge() {
+      @Override
+      protected Ratio getRatio() {
+        return Ratio.of(hits.getCount(), (double) hits.getCount() + misses.getCount());
+      }
+    });
+  }
+
+  /**
+   * @return the storage service whose binaries are cached
+   */
+  public StorageService getWrappedStorage() {
+    return storage;
+  }
+
+  /**
+   * @return the storage service itself or, if it is a caching storage service,
+   *         the storage service it wraps
+   */
+  public static StorageService unwrap(StorageService storage) {
+    return storage instanceof CachingStorageService ? ((CachingStorageService) storage).getWrappedStorage() : storage;
+  }
+
+  @Override
+  public Binary getBinary(StoragePath storagePath)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    if (!isToCache(storagePath)) {
+      return storage.getBinary(storagePath);
+    }
+
+    CachedBinary cached = cache.getIfPresent(storagePath);
+    if (cached != null && isStillValid(cached, storagePath)) {
+      hits.inc();
+      return cached.toBinary(storagePath);
+    }
+
+    misses.inc();
+    long loadGeneration = generation.get();
+    Binary binary = storage.getBinary(storagePath);
+    Long sizeInBytes = binary.getSizeInBytes();
+    if (binary.isReference() || sizeInBytes == null || sizeInBytes > maxBinarySizeInBytes) {
+      return binary;
+    }
+
+    long lastModified = 0L;
+    if (validateModificationTime) {
+      Long binaryLastModified = binary instanceof DefaultBinary ? ((DefaultBinary) binary).getLastModified() : null;
+      lastModified = binaryLastModified != null ? binaryLastModified
+        : ((FileStorageService) storage).getLastModifiedTime(storagePath);
+    }
+
+    ByteBuffer content;
+    try {
+      content = read(binary.getContent(), sizeInBytes);
+    } catch (IOException e) {
+      LOGGER.debug("Could not cache {}", storagePath, e);
+      return binary;
+    }
+
+    CachedBinary loaded = new CachedBinary(content, binary.getContent(), binary.getContentDigest(), lastModified);
+    // checked and put atomically, as invalidations increment the generation
+    // before removing the binary
+    cache.asMap().compute(storagePath,
+      (path, previous) -> loadGeneration == generation.get() ? loaded : previous);
+    return loaded.toBinary(storagePath);
+  }
+
+  private boolean isToCache(StoragePath storagePath) {
+    return containers.isEmpty() || containers.contains(storagePath.getContainerName());
+  }
+
+  private boolean isStillValid(CachedBinary cached, StoragePath storagePath) {
+    if (!validateModificationTime) {
+      return true;
+    }
+
+    try {
+      return cached.lastModified == ((FileStorageService) storage).getLastModifiedTime(storagePath);
+    } catch (NotFoundException | GenericException e) {
+      LOGGER.debug("Could not validate cached binary {}", storagePath, e);
+      return false;
+    }
+  }
+
+  private static ByteBuffer read(ContentPayload payload, long sizeInBytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) sizeInBytes);
+    try (InputStream inputStream = payload.createInputStream();
+      ReadableByteChannel channel = Channels.newChannel(inputStream)) {
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+        // keep reading
+      }
+      if (buffer.hasRemaining() || inputStream.read() != -1) {
+        throw new IOException("Binary does not have the expected size of " + sizeInBytes + " bytes");
+      }
+    }
+    buffer.flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private void invalidate(StoragePath storagePath) {
+    generation.incrementAndGet();
+    invalidations.inc();
+    cache.invalidate(storagePath);
+  }
+
+  /**
+   * Invalidates the binary and all binaries under it (if it is a directory or
+   * a container).
+   */
+  private void invalidateAll(StoragePath storagePath) {
+    generation.incrementAndGet();
+    invalidations.inc();
+    List<String> prefix = storagePath.asList();
+    cache.asMap().keySet().removeIf(path -> {
+      List<String> pathList = path.asList();
+      return pathList.size() >= prefix.size() && pathList.subList(0, prefix.size()).equals(prefix);
+    });
+  }
+
+  /**
+   * Invalidates the binaries at or under the path that were changed without
+   * going through this service, e.g. moved directly from the wrapped storage.
+   */
+  public void invalidateChanged(StoragePath storagePath) {
+    invalidateAll(storagePath);
+  }
+
+  @Override
+  public boolean exists(StoragePath storagePath) {
+    return storage.exists(storagePath);
+  }
+
+  @Override
+  public CloseableIterable<Container> listContainers()
+    throws GenericException, AuthorizationDeniedException, RequestNotValidException, NotFoundException {
+    return storage.listContainers();
+  }
+
+  @Override
+  public Container createContainer(StoragePath storagePath)
+    throws GenericException, AlreadyExistsException, AuthorizationDeniedException, RequestNotValidException {
+    return storage.createContainer(storagePath);
+  }
+
+  @Override
+  public Container getContainer(StoragePath storagePath)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    return storage.getContainer(storagePath);
+  }
+
+  @Override
+  public void deleteContainer(StoragePath storagePath)
+    throws NotFoundException, GenericException, AuthorizationDeniedException {
+    try {
+      storage.deleteContainer(storagePath);
+    } finally {
+      invalidateAll(storagePath);
+    }
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    return storage.listResourcesUnderContainer(storagePath, recursive);
+  }
+
+  @Override
+  public Long countResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws AuthorizationDeniedException, RequestNotValidException, NotFoundException, GenericException {
+    return storage.countResourcesUnderContainer(storagePath, recursive);
+  }
+
+  @Override
+  public Directory createDirectory(StoragePath storagePath)
+    throws AlreadyExistsException, GenericException, AuthorizationDeniedException {
+    return storage.createDirectory(storagePath);
+  }
+
+  @Override
+  public Directory createRandomDirectory(StoragePath parentStoragePath) throws RequestNotValidException,
+    GenericException, NotFoundException, AlreadyExistsException, AuthorizationDeniedException {
+    return storage.createRandomDirectory(parentStoragePath);
+  }
+
+  @Override
+  public Directory getDirectory(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
+    return storage.getDirectory(storagePath);
+  }
+
+  @Override
+  public boolean hasDirectory(StoragePath storagePath) {
+    return storage.hasDirectory(storagePath);
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    return storage.listResourcesUnderDirectory(storagePath, recursive);
+  }
+
+  @Override
+  public Long countResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    return storage.countResourcesUnderDirectory(storagePath, recursive);
+  }
+
+  @Override
+  public Binary createBinary(StoragePath storagePath, ContentPayload payload, boolean asReference)
+    throws GenericException, AlreadyExistsException, RequestNotValidException, AuthorizationDeniedException,
+    NotFoundException {
+    try {
+      return storage.createBinary(storagePath, payload, asReference);
+    } finally {
+      invalidate(storagePath);
+    }
+  }
+
+  @Override
+  public Binary createRandomBinary(StoragePath parentStoragePath, ContentPayload payload, boolean asReference)
+    throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    return storage.createRandomBinary(parentStoragePath, payload, asReference);
+  }
+
+  @Override
+  public boolean hasBinary(StoragePath storagePath) {
+    return storage.hasBinary(storagePath);
+  }
+
+  @Override
+  public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
+    boolean createIfNotExists)
+    throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
+    try {
+      return storage.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    } finally {
+      invalidate(storagePath);
+    }
+  }
+
+  @Override
+  public void deleteResource(StoragePath storagePath)
+    throws NotFoundException, GenericException, AuthorizationDeniedException {
+    // binaries are invalidated directly, without going through all cached
+    // binaries
+    boolean isBinary = storage.hasBinary(storagePath);
+    try {
+      storage.deleteResource(storagePath);
+    } finally {
+      if (isBinary) {
+        invalidate(storagePath);
+      } else {
+        invalidateAll(storagePath);
+      }
+    }
+  }
+
+  @Override
+  public Class<? extends Entity> getEntity(StoragePath storagePath)
+    throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+    return storage.getEntity(storagePath);
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    try {
+      storage.copy(unwrap(fromService), fromStoragePath, toStoragePath);
+    } finally {
+      invalidateAll(toStoragePath);
+    }
+  }
+
+  @Override
+  public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    try {
+      storage.move(unwrap(fromService), fromStoragePath, toStoragePath);
+    } finally {
+      if (fromService == this) {
+        invalidateAll(fromStoragePath);
+      } else if (fromService instanceof CachingStorageService) {
+        ((CachingStorageService) fromService).invalidateAll(fromStoragePath);
+      }
+      invalidateAll(toStoragePath);
+    }
+  }
+
+  @Override
+  public DirectResourceAccess getDirectAccess(StoragePath storagePath) {
+    return storage.getDirectAccess(storagePath);
+  }
+
+  @Override
+  public CloseableIterable<BinaryVersion> listBinaryVersions(StoragePath storagePath)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    return storage.listBinaryVersions(storagePath);
+  }
+
+  @Override
+  public BinaryVersion getBinaryVersion(StoragePath storagePath, String version)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    return storage.getBinaryVersion(storagePath, version);
+  }
+
+  @Override
+  public BinaryVersion createBinaryVersion(StoragePath storagePath, Map<String, String> properties)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    return storage.createBinaryVersion(storagePath, properties);
+  }
+
+  @Override
+  public void revertBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, RequestNotValidException, GenericException {
+    try {
+      storage.revertBinaryVersion(storagePath, version);
+    } finally {
+      invalidate(storagePath);
+    }
+  }
+
+  @Override
+  public void deleteBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, GenericException, RequestNotValidException {
+    storage.deleteBinaryVersion(storagePath, version);
+  }
+
+  @Override
+  public String getStoragePathAsString(StoragePath storagePath, boolean skipStoragePathContainer,
+    StoragePath anotherStoragePath, boolean skipAnotherStoragePathContainer) {
+    return storage.getStoragePathAsString(storagePath, skipStoragePathContainer, anotherStoragePath,
+      skipAnotherStoragePathContainer);
+  }
+
+  @Override
+  public String getStoragePathAsString(StoragePath storagePath, boolean skipContainer) {
+    return storage.getStoragePathAsString(storagePath, skipContainer);
+  }
+
+  private static final class CachedBinary {
+    private final ByteBuffer content;
+    // the payload of the wrapped storage, to get its URI
+    private final ContentPayload payload;
+    private final Map<String, String> contentDigest;
+    private final long lastModified;
+    private final int weight;
+
+    private CachedBinary(ByteBuffer content, ContentPayload payload, Map<String, String> contentDigest,
+      long lastModified) {
+      this.content = content;
+      this.payload = payload;
+      this.contentDigest = contentDigest;
+      this.lastModified = lastModified;
+      this.weight = Math.max(1, content.capacity());
+    }
+
+    private Binary toBinary(StoragePath storagePath) {
+      return new DefaultBinary(storagePath, new ByteBufferContentPayload(content, payload),
+        (long) content.capacity(), false, contentDigest);
+    }
+  }
+
+  private static final class ByteBufferContentPayload implements ContentPayload {
+    private final ByteBuffer content;
+    private final ContentPayload payload;
+
+    private ByteBufferContentPayload(ByteBuffer content, ContentPayload payload) {
+      this.content = content;
+      this.payload = payload;
+    }
+
+    @Override
+    public InputStream createInputStream() {
+      return new ByteBufferInputStream(content.duplicate());
+    }
+
+    @Override
+    public void writeToPath(Path path) throws IOException {
+      try (InputStream inputStream = createInputStream()) {
+        FSUtils.safeUpdate(inputStream, path);
+      }
+    }
+
+    @Override
+    public URI getURI() throws IOException, UnsupportedOperationException {
+      return payload.getURI();
+    }
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
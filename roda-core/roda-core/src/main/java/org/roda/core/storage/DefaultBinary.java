@@ -8,6 +8,7 @@
 package org.roda.core.storage;
 
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.roda.core.data.v2.ip.StoragePath;
 
@@ -30,6 +31,10 @@ public class DefaultBinary extends AbstractResource implements Binary {
   private Long sizeInBytes;
   private boolean reference;
   private Map<String, String> contentDigest;
+  // when set, loads the content digest the first time it is needed
+  private transient Supplier<Map<String, String>> contentDigestLoader = null;
+  // when known (e.g. read together with the size), in milliseconds
+  private Long lastModified = null;
 
   public DefaultBinary(StoragePath storagePath, ContentPayload content, Long sizeInBytes, boolean reference,
     Map<String, String> contentDigest) {
@@ -92,7 +97,11 @@ public class DefaultBinary extends AbstractResource implements Binary {
    * @return the contentDigest
    */
   @Override
-  public Map<String, String> getContentDigest() {
+  public synchronized Map<String, String> getContentDigest() {
+    if (contentDigestLoader != null) {
+      contentDigest = contentDigestLoader.get();
+      contentDigestLoader = null;
+    }
     return contentDigest;
   }
 
@@ -100,8 +109,33 @@ public class DefaultBinary extends AbstractResource implements Binary {
    * @param contentDigest
    *          the contentDigest to set
    */
-  public void setContentDigest(Map<String, String> contentDigest) {
+  public synchronized void setContentDigest(Map<String, String> contentDigest) {
     this.contentDigest = contentDigest;
+    this.contentDigestLoader = null;
+  }
+
+  /**
+   * @param contentDigestLoader
+   *          loads the contentDigest the first time it is retrieved, instead
+   *          of when the binary is retrieved
+   */
+  public synchronized void setContentDigestLoader(Supplier<Map<String, String>> contentDigestLoader) {
+    this.contentDigestLoader = contentDigestLoader;
+  }
+
+  /**
+   * @return the last modified time, in milliseconds, or null if not known
+   */
+  public Long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @param lastModified
+   *          the last modified time to set, in milliseconds
+   */
+  public void setLastModified(Long lastModified) {
+    this.lastModified = lastModified;
   }
 
   @Override
@@ -109,7 +143,8 @@ public class DefaultBinary extends AbstractResource implements Binary {
     final int prime = 31;
     int result = super.hashCode();
     result = prime * result + ((content == null) ? 0 : content.hashCode());
-    result = prime * result + ((contentDigest == null) ? 0 : contentDigest.hashCode());
+    Map<String, String> digest = getContentDigest();
+    result = prime * result + ((digest == null) ? 0 : digest.hashCode());
     result = prime * result + (reference ? 1231 : 1237);
     result = prime * result + ((sizeInBytes == null) ? 0 : sizeInBytes.hashCode());
     return result;
@@ -134,11 +169,12 @@ public class DefaultBinary extends AbstractResource implements Binary {
     } else if (!content.equals(other.content)) {
       return false;
     }
-    if (contentDigest == null) {
-      if (other.contentDigest != null) {
+    Map<String, String> digest = getContentDigest();
+    if (digest == null) {
+      if (other.getContentDigest() != null) {
         return false;
       }
-    } else if (!contentDigest.equals(other.contentDigest)) {
+    } else if (!digest.equals(other.getContentDigest())) {
       return false;
     }
     if (reference != other.reference) {
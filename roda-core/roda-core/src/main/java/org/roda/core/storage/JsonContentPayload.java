@@ -10,29 +10,53 @@ package org.roda.core.storage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.utils.JsonUtils;
+
+/**
+ * Content payload that serializes an object, as JSON, straight into the target
+ * (path or stream) without building an intermediate String.
+ */
 public class JsonContentPayload implements ContentPayload {
-  private String content;
+  private final Object object;
+  private final Class<?> mixin;
   private Path contentPath;
 
-  public JsonContentPayload(String content) {
-    this.content = content;
+  public JsonContentPayload(Object object) {
+    this(object, null);
+  }
+
+  public JsonContentPayload(Object object, Class<?> mixin) {
+    this.object = object;
+    this.mixin = mixin;
+    this.contentPath = null;
   }
 
   @Override
-  public InputStream createInputStream() {
-    return new ByteArrayInputStream(content.getBytes());
+  public InputStream createInputStream() throws IOException {
+    try {
+      return new ByteArrayInputStream(JsonUtils.getJsonBytesFromObject(object, mixin));
+    } catch (GenericException e) {
+      throw new IOException(e);
+    }
   }
 
   @Override
   public void writeToPath(Path path) throws IOException {
-    try (InputStream inputStream = createInputStream()) {
-      Files.copy(inputStream, path, StandardCopyOption.REPLACE_EXISTING);
+    Path tempPath = path.getParent().resolve(path.getFileName().toString() + ".temp" + System.nanoTime());
+    try (OutputStream outputStream = Files.newOutputStream(tempPath)) {
+      JsonUtils.writeObjectToStream(object, mixin, outputStream);
+    } catch (GenericException e) {
+      Files.deleteIfExists(tempPath);
+      throw new IOException(e);
     }
+    Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
   }
 
   @Override
@@ -44,4 +68,4 @@ public class JsonContentPayload implements ContentPayload {
     return contentPath.toUri();
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Store of file contents addressed by their SHA-256 digest, so that files with
+ * the same contents are kept only once.
+ *
+ * <p>
+ * Each stored content is a file named after its digest, and every storage file
+ * with that content is a hard link to it, so the number of links to the stored
+ * file (minus one) is the number of references to the content. Contents with
+ * no references left are removed by {@link #collectGarbage()}.
+ * </p>
+ *
+ * <p>
+ * As linked files share their contents, they must never be changed in place:
+ * the file storage service replaces them when writing a binary and gives a
+ * binary its own copy of its contents before giving direct access to it (see
+ * {@link #isShared(Path)}). Stored files are not made read-only, as that would
+ * also make the linked storage files read-only.
+ * </p>
+ */
+public class ContentAddressedStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContentAddressedStore.class);
+
+  public static final String ALGORITHM = "SHA-256";
+
+  private final Path basePath;
+
+  public ContentAddressedStore(Path basePath) throws GenericException {
+    this.basePath = basePath;
+    try {
+      Files.createDirectories(basePath);
+    } catch (IOException e) {
+      throw new GenericException("Could not create path " + basePath, e);
+    }
+  }
+
+  /**
+   * Stores the contents of a file, replacing it by a link to contents already
+   * stored if there are any.
+   *
+   * @param file
+   *          the file to store
+   * @param digest
+   *          the SHA-256 digest of the file, as an hexadecimal string
+   * @return true if the file is now linked to the store, false if it was left
+   *         as it was (e.g. when the file system does not support hard links)
+   */
+  public boolean store(Path file, String digest) {
+    Path entry = getEntryPath(digest);
+    try {
+      Files.createDirectories(entry.getParent());
+      try {
+        // new contents, the file itself becomes the stored contents
+        Files.createLink(entry, file);
+        return true;
+      } catch (FileAlreadyExistsException e) {
+        // contents already stored
+      }
+
+      if (Files.isSameFile(entry, file)) {
+        return true;
+      }
+
+      if (Files.size(entry) != Files.size(file)) {
+        LOGGER.warn("Stored contents {} do not have the size of {}, not linking them", entry, file);
+        return false;
+      }
+
+      Path link = file.resolveSibling(file.getFileName().toString() + ".link" + System.nanoTime());
+      Files.createLink(link, entry);
+      Files.move(link, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException | UnsupportedOperationException | SecurityException e) {
+      LOGGER.warn("Could not store {} in the content addressed store, keeping its own copy", file, e);
+      return false;
+    }
+  }
+
+  /**
+   * @return the number of files linked to the stored contents, 0 if they are
+   *         not stored or -1 if the file system does not count links
+   */
+  public int getReferenceCount(String digest) {
+    Path entry = getEntryPath(digest);
+    if (!FSUtils.exists(entry)) {
+      return 0;
+    }
+    try {
+      return getLinkCount(entry) - 1;
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Removes the stored contents that are no longer linked from any file.
+   *
+   * @return the number of stored contents removed
+   */
+  public long collectGarbage() throws GenericException {
+    final long[] removed = {0L};
+    try {
+      Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (getLinkCount(file) <= 1) {
+            Files.delete(file);
+            removed[0]++;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      throw new GenericException("Could not collect garbage of the content addressed store " + basePath, e);
+    }
+    return removed[0];
+  }
+
+  private Path getEntryPath(String digest) {
+    String name = digest.toLowerCase(Locale.ENGLISH);
+    return basePath.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+  }
+
+  /**
+   * @return true if the contents of the file are shared with other files, i.e.
+   *         if it has other hard links (false if the file system does not count
+   *         links)
+   */
+  public static boolean isShared(Path file) {
+    try {
+      return getLinkCount(file) > 1;
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static int getLinkCount(Path path) throws IOException {
+    return (Integer) Files.getAttribute(path, "unix:nlink");
+  }
+}
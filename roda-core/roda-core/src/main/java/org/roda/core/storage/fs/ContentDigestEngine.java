@@ -0,0 +1,196 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.storage.ContentPayload;
+
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Computes several content digests of files in a single read.
+ *
+ * <p>
+ * Large files are read through memory mapped windows that slide along the file
+ * (the pages are loaded on demand by the digest computation itself), small
+ * files through a plain read into a heap buffer. Many files may be digested
+ * concurrently on a bounded pool (see {@link #digestAll(Collection, Collection)}).
+ * </p>
+ *
+ * <p>
+ * Digests are upper case hexadecimal strings, as computed by
+ * {@code FileUtility.checksums}.
+ * </p>
+ */
+public final class ContentDigestEngine {
+  // files smaller than this are not worth mapping
+  private static final int MAP_THRESHOLD = 1048576;
+  private static final int BUFFER_SIZE = 1048576;
+
+  private static long WINDOW_SIZE = 64L * 1024 * 1024;
+  private static int PARALLELISM = Runtime.getRuntime().availableProcessors();
+  private static ExecutorService POOL;
+
+  private ContentDigestEngine() {
+    // do nothing
+  }
+
+  /**
+   * @return map from algorithm to digest, in the order of the algorithms
+   */
+  public static Map<String, String> digest(Path path, Collection<String> algorithms) throws GenericException {
+    List<MessageDigest> digests = getMessageDigests(algorithms);
+    try (FileChannel channel = FileChannel.open(path)) {
+      long size = channel.size();
+      if (size < MAP_THRESHOLD) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(size, 1));
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+          // keep reading until the buffer is full or the file ends
+        }
+        buffer.flip();
+        update(digests, buffer);
+      } else {
+        for (long position = 0; position < size; position += WINDOW_SIZE) {
+          MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(WINDOW_SIZE, size - position));
+          update(digests, window);
+        }
+      }
+    } catch (IOException e) {
+      throw new GenericException("Cannot compute content digest for " + path, e);
+    }
+    return toHex(algorithms, digests);
+  }
+
+  /**
+   * Digests the payload, mapping it if it is a file in the file system and
+   * streaming it otherwise.
+   */
+  public static Map<String, String> digest(ContentPayload payload, Collection<String> algorithms)
+    throws GenericException {
+    if (payload instanceof FSPathContentPayload) {
+      return digest(((FSPathContentPayload) payload).getPath(), algorithms);
+    }
+
+    List<MessageDigest> digests = getMessageDigests(algorithms);
+    try (InputStream inputStream = payload.createInputStream()) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+      while ((n = inputStream.read(buffer)) != -1) {
+        for (MessageDigest digest : digests) {
+          digest.update(buffer, 0, n);
+        }
+      }
+    } catch (IOException e) {
+      throw new GenericException("Cannot compute content digest", e);
+    }
+    return toHex(algorithms, digests);
+  }
+
+  /**
+   * Digests many files concurrently, on a pool with a bounded number of
+   * threads.
+   *
+   * @return map from path to the digests of that path, in the order of the
+   *         paths
+   */
+  public static Map<Path, Map<String, String>> digestAll(Collection<Path> paths, Collection<String> algorithms)
+    throws GenericException {
+    ExecutorService pool = getPool();
+    Map<Path, Future<Map<String, String>>> futures = new LinkedHashMap<>();
+    for (Path path : paths) {
+      futures.put(path, pool.submit(() -> digest(path, algorithms)));
+    }
+
+    Map<Path, Map<String, String>> ret = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<Path, Future<Map<String, String>>> future : futures.entrySet()) {
+        ret.put(future.getKey(), future.getValue().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      futures.values().forEach(f -> f.cancel(true));
+      throw new GenericException("Interrupted while computing content digests", e);
+    } catch (ExecutionException e) {
+      futures.values().forEach(f -> f.cancel(true));
+      if (e.getCause() instanceof GenericException) {
+        throw (GenericException) e.getCause();
+      }
+      throw new GenericException("Cannot compute content digests", e.getCause());
+    }
+    return ret;
+  }
+
+  private static void update(List<MessageDigest> digests, ByteBuffer buffer) {
+    for (MessageDigest digest : digests) {
+      digest.update(buffer.duplicate());
+    }
+  }
+
+  private static List<MessageDigest> getMessageDigests(Collection<String> algorithms) throws GenericException {
+    List<MessageDigest> digests = new ArrayList<>();
+    for (String algorithm : algorithms) {
+      try {
+        digests.add(MessageDigest.getInstance(algorithm));
+      } catch (NoSuchAlgorithmException e) {
+        throw new GenericException("Cannot compute content digest using algorithm " + algorithm, e);
+      }
+    }
+    return digests;
+  }
+
+  private static Map<String, String> toHex(Collection<String> algorithms, List<MessageDigest> digests) {
+    Map<String, String> ret = new LinkedHashMap<>();
+    int i = 0;
+    for (String algorithm : algorithms) {
+      ret.put(algorithm, BaseEncoding.base16().encode(digests.get(i++).digest()));
+    }
+    return ret;
+  }
+
+  private static synchronized ExecutorService getPool() {
+    if (POOL == null) {
+      POOL = Executors.newFixedThreadPool(PARALLELISM,
+        new ThreadFactoryBuilder().setNameFormat("content-digest-%d").setDaemon(true).build());
+    }
+    return POOL;
+  }
+
+  public static void injectWindowSize(long windowSize) {
+    WINDOW_SIZE = Math.max(MAP_THRESHOLD, windowSize);
+  }
+
+  public static synchronized void injectParallelism(int parallelism) {
+    if (parallelism > 0 && parallelism != PARALLELISM) {
+      PARALLELISM = parallelism;
+      if (POOL != null) {
+        POOL.shutdown();
+        POOL = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content digests of a binary computed when it was written, together with the
+ * size and modification time of the binary at that moment so that digests of
+ * binaries changed afterwards (by other means) are not used.
+ */
+public class ContentDigestSidecar implements Serializable {
+  private static final long serialVersionUID = 2461089733530592071L;
+
+  private long sizeInBytes;
+  private long lastModified;
+  // <algorithm,digest>
+  private Map<String, String> digests = new HashMap<>();
+
+  public ContentDigestSidecar() {
+    super();
+  }
+
+  public ContentDigestSidecar(long sizeInBytes, long lastModified, Map<String, String> digests) {
+    super();
+    this.sizeInBytes = sizeInBytes;
+    this.lastModified = lastModified;
+    this.digests = digests;
+  }
+
+  public long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  public void setSizeInBytes(long sizeInBytes) {
+    this.sizeInBytes = sizeInBytes;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  public void setLastModified(long lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  public Map<String, String> getDigests() {
+    return digests;
+  }
+
+  public void setDigests(Map<String, String> digests) {
+    this.digests = digests;
+  }
+}
@@ -24,9 +24,28 @@ import org.roda.core.storage.ContentPayload;
 public class FSPathContentPayload implements ContentPayload {
 
   private final Path path;
+  private final boolean moveOnWrite;
 
   public FSPathContentPayload(Path path) {
+    this(path, false);
+  }
+
+  /**
+   * @param moveOnWrite
+   *          if the file is moved, instead of copied, when written into a path,
+   *          e.g. for a temporary file that is no longer needed once stored
+   */
+  public FSPathContentPayload(Path path, boolean moveOnWrite) {
     this.path = path;
+    this.moveOnWrite = moveOnWrite;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public boolean isMoveOnWrite() {
+    return moveOnWrite;
   }
 
   @Override
@@ -36,7 +55,11 @@ public class FSPathContentPayload implements ContentPayload {
 
   @Override
   public void writeToPath(Path outPath) throws IOException {
-    Files.copy(path, outPath, StandardCopyOption.REPLACE_EXISTING);
+    if (moveOnWrite) {
+      Files.move(path, outPath, StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      Files.copy(path, outPath, StandardCopyOption.REPLACE_EXISTING);
+    }
   }
 
   @Override
@@ -9,30 +9,37 @@ package org.roda.core.storage.fs;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.MappedByteBuffer;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.stream.Stream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -57,6 +64,8 @@ import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.io.BaseEncoding;
+
 /**
  * File System related utility class
  * 
@@ -71,6 +80,7 @@ public class FSUtils {
   public static final String SEPARATOR = "/";
   public static final String SEPARATOR_REGEX = "/";
   public static final String SEPARATOR_REPLACEMENT = "%2F";
+  private static final int DIGEST_BUFFER_SIZE = 1048576;
 
   public FSUtils() {
     // do nothing
@@ -205,7 +215,8 @@ public class FSUtils {
   }
 
   /**
-   * Copies a directory/file from one path to another
+   * Copies a directory/file from one path to another (see
+   * {@link FileCopyEngine})
    * 
    * @param sourcePath
    *          source path
@@ -234,33 +245,7 @@ public class FSUtils {
       throw new GenericException("Error while creating target directory parent folder", e);
     }
 
-    if (FSUtils.isDirectory(sourcePath)) {
-      try {
-        Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
-          @Override
-          public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
-            Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir)));
-            return FileVisitResult.CONTINUE;
-          }
-
-          @Override
-          public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-            Files.copy(file, targetPath.resolve(sourcePath.relativize(file)));
-            return FileVisitResult.CONTINUE;
-          }
-        });
-      } catch (IOException e) {
-        throw new GenericException("Error while copying one directory into another", e);
-      }
-    } else {
-      try {
-        CopyOption[] copyOptions = replaceExisting ? new CopyOption[] {StandardCopyOption.REPLACE_EXISTING}
-          : new CopyOption[] {};
-        Files.copy(sourcePath, targetPath, copyOptions);
-      } catch (IOException e) {
-        throw new GenericException("Error while copying one file into another", e);
-      }
-    }
+    FileCopyEngine.copy(sourcePath, targetPath, replaceExisting);
   }
 
   public static void deletePathQuietly(Path path) {
@@ -398,6 +383,24 @@ public class FSUtils {
    * @throws GenericException
    */
   public static CloseableIterable<Resource> listPath(final Path basePath, final Path path)
+    throws NotFoundException, GenericException {
+    return listPath(basePath, path, ShardedLayout.FLAT);
+  }
+
+  /**
+   * List content of the certain folder, whose storage paths are given by the
+   * layout of the storage folder
+   * 
+   * @param basePath
+   *          base path
+   * @param path
+   *          relative path to base path
+   * @param layout
+   *          layout of the storage folder
+   * @throws NotFoundException
+   * @throws GenericException
+   */
+  public static CloseableIterable<Resource> listPath(final Path basePath, final Path path, final ShardedLayout layout)
     throws NotFoundException, GenericException {
     CloseableIterable<Resource> resourceIterable;
     try {
@@ -419,7 +422,7 @@ public class FSUtils {
               Path next = pathIterator.next();
               Resource ret;
               try {
-                ret = convertPathToResource(basePath, next);
+                ret = convertPathToResource(basePath, next, layout);
               } catch (GenericException | NotFoundException | RequestNotValidException e) {
                 LOGGER.error("Error while list path " + basePath + " while parsing resource " + next, e);
                 ret = null;
@@ -465,76 +468,177 @@ public class FSUtils {
   }
 
   public static Long recursivelyCountPath(Path directoryPath) throws NotFoundException, GenericException {
-    // starting at -1 because the walk counts the directory itself
-    Long count = -1L;
-    try (Stream<Path> walk = Files.walk(directoryPath)) {
-      final Iterator<Path> pathIterator = walk.iterator();
-      while (pathIterator.hasNext()) {
-        count++;
-        pathIterator.next();
-      }
+    final long[] count = {0L};
+    try {
+      Files.walkFileTree(directoryPath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          // the walk also visits the directory itself, which is not counted
+          if (!dir.equals(directoryPath)) {
+            count[0]++;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          count[0]++;
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+          if (file.equals(directoryPath)) {
+            throw exc;
+          }
+          count[0]++;
+          return FileVisitResult.CONTINUE;
+        }
+      });
     } catch (NoSuchFileException e) {
       throw new NotFoundException("Could not list contents of entity because it doesn't exist: " + directoryPath);
     } catch (IOException e) {
       throw new GenericException("Could not list contents of entity at: " + directoryPath, e);
     }
 
-    return count;
+    return count[0];
   }
 
+  /**
+   * Recursively list content of the certain folder, depth first and with each
+   * directory before its content. The attributes of each entry are read only
+   * once, while walking, and carried into the resource.
+   * 
+   * @param basePath
+   *          base path
+   * @param path
+   *          relative path to base path
+   * @throws NotFoundException
+   * @throws GenericException
+   */
   public static CloseableIterable<Resource> recursivelyListPath(final Path basePath, final Path path)
     throws NotFoundException, GenericException {
-    CloseableIterable<Resource> resourceIterable;
+    return recursivelyListPath(basePath, path, ShardedLayout.FLAT);
+  }
+
+  /**
+   * Recursively list content of the certain folder, whose storage paths are
+   * given by the layout of the storage folder
+   * 
+   * @param basePath
+   *          base path
+   * @param path
+   *          relative path to base path
+   * @param layout
+   *          layout of the storage folder
+   * @throws NotFoundException
+   * @throws GenericException
+   */
+  public static CloseableIterable<Resource> recursivelyListPath(final Path basePath, final Path path,
+    final ShardedLayout layout) throws NotFoundException, GenericException {
+    final ResourceWalker walker;
     try {
-      final Stream<Path> walk = Files.walk(path, FileVisitOption.FOLLOW_LINKS);
-      final Iterator<Path> pathIterator = walk.iterator();
+      walker = new ResourceWalker(basePath, layout, path);
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Could not list contents of entity because it doesn't exist: " + path, e);
+    } catch (IOException e) {
+      throw new GenericException("Could not list contents of entity at: " + path, e);
+    }
 
-      // skip root
-      if (pathIterator.hasNext()) {
-        pathIterator.next();
+    return new CloseableIterable<Resource>() {
+
+      @Override
+      public Iterator<Resource> iterator() {
+        return walker;
       }
 
-      resourceIterable = new CloseableIterable<Resource>() {
+      @Override
+      public void close() {
+        walker.close();
+      }
+    };
+  }
 
-        @Override
-        public Iterator<Resource> iterator() {
-          return new Iterator<Resource>() {
+  /**
+   * Lazy depth first walk (following links) that reads the attributes of each
+   * entry once and converts it into a resource.
+   */
+  private static class ResourceWalker implements Iterator<Resource> {
+    private final Path basePath;
+    private final ShardedLayout layout;
+    private final Deque<DirectoryStream<Path>> streams = new ArrayDeque<>();
+    private final Deque<Iterator<Path>> iterators = new ArrayDeque<>();
+    // file keys of the directories being walked, to detect link cycles
+    private final Deque<Object> fileKeys = new ArrayDeque<>();
+
+    private ResourceWalker(Path basePath, ShardedLayout layout, Path root) throws IOException {
+      this.basePath = basePath;
+      this.layout = layout;
+      BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class);
+      if (attrs.isDirectory()) {
+        push(root, attrs);
+      }
+    }
 
-            @Override
-            public boolean hasNext() {
-              return pathIterator.hasNext();
-            }
+    private void push(Path directory, BasicFileAttributes attrs) throws IOException {
+      DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+      streams.push(stream);
+      iterators.push(stream.iterator());
+      fileKeys.push(attrs.fileKey() != null ? attrs.fileKey() : directory);
+    }
 
-            @Override
-            public Resource next() {
-              Path next = pathIterator.next();
-              Resource ret;
-              try {
-                ret = convertPathToResource(basePath, next);
-              } catch (GenericException | NotFoundException | RequestNotValidException e) {
-                LOGGER.error("Error while list path " + basePath + " while parsing resource " + next, e);
-                ret = null;
-              }
+    private void pop() {
+      iterators.pop();
+      fileKeys.pop();
+      IOUtils.closeQuietly(streams.pop());
+    }
 
-              return ret;
-            }
+    @Override
+    public boolean hasNext() {
+      while (!iterators.isEmpty() && !iterators.peek().hasNext()) {
+        pop();
+      }
+      return !iterators.isEmpty();
+    }
 
-          };
-        }
+    @Override
+    public Resource next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
 
-        @Override
-        public void close() {
-          walk.close();
+      Path next = iterators.peek().next();
+      BasicFileAttributes attrs;
+      Resource ret;
+      try {
+        attrs = Files.readAttributes(next, BasicFileAttributes.class);
+        ret = convertPathToResource(basePath, next, attrs, layout);
+      } catch (IOException | RequestNotValidException e) {
+        LOGGER.error("Error while list path " + basePath + " while parsing resource " + next, e);
+        return null;
+      }
+
+      if (attrs.isDirectory()) {
+        Object fileKey = attrs.fileKey() != null ? attrs.fileKey() : next;
+        if (fileKeys.contains(fileKey)) {
+          LOGGER.warn("Not walking into {} because it links to one of its ancestors", next);
+        } else {
+          try {
+            push(next, attrs);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
         }
-      };
+      }
 
-    } catch (NoSuchFileException e) {
-      throw new NotFoundException("Could not list contents of entity because it doesn't exist: " + path, e);
-    } catch (IOException e) {
-      throw new GenericException("Could not list contents of entity at: " + path, e);
+      return ret;
     }
 
-    return resourceIterable;
+    private void close() {
+      while (!iterators.isEmpty()) {
+        pop();
+      }
+    }
   }
 
   /**
@@ -603,30 +707,85 @@ public class FSUtils {
    */
   public static Resource convertPathToResource(Path basePath, Path path)
     throws RequestNotValidException, NotFoundException, GenericException {
+    return convertPathToResource(basePath, path, ShardedLayout.FLAT);
+  }
+
+  /**
+   * Converts a path into a resource, whose storage path is given by the layout
+   * of the storage folder
+   * 
+   * @param basePath
+   *          base path
+   * @param path
+   *          relative path to base path
+   * @param layout
+   *          layout of the storage folder
+   * @throws RequestNotValidException
+   * @throws NotFoundException
+   * @throws GenericException
+   */
+  public static Resource convertPathToResource(Path basePath, Path path, ShardedLayout layout)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Cannot find file or directory at " + path, e);
+    } catch (IOException e) {
+      throw new GenericException("Could not get file attributes of " + path, e);
+    }
+    return convertPathToResource(basePath, path, attrs, layout);
+  }
+
+  /**
+   * Converts a path into a resource, using the already read attributes of the
+   * path instead of querying the file system again
+   * 
+   * @param basePath
+   *          base path
+   * @param path
+   *          relative path to base path
+   * @param attrs
+   *          the attributes of the path
+   * @throws RequestNotValidException
+   */
+  public static Resource convertPathToResource(Path basePath, Path path, BasicFileAttributes attrs)
+    throws RequestNotValidException {
+    return convertPathToResource(basePath, path, attrs, ShardedLayout.FLAT);
+  }
+
+  /**
+   * Converts a path into a resource, using the already read attributes of the
+   * path and the layout of the storage folder
+   * 
+   * @param basePath
+   *          base path
+   * @param path
+   *          relative path to base path
+   * @param attrs
+   *          the attributes of the path
+   * @param layout
+   *          layout of the storage folder
+   * @throws RequestNotValidException
+   */
+  public static Resource convertPathToResource(Path basePath, Path path, BasicFileAttributes attrs,
+    ShardedLayout layout) throws RequestNotValidException {
     Resource resource;
 
     // TODO support binary reference
 
-    if (!exists(path)) {
-      throw new NotFoundException("Cannot find file or directory at " + path);
-    }
-
     // storage path
-    StoragePath storagePath = getStoragePath(basePath, path);
+    StoragePath storagePath = layout.getStoragePath(basePath, path);
 
     // construct
-    if (FSUtils.isDirectory(path)) {
+    if (attrs.isDirectory()) {
       resource = new DefaultDirectory(storagePath);
     } else {
       ContentPayload content = new FSPathContentPayload(path);
-      long sizeInBytes;
-      try {
-        sizeInBytes = Files.size(path);
-        Map<String, String> contentDigest = null;
-        resource = new DefaultBinary(storagePath, content, sizeInBytes, false, contentDigest);
-      } catch (IOException e) {
-        throw new GenericException("Could not get file size", e);
-      }
+      Map<String, String> contentDigest = null;
+      DefaultBinary binary = new DefaultBinary(storagePath, content, attrs.size(), false, contentDigest);
+      binary.setLastModified(attrs.lastModifiedTime().toMillis());
+      resource = binary;
     }
     return resource;
   }
@@ -639,6 +798,11 @@ public class FSUtils {
 
   public static BinaryVersion convertPathToBinaryVersion(Path historyDataPath, Path historyMetadataPath, Path path)
     throws RequestNotValidException, NotFoundException, GenericException {
+    return convertPathToBinaryVersion(historyDataPath, historyMetadataPath, path, ShardedLayout.FLAT);
+  }
+
+  public static BinaryVersion convertPathToBinaryVersion(Path historyDataPath, Path historyMetadataPath, Path path,
+    ShardedLayout layout) throws RequestNotValidException, NotFoundException, GenericException {
     DefaultBinaryVersion ret;
 
     if (!FSUtils.exists(path)) {
@@ -659,7 +823,7 @@ public class FSUtils {
     Path realFilePath = relativePath.getParent().resolve(realFileName);
     Path metadataPath = historyMetadataPath.resolve(relativePath.getParent().resolve(fileName + METADATA_SUFFIX));
 
-    StoragePath storagePath = FSUtils.getStoragePath(realFilePath);
+    StoragePath storagePath = layout.getStoragePath(historyDataPath, historyDataPath.resolve(realFilePath));
 
     // construct
     ContentPayload content = new FSPathContentPayload(path);
@@ -711,40 +875,79 @@ public class FSUtils {
     return resource;
   }
 
+  /**
+   * @return the lower case hexadecimal digest of the file
+   * @see ContentDigestEngine#digest(Path, Collection)
+   */
   public static String computeContentDigest(Path path, String algorithm) throws GenericException {
-    try (FileChannel fc = FileChannel.open(path)) {
-      final int bufferSize = 1073741824;
-      final long size = fc.size();
-      final MessageDigest hash = MessageDigest.getInstance(algorithm);
-      long position = 0;
-      while (position < size) {
-        final MappedByteBuffer data = fc.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, bufferSize));
-        if (!data.isLoaded()) {
-          data.load();
-        }
-        hash.update(data);
-        position += data.limit();
-        if (position >= size) {
-          break;
-        }
+    return ContentDigestEngine.digest(path, Collections.singletonList(algorithm)).get(algorithm).toLowerCase();
+  }
+
+  /**
+   * Writes the payload into the path, computing the content digests in the same
+   * pass. The content is written into a temporary file that is then moved into
+   * place (atomically, if replacing an existing file). A file payload to be
+   * moved on write is digested where it is and then moved, so that it is not
+   * copied at all when in the same file system.
+   *
+   * @return map from algorithm to (upper case) hexadecimal digest, as
+   *         computed by {@code FileUtility.checksums}
+   */
+  public static Map<String, String> writeWithContentDigest(ContentPayload payload, Path path,
+    Collection<String> algorithms, boolean replaceExisting) throws IOException, GenericException {
+    Map<String, String> ret;
+    Path tempPath = path.resolveSibling(path.getFileName().toString() + ".temp" + System.nanoTime());
+    try {
+      if (payload instanceof FSPathContentPayload && ((FSPathContentPayload) payload).isMoveOnWrite()) {
+        ret = ContentDigestEngine.digest(((FSPathContentPayload) payload).getPath(), algorithms);
+        payload.writeToPath(tempPath);
+      } else {
+        ret = copyWithContentDigest(payload, tempPath, algorithms);
+      }
+
+      if (replaceExisting) {
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } else {
+        Files.move(tempPath, path);
       }
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+    return ret;
+  }
 
-      byte[] mdbytes = hash.digest();
-      StringBuilder hexString = new StringBuilder();
+  private static Map<String, String> copyWithContentDigest(ContentPayload payload, Path path,
+    Collection<String> algorithms) throws IOException, GenericException {
+    Map<String, MessageDigest> digests = new LinkedHashMap<>();
+    for (String algorithm : algorithms) {
+      try {
+        digests.put(algorithm, MessageDigest.getInstance(algorithm));
+      } catch (NoSuchAlgorithmException e) {
+        throw new GenericException("Cannot compute content digest using algorithm " + algorithm, e);
+      }
+    }
 
-      for (int i = 0; i < mdbytes.length; i++) {
-        String hexInt = Integer.toHexString((0xFF & mdbytes[i]));
-        if (hexInt.length() == 1) {
-          hexString.append('0');
+    try (InputStream inputStream = payload.createInputStream();
+      ReadableByteChannel source = Channels.newChannel(inputStream);
+      FileChannel target = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+      while (source.read(buffer) != -1) {
+        buffer.flip();
+        for (MessageDigest digest : digests.values()) {
+          digest.update(buffer.duplicate());
+        }
+        while (buffer.hasRemaining()) {
+          target.write(buffer);
         }
-        hexString.append(hexInt);
+        buffer.clear();
       }
+    }
 
-      return hexString.toString();
-
-    } catch (NoSuchAlgorithmException | IOException e) {
-      throw new GenericException("Cannot compute content digest for " + path + " using algorithm " + algorithm);
+    Map<String, String> ret = new LinkedHashMap<>();
+    for (Map.Entry<String, MessageDigest> entry : digests.entrySet()) {
+      ret.put(entry.getKey(), BaseEncoding.base16().encode(entry.getValue().digest()));
     }
+    return ret;
   }
 
   public static Path createDirectory(Path parent, String name) throws IOException {
@@ -0,0 +1,312 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Copies files and directory trees.
+ *
+ * <p>
+ * When source and target are in the same file system, files may be linked
+ * instead of copied (see {@link LinkMode}). Otherwise, or when linking fails,
+ * file contents are transferred between file channels, which lets the
+ * operating system copy them without going through the JVM heap. Files of a
+ * directory tree are copied concurrently, on a pool with a bounded number of
+ * threads.
+ * </p>
+ */
+public final class FileCopyEngine {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileCopyEngine.class);
+
+  public enum LinkMode {
+    /** always copy the contents */
+    NONE,
+    /**
+     * copy-on-write clone of the contents (e.g. on btrfs or XFS), using
+     * {@code cp --reflink=always}
+     */
+    REFLINK,
+    /**
+     * hard link, so that source and target are the same file (changing one in
+     * place changes the other)
+     */
+    HARDLINK
+  }
+
+  // files smaller than this are copied instead of cloned, as starting a
+  // process costs more than copying them
+  private static final long REFLINK_THRESHOLD = 1048576;
+
+  private static LinkMode LINK_MODE = LinkMode.NONE;
+  private static int PARALLELISM = Runtime.getRuntime().availableProcessors();
+  private static ExecutorService POOL;
+  private static Meter BYTES_COPIED;
+
+  // file stores where reflinks are known not to work
+  private static final Map<FileStore, Boolean> REFLINK_UNSUPPORTED = new ConcurrentHashMap<>();
+  // errors of cp telling that the file system cannot clone files (e.g.
+  // EOPNOTSUPP, EXDEV, ENOTTY), as opposed to errors of a single file
+  private static final List<String> REFLINK_UNSUPPORTED_ERRORS = Arrays.asList("Operation not supported",
+    "Invalid cross-device link", "Inappropriate ioctl for device", "Function not implemented");
+
+  private FileCopyEngine() {
+    // do nothing
+  }
+
+  /**
+   * Copies a file or a directory tree, which must not exist in the target
+   * unless replaceExisting is true. The parent of the target must exist.
+   */
+  public static void copy(final Path sourcePath, final Path targetPath, final boolean replaceExisting)
+    throws GenericException {
+    FileStore sameStore = getSameFileStore(sourcePath, targetPath.getParent());
+
+    if (!FSUtils.isDirectory(sourcePath)) {
+      try {
+        copyFile(sourcePath, targetPath, Files.size(sourcePath), replaceExisting, sameStore);
+      } catch (IOException e) {
+        throw new GenericException("Error while copying one file into another", e);
+      }
+      return;
+    }
+
+    ExecutorService pool = getPool();
+    final List<Future<Void>> futures = new ArrayList<>();
+    try {
+      // links are followed, as when copying a single file, so that the size of
+      // a linked file is the size of its contents
+      Files.walkFileTree(sourcePath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+            Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir)));
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+            final Path target = targetPath.resolve(sourcePath.relativize(file));
+            futures.add(pool.submit(() -> {
+              copyFile(file, target, attrs.size(), replaceExisting, sameStore);
+              return null;
+            }));
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (IOException e) {
+      futures.forEach(f -> f.cancel(true));
+      throw new GenericException("Error while copying one directory into another", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      futures.forEach(f -> f.cancel(true));
+      throw new GenericException("Interrupted while copying one directory into another", e);
+    } catch (ExecutionException e) {
+      futures.forEach(f -> f.cancel(true));
+      throw new GenericException("Error while copying one directory into another", e.getCause());
+    }
+  }
+
+  private static void copyFile(Path source, Path target, long size, boolean replaceExisting, FileStore sameStore)
+    throws IOException {
+    if (sameStore != null && link(source, target, size, replaceExisting, sameStore)) {
+      return;
+    }
+
+    if (replaceExisting) {
+      Files.deleteIfExists(target);
+    }
+
+    long position = 0;
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+      FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      long channelSize = in.size();
+      while (position < channelSize) {
+        long transferred = in.transferTo(position, channelSize - position, out);
+        if (transferred <= 0) {
+          // the file got shorter meanwhile
+          break;
+        }
+        position += transferred;
+      }
+    }
+
+    if (BYTES_COPIED != null) {
+      BYTES_COPIED.mark(position);
+    }
+  }
+
+  private static boolean link(Path source, Path target, long size, boolean replaceExisting, FileStore store)
+    throws IOException {
+    if (LINK_MODE == LinkMode.HARDLINK) {
+      if (replaceExisting) {
+        Files.deleteIfExists(target);
+      }
+      try {
+        Files.createLink(target, source);
+        return true;
+      } catch (UnsupportedOperationException | IOException e) {
+        LOGGER.debug("Could not hard link {} to {}, copying it instead", target, source, e);
+      }
+    } else if (LINK_MODE == LinkMode.REFLINK && size >= REFLINK_THRESHOLD && !REFLINK_UNSUPPORTED.containsKey(store)) {
+      if (!replaceExisting && Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+        throw new FileAlreadyExistsException(target.toString());
+      }
+
+      // cloned into a file of its own, so that cp never overwrites an existing
+      // target and only that file is deleted if cloning fails
+      Path clone = target.resolveSibling(target.getFileName() + ".reflink-" + UUID.randomUUID());
+      try {
+        if (reflink(source, clone, store)) {
+          if (replaceExisting) {
+            Files.move(clone, target, StandardCopyOption.REPLACE_EXISTING);
+          } else {
+            Files.move(clone, target);
+          }
+          return true;
+        }
+      } finally {
+        Files.deleteIfExists(clone);
+      }
+    }
+    return false;
+  }
+
+  private static boolean reflink(Path source, Path target, FileStore store) {
+    // output goes to a file, so that waiting for cp is what can time out
+    Path outputFile;
+    try {
+      outputFile = Files.createTempFile("reflink", ".log");
+    } catch (IOException e) {
+      LOGGER.debug("Could not clone {}, copying it instead", source, e);
+      return false;
+    }
+
+    try {
+      ProcessBuilder builder = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString());
+      builder.redirectErrorStream(true);
+      builder.redirectOutput(outputFile.toFile());
+      Process process;
+      try {
+        process = builder.start();
+      } catch (IOException e) {
+        // cp is not available
+        LOGGER.info("Could not clone {}, files in {} will be copied instead", source, store, e);
+        REFLINK_UNSUPPORTED.put(store, Boolean.TRUE);
+        return false;
+      }
+
+      if (!process.waitFor(1, TimeUnit.HOURS)) {
+        process.destroyForcibly();
+        return false;
+      }
+      if (process.exitValue() == 0) {
+        return true;
+      }
+
+      String output = new String(Files.readAllBytes(outputFile), Charset.defaultCharset());
+      if (REFLINK_UNSUPPORTED_ERRORS.stream().anyMatch(output::contains)) {
+        LOGGER.info("Could not clone {}, files in {} will be copied instead: {}", source, store, output.trim());
+        REFLINK_UNSUPPORTED.put(store, Boolean.TRUE);
+      } else {
+        LOGGER.debug("Could not clone {}, copying it instead: {}", source, output.trim());
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Could not clone {}, copying it instead", source, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      FSUtils.deletePathQuietly(outputFile);
+    }
+    return false;
+  }
+
+  /**
+   * @return the file store of both paths, or null if they are in different
+   *         file stores (or if no linking is to be done)
+   */
+  private static FileStore getSameFileStore(Path sourcePath, Path targetParent) {
+    if (LINK_MODE == LinkMode.NONE || targetParent == null) {
+      return null;
+    }
+    try {
+      FileStore sourceStore = Files.getFileStore(sourcePath);
+      return sourceStore.equals(Files.getFileStore(targetParent)) ? sourceStore : null;
+    } catch (IOException e) {
+      LOGGER.debug("Could not get file store of {} or {}", sourcePath, targetParent, e);
+      return null;
+    }
+  }
+
+  private static synchronized ExecutorService getPool() {
+    if (POOL == null) {
+      POOL = Executors.newFixedThreadPool(PARALLELISM,
+        new ThreadFactoryBuilder().setNameFormat("file-copy-%d").setDaemon(true).build());
+    }
+    return POOL;
+  }
+
+  public static void injectLinkMode(LinkMode linkMode) {
+    LINK_MODE = linkMode;
+  }
+
+  public static synchronized void injectParallelism(int parallelism) {
+    if (parallelism > 0 && parallelism != PARALLELISM) {
+      PARALLELISM = parallelism;
+      if (POOL != null) {
+        POOL.shutdown();
+        POOL = null;
+      }
+    }
+  }
+
+  /**
+   * @param bytesCopied
+   *          meter of the bytes whose contents were copied (linked files are
+   *          not counted), whose rates are the copy throughput
+   */
+  public static void injectMeter(Meter bytesCopied) {
+    BYTES_COPIED = bytesCopied;
+  }
+}
@@ -14,9 +14,18 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.IOUtils;
 import org.roda.core.common.iterables.CloseableIterable;
@@ -30,12 +39,14 @@ import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.CachingStorageService;
 import org.roda.core.storage.Container;
 import org.roda.core.storage.ContentPayload;
 import org.roda.core.storage.DefaultBinary;
 import org.roda.core.storage.DefaultBinaryVersion;
 import org.roda.core.storage.DefaultContainer;
 import org.roda.core.storage.DefaultDirectory;
+import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.DirectResourceAccess;
 import org.roda.core.storage.Directory;
 import org.roda.core.storage.EmptyClosableIterable;
@@ -66,6 +77,10 @@ public class FileStorageService implements StorageService {
   public static final String HISTORY_SUFFIX = "-history";
   private static final String HISTORY_DATA_FOLDER = "data";
   private static final String HISTORY_METADATA_FOLDER = "metadata";
+  public static final String DIGESTS_SUFFIX = "-digests";
+  public static final String CAS_SUFFIX = "-cas";
+  // files smaller than a file system block are not worth deduplicating
+  private static final long DEDUPLICATION_MIN_SIZE = 4096;
 
   private final Path rodaDataPath;
   private final Path basePath;
@@ -73,6 +88,18 @@ public class FileStorageService implements StorageService {
   private final Path historyDataPath;
   private final Path historyMetadataPath;
   private final Path trashPath;
+  private final Path digestsPath;
+
+  // digests computed while writing binaries of these containers
+  private Collection<String> contentDigestAlgorithms = Collections.emptyList();
+  private Set<String> contentDigestContainers = Collections.emptySet();
+
+  // binaries of these containers are kept in the content addressed store
+  private ContentAddressedStore contentAddressedStore = null;
+  private Set<String> deduplicationContainers = Collections.emptySet();
+
+  // children of some containers are kept in shard directories
+  private ShardedLayout layout = ShardedLayout.FLAT;
 
   public FileStorageService(Path basePath, boolean createTrash, String trashDirName, boolean createHistory)
     throws GenericException {
@@ -82,6 +109,7 @@ public class FileStorageService implements StorageService {
     historyDataPath = historyPath.resolve(HISTORY_DATA_FOLDER);
     historyMetadataPath = historyPath.resolve(HISTORY_METADATA_FOLDER);
     trashPath = rodaDataPath.resolve(trashDirName == null ? RodaConstants.TRASH_CONTAINER : trashDirName);
+    digestsPath = rodaDataPath.resolve(basePath.getFileName() + DIGESTS_SUFFIX);
 
     initialize(basePath);
     if (createHistory) {
@@ -103,6 +131,74 @@ public class FileStorageService implements StorageService {
     this(basePath, null);
   }
 
+  /**
+   * Makes the given content digests be computed while writing the binaries of
+   * the given containers. Digests are kept in a sidecar file, outside the
+   * storage, and returned by {@link Binary#getContentDigest()} as long as the
+   * binary is not changed by other means.
+   */
+  public void setContentDigestOnWrite(Collection<String> algorithms, Collection<String> containers)
+    throws GenericException {
+    if (!algorithms.isEmpty() && !containers.isEmpty()) {
+      initialize(digestsPath);
+    }
+    this.contentDigestAlgorithms = new ArrayList<>(algorithms);
+    this.contentDigestContainers = new HashSet<>(containers);
+  }
+
+  /**
+   * Makes the binaries of the given containers be kept in a content addressed
+   * store (see {@link ContentAddressedStore}), outside the storage, so that
+   * binaries with the same content are kept only once. Binary versions of
+   * those binaries are then links to the binary instead of copies.
+   */
+  public void setDeduplication(Collection<String> containers) throws GenericException {
+    if (containers.isEmpty()) {
+      contentAddressedStore = null;
+    } else if (contentAddressedStore == null) {
+      contentAddressedStore = new ContentAddressedStore(rodaDataPath.resolve(basePath.getFileName() + CAS_SUFFIX));
+    }
+    this.deduplicationContainers = new HashSet<>(containers);
+  }
+
+  public ContentAddressedStore getContentAddressedStore() {
+    return contentAddressedStore;
+  }
+
+  /**
+   * Sets the layout of the storage folder, i.e. which containers have their
+   * children spread over shard directories (see {@link ShardedLayout}). The
+   * storage folder must already be in that layout, see
+   * {@link ShardedLayoutMigration}.
+   */
+  public void setShardedLayout(ShardedLayout layout) {
+    this.layout = layout;
+  }
+
+  public ShardedLayout getShardedLayout() {
+    return layout;
+  }
+
+  Path getBasePath() {
+    return basePath;
+  }
+
+  Path getHistoryDataPath() {
+    return historyDataPath;
+  }
+
+  Path getHistoryMetadataPath() {
+    return historyMetadataPath;
+  }
+
+  Path getDigestsPath() {
+    return digestsPath;
+  }
+
+  private boolean isShardedContainer(StoragePath storagePath) {
+    return storagePath.isFromAContainer() && layout.isSharded(storagePath.getContainerName());
+  }
+
   private void initialize(Path path) throws GenericException {
     if (!FSUtils.exists(path)) {
       try {
@@ -124,7 +220,7 @@ public class FileStorageService implements StorageService {
 
   @Override
   public boolean exists(StoragePath storagePath) {
-    return FSUtils.exists(FSUtils.getEntityPath(basePath, storagePath));
+    return FSUtils.exists(layout.getEntityPath(basePath, storagePath));
   }
 
   @Override
@@ -134,7 +230,7 @@ public class FileStorageService implements StorageService {
 
   @Override
   public Container createContainer(StoragePath storagePath) throws GenericException, AlreadyExistsException {
-    Path containerPath = FSUtils.getEntityPath(basePath, storagePath);
+    Path containerPath = layout.getEntityPath(basePath, storagePath);
     Path directory = null;
     try {
       directory = Files.createDirectory(containerPath);
@@ -166,7 +262,7 @@ public class FileStorageService implements StorageService {
       throw new RequestNotValidException("Storage path is not from a container");
     }
 
-    Path containerPath = FSUtils.getEntityPath(basePath, storagePath);
+    Path containerPath = layout.getEntityPath(basePath, storagePath);
     Container container;
     if (FSUtils.exists(containerPath)) {
       container = new DefaultContainer(storagePath);
@@ -178,7 +274,7 @@ public class FileStorageService implements StorageService {
 
   @Override
   public void deleteContainer(StoragePath storagePath) throws NotFoundException, GenericException {
-    Path containerPath = FSUtils.getEntityPath(basePath, storagePath);
+    Path containerPath = layout.getEntityPath(basePath, storagePath);
     trash(containerPath);
 
     // cleanup history
@@ -211,19 +307,23 @@ public class FileStorageService implements StorageService {
   @Override
   public CloseableIterable<Resource> listResourcesUnderContainer(StoragePath storagePath, boolean recursive)
     throws NotFoundException, GenericException {
-    Path path = FSUtils.getEntityPath(basePath, storagePath);
-    if (recursive) {
-      return FSUtils.recursivelyListPath(basePath, path);
+    Path path = layout.getEntityPath(basePath, storagePath);
+    if (layout.isSharded(storagePath.getContainerName())) {
+      return layout.listContainer(basePath, path, recursive);
+    } else if (recursive) {
+      return FSUtils.recursivelyListPath(basePath, path, layout);
     } else {
-      return FSUtils.listPath(basePath, path);
+      return FSUtils.listPath(basePath, path, layout);
     }
   }
 
   @Override
   public Long countResourcesUnderContainer(StoragePath storagePath, boolean recursive)
     throws NotFoundException, GenericException {
-    Path path = FSUtils.getEntityPath(basePath, storagePath);
-    if (recursive) {
+    Path path = layout.getEntityPath(basePath, storagePath);
+    if (layout.isSharded(storagePath.getContainerName())) {
+      return layout.countContainer(path, recursive);
+    } else if (recursive) {
       return FSUtils.recursivelyCountPath(path);
     } else {
       return FSUtils.countPath(path);
@@ -232,7 +332,7 @@ public class FileStorageService implements StorageService {
 
   @Override
   public Directory createDirectory(StoragePath storagePath) throws AlreadyExistsException, GenericException {
-    Path dirPath = FSUtils.getEntityPath(basePath, storagePath);
+    Path dirPath = layout.getEntityPath(basePath, storagePath);
     Path directory = null;
 
     if (FSUtils.exists(dirPath)) {
@@ -257,13 +357,17 @@ public class FileStorageService implements StorageService {
   @Override
   public Directory createRandomDirectory(StoragePath parentStoragePath)
     throws RequestNotValidException, GenericException, NotFoundException, AlreadyExistsException {
-    Path parentDirPath = FSUtils.getEntityPath(basePath, parentStoragePath);
+    if (isShardedContainer(parentStoragePath)) {
+      return createDirectory(DefaultStoragePath.parse(parentStoragePath, IdUtils.createUUID()));
+    }
+
+    Path parentDirPath = layout.getEntityPath(basePath, parentStoragePath);
     Path directory = null;
 
     try {
       directory = FSUtils.createRandomDirectory(parentDirPath);
 
-      return new DefaultDirectory(FSUtils.getStoragePath(basePath, directory));
+      return new DefaultDirectory(layout.getStoragePath(basePath, directory));
     } catch (FileAlreadyExistsException e) {
       // cleanup
       FSUtils.deletePath(directory);
@@ -285,8 +389,8 @@ public class FileStorageService implements StorageService {
       throw new RequestNotValidException("Invalid storage path for a directory: " + storagePath);
     }
 
-    Path directoryPath = FSUtils.getEntityPath(basePath, storagePath);
-    Resource resource = FSUtils.convertPathToResource(basePath, directoryPath);
+    Path directoryPath = layout.getEntityPath(basePath, storagePath);
+    Resource resource = FSUtils.convertPathToResource(basePath, directoryPath, layout);
 
     if (resource instanceof Directory) {
       return (Directory) resource;
@@ -298,18 +402,18 @@ public class FileStorageService implements StorageService {
   @Override
   public CloseableIterable<Resource> listResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
     throws NotFoundException, GenericException {
-    Path directoryPath = FSUtils.getEntityPath(basePath, storagePath);
+    Path directoryPath = layout.getEntityPath(basePath, storagePath);
     if (recursive) {
-      return FSUtils.recursivelyListPath(basePath, directoryPath);
+      return FSUtils.recursivelyListPath(basePath, directoryPath, layout);
     } else {
-      return FSUtils.listPath(basePath, directoryPath);
+      return FSUtils.listPath(basePath, directoryPath, layout);
     }
   }
 
   @Override
   public Long countResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
     throws NotFoundException, GenericException {
-    Path directoryPath = FSUtils.getEntityPath(basePath, storagePath);
+    Path directoryPath = layout.getEntityPath(basePath, storagePath);
     if (recursive) {
       return FSUtils.recursivelyCountPath(directoryPath);
     } else {
@@ -323,7 +427,7 @@ public class FileStorageService implements StorageService {
     if (asReference) {
       throw new GenericException("Method not yet implemented");
     } else {
-      Path binPath = FSUtils.getEntityPath(basePath, storagePath);
+      Path binPath = layout.getEntityPath(basePath, storagePath);
       if (FSUtils.exists(binPath)) {
         throw new AlreadyExistsException("Binary already exists: " + binPath);
       } else {
@@ -335,11 +439,10 @@ public class FileStorageService implements StorageService {
           }
 
           // writing file
-          payload.writeToPath(binPath);
+          Map<String, String> contentDigest = writePayload(storagePath, payload, binPath, false);
           ContentPayload newPayload = new FSPathContentPayload(binPath);
           Long sizeInBytes = Files.size(binPath);
           boolean isReference = false;
-          Map<String, String> contentDigest = null;
 
           return new DefaultBinary(storagePath, newPayload, sizeInBytes, isReference, contentDigest);
         } catch (FileAlreadyExistsException e) {
@@ -357,7 +460,7 @@ public class FileStorageService implements StorageService {
     if (asReference) {
       throw new GenericException("Method not yet implemented");
     } else {
-      Path parent = FSUtils.getEntityPath(basePath, parentStoragePath);
+      Path parent = layout.getEntityPath(basePath, parentStoragePath);
       try {
         // ensure parent exists
         if (!FSUtils.exists(parent)) {
@@ -365,15 +468,21 @@ public class FileStorageService implements StorageService {
         }
 
         // create file
-        Path binPath = FSUtils.createRandomFile(parent);
+        Path binPath;
+        if (isShardedContainer(parentStoragePath)) {
+          binPath = layout.getEntityPath(basePath, DefaultStoragePath.parse(parentStoragePath, IdUtils.createUUID()));
+          Files.createDirectories(binPath.getParent());
+          Files.createFile(binPath);
+        } else {
+          binPath = FSUtils.createRandomFile(parent);
+        }
 
         // writing file
-        payload.writeToPath(binPath);
-        StoragePath storagePath = FSUtils.getStoragePath(basePath, binPath);
+        StoragePath storagePath = layout.getStoragePath(basePath, binPath);
+        Map<String, String> contentDigest = writePayload(storagePath, payload, binPath, true);
         ContentPayload newPayload = new FSPathContentPayload(binPath);
         Long sizeInBytes = Files.size(binPath);
         boolean isReference = false;
-        Map<String, String> contentDigest = null;
 
         return new DefaultBinary(storagePath, newPayload, sizeInBytes, isReference, contentDigest);
       } catch (IOException e) {
@@ -389,7 +498,7 @@ public class FileStorageService implements StorageService {
       throw new GenericException("Method not yet implemented");
     } else {
 
-      Path binaryPath = FSUtils.getEntityPath(basePath, storagePath);
+      Path binaryPath = layout.getEntityPath(basePath, storagePath);
       boolean fileExists = FSUtils.exists(binaryPath);
 
       if (!fileExists && !createIfNotExists) {
@@ -398,15 +507,15 @@ public class FileStorageService implements StorageService {
         throw new GenericException("Looking for a binary but found something else");
       } else {
         try {
-          payload.writeToPath(binaryPath);
+          writePayload(storagePath, payload, binaryPath, true);
         } catch (IOException e) {
           throw new GenericException("Could not update binary content", e);
         }
       }
 
-      Resource resource = FSUtils.convertPathToResource(basePath, binaryPath);
+      Resource resource = FSUtils.convertPathToResource(basePath, binaryPath, layout);
       if (resource instanceof Binary) {
-        return (DefaultBinary) resource;
+        return withContentDigest(storagePath, (DefaultBinary) resource);
       } else {
         throw new GenericException("Looking for a binary but found something else");
       }
@@ -416,36 +525,216 @@ public class FileStorageService implements StorageService {
   @Override
   public Binary getBinary(StoragePath storagePath)
     throws RequestNotValidException, NotFoundException, GenericException {
-    Path binaryPath = FSUtils.getEntityPath(basePath, storagePath);
-    Resource resource = FSUtils.convertPathToResource(basePath, binaryPath);
+    Path binaryPath = layout.getEntityPath(basePath, storagePath);
+    Resource resource = FSUtils.convertPathToResource(basePath, binaryPath, layout);
     if (resource instanceof Binary) {
-      return (Binary) resource;
+      return withContentDigest(storagePath, (DefaultBinary) resource);
     } else {
       throw new RequestNotValidException("Looking for a binary but found something else");
     }
   }
 
+  private boolean isToComputeContentDigest(StoragePath storagePath) {
+    return !contentDigestAlgorithms.isEmpty() && contentDigestContainers.contains(storagePath.getContainerName());
+  }
+
+  private boolean isToDeduplicate(StoragePath storagePath) {
+    return contentAddressedStore != null && deduplicationContainers.contains(storagePath.getContainerName());
+  }
+
+  private Map<String, String> writePayload(StoragePath storagePath, ContentPayload payload, Path binPath,
+    boolean replaceExisting) throws IOException, GenericException {
+    boolean computeContentDigest = isToComputeContentDigest(storagePath);
+    boolean deduplicate = isToDeduplicate(storagePath);
+    if (!computeContentDigest && !deduplicate) {
+      if (ContentAddressedStore.isShared(binPath)) {
+        // shared contents (e.g. with a binary version) are replaced, never
+        // changed in place
+        FSUtils.writeWithContentDigest(payload, binPath, Collections.emptyList(), replaceExisting);
+      } else {
+        payload.writeToPath(binPath);
+      }
+      return null;
+    }
+
+    List<String> algorithms = new ArrayList<>();
+    if (computeContentDigest) {
+      algorithms.addAll(contentDigestAlgorithms);
+    }
+    if (deduplicate && !algorithms.contains(ContentAddressedStore.ALGORITHM)) {
+      algorithms.add(ContentAddressedStore.ALGORITHM);
+    }
+
+    Map<String, String> digests = FSUtils.writeWithContentDigest(payload, binPath, algorithms, replaceExisting);
+    if (deduplicate && Files.size(binPath) >= DEDUPLICATION_MIN_SIZE) {
+      contentAddressedStore.store(binPath, digests.get(ContentAddressedStore.ALGORITHM));
+    }
+    if (!computeContentDigest) {
+      return null;
+    }
+
+    Map<String, String> contentDigest = new LinkedHashMap<>();
+    for (String algorithm : contentDigestAlgorithms) {
+      contentDigest.put(algorithm, digests.get(algorithm));
+    }
+
+    // written after storing, as a stored binary gets the attributes of the
+    // stored contents
+    Path sidecarPath = getContentDigestSidecarPath(binPath);
+    try {
+      Files.createDirectories(sidecarPath.getParent());
+      BasicFileAttributes attrs = Files.readAttributes(binPath, BasicFileAttributes.class);
+      ContentDigestSidecar sidecar = new ContentDigestSidecar(attrs.size(), attrs.lastModifiedTime().toMillis(),
+        contentDigest);
+      JsonUtils.writeObjectToFile(sidecar, sidecarPath);
+    } catch (IOException | GenericException e) {
+      // digests will just be computed again when needed
+      LOGGER.warn("Could not write content digests of {}", binPath, e);
+      Files.deleteIfExists(sidecarPath);
+    }
+    return contentDigest;
+  }
+
+  private Binary withContentDigest(StoragePath storagePath, DefaultBinary binary) {
+    if (isToComputeContentDigest(storagePath)) {
+      // only read when needed, as most binaries retrieved never use them
+      Path binPath = layout.getEntityPath(basePath, storagePath);
+      Long lastModified = binary.getLastModified();
+      binary.setContentDigestLoader(() -> readContentDigest(binPath, binary.getSizeInBytes(), lastModified));
+    }
+    return binary;
+  }
+
+  /**
+   * @return the digests of the sidecar of the binary, or <code>null</code> if
+   *         there are none or the binary changed since they were computed
+   */
+  private Map<String, String> readContentDigest(Path binPath, Long sizeInBytes, Long lastModified) {
+    Path sidecarPath = getContentDigestSidecarPath(binPath);
+    if (FSUtils.exists(sidecarPath)) {
+      try {
+        ContentDigestSidecar sidecar = JsonUtils.readObjectFromFile(sidecarPath, ContentDigestSidecar.class);
+        long size = sizeInBytes != null ? sizeInBytes : Files.size(binPath);
+        long modified = lastModified != null ? lastModified : Files.getLastModifiedTime(binPath).toMillis();
+        if (sidecar.getSizeInBytes() == size && sidecar.getLastModified() == modified) {
+          return sidecar.getDigests();
+        }
+      } catch (IOException | GenericException e) {
+        LOGGER.warn("Could not read content digests of {}", binPath, e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Moves or copies the content digests of the binaries under the source path
+   * of the given storage to the target path of this one, where they are
+   * written again for the target binaries if still valid. The digests of moved
+   * binaries are always removed from the source, so that none are left behind.
+   */
+  private void transferContentDigests(FileStorageService source, Path sourcePath, Path targetPath,
+    StoragePath toStoragePath, boolean move) {
+    boolean keep = isToComputeContentDigest(toStoragePath);
+    Path relativeSourcePath = source.basePath.relativize(sourcePath);
+    Map<Path, Path> sidecars = new LinkedHashMap<>();
+
+    // the sidecar of a binary or the sidecars of the binaries of a directory
+    Path sidecarPath = source.getContentDigestSidecarPath(sourcePath);
+    Path sidecarsPath = source.digestsPath.resolve(relativeSourcePath);
+    if (FSUtils.exists(sidecarPath)) {
+      sidecars.put(sidecarPath, targetPath);
+    } else if (FSUtils.isDirectory(sidecarsPath)) {
+      try (Stream<Path> stream = Files.walk(sidecarsPath)) {
+        stream.filter(p -> p.getFileName().toString().endsWith(FSUtils.METADATA_SUFFIX) && Files.isRegularFile(p))
+          .forEach(p -> {
+            String relativePath = sidecarsPath.relativize(p).toString();
+            sidecars.put(p,
+              targetPath.resolve(relativePath.substring(0, relativePath.length() - FSUtils.METADATA_SUFFIX.length())));
+          });
+      } catch (IOException e) {
+        LOGGER.warn("Could not list content digests under {}", sidecarsPath, e);
+      }
+    }
+
+    if (keep) {
+      for (Map.Entry<Path, Path> sidecar : sidecars.entrySet()) {
+        Path targetBinPath = sidecar.getValue();
+        Path sourceBinPath = move ? targetBinPath : sourcePath.resolve(targetPath.relativize(targetBinPath));
+        try {
+          ContentDigestSidecar digests = JsonUtils.readObjectFromFile(sidecar.getKey(), ContentDigestSidecar.class);
+          BasicFileAttributes sourceAttrs = Files.readAttributes(sourceBinPath, BasicFileAttributes.class);
+          if (digests.getSizeInBytes() == sourceAttrs.size()
+            && digests.getLastModified() == sourceAttrs.lastModifiedTime().toMillis()) {
+            Path targetSidecarPath = getContentDigestSidecarPath(targetBinPath);
+            Files.createDirectories(targetSidecarPath.getParent());
+            BasicFileAttributes targetAttrs = Files.readAttributes(targetBinPath, BasicFileAttributes.class);
+            JsonUtils.writeObjectToFile(new ContentDigestSidecar(targetAttrs.size(),
+              targetAttrs.lastModifiedTime().toMillis(), digests.getDigests()), targetSidecarPath);
+          }
+        } catch (IOException | GenericException e) {
+          // digests will just be computed again when needed
+          LOGGER.warn("Could not transfer content digests of {}", sourceBinPath, e);
+        }
+      }
+    }
+
+    if (move) {
+      FSUtils.deletePathQuietly(sidecarPath);
+      FSUtils.deletePathQuietly(sidecarsPath);
+    }
+  }
+
+  private Path getContentDigestSidecarPath(Path binPath) {
+    return digestsPath.resolve(basePath.relativize(binPath).toString() + FSUtils.METADATA_SUFFIX);
+  }
+
   @Override
   public void deleteResource(StoragePath storagePath) throws NotFoundException, GenericException {
-    Path resourcePath = FSUtils.getEntityPath(basePath, storagePath);
+    Path resourcePath = layout.getEntityPath(basePath, storagePath);
     trash(resourcePath);
 
+    // cleanup content digests
+    if (isToComputeContentDigest(storagePath)) {
+      FSUtils.deletePathQuietly(getContentDigestSidecarPath(resourcePath));
+      FSUtils.deletePathQuietly(digestsPath.resolve(basePath.relativize(resourcePath)));
+    }
+
     // cleanup history
     deleteAllBinaryVersionsUnder(storagePath);
   }
 
   public Path resolve(StoragePath storagePath) {
-    return FSUtils.getEntityPath(basePath, storagePath);
+    return layout.getEntityPath(basePath, storagePath);
+  }
+
+  /**
+   * Retrieves the last modification time (in milliseconds since epoch) of the
+   * entity at the given storage path, so that callers may validate data they
+   * derived from it without re-reading it.
+   */
+  public long getLastModifiedTime(StoragePath storagePath) throws NotFoundException, GenericException {
+    Path entityPath = layout.getEntityPath(basePath, storagePath);
+    try {
+      return Files.getLastModifiedTime(entityPath).toMillis();
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Could not get last modified time of entity because it doesn't exist: " + storagePath,
+        e);
+    } catch (IOException e) {
+      throw new GenericException("Could not get last modified time of entity: " + storagePath, e);
+    }
   }
 
   @Override
   public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
-    if (fromService instanceof FileStorageService) {
-      Path sourcePath = ((FileStorageService) fromService).resolve(fromStoragePath);
-      Path targetPath = FSUtils.getEntityPath(basePath, toStoragePath);
+    // the files of a cached storage service are still copied directly
+    StorageService sourceService = CachingStorageService.unwrap(fromService);
+    if (sourceService instanceof FileStorageService) {
+      Path sourcePath = ((FileStorageService) sourceService).resolve(fromStoragePath);
+      Path targetPath = layout.getEntityPath(basePath, toStoragePath);
       FSUtils.copy(sourcePath, targetPath, false);
+      transferContentDigests((FileStorageService) sourceService, sourcePath, targetPath, toStoragePath, false);
     } else {
       Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
       StorageServiceUtils.copyBetweenStorageServices(fromService, fromStoragePath, this, toStoragePath, rootEntity);
@@ -456,10 +745,19 @@ public class FileStorageService implements StorageService {
   public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
-    if (fromService instanceof FileStorageService) {
-      Path sourcePath = ((FileStorageService) fromService).resolve(fromStoragePath);
-      Path targetPath = FSUtils.getEntityPath(basePath, toStoragePath);
-      FSUtils.move(sourcePath, targetPath, false);
+    // the files of a cached storage service are still moved directly
+    StorageService sourceService = CachingStorageService.unwrap(fromService);
+    if (sourceService instanceof FileStorageService) {
+      Path sourcePath = ((FileStorageService) sourceService).resolve(fromStoragePath);
+      Path targetPath = layout.getEntityPath(basePath, toStoragePath);
+      try {
+        FSUtils.move(sourcePath, targetPath, false);
+        transferContentDigests((FileStorageService) sourceService, sourcePath, targetPath, toStoragePath, true);
+      } finally {
+        if (fromService instanceof CachingStorageService) {
+          ((CachingStorageService) fromService).invalidateChanged(fromStoragePath);
+        }
+      }
     } else {
       Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
       StorageServiceUtils.moveBetweenStorageServices(fromService, fromStoragePath, this, toStoragePath, rootEntity);
@@ -468,41 +766,103 @@ public class FileStorageService implements StorageService {
 
   @Override
   public Class<? extends Entity> getEntity(StoragePath storagePath) throws NotFoundException {
-    Path entity = FSUtils.getEntityPath(basePath, storagePath);
-    if (FSUtils.exists(entity)) {
-      if (FSUtils.isDirectory(entity)) {
-        if (storagePath.isFromAContainer()) {
-          return DefaultContainer.class;
-        } else {
-          return DefaultDirectory.class;
-        }
+    Path entity = layout.getEntityPath(basePath, storagePath);
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(entity, BasicFileAttributes.class);
+    } catch (IOException e) {
+      throw new NotFoundException("Entity was not found: " + storagePath, e);
+    }
+
+    if (attrs.isDirectory()) {
+      if (storagePath.isFromAContainer()) {
+        return DefaultContainer.class;
       } else {
-        return DefaultBinary.class;
+        return DefaultDirectory.class;
       }
     } else {
-      throw new NotFoundException("Entity was not found: " + storagePath);
+      return DefaultBinary.class;
     }
   }
 
   @Override
   public DirectResourceAccess getDirectAccess(final StoragePath storagePath) {
     return new DirectResourceAccess() {
+      // binaries given their own copy of shared contents, once the path is
+      // retrieved
+      private List<Path> unshared = null;
 
       @Override
-      public Path getPath() {
+      public Path getPath() throws GenericException {
         // TODO disable write access to resource
         // for UNIX programs using user with read-only permissions
         // for Java programs using SecurityManager and Policy
-        return FSUtils.getEntityPath(basePath, storagePath);
+        Path path = layout.getEntityPath(basePath, storagePath);
+        if (unshared == null) {
+          // the resource may be changed in place, which must not change the
+          // files that share its contents (copy-on-write)
+          unshared = unshare(path);
+        }
+        return path;
       }
 
       @Override
       public void close() {
-        // nothing to do
+        // deduplicated again, whether they were changed or not
+        if (unshared != null && isToDeduplicate(storagePath)) {
+          for (Path binPath : unshared) {
+            deduplicate(binPath);
+          }
+        }
+        unshared = null;
       }
     };
   }
 
+  /**
+   * Gives the binary, or each binary under the directory, whose contents are
+   * shared with other files (deduplicated or linked into the history) its own
+   * copy of them, so that it can be changed in place.
+   *
+   * @return the binaries given their own copy
+   */
+  private List<Path> unshare(Path path) throws GenericException {
+    if (!FSUtils.exists(path)) {
+      return Collections.emptyList();
+    }
+
+    List<Path> ret = new ArrayList<>();
+    try (Stream<Path> files = Files.walk(path)) {
+      Iterator<Path> iterator = files.filter(Files::isRegularFile).filter(ContentAddressedStore::isShared).iterator();
+      while (iterator.hasNext()) {
+        Path binPath = iterator.next();
+        Path copyPath = binPath.resolveSibling(binPath.getFileName().toString() + ".copy" + System.nanoTime());
+        try {
+          Files.copy(binPath, copyPath, StandardCopyOption.COPY_ATTRIBUTES);
+          Files.move(copyPath, binPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+          Files.deleteIfExists(copyPath);
+        }
+        ret.add(binPath);
+      }
+    } catch (IOException e) {
+      throw new GenericException("Could not copy the shared contents of " + path, e);
+    }
+    return ret;
+  }
+
+  private void deduplicate(Path binPath) {
+    try {
+      if (FSUtils.exists(binPath) && Files.size(binPath) >= DEDUPLICATION_MIN_SIZE) {
+        String digest = ContentDigestEngine.digest(binPath, Collections.singletonList(ContentAddressedStore.ALGORITHM))
+          .get(ContentAddressedStore.ALGORITHM);
+        contentAddressedStore.store(binPath, digest);
+      }
+    } catch (IOException | GenericException e) {
+      LOGGER.warn("Could not deduplicate {} again, keeping its own copy", binPath, e);
+    }
+  }
+
   @Override
   public CloseableIterable<BinaryVersion> listBinaryVersions(StoragePath storagePath)
     throws GenericException, NotFoundException {
@@ -511,7 +871,7 @@ public class FileStorageService implements StorageService {
       return new EmptyClosableIterable<>();
     }
 
-    Path fauxPath = FSUtils.getEntityPath(historyDataPath, storagePath);
+    Path fauxPath = layout.getEntityPath(historyDataPath, storagePath);
     Path parent = fauxPath.getParent();
     final String baseName = fauxPath.getFileName().toString();
 
@@ -548,7 +908,7 @@ public class FileStorageService implements StorageService {
               Path next = pathIterator.next();
               BinaryVersion ret;
               try {
-                ret = FSUtils.convertPathToBinaryVersion(historyDataPath, historyMetadataPath, next);
+                ret = FSUtils.convertPathToBinaryVersion(historyDataPath, historyMetadataPath, next, layout);
               } catch (GenericException | NotFoundException | RequestNotValidException e) {
                 LOGGER.error("Error while list path " + basePath + " while parsing resource " + next, e);
                 ret = null;
@@ -581,8 +941,8 @@ public class FileStorageService implements StorageService {
     if (historyDataPath == null) {
       throw new GenericException("Skipping get binary version because no history folder is defined!");
     }
-    Path binVersionPath = FSUtils.getEntityPath(historyDataPath, storagePath, version);
-    return FSUtils.convertPathToBinaryVersion(historyDataPath, historyMetadataPath, binVersionPath);
+    Path binVersionPath = layout.getEntityPath(historyDataPath, storagePath, version);
+    return FSUtils.convertPathToBinaryVersion(historyDataPath, historyMetadataPath, binVersionPath, layout);
   }
 
   @Override
@@ -592,10 +952,10 @@ public class FileStorageService implements StorageService {
       throw new GenericException("Skipping create binary version because no history folder is defined!");
     }
 
-    Path binPath = FSUtils.getEntityPath(basePath, storagePath);
+    Path binPath = layout.getEntityPath(basePath, storagePath);
 
     String id = IdUtils.createUUID();
-    Path dataPath = FSUtils.getEntityPath(historyDataPath, storagePath, id);
+    Path dataPath = layout.getEntityPath(historyDataPath, storagePath, id);
     Path metadataPath = FSUtils.getBinaryHistoryMetadataPath(historyDataPath, historyMetadataPath, dataPath);
 
     if (!FSUtils.exists(binPath)) {
@@ -617,8 +977,13 @@ public class FileStorageService implements StorageService {
         Files.createDirectories(parent);
       }
 
-      // writing file
-      Files.copy(binPath, dataPath);
+      // writing file (versions of stored binaries are never changed in place,
+      // so they can share the contents of the binary)
+      if (isToDeduplicate(storagePath)) {
+        linkOrCopy(binPath, dataPath, false);
+      } else {
+        Files.copy(binPath, dataPath);
+      }
 
       // Creating metadata
       DefaultBinaryVersion b = new DefaultBinaryVersion();
@@ -628,7 +993,7 @@ public class FileStorageService implements StorageService {
       Files.createDirectories(metadataPath.getParent());
       JsonUtils.writeObjectToFile(b, metadataPath);
 
-      return FSUtils.convertPathToBinaryVersion(historyDataPath, historyMetadataPath, dataPath);
+      return FSUtils.convertPathToBinaryVersion(historyDataPath, historyMetadataPath, dataPath, layout);
     } catch (IOException e) {
       throw new GenericException("Could not create binary", e);
     }
@@ -643,8 +1008,8 @@ public class FileStorageService implements StorageService {
       return;
     }
 
-    Path binPath = FSUtils.getEntityPath(basePath, storagePath);
-    Path binVersionPath = FSUtils.getEntityPath(historyDataPath, storagePath, version);
+    Path binPath = layout.getEntityPath(basePath, storagePath);
+    Path binVersionPath = layout.getEntityPath(historyDataPath, storagePath, version);
 
     if (!FSUtils.exists(binPath)) {
       throw new NotFoundException("Binary does not exist: " + binPath);
@@ -660,13 +1025,38 @@ public class FileStorageService implements StorageService {
 
     try {
       // writing file
-      Files.copy(binVersionPath, binPath, StandardCopyOption.REPLACE_EXISTING);
+      if (isToDeduplicate(storagePath)) {
+        linkOrCopy(binVersionPath, binPath, true);
+      } else {
+        Files.copy(binVersionPath, binPath, StandardCopyOption.REPLACE_EXISTING);
+      }
     } catch (IOException e) {
       throw new GenericException("Could not create binary", e);
     }
 
   }
 
+  private void linkOrCopy(Path source, Path target, boolean replaceExisting) throws IOException {
+    Path link = replaceExisting
+      ? target.resolveSibling(target.getFileName().toString() + ".link" + System.nanoTime())
+      : target;
+    try {
+      Files.createLink(link, source);
+    } catch (UnsupportedOperationException | IOException e) {
+      LOGGER.debug("Could not link {} to {}, copying it instead", target, source, e);
+      Files.deleteIfExists(link);
+      if (replaceExisting) {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        Files.copy(source, target);
+      }
+      return;
+    }
+    if (replaceExisting) {
+      Files.move(link, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
+
   @Override
   public void deleteBinaryVersion(StoragePath storagePath, String version)
     throws NotFoundException, GenericException, RequestNotValidException {
@@ -675,7 +1065,7 @@ public class FileStorageService implements StorageService {
       return;
     }
 
-    Path dataPath = FSUtils.getEntityPath(historyDataPath, storagePath, version);
+    Path dataPath = layout.getEntityPath(historyDataPath, storagePath, version);
     Path metadataPath = FSUtils.getBinaryHistoryMetadataPath(historyDataPath, historyMetadataPath, dataPath);
 
     trash(dataPath);
@@ -692,7 +1082,7 @@ public class FileStorageService implements StorageService {
       return;
     }
 
-    Path resourcePath = FSUtils.getEntityPath(basePath, storagePath);
+    Path resourcePath = layout.getEntityPath(basePath, storagePath);
 
     Path relativePath = basePath.relativize(resourcePath);
     Path resourceHistoryDataPath = historyDataPath.resolve(relativePath);
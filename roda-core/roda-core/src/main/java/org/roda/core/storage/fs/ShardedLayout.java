@@ -0,0 +1,404 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Layout of the storage folder, in which the direct children of some
+ * containers are spread over levels of shard directories instead of being all
+ * kept in the container directory.
+ *
+ * <p>
+ * The shards of a child are taken from the hexadecimal MD5 digest of its name,
+ * e.g. with 2 levels of 2 characters the child <code>aip/abc</code> is kept in
+ * <code>aip/ab/cd/abc</code> if the digest of <code>abc</code> starts with
+ * <code>abcd</code>. Shard directories are never seen by users of storage
+ * paths.
+ * </p>
+ */
+public class ShardedLayout {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShardedLayout.class);
+
+  private static final String DIGEST_ALGORITHM = "MD5";
+  private static final int DIGEST_HEX_LENGTH = 32;
+
+  /** Layout without shards, where storage paths are mapped as they are */
+  public static final ShardedLayout FLAT = new ShardedLayout(Collections.emptyList(), 0, 0);
+
+  private final Set<String> containers;
+  private final int levels;
+  private final int width;
+
+  /**
+   * @param containers
+   *          the containers whose children are sharded
+   * @param levels
+   *          the number of levels of shard directories
+   * @param width
+   *          the number of hexadecimal characters in the name of each shard
+   *          directory
+   */
+  public ShardedLayout(Collection<String> containers, int levels, int width) {
+    if (levels < 0 || width < 0 || levels * width > DIGEST_HEX_LENGTH
+      || (!containers.isEmpty() && levels * width == 0)) {
+      throw new IllegalArgumentException("Invalid shards of " + levels + " levels of " + width + " characters");
+    }
+    this.containers = Collections.unmodifiableSet(new HashSet<>(containers));
+    this.levels = levels;
+    this.width = width;
+  }
+
+  public Set<String> getContainers() {
+    return containers;
+  }
+
+  public int getLevels() {
+    return levels;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public boolean isSharded(String containerName) {
+    return containers.contains(containerName);
+  }
+
+  public boolean isFlat() {
+    return containers.isEmpty();
+  }
+
+  /**
+   * @return the containers whose children are kept in different directories
+   *         in this layout and in the other layout
+   */
+  public Set<String> getChangedContainers(ShardedLayout other) {
+    Set<String> changed = new HashSet<>();
+    Set<String> all = new HashSet<>(containers);
+    all.addAll(other.containers);
+    for (String container : all) {
+      if (isSharded(container) != other.isSharded(container) || levels != other.levels || width != other.width) {
+        changed.add(container);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * @return the number of levels of shard directories of the container, 0 if
+   *         it is not sharded
+   */
+  public int getLevels(String containerName) {
+    return isSharded(containerName) ? levels : 0;
+  }
+
+  /**
+   * @return the names of the shard directories, from the container down, in
+   *         which a child of a sharded container is kept
+   */
+  public List<String> getShards(String childName) {
+    String digest = hexDigest(childName);
+    List<String> shards = new ArrayList<>(levels);
+    for (int i = 0; i < levels; i++) {
+      shards.add(digest.substring(i * width, (i + 1) * width));
+    }
+    return shards;
+  }
+
+  private static String hexDigest(String value) {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support MD5
+      throw new IllegalStateException(e);
+    }
+
+    byte[] digest = messageDigest.digest(value.getBytes(StandardCharsets.UTF_8));
+    StringBuilder hex = new StringBuilder(DIGEST_HEX_LENGTH);
+    for (byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Get path, with shards if the storage path is under a sharded container
+   *
+   * @see FSUtils#getEntityPath(Path, StoragePath)
+   */
+  public Path getEntityPath(Path basePath, StoragePath storagePath) {
+    return resolve(basePath, storagePath.asList(), null);
+  }
+
+  /**
+   * Get path of a version, with shards if the storage path is under a sharded
+   * container
+   *
+   * @see FSUtils#getEntityPath(Path, StoragePath, String)
+   */
+  public Path getEntityPath(Path basePath, StoragePath storagePath, String version) throws RequestNotValidException {
+    if (version.indexOf(FSUtils.VERSION_SEP) >= 0) {
+      throw new RequestNotValidException("Cannot use '" + FSUtils.VERSION_SEP + "' in version " + version);
+    }
+    return resolve(basePath, storagePath.asList(), version);
+  }
+
+  private Path resolve(Path basePath, List<String> pathPartials, String version) {
+    Path resourcePath = basePath;
+    for (int i = 0; i < pathPartials.size(); i++) {
+      String pathPartial = pathPartials.get(i);
+      if (i == 1 && isSharded(pathPartials.get(0))) {
+        for (String shard : getShards(pathPartial)) {
+          resourcePath = resourcePath.resolve(shard);
+        }
+      }
+      if (version != null && i == pathPartials.size() - 1) {
+        pathPartial += FSUtils.VERSION_SEP + version;
+      }
+      resourcePath = resourcePath.resolve(FSUtils.encodePathPartial(pathPartial));
+    }
+    return resourcePath;
+  }
+
+  /**
+   * Get the storage path of a path, skipping its shards if it is under a
+   * sharded container
+   *
+   * @throws RequestNotValidException
+   *           if the path is a shard directory
+   * @see FSUtils#getStoragePath(Path, Path)
+   */
+  public StoragePath getStoragePath(Path basePath, Path absolutePath) throws RequestNotValidException {
+    Path relativePath = basePath.relativize(absolutePath);
+    int nameCount = relativePath.getNameCount();
+    if (nameCount <= 1 || !isSharded(relativePath.getName(0).toString())) {
+      return FSUtils.getStoragePath(relativePath);
+    }
+
+    if (nameCount <= levels + 1) {
+      throw new RequestNotValidException("Path is a shard directory and not a storage entity: " + absolutePath);
+    }
+
+    List<String> pathPartials = new ArrayList<>(nameCount - levels);
+    pathPartials.add(relativePath.getName(0).toString());
+    for (int i = levels + 1; i < nameCount; i++) {
+      pathPartials.add(FSUtils.decodePathPartial(relativePath.getName(i).toString()));
+    }
+    return DefaultStoragePath.parse(pathPartials);
+  }
+
+  /**
+   * Lists the children of a sharded container, walking its shard directories
+   * lazily, so that only one directory of each level is open at a time.
+   *
+   * @param recursive
+   *          if the descendants of each child are to be listed too, right after
+   *          the child
+   */
+  public CloseableIterable<Resource> listContainer(final Path basePath, final Path containerPath,
+    final boolean recursive) throws NotFoundException, GenericException {
+    final ShardWalker walker = newShardWalker(containerPath);
+
+    return new CloseableIterable<Resource>() {
+      private CloseableIterable<Resource> descendants = null;
+      private Iterator<Resource> descendantsIterator = null;
+
+      @Override
+      public Iterator<Resource> iterator() {
+        return new Iterator<Resource>() {
+
+          @Override
+          public boolean hasNext() {
+            if (descendantsIterator != null) {
+              if (descendantsIterator.hasNext()) {
+                return true;
+              }
+              closeDescendants();
+            }
+            return walker.hasNext();
+          }
+
+          @Override
+          public Resource next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            if (descendantsIterator != null) {
+              return descendantsIterator.next();
+            }
+
+            Path next = walker.next();
+            Resource ret;
+            try {
+              ret = FSUtils.convertPathToResource(basePath, next, ShardedLayout.this);
+            } catch (GenericException | NotFoundException | RequestNotValidException e) {
+              LOGGER.error("Error while list path " + basePath + " while parsing resource " + next, e);
+              return null;
+            }
+
+            if (recursive && ret.isDirectory()) {
+              try {
+                descendants = FSUtils.recursivelyListPath(basePath, next, ShardedLayout.this);
+                descendantsIterator = descendants.iterator();
+              } catch (NotFoundException | GenericException e) {
+                LOGGER.error("Error while list path " + basePath + " while listing resource " + next, e);
+              }
+            }
+            return ret;
+          }
+        };
+      }
+
+      private void closeDescendants() {
+        IOUtils.closeQuietly(descendants);
+        descendants = null;
+        descendantsIterator = null;
+      }
+
+      @Override
+      public void close() {
+        closeDescendants();
+        walker.close();
+      }
+    };
+  }
+
+  /**
+   * Counts the children of a sharded container (and their descendants, if
+   * recursive), without counting the shard directories.
+   */
+  public Long countContainer(Path containerPath, boolean recursive) throws NotFoundException, GenericException {
+    long count = 0;
+    ShardWalker walker = newShardWalker(containerPath);
+    try {
+      while (walker.hasNext()) {
+        Path next = walker.next();
+        count++;
+        if (recursive && FSUtils.isDirectory(next)) {
+          count += FSUtils.recursivelyCountPath(next);
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw new GenericException("Could not list contents of entity at: " + containerPath, e.getCause());
+    } finally {
+      walker.close();
+    }
+    return count;
+  }
+
+  private ShardWalker newShardWalker(Path containerPath) throws NotFoundException, GenericException {
+    try {
+      return new ShardWalker(containerPath, levels);
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Could not list contents of entity because it doesn't exist: " + containerPath, e);
+    } catch (IOException e) {
+      throw new GenericException("Could not list contents of entity at: " + containerPath, e);
+    }
+  }
+
+  /**
+   * Lazy walk of the shard directories of a container, returning the paths
+   * found under the last level of shards (or the children of the container,
+   * with no levels).
+   */
+  static class ShardWalker implements Iterator<Path> {
+    private final int levels;
+    private final Deque<DirectoryStream<Path>> streams = new ArrayDeque<>();
+    private final Deque<Iterator<Path>> iterators = new ArrayDeque<>();
+    private Path next = null;
+
+    ShardWalker(Path containerPath, int levels) throws IOException {
+      this.levels = levels;
+      push(containerPath);
+    }
+
+    private void push(Path directory) throws IOException {
+      DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+      streams.push(stream);
+      iterators.push(stream.iterator());
+    }
+
+    private void pop() {
+      iterators.pop();
+      IOUtils.closeQuietly(streams.pop());
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && !iterators.isEmpty()) {
+        Iterator<Path> iterator = iterators.peek();
+        if (!iterator.hasNext()) {
+          pop();
+        } else if (iterators.size() > levels) {
+          next = iterator.next();
+        } else {
+          Path shard = iterator.next();
+          if (FSUtils.isDirectory(shard)) {
+            try {
+              push(shard);
+            } catch (NoSuchFileException e) {
+              // shard removed meanwhile (do nothing)
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          } else {
+            LOGGER.warn("Ignoring {} as it is not a shard directory", shard);
+          }
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public Path next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Path ret = next;
+      next = null;
+      return ret;
+    }
+
+    void close() {
+      while (!iterators.isEmpty()) {
+        pop();
+      }
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Layout in which the storage folder is, as recorded after being migrated to
+ * it (see {@link ShardedLayoutMigration}).
+ */
+public class ShardedLayoutInfo implements Serializable {
+  private static final long serialVersionUID = -3104526812519860263L;
+
+  private List<String> containers = new ArrayList<>();
+  private int levels;
+  private int width;
+
+  public ShardedLayoutInfo() {
+    super();
+  }
+
+  public ShardedLayoutInfo(ShardedLayout layout) {
+    super();
+    this.containers = new ArrayList<>(layout.getContainers());
+    this.levels = layout.getLevels();
+    this.width = layout.getWidth();
+  }
+
+  public List<String> getContainers() {
+    return containers;
+  }
+
+  public void setContainers(List<String> containers) {
+    this.containers = containers;
+  }
+
+  public int getLevels() {
+    return levels;
+  }
+
+  public void setLevels(int levels) {
+    this.levels = levels;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public void setWidth(int width) {
+    this.width = width;
+  }
+
+  public ShardedLayout toLayout() {
+    return new ShardedLayout(containers, levels, width);
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the children of the containers of a {@link FileStorageService} (and
+ * of its history and content digests folders) from the layout the storage
+ * folder is in to another layout.
+ *
+ * <p>
+ * Each container is first renamed into a work folder and its children are
+ * then moved back one by one, while its (shard) directories are walked
+ * lazily, so that containers of any size can be migrated. An interrupted
+ * migration is resumed from the children left in the work folder. Each
+ * migrated container is marked as done in the work folder, before its own work
+ * folder is deleted, so that a resumed migration skips it instead of walking it
+ * as if it were still in the old layout. The layout is recorded, next to the
+ * storage folder, only after all containers are migrated.
+ * </p>
+ */
+public class ShardedLayoutMigration {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShardedLayoutMigration.class);
+
+  public static final String LAYOUT_FILE_SUFFIX = "-layout.json";
+  private static final String WORK_FOLDER_SUFFIX = "-layout-migration";
+  private static final String DONE_SUFFIX = "-done.json";
+  private static final int LOG_EVERY = 10000;
+
+  private final FileStorageService storage;
+  private final Path rodaDataPath;
+  private final Path layoutFile;
+  private final Path workPath;
+
+  public ShardedLayoutMigration(FileStorageService storage) {
+    this.storage = storage;
+    Path basePath = storage.getBasePath();
+    this.rodaDataPath = basePath.getParent();
+    this.layoutFile = rodaDataPath.resolve(basePath.getFileName() + LAYOUT_FILE_SUFFIX);
+    this.workPath = rodaDataPath.resolve(basePath.getFileName() + WORK_FOLDER_SUFFIX);
+  }
+
+  /**
+   * @return the layout the storage folder was last migrated to, or the flat
+   *         layout if it was never migrated
+   */
+  public ShardedLayout getInstalledLayout() throws GenericException {
+    if (FSUtils.exists(layoutFile)) {
+      return JsonUtils.readObjectFromFile(layoutFile, ShardedLayoutInfo.class).toLayout();
+    } else {
+      return ShardedLayout.FLAT;
+    }
+  }
+
+  /**
+   * Checks if the storage folder must be migrated to be in the given layout.
+   * Containers that do not exist or are empty do not need to be migrated, so
+   * if no other container changes, the layout is just recorded.
+   */
+  public boolean isNecessary(ShardedLayout layout) throws GenericException {
+    ShardedLayout installed = getInstalledLayout();
+    Set<String> changed = installed.getChangedContainers(layout);
+    if (changed.isEmpty()) {
+      return false;
+    }
+
+    if (FSUtils.exists(workPath)) {
+      LOGGER.warn("A storage layout migration is needed! A previous migration was interrupted");
+      return true;
+    }
+
+    for (String container : changed) {
+      if (!isEmpty(storage.getBasePath().resolve(container))) {
+        LOGGER.warn("A storage layout migration is needed! Container '{}' is not in the configured layout",
+          container);
+        return true;
+      }
+    }
+
+    LOGGER.info("Storage layout changed but containers to migrate are empty. Writing layout to file {}", layoutFile);
+    recordLayout(layout);
+    return false;
+  }
+
+  private static boolean isEmpty(Path directory) throws GenericException {
+    try {
+      return !FSUtils.exists(directory) || FSUtils.isDirEmpty(directory);
+    } catch (IOException e) {
+      throw new GenericException("Could not list contents of " + directory, e);
+    }
+  }
+
+  /**
+   * Migrates the storage folder to the given layout, which is then used by the
+   * storage service.
+   */
+  public void migrate(ShardedLayout layout) throws GenericException {
+    ShardedLayout installed = getInstalledLayout();
+    Set<String> changed = installed.getChangedContainers(layout);
+
+    for (String container : changed) {
+      LOGGER.info("Migrating storage layout of container '{}'", container);
+      migrateContainer(storage.getBasePath(), container, installed, layout, UnaryOperator.identity());
+      migrateContainer(storage.getDigestsPath(), container, installed, layout,
+        name -> removeSuffix(name, FSUtils.METADATA_SUFFIX));
+      migrateContainer(storage.getHistoryDataPath(), container, installed, layout,
+        ShardedLayoutMigration::removeVersion);
+      migrateContainer(storage.getHistoryMetadataPath(), container, installed, layout,
+        name -> removeVersion(removeSuffix(name, FSUtils.METADATA_SUFFIX)));
+    }
+
+    recordLayout(layout);
+    FSUtils.deletePathQuietly(workPath);
+    LOGGER.info("Storage layout migrated");
+  }
+
+  private void recordLayout(ShardedLayout layout) throws GenericException {
+    JsonUtils.writeObjectToFile(new ShardedLayoutInfo(layout), layoutFile);
+    storage.setShardedLayout(layout);
+  }
+
+  /**
+   * @param childToName
+   *          gives the name of the storage entity of a child file, used to get
+   *          its shards, from the name of the file (e.g. without the version
+   *          of a binary version)
+   */
+  private void migrateContainer(Path root, String container, ShardedLayout from, ShardedLayout to,
+    UnaryOperator<String> childToName) throws GenericException {
+    if (root == null) {
+      return;
+    }
+
+    Path containerPath = root.resolve(container);
+    Path work = workPath.resolve(rodaDataPath.relativize(root)).resolve(container);
+    Path done = work.resolveSibling(container + DONE_SUFFIX);
+    if (FSUtils.exists(done)) {
+      ShardedLayout migratedTo = JsonUtils.readObjectFromFile(done, ShardedLayoutInfo.class).toLayout();
+      if (!migratedTo.getChangedContainers(to).contains(container)) {
+        LOGGER.info("Skipping {}, already migrated", containerPath);
+        FSUtils.deletePathQuietly(work);
+        return;
+      }
+      throw new GenericException("Container " + containerPath + " was migrated by an interrupted migration to "
+        + "another layout, which must be finished first");
+    }
+
+    try {
+      if (FSUtils.exists(containerPath) && !FSUtils.exists(work)) {
+        Files.createDirectories(work.getParent());
+        Files.move(containerPath, work);
+      }
+      if (!FSUtils.exists(work)) {
+        return;
+      }
+      Files.createDirectories(containerPath);
+    } catch (IOException e) {
+      throw new GenericException("Could not prepare migration of " + containerPath, e);
+    }
+
+    long count = 0;
+    ShardedLayout.ShardWalker walker;
+    try {
+      walker = new ShardedLayout.ShardWalker(work, from.getLevels(container));
+    } catch (IOException e) {
+      throw new GenericException("Could not list contents of " + work, e);
+    }
+
+    try {
+      while (walker.hasNext()) {
+        Path child = walker.next();
+        String name = child.getFileName().toString();
+        Path target = containerPath;
+        if (to.isSharded(container)) {
+          String entityName = FSUtils.isDirectory(child) ? name : childToName.apply(name);
+          for (String shard : to.getShards(FSUtils.decodePathPartial(entityName))) {
+            target = target.resolve(shard);
+          }
+        }
+        FSUtils.move(child, target.resolve(name), false);
+
+        if (++count % LOG_EVERY == 0) {
+          LOGGER.info("Migrated {} entries of {}", count, containerPath);
+        }
+      }
+    } catch (AlreadyExistsException | NotFoundException e) {
+      throw new GenericException("Could not migrate " + containerPath, e);
+    } catch (UncheckedIOException e) {
+      throw new GenericException("Could not list contents of " + work, e.getCause());
+    } finally {
+      walker.close();
+    }
+
+    // only (empty) shard directories are left, so the container is marked as
+    // migrated before they are deleted
+    JsonUtils.writeObjectToFile(new ShardedLayoutInfo(to), done);
+    FSUtils.deletePathQuietly(work);
+    LOGGER.info("Migrated {} entries of {}", count, containerPath);
+  }
+
+  private static String removeSuffix(String name, String suffix) {
+    return name.endsWith(suffix) ? name.substring(0, name.length() - suffix.length()) : name;
+  }
+
+  private static String removeVersion(String name) {
+    int index = name.lastIndexOf(FSUtils.VERSION_SEP);
+    return index > 0 ? name.substring(0, index) : name;
+  }
+}
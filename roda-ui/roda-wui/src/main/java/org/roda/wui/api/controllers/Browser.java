@@ -60,6 +60,7 @@ import org.roda.core.data.v2.ip.Permissions;
 import org.roda.core.data.v2.ip.Permissions.PermissionType;
 import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
 import org.roda.core.data.v2.ip.metadata.PreservationMetadata.PreservationMetadataType;
 import org.roda.core.data.v2.jobs.Job;
@@ -1858,6 +1859,129 @@ public class Browser extends RodaWuiController {
 
   }
 
+  public static TransferredResourceUpload startTransferredResourceUpload(User user, String parentUUID, String fileName,
+    long size, long chunkSize) throws AuthorizationDeniedException, GenericException, AlreadyExistsException,
+    RequestNotValidException, NotFoundException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    UserUtility.checkTransferredResourceAccess(user, Arrays.asList(parentUUID));
+
+    LOG_ENTRY_STATE state = LOG_ENTRY_STATE.SUCCESS;
+
+    try {
+      // delegate
+      return BrowserHelper.startTransferredResourceUpload(parentUUID, fileName, size, chunkSize);
+    } catch (RODAException e) {
+      state = LOG_ENTRY_STATE.FAILURE;
+      throw e;
+    } finally {
+      // register action
+      controllerAssistant.registerAction(user, state, RodaConstants.CONTROLLER_PATH_PARAM, parentUUID,
+        RodaConstants.CONTROLLER_FILENAME_PARAM, fileName);
+    }
+  }
+
+  public static TransferredResourceUpload retrieveTransferredResourceUpload(User user, String uploadId)
+    throws AuthorizationDeniedException, GenericException, NotFoundException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    LOG_ENTRY_STATE state = LOG_ENTRY_STATE.SUCCESS;
+
+    try {
+      // delegate
+      TransferredResourceUpload upload = BrowserHelper.retrieveTransferredResourceUpload(uploadId);
+      UserUtility.checkTransferredResourceAccess(user, Arrays.asList(upload.getParentUUID()));
+      return upload;
+    } catch (RODAException e) {
+      state = LOG_ENTRY_STATE.FAILURE;
+      throw e;
+    } finally {
+      // register action
+      controllerAssistant.registerAction(user, state, RodaConstants.CONTROLLER_ID_PARAM, uploadId);
+    }
+  }
+
+  public static TransferredResourceUpload uploadTransferredResourceChunk(User user, String uploadId, int chunkIndex,
+    InputStream inputStream)
+    throws AuthorizationDeniedException, GenericException, RequestNotValidException, NotFoundException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    LOG_ENTRY_STATE state = LOG_ENTRY_STATE.SUCCESS;
+
+    try {
+      // delegate
+      TransferredResourceUpload upload = BrowserHelper.retrieveTransferredResourceUpload(uploadId);
+      UserUtility.checkTransferredResourceAccess(user, Arrays.asList(upload.getParentUUID()));
+      return BrowserHelper.uploadTransferredResourceChunk(uploadId, chunkIndex, inputStream);
+    } catch (RODAException e) {
+      state = LOG_ENTRY_STATE.FAILURE;
+      throw e;
+    } finally {
+      // register action, only if failed as the upload is already registered
+      // when started and completed, instead of once per chunk
+      if (state == LOG_ENTRY_STATE.FAILURE) {
+        controllerAssistant.registerAction(user, state, RodaConstants.CONTROLLER_ID_PARAM, uploadId,
+          RodaConstants.CONTROLLER_CHUNK_INDEX_PARAM, chunkIndex);
+      }
+    }
+  }
+
+  public static TransferredResource completeTransferredResourceUpload(User user, String uploadId,
+    boolean forceCommit) throws AuthorizationDeniedException, GenericException, AlreadyExistsException,
+    RequestNotValidException, NotFoundException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    LOG_ENTRY_STATE state = LOG_ENTRY_STATE.SUCCESS;
+
+    try {
+      // delegate
+      TransferredResourceUpload upload = BrowserHelper.retrieveTransferredResourceUpload(uploadId);
+      UserUtility.checkTransferredResourceAccess(user, Arrays.asList(upload.getParentUUID()));
+      return BrowserHelper.completeTransferredResourceUpload(uploadId, forceCommit);
+    } catch (RODAException e) {
+      state = LOG_ENTRY_STATE.FAILURE;
+      throw e;
+    } finally {
+      // register action
+      controllerAssistant.registerAction(user, state, RodaConstants.CONTROLLER_ID_PARAM, uploadId);
+    }
+  }
+
+  public static void deleteTransferredResourceUpload(User user, String uploadId)
+    throws AuthorizationDeniedException, GenericException, NotFoundException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    LOG_ENTRY_STATE state = LOG_ENTRY_STATE.SUCCESS;
+
+    try {
+      // delegate
+      TransferredResourceUpload upload = BrowserHelper.retrieveTransferredResourceUpload(uploadId);
+      UserUtility.checkTransferredResourceAccess(user, Arrays.asList(upload.getParentUUID()));
+      BrowserHelper.deleteTransferredResourceUpload(uploadId);
+    } catch (RODAException e) {
+      state = LOG_ENTRY_STATE.FAILURE;
+      throw e;
+    } finally {
+      // register action
+      controllerAssistant.registerAction(user, state, RodaConstants.CONTROLLER_ID_PARAM, uploadId);
+    }
+  }
+
   public static ConsumesOutputStream retrieveClassificationPlan(User user, String filename)
     throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
     final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
@@ -103,6 +103,7 @@ import org.roda.core.data.v2.ip.Permissions;
 import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadataList;
 import org.roda.core.data.v2.ip.metadata.IndexedPreservationAgent;
@@ -1790,6 +1791,40 @@ public class BrowserHelper {
     return transferredResource;
   }
 
+  public static TransferredResourceUpload startTransferredResourceUpload(String parentUUID, String fileName, long size,
+    long chunkSize) throws GenericException, AlreadyExistsException, NotFoundException, RequestNotValidException {
+    LOGGER.debug("startTransferredResourceUpload(path={}, name={}, size={})", parentUUID, fileName, size);
+    return RodaCoreFactory.getTransferredResourcesScanner().startUpload(parentUUID, fileName, size, chunkSize);
+  }
+
+  public static TransferredResourceUpload retrieveTransferredResourceUpload(String uploadId)
+    throws GenericException, NotFoundException {
+    return RodaCoreFactory.getTransferredResourcesScanner().getUploads().retrieveUpload(uploadId);
+  }
+
+  public static TransferredResourceUpload uploadTransferredResourceChunk(String uploadId, int chunkIndex,
+    InputStream inputStream) throws GenericException, NotFoundException, RequestNotValidException {
+    return RodaCoreFactory.getTransferredResourcesScanner().getUploads().uploadChunk(uploadId, chunkIndex,
+      inputStream);
+  }
+
+  public static TransferredResource completeTransferredResourceUpload(String uploadId, boolean forceCommit)
+    throws GenericException, AlreadyExistsException, NotFoundException, RequestNotValidException {
+    LOGGER.debug("completeTransferredResourceUpload(id={})", uploadId);
+    TransferredResource transferredResource = RodaCoreFactory.getTransferredResourcesScanner()
+      .completeUpload(uploadId);
+
+    if (forceCommit) {
+      RodaCoreFactory.getTransferredResourcesScanner().commit();
+    }
+
+    return transferredResource;
+  }
+
+  public static void deleteTransferredResourceUpload(String uploadId) throws NotFoundException {
+    RodaCoreFactory.getTransferredResourcesScanner().getUploads().deleteUpload(uploadId);
+  }
+
   protected static <T extends IsIndexed> void delete(User user, Class<T> returnClass, SelectedItems<T> ids)
     throws GenericException, RequestNotValidException {
     List<String> idList = consolidate(user, returnClass, ids);
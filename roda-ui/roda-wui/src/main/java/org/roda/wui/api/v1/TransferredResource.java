@@ -15,7 +15,9 @@ import java.util.List;
 import java.util.Optional;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -48,6 +50,7 @@ import org.roda.core.data.v2.index.filter.Filter;
 import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.index.sort.Sorter;
 import org.roda.core.data.v2.index.sublist.Sublist;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
 import org.roda.core.data.v2.ip.TransferredResources;
 import org.roda.core.data.v2.user.User;
 import org.roda.wui.api.controllers.Browser;
@@ -67,6 +70,7 @@ import io.swagger.annotations.ApiResponses;
 public class TransferredResource {
   public static final String ENDPOINT = "/v1/transfers";
   public static final String SWAGGER_ENDPOINT = "v1 transfers";
+  private static final String DEFAULT_UPLOAD_CHUNK_SIZE = "8388608";
 
   @Context
   private HttpServletRequest request;
@@ -265,4 +269,130 @@ public class TransferredResource {
     return Response.ok(resource, mediaType).build();
   }
 
+  @POST
+  @Path("/uploads")
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+  @ApiOperation(value = "Start upload", notes = "Start the upload of a file in chunks, which may be uploaded in any order and concurrently.", response = TransferredResourceUpload.class)
+  @ApiResponses(value = {@ApiResponse(code = 200, message = "OK", response = TransferredResourceUpload.class),
+    @ApiResponse(code = 409, message = "Already exists", response = ApiResponseMessage.class)})
+  public Response startUpload(
+    @ApiParam(value = "The id of the parent") @QueryParam(RodaConstants.TRANSFERRED_RESOURCE_PARENT_UUID) String parentUUID,
+    @ApiParam(value = "The name of the file to create", required = true) @QueryParam(RodaConstants.TRANSFERRED_RESOURCE_NAME) String name,
+    @ApiParam(value = "The size of the file, in bytes", required = true) @QueryParam(RodaConstants.API_QUERY_PARAM_UPLOAD_SIZE) long size,
+    @ApiParam(value = "The size of each chunk (except the last one), in bytes", defaultValue = DEFAULT_UPLOAD_CHUNK_SIZE) @DefaultValue(DEFAULT_UPLOAD_CHUNK_SIZE) @QueryParam(RodaConstants.API_QUERY_PARAM_UPLOAD_CHUNK_SIZE) long chunkSize,
+    @ApiParam(value = "Locale") @QueryParam(RodaConstants.LOCALE) String localeString,
+    @ApiParam(value = "Choose format in which to get the response", allowableValues = RodaConstants.API_POST_PUT_MEDIA_TYPES) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    try {
+      TransferredResourceUpload upload = Browser.startTransferredResourceUpload(user, parentUUID, name, size,
+        chunkSize);
+      return Response.ok(upload, mediaType).build();
+    } catch (AlreadyExistsException e) {
+      return Response.status(Status.CONFLICT).entity(new ApiResponseMessage(ApiResponseMessage.ERROR,
+        I18nUtility.getMessage("ui.upload.error.alreadyexists", e.getMessage(), localeString))).build();
+    }
+  }
+
+  @GET
+  @Path("/uploads/{" + RodaConstants.API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID + "}")
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+  @ApiOperation(value = "Get upload", notes = "Get the state of an upload, including the chunks already received (so that the others may be uploaded to resume it).", response = TransferredResourceUpload.class)
+  @ApiResponses(value = {@ApiResponse(code = 200, message = "OK", response = TransferredResourceUpload.class),
+    @ApiResponse(code = 404, message = "Not found", response = ApiResponseMessage.class)})
+  public Response retrieveUpload(
+    @ApiParam(value = "The id of the upload", required = true) @PathParam(RodaConstants.API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID) String uploadId,
+    @ApiParam(value = "Choose format in which to get the response", allowableValues = RodaConstants.API_GET_MEDIA_TYPES) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    TransferredResourceUpload upload = Browser.retrieveTransferredResourceUpload(user, uploadId);
+    return Response.ok(upload, mediaType).build();
+  }
+
+  @PUT
+  @Path("/uploads/{" + RodaConstants.API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID + "}/{"
+    + RodaConstants.API_PATH_PARAM_CHUNK_INDEX + "}")
+  @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+  @ApiOperation(value = "Upload chunk", notes = "Upload (or upload again) a chunk of a file, sent as the request body.", response = TransferredResourceUpload.class)
+  @ApiResponses(value = {@ApiResponse(code = 200, message = "OK", response = TransferredResourceUpload.class),
+    @ApiResponse(code = 400, message = "Chunk with the wrong size", response = ApiResponseMessage.class),
+    @ApiResponse(code = 404, message = "Not found", response = ApiResponseMessage.class)})
+  public Response uploadChunk(
+    @ApiParam(value = "The id of the upload", required = true) @PathParam(RodaConstants.API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID) String uploadId,
+    @ApiParam(value = "The index of the chunk, starting at 0", required = true) @PathParam(RodaConstants.API_PATH_PARAM_CHUNK_INDEX) int chunkIndex,
+    InputStream inputStream,
+    @ApiParam(value = "Choose format in which to get the response", allowableValues = RodaConstants.API_POST_PUT_MEDIA_TYPES) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    TransferredResourceUpload upload = Browser.uploadTransferredResourceChunk(user, uploadId, chunkIndex,
+      inputStream);
+    return Response.ok(upload, mediaType).build();
+  }
+
+  @POST
+  @Path("/uploads/{" + RodaConstants.API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID + "}/complete")
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
+  @ApiOperation(value = "Complete upload", notes = "Create the resource of an upload whose chunks were all uploaded.", response = org.roda.core.data.v2.ip.TransferredResource.class)
+  @ApiResponses(value = {
+    @ApiResponse(code = 200, message = "OK", response = org.roda.core.data.v2.ip.TransferredResource.class),
+    @ApiResponse(code = 400, message = "Chunks missing", response = ApiResponseMessage.class),
+    @ApiResponse(code = 404, message = "Not found", response = ApiResponseMessage.class),
+    @ApiResponse(code = 409, message = "Already exists", response = ApiResponseMessage.class)})
+  public Response completeUpload(
+    @ApiParam(value = "The id of the upload", required = true) @PathParam(RodaConstants.API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID) String uploadId,
+    @ApiParam(value = "Commit after creation", defaultValue = "false") @QueryParam(RodaConstants.API_QUERY_PARAM_COMMIT) boolean forceCommit,
+    @ApiParam(value = "Locale") @QueryParam(RodaConstants.LOCALE) String localeString,
+    @ApiParam(value = "Choose format in which to get the resource", allowableValues = RodaConstants.API_POST_PUT_MEDIA_TYPES) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    try {
+      org.roda.core.data.v2.ip.TransferredResource transferredResource = Browser
+        .completeTransferredResourceUpload(user, uploadId, forceCommit);
+      return Response.ok(transferredResource, mediaType).build();
+    } catch (AlreadyExistsException e) {
+      return Response.status(Status.CONFLICT).entity(new ApiResponseMessage(ApiResponseMessage.ERROR,
+        I18nUtility.getMessage("ui.upload.error.alreadyexists", e.getMessage(), localeString))).build();
+    }
+  }
+
+  @DELETE
+  @Path("/uploads/{" + RodaConstants.API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID + "}")
+  @ApiOperation(value = "Cancel upload", notes = "Cancel an upload, deleting the chunks already received.", response = Void.class)
+  @ApiResponses(value = {@ApiResponse(code = 204, message = "OK", response = Void.class),
+    @ApiResponse(code = 404, message = "Not found", response = ApiResponseMessage.class)})
+  public Response deleteUpload(
+    @ApiParam(value = "The id of the upload", required = true) @PathParam(RodaConstants.API_PATH_PARAM_TRANSFERRED_RESOURCE_UPLOAD_ID) String uploadId,
+    @ApiParam(value = "Choose format in which to get the response", allowableValues = RodaConstants.API_DELETE_MEDIA_TYPES) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    Browser.deleteTransferredResourceUpload(user, uploadId);
+    return Response.ok(new ApiResponseMessage(ApiResponseMessage.OK, "Upload deleted"), mediaType).build();
+  }
+
 }